@@ -0,0 +1,96 @@
+package com.zy.bigdata.aerospike.benchmarks;
+
+import com.zy.bigdata.aerospike.client.AedisClient;
+import com.zy.bigdata.aerospike.client.CommandMode;
+import java.util.concurrent.ThreadLocalRandom;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Client shared by the suites, on the in-process fake by default or on a cluster with
+ * "-p target=cluster -jvmArgsAppend -Daedis.hosts=host:port" (namespace and set from the
+ * aedis.namespace and aedis.set properties). The data read by the suites is written once per trial.
+ */
+@State(Scope.Benchmark)
+public class AedisState {
+
+    static final String STRING_PREFIX = "bench:string:";
+    static final String LIST_PREFIX = "bench:list:";
+    static final String HASH_PREFIX = "bench:hash:";
+    static final String COUNTER_PREFIX = "bench:counter:";
+
+    static final int LISTS = 100;
+    static final int LIST_SIZE = 100;
+    static final int HASHES = 100;
+    static final int HASH_SIZE = 20;
+
+    @Param({"fake"})
+    public String target;
+
+    /* simulated round trip of the fake client */
+    @Param({"0"})
+    public long fakeLatencyMicros;
+
+    @Param({"10000"})
+    public int keyCount;
+
+    @Param({"100"})
+    public int valueSize;
+
+    /* NATIVE needs a cluster, the fake does not emulate CDT operations */
+    @Param({"UDF"})
+    public String mode;
+
+    public AedisClient client;
+    public String value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String namespace = System.getProperty("aedis.namespace", "test");
+        String set = System.getProperty("aedis.set", "bench");
+        if ("cluster".equals(this.target))
+            this.client = new AedisClient(System.getProperty("aedis.hosts", "127.0.0.1:3000"), namespace, set);
+        else
+            this.client = new AedisClient(new FakeAerospikeClient(this.fakeLatencyMicros), namespace, set);
+        this.client.setListMode(CommandMode.valueOf(this.mode));
+        this.client.setHashMode(CommandMode.valueOf(this.mode));
+
+        StringBuilder sb = new StringBuilder(this.valueSize);
+        for (int i = 0; i < this.valueSize; i++){
+            sb.append((char) ('a' + i % 26));
+        }
+        this.value = sb.toString();
+
+        for (int i = 0; i < this.keyCount; i++){
+            this.client.set(STRING_PREFIX + i, this.value);
+        }
+        for (int i = 0; i < LISTS; i++){
+            this.client.del(LIST_PREFIX + i);
+            for (int j = 0; j < LIST_SIZE; j++){
+                this.client.rpush(LIST_PREFIX + i, this.value);
+            }
+        }
+        for (int i = 0; i < HASHES; i++){
+            this.client.del(HASH_PREFIX + i);
+            for (int j = 0; j < HASH_SIZE; j++){
+                this.client.hset(HASH_PREFIX + i, "field" + j, this.value);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        this.client.close();
+    }
+
+    public String stringKey() {
+        return STRING_PREFIX + ThreadLocalRandom.current().nextInt(this.keyCount);
+    }
+
+    public String listKey() {
+        return LIST_PREFIX + ThreadLocalRandom.current().nextInt(LISTS);
+    }
+
+    public String hashKey() {
+        return HASH_PREFIX + ThreadLocalRandom.current().nextInt(HASHES);
+    }
+}
@@ -0,0 +1,41 @@
+package com.zy.bigdata.aerospike.benchmarks;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar, accepts the usual JMH options.
+ *
+ * Without -bm every suite runs twice: in throughput mode reported in ops/s, then in sample
+ * mode reported in us/op with the p50/p99 percentiles. The gc profiler is added unless other
+ * profilers are given, its gc.alloc.rate.norm is the allocation per operation. KeysBenchmark
+ * is skipped unless the run targets a cluster.
+ */
+public class BenchmarkMain {
+
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cmd = new CommandLineOptions(args);
+        if (cmd.getBenchModes() != null && !cmd.getBenchModes().isEmpty()) {
+            new Runner(options(cmd).build()).run();
+            return;
+        }
+        new Runner(options(cmd).mode(Mode.Throughput).timeUnit(TimeUnit.SECONDS).build()).run();
+        new Runner(options(cmd).mode(Mode.SampleTime).timeUnit(TimeUnit.MICROSECONDS).build()).run();
+    }
+
+    private static ChainedOptionsBuilder options(CommandLineOptions cmd) {
+        ChainedOptionsBuilder options = new OptionsBuilder().parent(cmd);
+        if (cmd.getProfilers().isEmpty())
+            options.addProfiler(GCProfiler.class);
+        Collection<String> targets = cmd.getParameter("target").orElse(null);
+        if (targets == null || !targets.contains("cluster"))
+            options.exclude(KeysBenchmark.class.getSimpleName());
+        return options;
+    }
+}
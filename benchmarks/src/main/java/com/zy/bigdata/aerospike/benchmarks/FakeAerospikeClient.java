@@ -0,0 +1,630 @@
+package com.zy.bigdata.aerospike.benchmarks;
+
+import com.aerospike.client.*;
+import com.aerospike.client.admin.Privilege;
+import com.aerospike.client.admin.Role;
+import com.aerospike.client.admin.User;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.large.LargeList;
+import com.aerospike.client.large.LargeMap;
+import com.aerospike.client.large.LargeSet;
+import com.aerospike.client.large.LargeStack;
+import com.aerospike.client.policy.*;
+import com.aerospike.client.query.IndexCollectionType;
+import com.aerospike.client.query.IndexType;
+import com.aerospike.client.query.RecordSet;
+import com.aerospike.client.query.ResultSet;
+import com.aerospike.client.query.Statement;
+import com.aerospike.client.task.ExecuteTask;
+import com.aerospike.client.task.IndexTask;
+import com.aerospike.client.task.RegisterTask;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+
+/**
+ * In-process stand-in for a cluster, so the suites run offline. Records live in a concurrent
+ * map; plain record operations and the redis.lua functions used by the suites (RPUSH, LPUSH,
+ * LLEN, LRANGE, HSET, HGET, HGETALL) are emulated in Java. Everything else, including CDT
+ * operations, scans and queries, throws UnsupportedOperationException.
+ *
+ * Every call can be delayed by a fixed latency to approximate a network round trip.
+ */
+public class FakeAerospikeClient implements IAerospikeClient {
+
+    private static final class Stored {
+        final Map<String, Object> bins = new HashMap<String, Object>();
+        int generation = 0;
+    }
+
+    private final ConcurrentHashMap<Key, Stored> records = new ConcurrentHashMap<Key, Stored>();
+    private final long latencyNanos;
+
+    private final Policy readPolicy = new Policy();
+    private final WritePolicy writePolicy = new WritePolicy();
+    private final ScanPolicy scanPolicy = new ScanPolicy();
+    private final QueryPolicy queryPolicy = new QueryPolicy();
+    private final BatchPolicy batchPolicy = new BatchPolicy();
+    private final InfoPolicy infoPolicy = new InfoPolicy();
+
+    public FakeAerospikeClient() {
+        this(0);
+    }
+
+    public FakeAerospikeClient(long latencyMicros) {
+        this.latencyNanos = latencyMicros * 1000L;
+    }
+
+    private void roundTrip() {
+        if (this.latencyNanos > 0)
+            LockSupport.parkNanos(this.latencyNanos);
+    }
+
+    private static UnsupportedOperationException unsupported() {
+        return new UnsupportedOperationException("not emulated by the fake client");
+    }
+
+    /*
+     * Lists and maps are copied, as a real read deserializes a fresh value.
+     */
+    private static Record toRecord(Stored stored, String... binNames) {
+        Map<String, Object> bins = new HashMap<String, Object>();
+        if (binNames == null || binNames.length == 0) {
+            for (Map.Entry<String, Object> entry : stored.bins.entrySet()){
+                bins.put(entry.getKey(), copy(entry.getValue()));
+            }
+        } else {
+            for (String name : binNames){
+                if (stored.bins.containsKey(name)) bins.put(name, copy(stored.bins.get(name)));
+            }
+        }
+        return new Record(bins, stored.generation, 0);
+    }
+
+    private static Object copy(Object value) {
+        if (value instanceof List)
+            return new ArrayList<Object>((List<?>) value);
+        if (value instanceof Map)
+            return new HashMap<Object, Object>((Map<?, ?>) value);
+        return value;
+    }
+
+    /*
+     * Runs a mutation under the record lock, honouring the record exists action of the policy.
+     */
+    private <T> T write(WritePolicy policy, Key key, Function<Stored, T> mutation) {
+        roundTrip();
+        RecordExistsAction action = (policy == null) ? RecordExistsAction.UPDATE : policy.recordExistsAction;
+        final Object[] result = new Object[1];
+        this.records.compute(key, (k, stored) -> {
+            if (stored == null) {
+                if (action == RecordExistsAction.UPDATE_ONLY || action == RecordExistsAction.REPLACE_ONLY)
+                    throw new AerospikeException(ResultCode.KEY_NOT_FOUND_ERROR);
+                stored = new Stored();
+            } else if (action == RecordExistsAction.CREATE_ONLY) {
+                throw new AerospikeException(ResultCode.KEY_EXISTS_ERROR);
+            }
+            synchronized (stored) {
+                if (action == RecordExistsAction.REPLACE || action == RecordExistsAction.REPLACE_ONLY)
+                    stored.bins.clear();
+                result[0] = mutation.apply(stored);
+                stored.generation++;
+            }
+            return stored;
+        });
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    private Record read(Key key, String... binNames) {
+        roundTrip();
+        Stored stored = this.records.get(key);
+        if (stored == null)
+            return null;
+        synchronized (stored) {
+            return toRecord(stored, binNames);
+        }
+    }
+
+    @Override
+    public Policy getReadPolicyDefault() {
+        return this.readPolicy;
+    }
+
+    @Override
+    public WritePolicy getWritePolicyDefault() {
+        return this.writePolicy;
+    }
+
+    @Override
+    public ScanPolicy getScanPolicyDefault() {
+        return this.scanPolicy;
+    }
+
+    @Override
+    public QueryPolicy getQueryPolicyDefault() {
+        return this.queryPolicy;
+    }
+
+    @Override
+    public BatchPolicy getBatchPolicyDefault() {
+        return this.batchPolicy;
+    }
+
+    @Override
+    public InfoPolicy getInfoPolicyDefault() {
+        return this.infoPolicy;
+    }
+
+    @Override
+    public void close() {
+        this.records.clear();
+    }
+
+    @Override
+    public boolean isConnected() {
+        return true;
+    }
+
+    @Override
+    public Node[] getNodes() {
+        return new Node[0];
+    }
+
+    @Override
+    public List<String> getNodeNames() {
+        return new ArrayList<String>();
+    }
+
+    @Override
+    public Node getNode(String nodeName) {
+        throw new AerospikeException.InvalidNode();
+    }
+
+    @Override
+    public void put(WritePolicy policy, Key key, Bin... bins) {
+        write(policy, key, stored -> {
+            for (Bin bin : bins){
+                stored.bins.put(bin.name, bin.value.getObject());
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void append(WritePolicy policy, Key key, Bin... bins) {
+        write(policy, key, stored -> {
+            for (Bin bin : bins){
+                Object current = stored.bins.get(bin.name);
+                stored.bins.put(bin.name, ((current == null) ? "" : current) + String.valueOf(bin.value.getObject()));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void prepend(WritePolicy policy, Key key, Bin... bins) {
+        write(policy, key, stored -> {
+            for (Bin bin : bins){
+                Object current = stored.bins.get(bin.name);
+                stored.bins.put(bin.name, String.valueOf(bin.value.getObject()) + ((current == null) ? "" : current));
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public void add(WritePolicy policy, Key key, Bin... bins) {
+        write(policy, key, stored -> {
+            for (Bin bin : bins){
+                add(stored, bin.name, bin.value);
+            }
+            return null;
+        });
+    }
+
+    private static void add(Stored stored, String name, Value value) {
+        Object current = stored.bins.get(name);
+        long base = (current == null) ? 0L : ((Number) current).longValue();
+        stored.bins.put(name, base + value.toLong());
+    }
+
+    @Override
+    public boolean delete(WritePolicy policy, Key key) {
+        roundTrip();
+        return this.records.remove(key) != null;
+    }
+
+    @Override
+    public void touch(WritePolicy policy, Key key) {
+        WritePolicy wp = new WritePolicy(policy == null ? this.writePolicy : policy);
+        wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
+        write(wp, key, stored -> null);
+    }
+
+    @Override
+    public boolean exists(Policy policy, Key key) {
+        roundTrip();
+        return this.records.containsKey(key);
+    }
+
+    @Override
+    public boolean[] exists(BatchPolicy policy, Key[] keys) {
+        roundTrip();
+        boolean[] result = new boolean[keys.length];
+        for (int i = 0; i < keys.length; i++){
+            result[i] = this.records.containsKey(keys[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public Record get(Policy policy, Key key) {
+        return read(key);
+    }
+
+    @Override
+    public Record get(Policy policy, Key key, String... binNames) {
+        return read(key, binNames);
+    }
+
+    @Override
+    public Record getHeader(Policy policy, Key key) {
+        Record record = read(key);
+        return (record == null) ? null : new Record(null, record.generation, record.expiration);
+    }
+
+    @Override
+    public void get(BatchPolicy policy, List<BatchRead> batchReads) {
+        roundTrip();
+        for (BatchRead batchRead : batchReads){
+            Stored stored = this.records.get(batchRead.key);
+            if (stored == null) continue;
+            synchronized (stored) {
+                batchRead.record = batchRead.readAllBins ? toRecord(stored) : toRecord(stored, batchRead.binNames);
+            }
+        }
+    }
+
+    @Override
+    public Record[] get(BatchPolicy policy, Key[] keys) {
+        return get(policy, keys, (String[]) null);
+    }
+
+    @Override
+    public Record[] get(BatchPolicy policy, Key[] keys, String... binNames) {
+        roundTrip();
+        Record[] result = new Record[keys.length];
+        for (int i = 0; i < keys.length; i++){
+            Stored stored = this.records.get(keys[i]);
+            if (stored == null) continue;
+            synchronized (stored) {
+                result[i] = toRecord(stored, binNames);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public Record[] getHeader(BatchPolicy policy, Key[] keys) {
+        Record[] records = get(policy, keys);
+        for (int i = 0; i < records.length; i++){
+            if (records[i] != null) records[i] = new Record(null, records[i].generation, records[i].expiration);
+        }
+        return records;
+    }
+
+    @Override
+    public Record operate(WritePolicy policy, Key key, Operation... operations) {
+        boolean writes = false;
+        for (Operation operation : operations){
+            if (operation.type != Operation.Type.READ && operation.type != Operation.Type.READ_HEADER)
+                writes = true;
+        }
+        if (!writes) {
+            List<String> names = new ArrayList<String>();
+            for (Operation operation : operations){
+                if (operation.binName != null) names.add(operation.binName);
+            }
+            return read(key, names.toArray(new String[names.size()]));
+        }
+        return write(policy, key, stored -> {
+            Map<String, Object> bins = new HashMap<String, Object>();
+            for (Operation operation : operations){
+                switch (operation.type) {
+                    case READ:
+                        if (operation.binName == null)
+                            bins.putAll(stored.bins);
+                        else
+                            bins.put(operation.binName, stored.bins.get(operation.binName));
+                        break;
+                    case READ_HEADER:
+                    case TOUCH:
+                        break;
+                    case WRITE:
+                        stored.bins.put(operation.binName, operation.value.getObject());
+                        break;
+                    case ADD:
+                        add(stored, operation.binName, operation.value);
+                        break;
+                    case APPEND:
+                        stored.bins.merge(operation.binName, String.valueOf(operation.value.getObject()), (a, b) -> a + "" + b);
+                        break;
+                    case PREPEND:
+                        stored.bins.merge(operation.binName, String.valueOf(operation.value.getObject()), (a, b) -> b + "" + a);
+                        break;
+                    default:
+                        throw unsupported();
+                }
+            }
+            for (Map.Entry<String, Object> entry : bins.entrySet()){
+                entry.setValue(copy(entry.getValue()));
+            }
+            return new Record(bins, stored.generation + 1, 0);
+        });
+    }
+
+    /*
+     * Java equivalents of the redis.lua functions the suites call.
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Object execute(WritePolicy policy, Key key, String packageName, String functionName, Value... args) {
+        final String bin = args[0].toString();
+        switch (functionName) {
+            case "RPUSH":
+            case "LPUSH":
+                return write(updating(policy), key, stored -> {
+                    List<Object> list = (List<Object>) stored.bins.computeIfAbsent(bin, b -> new ArrayList<Object>());
+                    if ("RPUSH".equals(functionName))
+                        list.add(args[1].getObject());
+                    else
+                        list.add(0, args[1].getObject());
+                    return (long) list.size();
+                });
+            case "LLEN": {
+                Record record = read(key, bin);
+                List<?> list = (record == null) ? null : record.getList(bin);
+                return (list == null) ? 0L : (long) list.size();
+            }
+            case "LRANGE": {
+                Record record = read(key, bin);
+                List<Object> list = (record == null) ? null : (List<Object>) record.getList(bin);
+                if (list == null)
+                    return new ArrayList<Object>();
+                return slice(list, args[1].toInteger(), args[2].toInteger());
+            }
+            case "HSET":
+                return write(updating(policy), key, stored -> {
+                    Map<Object, Object> map = (Map<Object, Object>) stored.bins.computeIfAbsent(bin, b -> new HashMap<Object, Object>());
+                    return (map.put(args[1].getObject(), args[2].getObject()) == null) ? 1L : 0L;
+                });
+            case "HGET": {
+                Record record = read(key, bin);
+                Map<?, ?> map = (record == null) ? null : record.getMap(bin);
+                return (map == null) ? null : map.get(args[1].getObject());
+            }
+            case "HGETALL": {
+                Record record = read(key, bin);
+                Map<?, ?> map = (record == null) ? null : record.getMap(bin);
+                List<Object> result = new ArrayList<Object>();
+                if (map != null) {
+                    for (Map.Entry<?, ?> entry : map.entrySet()){
+                        result.add(entry.getKey());
+                        result.add(entry.getValue());
+                    }
+                }
+                return result;
+            }
+            default:
+                throw unsupported();
+        }
+    }
+
+    private WritePolicy updating(WritePolicy policy) {
+        WritePolicy wp = new WritePolicy(policy == null ? this.writePolicy : policy);
+        wp.recordExistsAction = RecordExistsAction.UPDATE;
+        return wp;
+    }
+
+    private static List<Object> slice(List<Object> list, int low, int high) {
+        int size = list.size();
+        int start = (low < 0) ? Math.max(0, size + low) : low;
+        int stop = (high < 0) ? size + high : Math.min(high, size - 1);
+        if (start > stop || start >= size)
+            return new ArrayList<Object>();
+        return new ArrayList<Object>(list.subList(start, stop + 1));
+    }
+
+    @Override
+    public void scanAll(ScanPolicy policy, String namespace, String setName, ScanCallback callback, String... binNames) {
+        throw unsupported();
+    }
+
+    @Override
+    public void scanNode(ScanPolicy policy, String nodeName, String namespace, String setName, ScanCallback callback, String... binNames) {
+        throw unsupported();
+    }
+
+    @Override
+    public void scanNode(ScanPolicy policy, Node node, String namespace, String setName, ScanCallback callback, String... binNames) {
+        throw unsupported();
+    }
+
+    @Override
+    public LargeList getLargeList(Policy policy, Key key, String binName, String userModule) {
+        throw unsupported();
+    }
+
+    @Override
+    public LargeList getLargeList(WritePolicy policy, Key key, String binName, String userModule) {
+        throw unsupported();
+    }
+
+    @Override
+    public LargeList getLargeList(WritePolicy policy, Key key, String binName) {
+        throw unsupported();
+    }
+
+    @Override
+    public LargeMap getLargeMap(Policy policy, Key key, String binName, String userModule) {
+        throw unsupported();
+    }
+
+    @Override
+    public LargeMap getLargeMap(WritePolicy policy, Key key, String binName, String userModule) {
+        throw unsupported();
+    }
+
+    @Override
+    public LargeSet getLargeSet(Policy policy, Key key, String binName, String userModule) {
+        throw unsupported();
+    }
+
+    @Override
+    public LargeSet getLargeSet(WritePolicy policy, Key key, String binName, String userModule) {
+        throw unsupported();
+    }
+
+    @Override
+    public LargeStack getLargeStack(Policy policy, Key key, String binName, String userModule) {
+        throw unsupported();
+    }
+
+    @Override
+    public LargeStack getLargeStack(WritePolicy policy, Key key, String binName, String userModule) {
+        throw unsupported();
+    }
+
+    @Override
+    public RegisterTask register(Policy policy, String clientPath, String serverPath, Language language) {
+        throw unsupported();
+    }
+
+    @Override
+    public RegisterTask register(Policy policy, ClassLoader resourceLoader, String resourcePath, String serverPath, Language language) {
+        throw unsupported();
+    }
+
+    @Override
+    public RegisterTask registerUdfString(Policy policy, String code, String serverPath, Language language) {
+        throw unsupported();
+    }
+
+    @Override
+    public void removeUdf(InfoPolicy policy, String serverPath) {
+        throw unsupported();
+    }
+
+    @Override
+    public ExecuteTask execute(WritePolicy policy, Statement statement, String packageName, String functionName, Value... functionArgs) {
+        throw unsupported();
+    }
+
+    @Override
+    public RecordSet query(QueryPolicy policy, Statement statement) {
+        throw unsupported();
+    }
+
+    @Override
+    public RecordSet queryNode(QueryPolicy policy, Statement statement, Node node) {
+        throw unsupported();
+    }
+
+    @Override
+    public ResultSet queryAggregate(QueryPolicy policy, Statement statement, String packageName, String functionName, Value... functionArgs) {
+        throw unsupported();
+    }
+
+    @Override
+    public ResultSet queryAggregate(QueryPolicy policy, Statement statement) {
+        throw unsupported();
+    }
+
+    @Override
+    public ResultSet queryAggregateNode(QueryPolicy policy, Statement statement, Node node) {
+        throw unsupported();
+    }
+
+    @Override
+    public IndexTask createIndex(Policy policy, String namespace, String setName, String indexName, String binName, IndexType indexType) {
+        throw unsupported();
+    }
+
+    @Override
+    public IndexTask createIndex(Policy policy, String namespace, String setName, String indexName, String binName, IndexType indexType, IndexCollectionType indexCollectionType) {
+        throw unsupported();
+    }
+
+    @Override
+    public void dropIndex(Policy policy, String namespace, String setName, String indexName) {
+        throw unsupported();
+    }
+
+    @Override
+    public void createUser(AdminPolicy policy, String user, String password, List<String> roles) {
+        throw unsupported();
+    }
+
+    @Override
+    public void dropUser(AdminPolicy policy, String user) {
+        throw unsupported();
+    }
+
+    @Override
+    public void changePassword(AdminPolicy policy, String user, String password) {
+        throw unsupported();
+    }
+
+    @Override
+    public void grantRoles(AdminPolicy policy, String user, List<String> roles) {
+        throw unsupported();
+    }
+
+    @Override
+    public void revokeRoles(AdminPolicy policy, String user, List<String> roles) {
+        throw unsupported();
+    }
+
+    @Override
+    public void createRole(AdminPolicy policy, String roleName, List<Privilege> privileges) {
+        throw unsupported();
+    }
+
+    @Override
+    public void dropRole(AdminPolicy policy, String roleName) {
+        throw unsupported();
+    }
+
+    @Override
+    public void grantPrivileges(AdminPolicy policy, String roleName, List<Privilege> privileges) {
+        throw unsupported();
+    }
+
+    @Override
+    public void revokePrivileges(AdminPolicy policy, String roleName, List<Privilege> privileges) {
+        throw unsupported();
+    }
+
+    @Override
+    public User queryUser(AdminPolicy policy, String user) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<User> queryUsers(AdminPolicy policy) {
+        throw unsupported();
+    }
+
+    @Override
+    public Role queryRole(AdminPolicy policy, String roleName) {
+        throw unsupported();
+    }
+
+    @Override
+    public List<Role> queryRoles(AdminPolicy policy) {
+        throw unsupported();
+    }
+}
@@ -0,0 +1,28 @@
+package com.zy.bigdata.aerospike.benchmarks;
+
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * HSET of an existing field and HGETALL of a twenty field hash.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(8)
+public class HashBenchmark {
+
+    @Benchmark
+    public long hset(AedisState state) {
+        return state.client.hset(state.hashKey(), "field" + ThreadLocalRandom.current().nextInt(AedisState.HASH_SIZE), state.value);
+    }
+
+    @Benchmark
+    public Map<String, String> hgetAll(AedisState state) {
+        return state.client.hgetAll(state.hashKey());
+    }
+}
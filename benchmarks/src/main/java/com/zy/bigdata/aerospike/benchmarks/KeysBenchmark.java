@@ -0,0 +1,35 @@
+package com.zy.bigdata.aerospike.benchmarks;
+
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Full KEYS scans, with a pattern matching every key and with a server side filtered one.
+ * Scans need a cluster: the fake client has no nodes to scan and the trial fails fast.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 20)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class KeysBenchmark {
+
+    @Setup(Level.Trial)
+    public void requireCluster(AedisState state) {
+        if (!"cluster".equals(state.target))
+            throw new IllegalStateException("keys scanning needs a cluster, run with -p target=cluster");
+    }
+
+    @Benchmark
+    public Set<String> keysAll(AedisState state) {
+        return state.client.keys("*");
+    }
+
+    @Benchmark
+    public Set<String> keysPattern(AedisState state) {
+        return state.client.keys(AedisState.STRING_PREFIX + "1*");
+    }
+}
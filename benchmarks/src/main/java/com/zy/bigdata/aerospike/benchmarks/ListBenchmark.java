@@ -0,0 +1,42 @@
+package com.zy.bigdata.aerospike.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * RPUSH and LRANGE of the first ten elements, in the mode given by the "mode" parameter.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class ListBenchmark {
+
+    private static final String PUSH_PREFIX = "bench:push:";
+    private static final int PUSH_LISTS = 100;
+
+    /*
+     * Pushed lists are dropped after every iteration so their size stays bounded.
+     */
+    @TearDown(Level.Iteration)
+    public void clearPushed(AedisState state) {
+        for (int i = 0; i < PUSH_LISTS; i++){
+            state.client.del(PUSH_PREFIX + i);
+        }
+    }
+
+    @Benchmark
+    public long rpush(AedisState state) {
+        return state.client.rpush(PUSH_PREFIX + ThreadLocalRandom.current().nextInt(PUSH_LISTS), state.value);
+    }
+
+    @Benchmark
+    public List<String> lrange(AedisState state) {
+        return state.client.lrange(state.listKey(), 0, 9);
+    }
+}
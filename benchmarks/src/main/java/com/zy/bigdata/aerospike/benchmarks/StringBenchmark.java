@@ -0,0 +1,44 @@
+package com.zy.bigdata.aerospike.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * GET, SET, MGET of ten keys and INCRBY.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 10)
+@Fork(1)
+@Threads(8)
+public class StringBenchmark {
+
+    private static final int MGET_KEYS = 10;
+
+    @Benchmark
+    public String get(AedisState state) {
+        return state.client.get(state.stringKey());
+    }
+
+    @Benchmark
+    public String set(AedisState state) {
+        return state.client.set(state.stringKey(), state.value);
+    }
+
+    @Benchmark
+    public List<String> mget(AedisState state) {
+        Object[] keys = new Object[MGET_KEYS];
+        for (int i = 0; i < keys.length; i++){
+            keys[i] = state.stringKey();
+        }
+        return state.client.mget(keys);
+    }
+
+    @Benchmark
+    public long incrBy(AedisState state) {
+        return state.client.incrBy(AedisState.COUNTER_PREFIX + ThreadLocalRandom.current().nextInt(1000), 1);
+    }
+}
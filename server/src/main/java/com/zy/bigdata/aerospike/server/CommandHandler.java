@@ -0,0 +1,555 @@
+package com.zy.bigdata.aerospike.server;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.ResultCode;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.zy.bigdata.aerospike.client.AedisClient;
+import com.zy.bigdata.aerospike.client.AedisClients;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Runs one decoded command on the shared {@link AedisClient} and encodes its reply. Keys and
+ * values are decoded as UTF-8 text, so records written through the proxy are the same records
+ * the text commands of AedisClient read and write.
+ *
+ * One handler per connection: SELECT switches it to another database of the AedisClients
+ * registry, all databases share one aerospike client.
+ */
+final class CommandHandler {
+
+    static final class QuitException extends RuntimeException {
+        QuitException() {
+            super(null, null, false, false);
+        }
+    }
+
+    static final String WRONGTYPE = "WRONGTYPE Operation against a key holding the wrong kind of value";
+
+    private final AedisClients databases;
+    private AedisClient client;
+
+    /*
+     * Without databases only SELECT 0 is accepted.
+     */
+    CommandHandler(AedisClient client, AedisClients databases) {
+        this.client = client;
+        this.databases = databases;
+    }
+
+    private static String text(byte[] argument) {
+        return new String(argument, StandardCharsets.UTF_8);
+    }
+
+    private static long number(byte[] argument) {
+        try {
+            return Long.parseLong(text(argument));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("value is not an integer or out of range");
+        }
+    }
+
+    private static double decimal(byte[] argument) {
+        try {
+            return Double.parseDouble(text(argument));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("value is not a valid float");
+        }
+    }
+
+    /*
+     * A ZRANGEBYSCORE bound: -inf, +inf, a score, or an exclusive "(" score.
+     */
+    private static double bound(byte[] argument, boolean min) {
+        String value = text(argument).toLowerCase(Locale.ROOT);
+        if ("-inf".equals(value))
+            return Double.NEGATIVE_INFINITY;
+        if ("+inf".equals(value) || "inf".equals(value))
+            return Double.POSITIVE_INFINITY;
+        try {
+            if (!value.startsWith("("))
+                return Double.parseDouble(value);
+            double score = Double.parseDouble(value.substring(1));
+            return min ? Math.nextUp(score) : Math.nextDown(score);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("min or max is not a float");
+        }
+    }
+
+    /*
+     * Scores as Redis prints them, integral ones without a fraction.
+     */
+    private static String score(Double score) {
+        if (score == null)
+            return null;
+        if (score.isInfinite())
+            return (score > 0) ? "inf" : "-inf";
+        if (score == Math.rint(score) && Math.abs(score) < 1e15)
+            return Long.toString(score.longValue());
+        return score.toString();
+    }
+
+    private static List<String> withScores(Map<String, Double> members) {
+        List<String> values = new ArrayList<String>(members.size() * 2);
+        for (Map.Entry<String, Double> entry : members.entrySet()){
+            values.add(entry.getKey());
+            values.add(score(entry.getValue()));
+        }
+        return values;
+    }
+
+    private static String[] texts(List<byte[]> arguments, int from) {
+        String[] values = new String[arguments.size() - from];
+        for (int i = 0; i < values.length; i++){
+            values[i] = text(arguments.get(from + i));
+        }
+        return values;
+    }
+
+    private static void arity(List<byte[]> arguments, String name, int min, boolean exact, int step) {
+        int count = arguments.size();
+        if (count < min || (exact && count != min) || (step > 1 && (count - min) % step != 0))
+            throw new IllegalArgumentException("wrong number of arguments for '" + name.toLowerCase(Locale.ROOT) + "' command");
+    }
+
+    /*
+     * Errors are replied as Redis words them: a value of another type (a bin type error, or a
+     * record the engine read as another type) is WRONGTYPE, anything else ERR and its message.
+     */
+    void handle(List<byte[]> arguments, RespWriter out) {
+        String name = text(arguments.get(0)).toUpperCase(Locale.ROOT);
+        try {
+            dispatch(name, arguments, out);
+        } catch (QuitException e) {
+            throw e;
+        } catch (IllegalArgumentException e) {
+            out.error("ERR " + e.getMessage());
+        } catch (AerospikeException e) {
+            if (e.getResultCode() == ResultCode.BIN_TYPE_ERROR)
+                out.error(WRONGTYPE);
+            else
+                out.error("ERR " + ResultCode.getResultString(e.getResultCode()) + ": " + e.getMessage());
+        } catch (ClassCastException e) {
+            out.error(WRONGTYPE);
+        } catch (RuntimeException e) {
+            out.error("ERR " + ((e.getMessage() == null) ? "internal error" : e.getMessage()));
+        }
+    }
+
+    private void dispatch(String name, List<byte[]> args, RespWriter out) {
+        switch (name) {
+            case "PING":
+                if (args.size() > 1) out.bulk(args.get(1));
+                else out.simple("PONG");
+                return;
+            case "ECHO":
+                arity(args, name, 2, true, 1);
+                out.bulk(args.get(1));
+                return;
+            case "QUIT":
+                out.simple("OK");
+                throw new QuitException();
+            case "SELECT":
+                arity(args, name, 2, true, 1);
+                long db = number(args.get(1));
+                if (this.databases != null)
+                    this.client = this.databases.select((db < 0 || db > Integer.MAX_VALUE) ? -1 : (int) db);
+                else if (db != 0)
+                    throw new IllegalArgumentException("DB index is out of range");
+                out.simple("OK");
+                return;
+            case "COMMAND":
+                out.array(Collections.emptyList());
+                return;
+
+            case "GET":
+                arity(args, name, 2, true, 1);
+                out.bulk(this.client.get(text(args.get(1))));
+                return;
+            case "SET":
+                arity(args, name, 3, false, 1);
+                set(args, out);
+                return;
+            case "SETEX":
+                arity(args, name, 4, true, 1);
+                out.simple(this.client.setex(text(args.get(1)), (int) number(args.get(2)), text(args.get(3))));
+                return;
+            case "PSETEX":
+                arity(args, name, 4, true, 1);
+                out.simple(this.client.psetex(text(args.get(1)), (int) number(args.get(2)), text(args.get(3))));
+                return;
+            case "SETNX":
+                arity(args, name, 3, true, 1);
+                out.integer(this.client.setnx(text(args.get(1)), text(args.get(2))) ? 1 : 0);
+                return;
+            case "GETSET":
+                arity(args, name, 3, true, 1);
+                out.bulk(this.client.getSet(text(args.get(1)), text(args.get(2))));
+                return;
+            case "MGET":
+                arity(args, name, 2, false, 1);
+                out.array(this.client.mget((Object[]) texts(args, 1)));
+                return;
+            case "MSET":
+                arity(args, name, 3, false, 2);
+                out.simple(this.client.mset(texts(args, 1)));
+                return;
+            case "MSETNX":
+                arity(args, name, 3, false, 2);
+                out.integer(this.client.msetnx(texts(args, 1)));
+                return;
+            case "APPEND":
+                arity(args, name, 3, true, 1);
+                out.integer(this.client.append(text(args.get(1)), text(args.get(2))));
+                return;
+            case "STRLEN": {
+                arity(args, name, 2, true, 1);
+                String value = this.client.get(text(args.get(1)));
+                out.integer((value == null) ? 0 : value.getBytes(StandardCharsets.UTF_8).length);
+                return;
+            }
+            case "GETRANGE": {
+                arity(args, name, 4, true, 1);
+                String value = this.client.get(text(args.get(1)));
+                out.bulk((value == null) ? new byte[0] : range(value.getBytes(StandardCharsets.UTF_8), number(args.get(2)), number(args.get(3))));
+                return;
+            }
+            case "INCR":
+                arity(args, name, 2, true, 1);
+                out.integer(this.client.incr(text(args.get(1))));
+                return;
+            case "INCRBY":
+                arity(args, name, 3, true, 1);
+                out.integer(this.client.incrBy(text(args.get(1)), number(args.get(2))));
+                return;
+            case "DECR":
+                arity(args, name, 2, true, 1);
+                out.integer(this.client.decr(text(args.get(1))));
+                return;
+            case "DECRBY":
+                arity(args, name, 3, true, 1);
+                out.integer(this.client.decrBy(text(args.get(1)), number(args.get(2))));
+                return;
+            case "INCRBYFLOAT":
+                arity(args, name, 3, true, 1);
+                out.bulk(this.client.incrByFloat(text(args.get(1)), decimal(args.get(2))));
+                return;
+
+            case "DEL":
+                arity(args, name, 2, false, 1);
+                out.integer(this.client.del((Object[]) texts(args, 1)));
+                return;
+            case "EXISTS": {
+                arity(args, name, 2, false, 1);
+                long count = 0;
+                for (String key : texts(args, 1)){
+                    if (this.client.exists(key)) count++;
+                }
+                out.integer(count);
+                return;
+            }
+            case "EXPIRE":
+                arity(args, name, 3, true, 1);
+                out.integer(this.client.expire(text(args.get(1)), number(args.get(2))));
+                return;
+            case "PEXPIRE":
+                arity(args, name, 3, true, 1);
+                out.integer(this.client.pexpire(text(args.get(1)), number(args.get(2))));
+                return;
+            case "EXPIREAT":
+                arity(args, name, 3, true, 1);
+                out.integer(this.client.expireAt(text(args.get(1)), number(args.get(2)) * 1000));
+                return;
+            case "PEXPIREAT":
+                arity(args, name, 3, true, 1);
+                out.integer(this.client.pexpireAt(text(args.get(1)), number(args.get(2))));
+                return;
+            case "PERSIST":
+                arity(args, name, 2, true, 1);
+                out.integer(this.client.persist(text(args.get(1))));
+                return;
+            case "TTL":
+                arity(args, name, 2, true, 1);
+                out.integer(this.client.ttl(text(args.get(1))));
+                return;
+            case "PTTL":
+                arity(args, name, 2, true, 1);
+                out.integer(this.client.pttl(text(args.get(1))));
+                return;
+            case "RENAME":
+                arity(args, name, 3, true, 1);
+                out.simple(this.client.rename(text(args.get(1)), text(args.get(2))));
+                return;
+            case "KEYS":
+                arity(args, name, 2, true, 1);
+                out.array(this.client.keys(text(args.get(1))));
+                return;
+            case "DBSIZE":
+                out.integer(this.client.dbSize());
+                return;
+            case "INFO":
+                out.bulk(this.client.info());
+                return;
+
+            case "LPUSH":
+            case "RPUSH": {
+                arity(args, name, 3, false, 1);
+                long length = 0;
+                for (String value : texts(args, 2)){
+                    length = "LPUSH".equals(name) ? this.client.lpush(text(args.get(1)), value) : this.client.rpush(text(args.get(1)), value);
+                }
+                out.integer(length);
+                return;
+            }
+            case "LPUSHX":
+                arity(args, name, 3, true, 1);
+                out.integer(this.client.lpushx(text(args.get(1)), text(args.get(2))));
+                return;
+            case "RPUSHX":
+                arity(args, name, 3, true, 1);
+                out.integer(this.client.rpushx(text(args.get(1)), text(args.get(2))));
+                return;
+            case "LLEN":
+                arity(args, name, 2, true, 1);
+                out.integer(this.client.llen(text(args.get(1))));
+                return;
+            case "LRANGE":
+                arity(args, name, 4, true, 1);
+                out.array(this.client.lrange(text(args.get(1)), (int) number(args.get(2)), (int) number(args.get(3))));
+                return;
+            case "LTRIM":
+                arity(args, name, 4, true, 1);
+                this.client.ltrim(text(args.get(1)), (int) number(args.get(2)), (int) number(args.get(3)));
+                out.simple("OK");
+                return;
+            case "LSET":
+                arity(args, name, 4, true, 1);
+                this.client.lset(text(args.get(1)), (int) number(args.get(2)), text(args.get(3)));
+                out.simple("OK");
+                return;
+            case "LINDEX":
+                arity(args, name, 3, true, 1);
+                out.bulk(this.client.lindex(text(args.get(1)), (int) number(args.get(2))));
+                return;
+            case "LREM":
+                arity(args, name, 4, true, 1);
+                out.integer(this.client.lrem(text(args.get(1)), (int) number(args.get(2)), text(args.get(3))));
+                return;
+            case "LPOP":
+                arity(args, name, 2, true, 1);
+                out.bulk(this.client.lpop(text(args.get(1))));
+                return;
+            case "RPOP":
+                arity(args, name, 2, true, 1);
+                out.bulk(this.client.rpop(text(args.get(1))));
+                return;
+            case "RPOPLPUSH":
+                arity(args, name, 3, true, 1);
+                out.bulk(this.client.rpoplpush(text(args.get(1)), text(args.get(2))));
+                return;
+            case "LINSERT": {
+                arity(args, name, 5, true, 1);
+                AedisClient.LIST_POSITION position;
+                try {
+                    position = AedisClient.LIST_POSITION.valueOf(text(args.get(2)).toUpperCase(Locale.ROOT));
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException("syntax error");
+                }
+                out.integer(this.client.linsert(text(args.get(1)), position, text(args.get(3)), text(args.get(4))));
+                return;
+            }
+
+            case "HSET":
+            case "HMSET": {
+                arity(args, name, 4, false, 2);
+                Map<String, String> hash = new LinkedHashMap<String, String>();
+                for (int i = 2; i < args.size(); i += 2){
+                    hash.put(text(args.get(i)), text(args.get(i + 1)));
+                }
+                if ("HMSET".equals(name)) {
+                    this.client.hmset(text(args.get(1)), hash);
+                    out.simple("OK");
+                } else if (hash.size() == 1) {
+                    Map.Entry<String, String> entry = hash.entrySet().iterator().next();
+                    out.integer(this.client.hset(text(args.get(1)), entry.getKey(), entry.getValue()));
+                } else {
+                    out.integer(this.client.hset(text(args.get(1)), hash));
+                }
+                return;
+            }
+            case "HSETNX":
+                arity(args, name, 4, true, 1);
+                out.integer(this.client.hsetnx(text(args.get(1)), text(args.get(2)), text(args.get(3))));
+                return;
+            case "HGET":
+                arity(args, name, 3, true, 1);
+                out.bulk(this.client.hget(text(args.get(1)), text(args.get(2))));
+                return;
+            case "HMGET":
+                arity(args, name, 3, false, 1);
+                out.array(this.client.hmget(text(args.get(1)), texts(args, 2)));
+                return;
+            case "HINCRBY":
+                arity(args, name, 4, true, 1);
+                out.integer(this.client.hincrBy(text(args.get(1)), text(args.get(2)), number(args.get(3))));
+                return;
+            case "HINCRBYFLOAT":
+                arity(args, name, 4, true, 1);
+                out.bulk(this.client.hincrByFloat(text(args.get(1)), text(args.get(2)), decimal(args.get(3))));
+                return;
+            case "HEXISTS":
+                arity(args, name, 3, true, 1);
+                out.integer(this.client.hexists(text(args.get(1)), text(args.get(2))) ? 1 : 0);
+                return;
+            case "HDEL":
+                arity(args, name, 3, false, 1);
+                out.integer(this.client.hdel(text(args.get(1)), texts(args, 2)));
+                return;
+            case "HLEN":
+                arity(args, name, 2, true, 1);
+                out.integer(this.client.hlen(text(args.get(1))));
+                return;
+            case "HKEYS":
+                arity(args, name, 2, true, 1);
+                out.array(this.client.hkeys(text(args.get(1))));
+                return;
+            case "HVALS":
+                arity(args, name, 2, true, 1);
+                out.array(this.client.hvals(text(args.get(1))));
+                return;
+            case "HGETALL":
+                arity(args, name, 2, true, 1);
+                out.pairs(this.client.hgetAll(text(args.get(1))));
+                return;
+
+            case "ZADD": {
+                arity(args, name, 4, false, 2);
+                Map<String, Double> members = new LinkedHashMap<String, Double>();
+                for (int i = 2; i < args.size(); i += 2){
+                    members.put(text(args.get(i + 1)), decimal(args.get(i)));
+                }
+                out.integer(this.client.zadd(text(args.get(1)), members));
+                return;
+            }
+            case "ZINCRBY":
+                arity(args, name, 4, true, 1);
+                out.bulk(score(this.client.zincrby(text(args.get(1)), decimal(args.get(2)), text(args.get(3)))));
+                return;
+            case "ZSCORE":
+                arity(args, name, 3, true, 1);
+                out.bulk(score(this.client.zscore(text(args.get(1)), text(args.get(2)))));
+                return;
+            case "ZRANGE":
+            case "ZREVRANGE": {
+                arity(args, name, 4, false, 1);
+                boolean scores = args.size() == 5 && "WITHSCORES".equalsIgnoreCase(text(args.get(4)));
+                if (args.size() > 4 && !scores)
+                    throw new IllegalArgumentException("syntax error");
+                String key = text(args.get(1));
+                long start = number(args.get(2));
+                long stop = number(args.get(3));
+                Map<String, Double> members = "ZRANGE".equals(name)
+                        ? this.client.zrangeWithScores(key, start, stop) : this.client.zrevrangeWithScores(key, start, stop);
+                out.array(scores ? withScores(members) : members.keySet());
+                return;
+            }
+            case "ZRANGEBYSCORE": {
+                arity(args, name, 4, false, 1);
+                boolean scores = false;
+                int offset = 0;
+                int count = -1;
+                for (int i = 4; i < args.size(); i++){
+                    String option = text(args.get(i)).toUpperCase(Locale.ROOT);
+                    if ("WITHSCORES".equals(option)) {
+                        scores = true;
+                    } else if ("LIMIT".equals(option) && i + 2 < args.size()) {
+                        offset = (int) number(args.get(++i));
+                        count = (int) number(args.get(++i));
+                    } else {
+                        throw new IllegalArgumentException("syntax error");
+                    }
+                }
+                Map<String, Double> members = this.client.zrangeByScoreWithScores(text(args.get(1)),
+                        bound(args.get(2), true), bound(args.get(3), false), offset, count);
+                out.array(scores ? withScores(members) : members.keySet());
+                return;
+            }
+            case "ZRANK":
+            case "ZREVRANK": {
+                arity(args, name, 3, true, 1);
+                Long rank = "ZRANK".equals(name)
+                        ? this.client.zrank(text(args.get(1)), text(args.get(2))) : this.client.zrevrank(text(args.get(1)), text(args.get(2)));
+                if (rank == null)
+                    out.nullBulk();
+                else
+                    out.integer(rank);
+                return;
+            }
+            case "ZREM":
+                arity(args, name, 3, false, 1);
+                out.integer(this.client.zrem(text(args.get(1)), texts(args, 2)));
+                return;
+            case "ZCARD":
+                arity(args, name, 2, true, 1);
+                out.integer(this.client.zcard(text(args.get(1))));
+                return;
+
+            case "PFADD":
+                arity(args, name, 2, false, 1);
+                out.integer(this.client.pfadd(text(args.get(1)), texts(args, 2)));
+                return;
+            case "PFCOUNT":
+                arity(args, name, 2, false, 1);
+                out.integer(this.client.pfcount(texts(args, 1)));
+                return;
+            case "PFMERGE":
+                arity(args, name, 2, false, 1);
+                out.simple(this.client.pfmerge(text(args.get(1)), texts(args, 2)));
+                return;
+
+            default:
+                out.error("ERR unknown command '" + text(args.get(0)) + "'");
+        }
+    }
+
+    /*
+     * SET key value [EX seconds | PX milliseconds] [NX | XX], replies the null bulk when NX or XX
+     * prevented the write. In precise expiry mode every form keeps the milliseconds.
+     */
+    private void set(List<byte[]> args, RespWriter out) {
+        RecordExistsAction action = RecordExistsAction.REPLACE;
+        long millis = 0;
+        for (int i = 3; i < args.size(); i++){
+            String option = text(args.get(i)).toUpperCase(Locale.ROOT);
+            if (("EX".equals(option) || "PX".equals(option)) && i + 1 < args.size()) {
+                long ttl = number(args.get(++i));
+                if (ttl <= 0) throw new IllegalArgumentException("invalid expire time in 'set' command");
+                millis = "EX".equals(option) ? ttl * 1000 : ttl;
+            } else if ("NX".equals(option)) {
+                action = RecordExistsAction.CREATE_ONLY;
+            } else if ("XX".equals(option)) {
+                action = RecordExistsAction.REPLACE_ONLY;
+            } else {
+                throw new IllegalArgumentException("syntax error");
+            }
+        }
+        if (this.client.set(text(args.get(1)), text(args.get(2)), action, millis))
+            out.simple("OK");
+        else
+            out.nullBulk();
+    }
+
+    /*
+     * GETRANGE of the UTF-8 bytes of a value, as Redis counts them: negative offsets count
+     * from the end, out of range ones are clamped.
+     */
+    static byte[] range(byte[] value, long start, long end) {
+        int length = value.length;
+        if (start < 0) start = Math.max(0, length + start);
+        if (end < 0) end = length + end;
+        end = Math.min(end, length - 1);
+        if (start > end || length == 0)
+            return new byte[0];
+        return Arrays.copyOfRange(value, (int) start, (int) end + 1);
+    }
+}
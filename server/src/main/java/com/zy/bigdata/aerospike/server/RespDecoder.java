@@ -0,0 +1,150 @@
+package com.zy.bigdata.aerospike.server;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Incremental decoder of RESP2 requests. Bytes are appended as they arrive, every complete
+ * command is returned as its argument list, a partial command stays buffered until the rest
+ * arrives. Multi bulk requests (what client libraries send) and inline commands (what telnet
+ * sends) are both accepted.
+ */
+final class RespDecoder {
+
+    static final int MAX_BULK_LENGTH = 64 * 1024 * 1024;
+    static final int MAX_ARGUMENTS = 1024 * 1024;
+    static final int MAX_INLINE_LENGTH = 64 * 1024;
+
+    static final class ProtocolException extends RuntimeException {
+        ProtocolException(String message) {
+            super(message);
+        }
+    }
+
+    private byte[] buffer = new byte[16 * 1024];
+    private int start = 0;
+    private int end = 0;
+
+    void append(ByteBuffer input) {
+        int length = input.remaining();
+        if (this.end + length > this.buffer.length) {
+            int used = this.end - this.start;
+            if (used + length > this.buffer.length) {
+                byte[] grown = new byte[Math.max(this.buffer.length * 2, used + length)];
+                System.arraycopy(this.buffer, this.start, grown, 0, used);
+                this.buffer = grown;
+            } else {
+                System.arraycopy(this.buffer, this.start, this.buffer, 0, used);
+            }
+            this.start = 0;
+            this.end = used;
+        }
+        input.get(this.buffer, this.end, length);
+        this.end += length;
+    }
+
+    /*
+     * Every complete command buffered so far, in order.
+     */
+    List<List<byte[]>> decode() {
+        List<List<byte[]>> commands = new ArrayList<List<byte[]>>();
+        while (this.start < this.end){
+            List<byte[]> command = (this.buffer[this.start] == '*') ? multiBulk() : inline();
+            if (command == null)
+                break;
+            if (!command.isEmpty())
+                commands.add(command);
+        }
+        if (this.start == this.end) {
+            this.start = 0;
+            this.end = 0;
+        }
+        return commands;
+    }
+
+    private int lineEnd(int from) {
+        for (int i = from; i + 1 < this.end; i++){
+            if (this.buffer[i] == '\r' && this.buffer[i + 1] == '\n')
+                return i;
+        }
+        return -1;
+    }
+
+    private List<byte[]> multiBulk() {
+        int position = this.start;
+        int eol = lineEnd(position);
+        if (eol < 0)
+            return null;
+        long count = number(position + 1, eol);
+        if (count > MAX_ARGUMENTS)
+            throw new ProtocolException("invalid multibulk length");
+        position = eol + 2;
+        List<byte[]> arguments = new ArrayList<byte[]>((int) Math.max(0, count));
+        for (long i = 0; i < count; i++){
+            if (position >= this.end)
+                return null;
+            if (this.buffer[position] != '$')
+                throw new ProtocolException("expected '$', got '" + (char) this.buffer[position] + "'");
+            eol = lineEnd(position);
+            if (eol < 0)
+                return null;
+            long length = number(position + 1, eol);
+            if (length < 0 || length > MAX_BULK_LENGTH)
+                throw new ProtocolException("invalid bulk length");
+            position = eol + 2;
+            if (position + length + 2 > this.end)
+                return null;
+            byte[] argument = new byte[(int) length];
+            System.arraycopy(this.buffer, position, argument, 0, (int) length);
+            arguments.add(argument);
+            position += (int) length + 2;
+        }
+        this.start = position;
+        return arguments;
+    }
+
+    private List<byte[]> inline() {
+        int eol = -1;
+        for (int i = this.start; i < this.end; i++){
+            if (this.buffer[i] == '\n') {
+                eol = i;
+                break;
+            }
+        }
+        if (eol < 0) {
+            if (this.end - this.start > MAX_INLINE_LENGTH)
+                throw new ProtocolException("too big inline request");
+            return null;
+        }
+        int lineEnd = (eol > this.start && this.buffer[eol - 1] == '\r') ? eol - 1 : eol;
+        List<byte[]> arguments = new ArrayList<byte[]>();
+        int i = this.start;
+        while (i < lineEnd){
+            while (i < lineEnd && this.buffer[i] == ' ') i++;
+            int from = i;
+            while (i < lineEnd && this.buffer[i] != ' ') i++;
+            if (i > from) {
+                byte[] argument = new byte[i - from];
+                System.arraycopy(this.buffer, from, argument, 0, argument.length);
+                arguments.add(argument);
+            }
+        }
+        this.start = eol + 1;
+        return arguments;
+    }
+
+    private long number(int from, int to) {
+        if (from >= to)
+            throw new ProtocolException("invalid length");
+        boolean negative = this.buffer[from] == '-';
+        long value = 0;
+        for (int i = negative ? from + 1 : from; i < to; i++){
+            byte b = this.buffer[i];
+            if (b < '0' || b > '9' || value > Integer.MAX_VALUE)
+                throw new ProtocolException("invalid length");
+            value = value * 10 + (b - '0');
+        }
+        return negative ? -value : value;
+    }
+}
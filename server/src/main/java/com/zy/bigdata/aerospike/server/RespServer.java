@@ -0,0 +1,336 @@
+package com.zy.bigdata.aerospike.server;
+
+import com.zy.bigdata.aerospike.client.AedisClient;
+import com.zy.bigdata.aerospike.client.AedisClientBuilder;
+import com.zy.bigdata.aerospike.client.AedisClients;
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+/**
+ * RESP2 proxy in front of an {@link AedisClient}, so redis-cli, Jedis and other Redis clients
+ * can talk to Aerospike unmodified.
+ *
+ * One selector thread owns every socket: it accepts, reads, decodes, and writes replies without
+ * ever blocking. Decoded commands are queued on their connection and run on a worker pool, one
+ * command of a connection at a time so replies keep the request order, while different
+ * connections run in parallel on the one shared AedisClient. Replies of pipelined commands are
+ * batched into a single write. A connection that pipelines more than MAX_PENDING_COMMANDS
+ * commands ahead of the workers stops being read until the workers catch up.
+ */
+public class RespServer implements Closeable {
+
+    public static final int DEFAULT_PORT = 6379;
+    public static final int DEFAULT_WORKER_THREADS = 64;
+    public static final int MAX_PENDING_COMMANDS = 1024;
+
+    private static final Logger LOG = Logger.getLogger(RespServer.class.getName());
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final int FLUSH_THRESHOLD = 64 * 1024;
+
+    private final AedisClient client;
+    private final AedisClients databases;
+    private final ExecutorService workers;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ConcurrentLinkedQueue<Connection> flushes = new ConcurrentLinkedQueue<Connection>();
+    private final ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+    private final Set<Connection> connections = new HashSet<Connection>();
+    private volatile boolean running = true;
+    private Thread ioThread;
+
+    public RespServer(AedisClient client, InetSocketAddress address, int workerThreads) throws IOException {
+        this(client, null, address, workerThreads);
+    }
+
+    /*
+     * Connections start in database 0 and SELECT any database of databases.
+     */
+    public RespServer(AedisClients databases, InetSocketAddress address, int workerThreads) throws IOException {
+        this(databases.select(0), databases, address, workerThreads);
+    }
+
+    private RespServer(AedisClient client, AedisClients databases, InetSocketAddress address, int workerThreads) throws IOException {
+        this.client = client;
+        this.databases = databases;
+        this.workers = Executors.newFixedThreadPool(workerThreads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "aedis-resp-worker-" + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        this.serverChannel.socket().setReuseAddress(true);
+        this.serverChannel.bind(address, 1024);
+        this.serverChannel.configureBlocking(false);
+        this.serverChannel.register(this.selector, SelectionKey.OP_ACCEPT);
+    }
+
+    public synchronized void start() {
+        if (this.ioThread != null)
+            return;
+        this.ioThread = new Thread(this::loop, "aedis-resp-io");
+        this.ioThread.start();
+    }
+
+    public int getPort() {
+        return this.serverChannel.socket().getLocalPort();
+    }
+
+    public void awaitTermination() throws InterruptedException {
+        Thread thread = this.ioThread;
+        if (thread != null)
+            thread.join();
+    }
+
+    @Override
+    public void close() {
+        this.running = false;
+        this.selector.wakeup();
+        this.workers.shutdown();
+    }
+
+    private final class Connection {
+        final SocketChannel channel;
+        final SelectionKey key;
+        final RespDecoder decoder = new RespDecoder();
+        final CommandHandler handler = new CommandHandler(client, databases);
+        final ConcurrentLinkedQueue<ByteBuffer> output = new ConcurrentLinkedQueue<ByteBuffer>();
+        // guarded by this
+        final ArrayDeque<List<byte[]>> pending = new ArrayDeque<List<byte[]>>();
+        boolean draining = false;
+        // selector thread only
+        boolean readPaused = false;
+        volatile boolean closing = false;
+
+        Connection(SocketChannel channel, SelectionKey key) {
+            this.channel = channel;
+            this.key = key;
+        }
+
+        /*
+         * Selector thread: queues the decoded commands, starts a drain unless one is running.
+         */
+        void enqueue(List<List<byte[]>> commands) {
+            boolean submit = false;
+            int queued;
+            synchronized (this) {
+                this.pending.addAll(commands);
+                queued = this.pending.size();
+                if (!this.draining && queued > 0) {
+                    this.draining = true;
+                    submit = true;
+                }
+            }
+            if (queued > MAX_PENDING_COMMANDS) {
+                this.readPaused = true;
+                this.key.interestOps(this.key.interestOps() & ~SelectionKey.OP_READ);
+            }
+            if (submit)
+                workers.execute(this::drain);
+        }
+
+        synchronized int pendingCount() {
+            return this.pending.size();
+        }
+
+        /*
+         * Worker: runs queued commands in order. Replies are flushed before the drain is
+         * released, so a later drain can never overtake them.
+         */
+        void drain() {
+            RespWriter out = new RespWriter();
+            while (true){
+                List<byte[]> command;
+                synchronized (this) {
+                    command = this.pending.poll();
+                }
+                if (command == null) {
+                    flush(out);
+                    synchronized (this) {
+                        if (this.pending.isEmpty()) {
+                            this.draining = false;
+                            return;
+                        }
+                    }
+                    continue;
+                }
+                try {
+                    this.handler.handle(command, out);
+                } catch (CommandHandler.QuitException e) {
+                    this.closing = true;
+                    synchronized (this) {
+                        this.pending.clear();
+                    }
+                }
+                if (out.size() >= FLUSH_THRESHOLD)
+                    flush(out);
+            }
+        }
+
+        void flush(RespWriter out) {
+            if (!out.isEmpty())
+                this.output.add(out.drain());
+            flushes.add(this);
+            selector.wakeup();
+        }
+    }
+
+    private void loop() {
+        try {
+            while (this.running){
+                this.selector.select();
+                Connection flushed;
+                while ((flushed = this.flushes.poll()) != null){
+                    if (flushed.key.isValid())
+                        flushPending(flushed);
+                }
+                Iterator<SelectionKey> keys = this.selector.selectedKeys().iterator();
+                while (keys.hasNext()){
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid())
+                        continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    try {
+                        if (key.isReadable())
+                            read(connection);
+                        if (key.isValid() && key.isWritable())
+                            write(connection);
+                    } catch (IOException | RespDecoder.ProtocolException e) {
+                        if (e instanceof RespDecoder.ProtocolException)
+                            protocolError(connection, e.getMessage());
+                        else
+                            close(connection);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("RESP server selector failed", e);
+        } finally {
+            for (Connection connection : new ArrayList<Connection>(this.connections)){
+                close(connection);
+            }
+            try {
+                this.serverChannel.close();
+                this.selector.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = this.serverChannel.accept();
+        if (channel == null)
+            return;
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        SelectionKey key = channel.register(this.selector, SelectionKey.OP_READ);
+        Connection connection = new Connection(channel, key);
+        key.attach(connection);
+        this.connections.add(connection);
+    }
+
+    private void read(Connection connection) throws IOException {
+        this.readBuffer.clear();
+        int read = connection.channel.read(this.readBuffer);
+        if (read < 0) {
+            close(connection);
+            return;
+        }
+        this.readBuffer.flip();
+        connection.decoder.append(this.readBuffer);
+        List<List<byte[]>> commands = connection.decoder.decode();
+        if (!commands.isEmpty())
+            connection.enqueue(commands);
+    }
+
+    /*
+     * Redis replies to a malformed request with an error and drops the connection.
+     */
+    private void protocolError(Connection connection, String message) {
+        connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_READ);
+        connection.closing = true;
+        RespWriter out = new RespWriter();
+        out.error("ERR Protocol error: " + message);
+        connection.output.add(out.drain());
+        flushPending(connection);
+    }
+
+    private void flushPending(Connection connection) {
+        try {
+            write(connection);
+        } catch (IOException e) {
+            close(connection);
+            return;
+        }
+        if (connection.key.isValid() && connection.readPaused && !connection.closing
+                && connection.pendingCount() <= MAX_PENDING_COMMANDS / 2) {
+            connection.readPaused = false;
+            connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_READ);
+        }
+    }
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer head;
+        while ((head = connection.output.peek()) != null){
+            connection.channel.write(head);
+            if (head.hasRemaining()) {
+                connection.key.interestOps(connection.key.interestOps() | SelectionKey.OP_WRITE);
+                return;
+            }
+            connection.output.poll();
+        }
+        connection.key.interestOps(connection.key.interestOps() & ~SelectionKey.OP_WRITE);
+        if (connection.closing)
+            close(connection);
+    }
+
+    private void close(Connection connection) {
+        this.connections.remove(connection);
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    /*
+     * Runs the proxy until the process is stopped. Configured with system properties:
+     * aedis.port, aedis.threads and the client settings read by AedisClientBuilder, e.g.
+     * aedis.hosts, aedis.namespace, aedis.set, aedis.databases, aedis.preciseExpiry,
+     * aedis.timeout, aedis.maxConnsPerNode or aedis.warmUpConnections. The port is opened while
+     * the client warms up.
+     */
+    public static void main(String[] args) throws Exception {
+        int port = Integer.getInteger("aedis.port", DEFAULT_PORT);
+        int threads = Integer.getInteger("aedis.threads", DEFAULT_WORKER_THREADS);
+
+        AedisClientBuilder builder = new AedisClientBuilder().set("redis").properties(System.getProperties());
+        AedisClients clients = builder.buildShared();
+        RespServer server = new RespServer(clients, new InetSocketAddress(port), threads);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            clients.close();
+        }));
+        server.start();
+        LOG.info("aedis RESP server listening on port " + server.getPort() + ", " + builder.getNamespace() + "." + builder.getSet() + " at " + builder.getHosts());
+        server.awaitTermination();
+    }
+}
@@ -0,0 +1,109 @@
+package com.zy.bigdata.aerospike.server;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Encodes RESP2 replies into a growable buffer. Replies of pipelined commands are appended
+ * to the same writer and flushed to the socket together.
+ */
+final class RespWriter {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final byte[] NULL_BULK = "$-1\r\n".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] NULL_ARRAY = "*-1\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private byte[] buffer = new byte[4 * 1024];
+    private int size = 0;
+
+    private void ensure(int extra) {
+        if (this.size + extra > this.buffer.length)
+            this.buffer = Arrays.copyOf(this.buffer, Math.max(this.buffer.length * 2, this.size + extra));
+    }
+
+    private RespWriter raw(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, this.buffer, this.size, bytes.length);
+        this.size += bytes.length;
+        return this;
+    }
+
+    private RespWriter line(char type, String text) {
+        ensure(1);
+        this.buffer[this.size++] = (byte) type;
+        return raw(text.getBytes(StandardCharsets.UTF_8)).raw(CRLF);
+    }
+
+    RespWriter simple(String text) {
+        return line('+', text);
+    }
+
+    RespWriter error(String message) {
+        return line('-', message.replace('\r', ' ').replace('\n', ' '));
+    }
+
+    RespWriter integer(long value) {
+        return line(':', Long.toString(value));
+    }
+
+    RespWriter bulk(byte[] value) {
+        if (value == null)
+            return raw(NULL_BULK);
+        return line('$', Integer.toString(value.length)).raw(value).raw(CRLF);
+    }
+
+    /*
+     * Strings are sent UTF-8 encoded, any other value as its string form, null as the null bulk.
+     */
+    RespWriter bulk(Object value) {
+        if (value == null || value instanceof byte[])
+            return bulk((byte[]) value);
+        return bulk(String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+    }
+
+    RespWriter array(Collection<?> values) {
+        if (values == null)
+            return raw(NULL_ARRAY);
+        line('*', Integer.toString(values.size()));
+        for (Object value : values){
+            bulk(value);
+        }
+        return this;
+    }
+
+    /*
+     * A hash as the flat field, value array of HGETALL.
+     */
+    RespWriter pairs(Map<?, ?> map) {
+        line('*', Integer.toString(map.size() * 2));
+        for (Map.Entry<?, ?> entry : map.entrySet()){
+            bulk(entry.getKey());
+            bulk(entry.getValue());
+        }
+        return this;
+    }
+
+    RespWriter nullBulk() {
+        return raw(NULL_BULK);
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /*
+     * The encoded replies, the writer is empty afterwards.
+     */
+    ByteBuffer drain() {
+        ByteBuffer encoded = ByteBuffer.wrap(Arrays.copyOf(this.buffer, this.size));
+        this.size = 0;
+        return encoded;
+    }
+}
@@ -0,0 +1,128 @@
+package com.zy.bigdata.aerospike.server;
+
+import com.aerospike.client.ResultCode;
+import com.zy.bigdata.aerospike.client.AedisClient;
+import com.zy.bigdata.aerospike.client.FakeCluster;
+import org.junit.After;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class CommandHandlerTest {
+
+    private final FakeCluster cluster = new FakeCluster();
+    private final CommandHandler handler = new CommandHandler(new AedisClient(this.cluster.client(), "test", "redis"), null);
+
+    @After
+    public void tearDown() throws InterruptedException {
+        this.cluster.shutdown();
+    }
+
+    /*
+     * Dispatches one command, the reply as RESP text with CRLF shown as "|".
+     */
+    private String reply(String... command) {
+        List<byte[]> arguments = new ArrayList<byte[]>();
+        for (String argument : command){
+            arguments.add(argument.getBytes(StandardCharsets.UTF_8));
+        }
+        RespWriter out = new RespWriter();
+        this.handler.handle(arguments, out);
+        ByteBuffer encoded = out.drain();
+        return new String(encoded.array(), 0, encoded.remaining(), StandardCharsets.UTF_8).replace("\r\n", "|");
+    }
+
+    private static String range(String value, long start, long end) {
+        return new String(CommandHandler.range(value.getBytes(StandardCharsets.UTF_8), start, end), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void rangeClampsLikeRedis() {
+        assertEquals("This", range("This is a string", 0, 3));
+        assertEquals("ing", range("This is a string", -3, -1));
+        assertEquals("This is a string", range("This is a string", 0, -1));
+        assertEquals("string", range("This is a string", 10, 100));
+        assertEquals("", range("This is a string", 5, 3));
+        assertEquals("", range("", 0, -1));
+        assertEquals("This", range("This", -100, 100));
+    }
+
+    @Test
+    public void rangeCountsUtf8Bytes() {
+        // each of these characters is 3 UTF-8 bytes, the emoji 4
+        assertEquals("中", range("中文", 0, 2));
+        assertEquals("文", range("中文", -3, -1));
+        assertEquals("a", range("中a文", 3, 3));
+        assertEquals("😀", range("x😀y", 1, 4));
+        assertEquals(4, CommandHandler.range("x😀y".getBytes(StandardCharsets.UTF_8), 1, 4).length);
+    }
+
+    @Test
+    public void repliesWithRedisTypes() {
+        assertEquals("+PONG|", reply("PING"));
+        assertEquals("$2|hi|", reply("ECHO", "hi"));
+        assertEquals("+OK|", reply("SET", "k", "中文"));
+        assertEquals("$6|中文|", reply("GET", "k"));
+        assertEquals("$-1|", reply("GET", "none"));
+        assertEquals("$-1|", reply("SET", "k", "v", "NX"));
+        assertEquals(":6|", reply("STRLEN", "k"));
+        assertEquals("*2|$6|中文|$-1|", reply("MGET", "k", "none"));
+        assertEquals(":1|", reply("INCR", "n"));
+        assertEquals(":11|", reply("INCRBY", "n", "10"));
+        assertEquals(":2|", reply("EXISTS", "k", "n", "none"));
+        assertEquals(":2|", reply("RPUSH", "l", "a", "b"));
+        assertEquals("*2|$1|a|$1|b|", reply("LRANGE", "l", "0", "-1"));
+        assertEquals("$-1|", reply("LPOP", "none"));
+        assertEquals(":1|", reply("HSET", "h", "f", "v"));
+        assertEquals("*2|$1|f|$1|v|", reply("HGETALL", "h"));
+        assertEquals(":2|", reply("ZADD", "z", "1", "a", "2.5", "b"));
+        assertEquals("*4|$1|a|$1|1|$1|b|$3|2.5|", reply("ZRANGE", "z", "0", "-1", "WITHSCORES"));
+        assertEquals(":1|", reply("ZREVRANK", "z", "a"));
+        assertEquals("$-1|", reply("ZRANK", "z", "none"));
+        assertEquals(":3|", reply("DEL", "k", "l", "none", "h"));
+    }
+
+    @Test
+    public void rejectsWrongArgumentsBeforeRunning() {
+        assertEquals("-ERR wrong number of arguments for 'get' command|", reply("GET"));
+        assertEquals("-ERR wrong number of arguments for 'get' command|", reply("get", "a", "b"));
+        assertEquals("-ERR wrong number of arguments for 'set' command|", reply("SET", "k"));
+        assertEquals("-ERR wrong number of arguments for 'mset' command|", reply("MSET", "a", "1", "b"));
+        assertEquals("-ERR wrong number of arguments for 'hset' command|", reply("HSET", "h", "f"));
+        assertEquals("-ERR wrong number of arguments for 'zadd' command|", reply("ZADD", "z", "1", "a", "2"));
+        assertEquals("-ERR value is not an integer or out of range|", reply("INCRBY", "n", "x"));
+        assertEquals("-ERR syntax error|", reply("SET", "k", "v", "EX"));
+        assertEquals("-ERR syntax error|", reply("ZRANGE", "z", "0", "1", "SCORES"));
+        assertEquals("-ERR unknown command 'NOPE'|", reply("NOPE", "k"));
+        assertEquals("$-1|", reply("GET", "k"));
+        assertEquals("$-1|", reply("GET", "a"));
+    }
+
+    @Test
+    public void repliesWrongTypeForValuesOfAnotherType() {
+        reply("RPUSH", "l", "a");
+        reply("SET", "s", "text");
+        assertEquals("-" + CommandHandler.WRONGTYPE + "|", reply("INCR", "l"));
+        assertEquals("-" + CommandHandler.WRONGTYPE + "|", reply("ZSCORE", "l", "m"));
+        assertEquals("-" + CommandHandler.WRONGTYPE + "|", reply("PFADD", "s", "a"));
+        assertEquals("$4|text|", reply("GET", "s"));
+    }
+
+    @Test
+    public void repliesErrorsWithoutExceptionNames() {
+        this.cluster.failNext("get", ResultCode.TIMEOUT);
+        String timeout = reply("GET", "k");
+        assertTrue(timeout, timeout.startsWith("-ERR " + ResultCode.getResultString(ResultCode.TIMEOUT) + ": "));
+        reply("RPUSH", "l", "a");
+        // LSET is not emulated by the fake cluster, which throws an UnsupportedOperationException
+        String unsupported = reply("LSET", "l", "0", "b");
+        assertTrue(unsupported, unsupported.startsWith("-ERR "));
+        assertFalse(unsupported, unsupported.contains("Exception"));
+        assertEquals("$-1|", reply("GET", "k"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.zy.bigdata.aerospike.server;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class RespDecoderTest {
+
+    private static List<List<String>> feed(RespDecoder decoder, String input) {
+        decoder.append(ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)));
+        List<List<String>> commands = new ArrayList<List<String>>();
+        for (List<byte[]> command : decoder.decode()){
+            List<String> arguments = new ArrayList<String>();
+            for (byte[] argument : command){
+                arguments.add(new String(argument, StandardCharsets.UTF_8));
+            }
+            commands.add(arguments);
+        }
+        return commands;
+    }
+
+    @Test
+    public void decodesMultiBulkCommands() {
+        RespDecoder decoder = new RespDecoder();
+        List<List<String>> commands = feed(decoder, "*3\r\n$3\r\nSET\r\n$1\r\nk\r\n$5\r\nv\r\n v\r\n*1\r\n$4\r\nPING\r\n");
+        assertEquals(Arrays.asList(Arrays.asList("SET", "k", "v\r\n v"), Arrays.asList("PING")), commands);
+    }
+
+    @Test
+    public void keepsPartialCommandsUntilComplete() {
+        String request = "*2\r\n$3\r\nGET\r\n$10\r\n0123456789\r\n";
+        RespDecoder decoder = new RespDecoder();
+        for (int i = 0; i < request.length() - 1; i++){
+            assertTrue("at " + i, feed(decoder, request.substring(i, i + 1)).isEmpty());
+        }
+        assertEquals(Arrays.asList(Arrays.asList("GET", "0123456789")), feed(decoder, "\n"));
+        assertTrue(feed(decoder, "").isEmpty());
+    }
+
+    @Test
+    public void decodesEveryCommandOfSplitPipelines() {
+        StringBuilder pipeline = new StringBuilder();
+        for (int i = 0; i < 1000; i++){
+            pipeline.append("*2\r\n$4\r\nINCR\r\n$").append(Integer.toString(i).length()).append("\r\n").append(i).append("\r\n");
+        }
+        RespDecoder decoder = new RespDecoder();
+        List<List<String>> commands = new ArrayList<List<String>>();
+        for (int from = 0; from < pipeline.length(); from += 7777){
+            commands.addAll(feed(decoder, pipeline.substring(from, Math.min(pipeline.length(), from + 7777))));
+        }
+        assertEquals(1000, commands.size());
+        for (int i = 0; i < 1000; i++){
+            assertEquals(Arrays.asList("INCR", Integer.toString(i)), commands.get(i));
+        }
+    }
+
+    @Test
+    public void decodesLargeBulks() {
+        char[] value = new char[100000];
+        Arrays.fill(value, 'x');
+        RespDecoder decoder = new RespDecoder();
+        List<List<String>> commands = feed(decoder, "*2\r\n$4\r\nECHO\r\n$100000\r\n" + new String(value) + "\r\n");
+        assertEquals(new String(value), commands.get(0).get(1));
+    }
+
+    @Test
+    public void decodesInlineCommands() {
+        RespDecoder decoder = new RespDecoder();
+        assertEquals(Arrays.asList(Arrays.asList("SET", "k", "v"), Arrays.asList("PING")),
+                feed(decoder, "SET  k v\r\n\r\nPING\n"));
+        assertTrue(feed(decoder, "GET k").isEmpty());
+        assertEquals(Arrays.asList(Arrays.asList("GET", "k")), feed(decoder, "\r\n"));
+        assertTrue(feed(decoder, "*0\r\n").isEmpty());
+    }
+
+    @Test
+    public void rejectsTooManyArguments() {
+        assertProtocolError("*" + (RespDecoder.MAX_ARGUMENTS + 1) + "\r\n");
+    }
+
+    @Test
+    public void rejectsInvalidBulks() {
+        assertProtocolError("*1\r\n$" + (RespDecoder.MAX_BULK_LENGTH + 1) + "\r\n");
+        assertProtocolError("*1\r\n$-1\r\n");
+        assertProtocolError("*1\r\n$1x\r\n");
+        assertProtocolError("*1\r\n$\r\n");
+        assertProtocolError("*1\r\n+OK\r\n");
+        assertProtocolError("*99999999999\r\n");
+    }
+
+    @Test
+    public void rejectsTooBigInlineRequests() {
+        char[] line = new char[RespDecoder.MAX_INLINE_LENGTH + 1];
+        Arrays.fill(line, 'a');
+        assertProtocolError(new String(line));
+    }
+
+    private static void assertProtocolError(String input) {
+        try {
+            feed(new RespDecoder(), input);
+            fail("decoded " + input);
+        } catch (RespDecoder.ProtocolException e) {
+            // expected
+        }
+    }
+}
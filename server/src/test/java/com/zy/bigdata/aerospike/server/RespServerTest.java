@@ -0,0 +1,95 @@
+package com.zy.bigdata.aerospike.server;
+
+import com.zy.bigdata.aerospike.client.AedisClient;
+import com.zy.bigdata.aerospike.client.FakeCluster;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class RespServerTest {
+
+    private FakeCluster cluster;
+    private RespServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        this.cluster = new FakeCluster();
+        this.server = new RespServer(new AedisClient(this.cluster.client(), "test", "redis"), new InetSocketAddress("127.0.0.1", 0), 8);
+        this.server.start();
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        this.server.close();
+        this.server.awaitTermination();
+        this.cluster.shutdown();
+    }
+
+    private static String command(String... arguments) {
+        StringBuilder request = new StringBuilder("*").append(arguments.length).append("\r\n");
+        for (String argument : arguments){
+            request.append('$').append(argument.getBytes(StandardCharsets.UTF_8).length).append("\r\n").append(argument).append("\r\n");
+        }
+        return request.toString();
+    }
+
+    /*
+     * Sends every command in one write, more than MAX_PENDING_COMMANDS of them so reading pauses
+     * and resumes on the way, and expects the replies in request order.
+     */
+    @Test
+    public void repliesToPipelinedCommandsInOrder() throws IOException {
+        int count = RespServer.MAX_PENDING_COMMANDS * 3;
+        StringBuilder pipeline = new StringBuilder();
+        for (int i = 1; i <= count; i++){
+            pipeline.append(command("INCR", "c")).append(command("GET", "c"));
+            if (i % 100 == 0)
+                pipeline.append(command("GET"));
+        }
+        pipeline.append(command("QUIT"));
+        try (Socket socket = new Socket("127.0.0.1", this.server.getPort())) {
+            socket.setSoTimeout(30000);
+            OutputStream output = socket.getOutputStream();
+            output.write(pipeline.toString().getBytes(StandardCharsets.UTF_8));
+            output.flush();
+            BufferedReader input = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            for (int i = 1; i <= count; i++){
+                assertEquals(":" + i, input.readLine());
+                assertEquals("$" + Integer.toString(i).length(), input.readLine());
+                assertEquals(Integer.toString(i), input.readLine());
+                if (i % 100 == 0)
+                    assertEquals("-ERR wrong number of arguments for 'get' command", input.readLine());
+            }
+            assertEquals("+OK", input.readLine());
+            assertNull(input.readLine());
+        }
+    }
+
+    @Test
+    public void keepsConnectionsApart() throws IOException {
+        try (Socket first = new Socket("127.0.0.1", this.server.getPort());
+             Socket second = new Socket("127.0.0.1", this.server.getPort())) {
+            first.setSoTimeout(30000);
+            second.setSoTimeout(30000);
+            first.getOutputStream().write((command("SET", "k", "first") + command("GET", "k")).getBytes(StandardCharsets.UTF_8));
+            BufferedReader firstInput = new BufferedReader(new InputStreamReader(first.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("+OK", firstInput.readLine());
+            assertEquals("$5", firstInput.readLine());
+            assertEquals("first", firstInput.readLine());
+            second.getOutputStream().write((command("SELECT", "1") + command("PING")).getBytes(StandardCharsets.UTF_8));
+            BufferedReader secondInput = new BufferedReader(new InputStreamReader(second.getInputStream(), StandardCharsets.UTF_8));
+            assertEquals("-ERR DB index is out of range", secondInput.readLine());
+            assertEquals("+PONG", secondInput.readLine());
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.zy.bigdata.aerospike.cache;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Finds the most requested keys with bounded memory.
+ *
+ * One in sampleRate requests, DEFAULT_SAMPLE_RATE unless given, is counted in a count-min
+ * sketch, keys whose estimate is among the highest seen are kept as candidates. Recording
+ * takes no lock: the sketch is atomic counters, a key that is no candidate is turned away by
+ * the estimate of the weakest candidate, and only trimming the candidates to the best ones
+ * locks. Counts are kept per tumbling window of windowMillis,
+ * {@link #topKeys(int)} reports the last complete window (the current one until the first
+ * window completes) as estimated requests per second. Estimates only overcount, by at most
+ * a few per cent of the window traffic.
+ */
+public class HotKeyTracker {
+
+    public static final int DEFAULT_SAMPLE_RATE = 16;
+
+    private static final int DEPTH = 4;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    public static final class HotKey {
+        private final Object key;
+        private final long requests;
+        private final double perSecond;
+
+        HotKey(Object key, long requests, double perSecond) {
+            this.key = key;
+            this.requests = requests;
+            this.perSecond = perSecond;
+        }
+
+        public Object getKey() {
+            return this.key;
+        }
+
+        /*
+         * Estimated requests in the window, sampled counts scaled by the sample rate.
+         */
+        public long getRequests() {
+            return this.requests;
+        }
+
+        public double getPerSecond() {
+            return this.perSecond;
+        }
+
+        @Override
+        public String toString() {
+            return this.key + "=" + String.format(Locale.ROOT, "%.1f/s", this.perSecond);
+        }
+    }
+
+    private final int sampleRate;
+    private final int capacity;
+    private final long windowMillis;
+    private final int width;
+    private final AtomicLongArray counters;
+
+    // replaced by rotate, so estimates of a past window recorded late are dropped with it
+    private volatile ConcurrentHashMap<Object, Long> candidates = new ConcurrentHashMap<Object, Long>();
+    private volatile long admitThreshold = 0;
+
+    private volatile long windowStart = System.currentTimeMillis();
+    private volatile List<HotKey> lastWindow = null;
+
+    /**
+     * Counts one request in DEFAULT_SAMPLE_RATE.
+     */
+    public HotKeyTracker(int capacity, long windowMillis) {
+        this(DEFAULT_SAMPLE_RATE, capacity, windowMillis);
+    }
+
+    /**
+     * @param sampleRate   counts one request in sampleRate, 1 counts every request
+     * @param capacity     number of hot keys reported
+     * @param windowMillis length of a counting window
+     */
+    public HotKeyTracker(int sampleRate, int capacity, long windowMillis) {
+        if (sampleRate <= 0 || capacity <= 0 || windowMillis <= 0)
+            throw new IllegalArgumentException("sampleRate, capacity and windowMillis must be positive");
+        this.sampleRate = sampleRate;
+        this.capacity = capacity;
+        this.windowMillis = windowMillis;
+        this.width = Integer.highestOneBit(Math.max(1024, capacity * 64) - 1) << 1;
+        this.counters = new AtomicLongArray(DEPTH * this.width);
+    }
+
+    public void record(Object key) {
+        long now = System.currentTimeMillis();
+        if (now - this.windowStart >= this.windowMillis)
+            rotate(now);
+        if (this.sampleRate > 1 && ThreadLocalRandom.current().nextInt(this.sampleRate) != 0)
+            return;
+        int h = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++){
+            estimate = Math.min(estimate, this.counters.incrementAndGet(row * this.width + index(h, row)));
+        }
+        ConcurrentHashMap<Object, Long> candidates = this.candidates;
+        if (estimate <= this.admitThreshold && candidates.size() >= 2 * this.capacity && !candidates.containsKey(key))
+            return;
+        candidates.put(key, estimate);
+        if (candidates.size() > 2 * this.capacity)
+            prune(candidates);
+    }
+
+    private int index(int hash, int row) {
+        int h = hash * SEEDS[row];
+        return (h ^ (h >>> 16)) & (this.width - 1);
+    }
+
+    /*
+     * Keeps the capacity best candidates, new keys must beat the weakest of them to get in. A
+     * candidate updated meanwhile is kept.
+     */
+    private synchronized void prune(ConcurrentHashMap<Object, Long> candidates) {
+        if (candidates != this.candidates || candidates.size() <= 2 * this.capacity)
+            return;
+        List<Map.Entry<Object, Long>> entries = sorted();
+        for (int i = this.capacity; i < entries.size(); i++){
+            candidates.remove(entries.get(i).getKey(), entries.get(i).getValue());
+        }
+        this.admitThreshold = entries.get(Math.min(this.capacity, entries.size()) - 1).getValue();
+    }
+
+    private List<Map.Entry<Object, Long>> sorted() {
+        List<Map.Entry<Object, Long>> entries = new ArrayList<Map.Entry<Object, Long>>(this.candidates.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        return entries;
+    }
+
+    private synchronized List<HotKey> snapshot(long now) {
+        double seconds = Math.max(1, now - this.windowStart) / 1000.0;
+        List<HotKey> keys = new ArrayList<HotKey>();
+        for (Map.Entry<Object, Long> entry : sorted()){
+            if (keys.size() == this.capacity) break;
+            long requests = entry.getValue() * this.sampleRate;
+            keys.add(new HotKey(entry.getKey(), requests, requests / seconds));
+        }
+        return keys;
+    }
+
+    private synchronized void rotate(long now) {
+        if (now - this.windowStart < this.windowMillis)
+            return;
+        this.lastWindow = Collections.unmodifiableList(snapshot(now));
+        for (int i = 0; i < this.counters.length(); i++){
+            this.counters.set(i, 0);
+        }
+        this.candidates = new ConcurrentHashMap<Object, Long>();
+        this.admitThreshold = 0;
+        this.windowStart = now;
+    }
+
+    /*
+     * The n most requested keys, hottest first.
+     */
+    public List<HotKey> topKeys(int n) {
+        long now = System.currentTimeMillis();
+        if (now - this.windowStart >= this.windowMillis)
+            rotate(now);
+        List<HotKey> keys = this.lastWindow;
+        if (keys == null)
+            keys = snapshot(now);
+        return new ArrayList<HotKey>(keys.subList(0, Math.min(n, keys.size())));
+    }
+
+    @Override
+    public String toString() {
+        return "HotKeyTracker" + topKeys(10);
+    }
+}
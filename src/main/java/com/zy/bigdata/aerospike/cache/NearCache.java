@@ -0,0 +1,254 @@
+package com.zy.bigdata.aerospike.cache;
+
+import com.aerospike.client.Value;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded client side cache for hot string and hash reads.
+ *
+ * Entries are held per record key in lock striped LRU segments. An entry never outlives the
+ * record TTL it was read with nor maxTtlMillis, the latter bounds staleness against writes
+ * made by other clients. Local writes invalidate the whole record entry.
+ *
+ * A reader takes a {@link #stamp(Object)} before going to the cluster and passes it to the put
+ * method, the put is dropped if the key was invalidated in between, so a slow read can not
+ * resurrect a value overwritten by a concurrent local write.
+ */
+public class NearCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final long maxTtlMillis;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public NearCache(int maxEntries, long maxTtlMillis) {
+        if (maxEntries <= 0 || maxTtlMillis <= 0)
+            throw new IllegalArgumentException("maxEntries and maxTtlMillis must be positive");
+        this.maxTtlMillis = maxTtlMillis;
+        this.segments = new Segment[SEGMENTS];
+        int perSegment = Math.max(1, (maxEntries + SEGMENTS - 1) / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++){
+            this.segments[i] = new Segment(perSegment);
+        }
+    }
+
+    private static final class CacheEntry {
+        long expireAt;
+        String string;
+        Map<String, String> hash;
+        Map<String, Object> fields;
+
+        CacheEntry(long expireAt) {
+            this.expireAt = expireAt;
+        }
+    }
+
+    private final class Segment extends LinkedHashMap<Value, CacheEntry> {
+        private final int maxEntries;
+        private long version = 0;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Value, CacheEntry> eldest) {
+            if (size() > this.maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+
+        CacheEntry live(Value key, long now) {
+            CacheEntry entry = get(key);
+            if (entry != null && entry.expireAt <= now) {
+                remove(key);
+                expirations.increment();
+                return null;
+            }
+            return entry;
+        }
+
+        CacheEntry writable(Value key, long stamp, long expireAt) {
+            if (stamp != this.version)
+                return null;
+            CacheEntry entry = live(key, System.currentTimeMillis());
+            if (entry == null) {
+                entry = new CacheEntry(expireAt);
+                put(key, entry);
+            } else {
+                entry.expireAt = Math.min(entry.expireAt, expireAt);
+            }
+            return entry;
+        }
+    }
+
+    private Segment segment(Value key) {
+        int h = key.hashCode();
+        return this.segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    /*
+     * Expiration time of an entry read from a record whose server side TTL ends at
+     * expireAtMillis (0 for a record that never expires).
+     */
+    public long expireAt(long expireAtMillis) {
+        long cap = System.currentTimeMillis() + this.maxTtlMillis;
+        return (expireAtMillis <= 0) ? cap : Math.min(cap, expireAtMillis);
+    }
+
+    public long stamp(Object key) {
+        Value k = Value.get(key);
+        Segment segment = segment(k);
+        synchronized (segment) {
+            return segment.version;
+        }
+    }
+
+    public String getString(Object key) {
+        Value k = Value.get(key);
+        Segment segment = segment(k);
+        String value;
+        synchronized (segment) {
+            CacheEntry entry = segment.live(k, System.currentTimeMillis());
+            value = (entry == null) ? null : entry.string;
+        }
+        record(value != null);
+        return value;
+    }
+
+    public Object getField(Object key, String field) {
+        Value k = Value.get(key);
+        Segment segment = segment(k);
+        Object value;
+        synchronized (segment) {
+            CacheEntry entry = segment.live(k, System.currentTimeMillis());
+            value = (entry == null || entry.fields == null) ? null : entry.fields.get(field);
+        }
+        record(value != null);
+        return value;
+    }
+
+    public Map<String, String> getHash(Object key) {
+        Value k = Value.get(key);
+        Segment segment = segment(k);
+        Map<String, String> value;
+        synchronized (segment) {
+            CacheEntry entry = segment.live(k, System.currentTimeMillis());
+            value = (entry == null) ? null : entry.hash;
+        }
+        record(value != null);
+        return (value == null) ? null : new HashMap<String, String>(value);
+    }
+
+    public void putString(Object key, long stamp, String value, long expireAt) {
+        if (value == null) return;
+        Value k = Value.get(key);
+        Segment segment = segment(k);
+        synchronized (segment) {
+            CacheEntry entry = segment.writable(k, stamp, expireAt);
+            if (entry != null) entry.string = value;
+        }
+    }
+
+    public void putField(Object key, long stamp, String field, Object value, long expireAt) {
+        if (value == null) return;
+        Value k = Value.get(key);
+        Segment segment = segment(k);
+        synchronized (segment) {
+            CacheEntry entry = segment.writable(k, stamp, expireAt);
+            if (entry == null) return;
+            if (entry.fields == null) entry.fields = new HashMap<String, Object>();
+            entry.fields.put(field, value);
+        }
+    }
+
+    public void putHash(Object key, long stamp, Map<String, String> value, long expireAt) {
+        if (value == null) return;
+        Value k = Value.get(key);
+        Segment segment = segment(k);
+        synchronized (segment) {
+            CacheEntry entry = segment.writable(k, stamp, expireAt);
+            if (entry != null) entry.hash = new HashMap<String, String>(value);
+        }
+    }
+
+    public void invalidate(Object key) {
+        Value k = Value.get(key);
+        Segment segment = segment(k);
+        synchronized (segment) {
+            segment.version++;
+            if (segment.remove(k) != null) invalidations.increment();
+        }
+    }
+
+    public void invalidateAll() {
+        for (Segment segment : this.segments){
+            synchronized (segment) {
+                segment.version++;
+                segment.clear();
+            }
+        }
+    }
+
+    private void record(boolean hit) {
+        if (hit)
+            this.hits.increment();
+        else
+            this.misses.increment();
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : this.segments){
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return this.hits.sum();
+    }
+
+    public long getMissCount() {
+        return this.misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return this.evictions.sum();
+    }
+
+    public long getExpirationCount() {
+        return this.expirations.sum();
+    }
+
+    public long getInvalidationCount() {
+        return this.invalidations.sum();
+    }
+
+    public double getHitRate() {
+        long hits = getHitCount();
+        long total = hits + getMissCount();
+        return (total == 0) ? 0.0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "NearCache{size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount()
+                + ", evictions=" + getEvictionCount() + ", expirations=" + getExpirationCount()
+                + ", invalidations=" + getInvalidationCount() + "}";
+    }
+}
@@ -0,0 +1,105 @@
+package com.zy.bigdata.aerospike.cache;
+
+import com.aerospike.client.Value;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical reads: the first caller for a (key, command, field) runs the
+ * read, callers arriving while it is in flight wait for it and get the same result or exception.
+ *
+ * A follower may get a value whose read started before its own call, at most one round trip
+ * older. Local writes call {@link #forget(Object)}: a read issued after a write completed never
+ * joins a flight that started before it, so a client still reads its own writes.
+ */
+public class SingleFlight {
+
+    private static final int STRIPES = 1024;
+
+    private static final class Flight {
+        final long epoch;
+        final CompletableFuture<Object> result = new CompletableFuture<Object>();
+
+        Flight(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    private final ConcurrentHashMap<Object, Flight> flights = new ConcurrentHashMap<Object, Flight>();
+    private final AtomicLongArray epochs = new AtomicLongArray(STRIPES);
+
+    private final LongAdder leaders = new LongAdder();
+    private final LongAdder followers = new LongAdder();
+
+    private static int stripe(Value key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (STRIPES - 1);
+    }
+
+    /*
+     * field is the hash field of a field read, null for whole record reads.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T execute(Object key, String command, Object field, Supplier<T> read) {
+        Value k = Value.get(key);
+        long epoch = this.epochs.get(stripe(k));
+        Object flightKey = Arrays.asList(k, command, field);
+        Flight[] created = new Flight[1];
+        Flight flight = this.flights.compute(flightKey, (fk, current) ->
+                (current != null && current.epoch == epoch) ? current : (created[0] = new Flight(epoch)));
+        if (flight != created[0]) {
+            this.followers.increment();
+            try {
+                return (T) flight.result.join();
+            } catch (CompletionException e) {
+                throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        this.leaders.increment();
+        T value;
+        try {
+            value = read.get();
+        } catch (RuntimeException e) {
+            this.flights.remove(flightKey, flight);
+            flight.result.completeExceptionally(e);
+            throw e;
+        }
+        // removed first, so a caller arriving after the read finished starts a fresh one
+        this.flights.remove(flightKey, flight);
+        flight.result.complete(value);
+        return value;
+    }
+
+    /*
+     * Reads of the key issued from now on do not join flights already in the air.
+     */
+    public void forget(Object key) {
+        this.epochs.incrementAndGet(stripe(Value.get(key)));
+    }
+
+    public int inFlight() {
+        return this.flights.size();
+    }
+
+    public long getLeaderCount() {
+        return this.leaders.sum();
+    }
+
+    /*
+     * Reads served by another caller's flight, i.e. cluster reads saved.
+     */
+    public long getCoalescedCount() {
+        return this.followers.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "SingleFlight{inFlight=" + inFlight() + ", leaders=" + getLeaderCount()
+                + ", coalesced=" + getCoalescedCount() + "}";
+    }
+}
@@ -1,17 +1,33 @@
 package com.zy.bigdata.aerospike.client;
 
 import com.aerospike.client.*;
+import com.aerospike.client.cdt.MapOperation;
+import com.aerospike.client.cdt.MapReturnType;
+import com.aerospike.client.cluster.Connection;
 import com.aerospike.client.cluster.Node;
 import com.aerospike.client.policy.*;
+import com.zy.bigdata.aerospike.cache.HotKeyTracker;
+import com.zy.bigdata.aerospike.cache.NearCache;
+import com.zy.bigdata.aerospike.cache.SingleFlight;
+import com.zy.bigdata.aerospike.metrics.CommandMetrics;
 import com.zy.bigdata.aerospike.util.AerospikeConfigUtils;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 public class AedisClient {
 
-    private AerospikeClient asClient;
+    private IAerospikeClient asClient;
     private WritePolicy writePolicy;
     private Policy policy;
     private ScanPolicy scanPolicy;
@@ -20,8 +36,36 @@ public class AedisClient {
     private String redisBin = "redis-bin";
     private String redisSet = null;
     private String keyBin = "redis-key-bin";
+    private boolean writeKeyBin = true;
+    private BatchWriter batchWriter;
+    private volatile NearCache nearCache;
+    private CommandMode listMode = CommandMode.UDF;
+    private NativeLists nativeLists;
+    private CommandMode hashMode = CommandMode.UDF;
+    private NativeHashes nativeHashes;
+    private CommandMode sortedSetMode = CommandMode.NATIVE;
+    private NativeSortedSets nativeSortedSets;
+    private Shards shards;
+    private ShardedLists shardedLists;
+    private ShardedHashes shardedHashes;
+    private ShardedSortedSets shardedSortedSets;
+    private ClusterStats clusterStats;
+    private AedisClients owner;
+    private volatile CommandMetrics metrics;
+    private volatile SingleFlight readFlights;
+    private volatile HotKeyTracker hotKeys;
+    private volatile CounterBuffer counters;
+    private volatile HedgedReads hedgedReads;
+    private volatile Compression compression;
+    private volatile boolean spreadReplicas = false;
+    private volatile boolean preciseExpiry = false;
+    private volatile CompletableFuture<Void> warmUp = CompletableFuture.completedFuture(null);
 
     private static final long AS_TIME_OFFSET = 1262304000000L;// in milliseconds
+    private static final int MAX_GENERATION_RETRIES = 5;
+    static final String DEADLINE_BIN = "redis-deadline";
+    private static final int WARM_UP_CONNECT_TIMEOUT = 1000;// in milliseconds
+    private static final int MAX_HEDGED_BATCH = 32;
 
     public enum LIST_POSITION {
         BEFORE, AFTER;
@@ -38,14 +82,46 @@ public class AedisClient {
         this.queryPolicy = new QueryPolicy();
     }
 
+    /*
+     * Default client policy and a synchronous UDF check, see AedisClientBuilder for tuning
+     * and warm startup.
+     */
     public AedisClient(String addresses, String namespace, String set) {
+        this(new RoutingAerospikeClient(null, hosts(addresses)), namespace, set);
+        checkUdfRegistration();
+    }
+
+    /*
+     * Runs on a client owned by the caller, redis.lua must already be registered on its cluster.
+     */
+    public AedisClient(IAerospikeClient client, String namespace, String set) {
         this();
-        List<Host> hostList = AerospikeConfigUtils.parseHosts(addresses);
-        Host[] hosts = hostList.toArray(new Host[hostList.size()]);
-        this.asClient = new AerospikeClient(null, hosts);
+        this.asClient = client;
+        this.batchWriter = new BatchWriter(this.asClient);
+        this.nativeLists = new NativeLists(this.asClient, this.writePolicy, this.redisBin);
+        this.nativeHashes = new NativeHashes(this.asClient, this.writePolicy, this.redisBin);
+        this.nativeSortedSets = new NativeSortedSets(this.asClient, this.writePolicy, this.redisBin);
+        this.shards = new Shards(this.asClient, this.writePolicy, this.redisBin);
+        this.shardedLists = new ShardedLists(this.shards);
+        this.shardedHashes = new ShardedHashes(this.shards);
+        this.shardedSortedSets = new ShardedSortedSets(this.shards);
+        this.clusterStats = new ClusterStats(this.asClient);
         this.namespace = namespace;
         this.redisSet = set;
-        checkUdfRegistration();
+    }
+
+    /*
+     * A view of an AedisClients registry, sharing its client and cluster statistics.
+     */
+    AedisClient(AedisClients owner, IAerospikeClient client, String namespace, String set) {
+        this(client, namespace, set);
+        this.owner = owner;
+        this.clusterStats = owner.getClusterStats();
+    }
+
+    private static Host[] hosts(String addresses) {
+        List<Host> hostList = AerospikeConfigUtils.parseHosts(addresses);
+        return hostList.toArray(new Host[hostList.size()]);
     }
 
     public AedisClient(String addresses, String namespace, String set, final int timeout) {
@@ -53,28 +129,696 @@ public class AedisClient {
         setTimeout(timeout);
     }
 
+    /*
+     * A view of an AedisClients registry leaves the shared client open.
+     */
+    public void close(){
+        try {
+            disableCounterBuffering();
+            disableHedgedReads();
+        } finally {
+            if (this.owner == null)
+                this.asClient.close();
+        }
+    }
+
+    /*
+     * The view of database db in the same namespace, see AedisClients#database. Only views of
+     * an AedisClients registry have databases.
+     */
+    public AedisClient select(int db){
+        if (this.owner == null)
+            throw new IllegalStateException("select needs a client of an AedisClients registry");
+        return this.owner.client(this.namespace, this.owner.database(db));
+    }
+
+    public String getNamespace(){
+        return this.namespace;
+    }
+
+    public String getSet(){
+        return this.redisSet;
+    }
+
     public void setTimeout(int timeout){
-        this.policy.timeout = timeout;
-        this.writePolicy.timeout = timeout;
-        this.scanPolicy.timeout = timeout;
-        this.queryPolicy.timeout = timeout;
+        setTimeout(timeout, timeout, timeout);
+    }
+
+    void setTimeout(int readTimeout, int writeTimeout, int scanTimeout){
+        this.policy.timeout = readTimeout;
+        this.writePolicy.timeout = writeTimeout;
+        this.scanPolicy.timeout = scanTimeout;
+        this.queryPolicy.timeout = scanTimeout;
+    }
+
+    /*
+     * Negative values keep the aerospike defaults.
+     */
+    void setRetries(int maxRetries, int sleepBetweenRetries){
+        for (Policy p : new Policy[]{this.policy, this.writePolicy}){
+            if (maxRetries >= 0)
+                p.maxRetries = maxRetries;
+            if (sleepBetweenRetries >= 0)
+                p.sleepBetweenRetries = sleepBetweenRetries;
+        }
+    }
+
+    /*
+     * Opens connectionsPerNode connections to every node into the client pool and registers
+     * redis.lua when it is missing, in the background on the client thread pool. Commands
+     * issued meanwhile are served, they open their own connections as usual.
+     */
+    public CompletableFuture<Void> warmUp(int connectionsPerNode){
+        Executor executor = (this.asClient instanceof RoutingAerospikeClient)
+                ? ((RoutingAerospikeClient) this.asClient).getThreadPool() : ForkJoinPool.commonPool();
+        List<CompletableFuture<Void>> futures = new ArrayList<CompletableFuture<Void>>();
+        futures.add(CompletableFuture.runAsync(this::checkUdfRegistration, executor));
+        if (connectionsPerNode > 0) {
+            for (Node node : this.asClient.getNodes()){
+                futures.add(CompletableFuture.runAsync(() -> openConnections(node, connectionsPerNode), executor));
+            }
+        }
+        this.warmUp = CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+        return this.warmUp;
+    }
+
+    /*
+     * Completes when the last warm up is done, at once when there was none.
+     */
+    public CompletableFuture<Void> warmedUp(){
+        if (this.owner != null)
+            return this.owner.warmedUp();
+        return this.warmUp;
+    }
+
+    /*
+     * Holds count connections of node at once so that they are distinct, then returns them to
+     * its pool. Stops early when the pool is full.
+     */
+    private void openConnections(Node node, int count){
+        int timeout = (this.policy.timeout > 0) ? this.policy.timeout : WARM_UP_CONNECT_TIMEOUT;
+        List<Connection> connections = new ArrayList<Connection>(count);
+        try {
+            for (int i = 0; i < count; i++){
+                connections.add(node.getConnection(timeout));
+            }
+        } catch (AerospikeException.Connection e) {
+            if (connections.isEmpty())
+                throw e;
+        } finally {
+            for (Connection connection : connections){
+                node.putConnection(connection);
+            }
+        }
+    }
+
+    /*
+     * SET, GETSET, APPEND and the counters write the key to its own bin so that keys/scan can
+     * return it. Disabling it saves the duplicate key on every record, keys written that way are
+     * invisible to keys, scan and bulkScan.
+     */
+    public void setWriteKeyBin(boolean writeKeyBin){
+        this.writeKeyBin = writeKeyBin;
+    }
+
+    public void setBatchTasksPerNode(int tasksPerNode){
+        this.batchWriter.setTasksPerNode(tasksPerNode);
+    }
+
+    /*
+     * Caches get/mget/hget/hgetAll results in process. maxTtlMillis bounds how long a value
+     * written by another client can be served stale.
+     */
+    public void enableNearCache(int maxEntries, long maxTtlMillis){
+        this.nearCache = new NearCache(maxEntries, maxTtlMillis);
+    }
+
+    public void disableNearCache(){
+        this.nearCache = null;
+    }
+
+    /*
+     * NATIVE runs the list commands as CDT list operations, LREM and LINSERT have no native
+     * equivalent in client 3.3 and always use the UDF. SHARDED is NATIVE with lists split
+     * over chunk records once they grow beyond the shard threshold.
+     */
+    public void setListMode(CommandMode listMode){
+        this.listMode = listMode;
+    }
+
+    public CommandMode getListMode(){
+        return this.listMode;
+    }
+
+    private boolean nativeLists(){
+        return this.listMode != CommandMode.UDF;
+    }
+
+    private NativeLists lists(){
+        return (this.listMode == CommandMode.SHARDED) ? this.shardedLists : this.nativeLists;
+    }
+
+    /*
+     * NATIVE runs the hash commands as CDT map operations on a key ordered map. SHARDED is
+     * NATIVE with hashes split over shard records by field hash once they grow beyond the
+     * shard threshold. Binary hashes are never sharded.
+     */
+    public void setHashMode(CommandMode hashMode){
+        this.hashMode = hashMode;
+    }
+
+    public CommandMode getHashMode(){
+        return this.hashMode;
+    }
+
+    private boolean nativeHashes(){
+        return this.hashMode != CommandMode.UDF;
+    }
+
+    private NativeHashes hashes(){
+        return (this.hashMode == CommandMode.SHARDED) ? this.shardedHashes : this.nativeHashes;
+    }
+
+    /*
+     * Sorted sets are always CDT maps, redis.lua has no sorted set commands: NATIVE keeps a
+     * sorted set in one key value ordered map, SHARDED splits it over shard records by member
+     * hash once it grows beyond the shard threshold, like hashes.
+     */
+    public void setSortedSetMode(CommandMode sortedSetMode){
+        if (sortedSetMode == CommandMode.UDF)
+            throw new IllegalArgumentException("sorted sets have no UDF mode");
+        this.sortedSetMode = sortedSetMode;
+    }
+
+    public CommandMode getSortedSetMode(){
+        return this.sortedSetMode;
+    }
+
+    private NativeSortedSets sortedSets(){
+        return (this.sortedSetMode == CommandMode.SHARDED) ? this.shardedSortedSets : this.nativeSortedSets;
+    }
+
+    boolean sharded(){
+        return this.listMode == CommandMode.SHARDED || this.hashMode == CommandMode.SHARDED
+                || this.sortedSetMode == CommandMode.SHARDED;
+    }
+
+    /*
+     * Number of elements beyond which a SHARDED mode list, hash or sorted set is split, 1000 by default.
+     */
+    public void setShardThreshold(int elements){
+        this.shards.setThreshold(elements);
+    }
+
+    /*
+     * Elements per chunk record of lists sharded from now on, 256 by default.
+     */
+    public void setListChunkSize(int elements){
+        this.shards.setListChunkSize(elements);
+    }
+
+    /*
+     * Shard records of hashes and sorted sets sharded from now on, 16 by default.
+     */
+    public void setHashShards(int shards){
+        this.shards.setHashShards(shards);
+    }
+
+    /*
+     * Millisecond expiry for string keys: SETEX, PSETEX and the EXPIRE family store the deadline
+     * in epoch milliseconds next to the value, GET, MGET, EXISTS, TTL and PTTL treat a key past
+     * it as missing and delete it. The server TTL, rounded up to the second, stays the backstop
+     * that reclaims keys nobody reads; collections expire by the backstop only.
+     */
+    public void setPreciseExpiry(boolean preciseExpiry){
+        this.preciseExpiry = preciseExpiry;
+    }
+
+    public boolean isPreciseExpiry(){
+        return this.preciseExpiry;
+    }
+
+    public NearCache getNearCache(){
+        return this.nearCache;
+    }
+
+    /*
+     * Concurrent get, hget and hgetAll calls for the same key share one cluster read, see
+     * SingleFlight. Works with and without the near cache, which is checked first.
+     */
+    public void enableReadCoalescing(){
+        this.readFlights = new SingleFlight();
+    }
+
+    public void disableReadCoalescing(){
+        this.readFlights = null;
+    }
+
+    public SingleFlight getReadFlights(){
+        return this.readFlights;
+    }
+
+    /*
+     * Tracks the most requested keys of all single key commands, see HotKeyTracker. Reported
+     * keys are the aerospike Values of the user keys.
+     */
+    public void enableHotKeyTracking(int topKeys, long windowMillis){
+        enableHotKeyTracking(HotKeyTracker.DEFAULT_SAMPLE_RATE, topKeys, windowMillis);
+    }
+
+    public void enableHotKeyTracking(int sampleRate, int topKeys, long windowMillis){
+        this.hotKeys = new HotKeyTracker(sampleRate, topKeys, windowMillis);
+    }
+
+    public void disableHotKeyTracking(){
+        this.hotKeys = null;
+    }
+
+    public HotKeyTracker getHotKeyTracker(){
+        return this.hotKeys;
+    }
+
+    /*
+     * Write-behind INCR, INCRBY, DECR, DECRBY and HINCRBY, see CounterBuffer: increments are
+     * summed in memory per key and field and written every flushMillis or once maxPending are
+     * buffered. They return the value stored when the counter was first buffered, or at its
+     * last flush, plus the increments of this client buffered since; GET or HGET do not see
+     * them before they are flushed.
+     */
+    public void enableCounterBuffering(int maxPending, long flushMillis){
+        CounterBuffer previous = this.counters;
+        this.counters = new CounterBuffer(new CounterBuffer.Sink() {
+            @Override
+            public long incrBy(Object key, String field, long delta) {
+                return (field == null) ? incrByNow(key, delta) : hincrByNow((String) key, field, delta);
+            }
+
+            @Override
+            public long get(Object key, String field) {
+                return (field == null) ? getLong(key, 0) : hgetLong((String) key, field, 0);
+            }
+        }, maxPending, flushMillis);
+        if (previous != null)
+            previous.close();
+    }
+
+    /*
+     * Stops buffering and flushes the buffered increments.
+     */
+    public void disableCounterBuffering(){
+        CounterBuffer counters = this.counters;
+        this.counters = null;
+        if (counters != null)
+            counters.close();
+    }
+
+    /*
+     * Writes the buffered increments now, e.g. before a checkpoint.
+     */
+    public void flushCounters(){
+        CounterBuffer counters = this.counters;
+        if (counters != null)
+            counters.flush();
+    }
+
+    /*
+     * Stores string and blob values of at least thresholdBytes compressed, see Compression:
+     * SET and its variants, MSET, GETSET, the binary SET, list pushes and hash field writes.
+     * Every read decompresses them, e.g. GET, MGET, GETRANGE, LRANGE, HGET or HGETALL.
+     *
+     * Server side string operations can not see into a compressed value: APPEND then reads,
+     * appends and writes back with a generation check, and compressed list elements and hash
+     * values are matched by their compressed form, which is the same for equal values as long
+     * as the compressor is not changed. Scans return the stored values.
+     */
+    public void enableCompression(Compressor compressor, int thresholdBytes){
+        this.compression = new Compression(compressor, thresholdBytes);
+    }
+
+    /*
+     * Stops compressing new values. Values already compressed are still decompressed.
+     */
+    public void disableCompression(){
+        Compression compression = this.compression;
+        if (compression != null)
+            this.compression = compression.decodeOnly();
+    }
+
+    /*
+     * Compression ratio and time per command, null when compression was never enabled.
+     */
+    public Compression getCompression(){
+        return this.compression;
+    }
+
+    Object compressed(String command, Object value){
+        Compression compression = this.compression;
+        return (compression == null) ? value : compression.encode(command, value);
+    }
+
+    Object decompressed(String command, Object stored){
+        Compression compression = this.compression;
+        return (compression == null) ? stored : compression.decode(command, stored);
+    }
+
+    /*
+     * A value as BulkScan hands it out: decompressed, like the elements of a list and the
+     * values of a map.
+     */
+    Object scanned(Object stored){
+        if (this.compression == null)
+            return stored;
+        if (stored instanceof List) {
+            List<Object> list = new ArrayList<Object>(((List<?>) stored).size());
+            for (Object element : (List<?>) stored){
+                list.add(decompressed("SCAN", element));
+            }
+            return list;
+        }
+        if (stored instanceof Map) {
+            Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) stored).entrySet()){
+                map.put(entry.getKey(), decompressed("SCAN", entry.getValue()));
+            }
+            return map;
+        }
+        return decompressed("SCAN", stored);
+    }
+
+    String decompressedString(String command, Object stored){
+        return ValueCodecs.string(decompressed(command, stored));
+    }
+
+    /*
+     * List elements as strings. Without compression the list is returned as the client parsed it.
+     */
+    @SuppressWarnings("unchecked")
+    List<String> strings(String command, List<?> stored){
+        if (this.compression == null || stored == null)
+            return (List<String>) stored;
+        List<String> result = new ArrayList<String>(stored.size());
+        for (Object element : stored){
+            result.add(decompressedString(command, element));
+        }
+        return result;
+    }
+
+    Map<String, Object> compressedHash(String command, Map<String, String> hash){
+        Map<String, Object> result = new HashMap<String, Object>(hash.size() * 2);
+        for (Map.Entry<String, String> entry : hash.entrySet()){
+            result.put(entry.getKey(), compressed(command, entry.getValue()));
+        }
+        return result;
+    }
+
+    /*
+     * Hedged GET, MGET, HGET and EXISTS, see HedgedReads: a read still running after the
+     * percentile (0 to 100) of recent read latencies, at least minDelayMicros, is abandoned and
+     * sent to another replica of the key. With spreadReplicas the first request goes to a
+     * random replica as well, spreading reads over every copy.
+     *
+     * Replicas other than the master are only known with AedisClientBuilder.requestProleReplicas,
+     * without them both requests go to the master. A replica may answer with a write it has not
+     * received yet. MGET is hedged up to MAX_HEDGED_BATCH keys, by single reads of every key;
+     * HGET only in NATIVE hash mode. Needs a RoutingAerospikeClient.
+     */
+    public void enableHedgedReads(double percentile, long minDelayMicros, boolean spreadReplicas){
+        if (!(this.asClient instanceof RoutingAerospikeClient))
+            throw new IllegalStateException("hedged reads need a RoutingAerospikeClient");
+        this.spreadReplicas = spreadReplicas;
+        HedgedReads previous = this.hedgedReads;
+        this.hedgedReads = new HedgedReads(percentile, minDelayMicros);
+        if (previous != null)
+            previous.close();
+    }
+
+    public void disableHedgedReads(){
+        HedgedReads previous = this.hedgedReads;
+        this.hedgedReads = null;
+        if (previous != null)
+            previous.close();
+    }
+
+    /*
+     * Hedging counters, null when hedged reads are off.
+     */
+    public HedgedReads getHedgedReads(){
+        return this.hedgedReads;
+    }
+
+    private interface NodeRead<T> {
+        T read(RoutingAerospikeClient client, Node node, Policy policy);
+    }
+
+    /*
+     * read on the first replica of asKey, hedged on the next one. direct is used while the
+     * partition map does not know the key yet.
+     */
+    private <T> T hedged(HedgedReads hedged, Key asKey, Supplier<T> direct, NodeRead<T> read){
+        RoutingAerospikeClient client = (RoutingAerospikeClient) this.asClient;
+        List<Node> nodes = replicas(client, asKey);
+        if (nodes.isEmpty())
+            return direct.get();
+        Node primary = nodes.get(0);
+        Node hedge = nodes.get(Math.min(1, nodes.size() - 1));
+        return hedged.read(this.policy.timeout, timeout -> read.read(client, primary, attempt(new Policy(this.policy), timeout)),
+                () -> read.read(client, hedge, this.policy));
+    }
+
+    /*
+     * policy for a first read cut to timeout milliseconds: a retry would only delay the hedge.
+     */
+    private static <P extends Policy> P attempt(P policy, int timeout){
+        policy.timeout = timeout;
+        policy.maxRetries = 0;
+        policy.retryOnTimeout = false;
+        return policy;
+    }
+
+    private List<Node> replicas(RoutingAerospikeClient client, Key asKey){
+        List<Node> nodes = client.getReplicaNodes(asKey);
+        if (this.spreadReplicas && nodes.size() > 1)
+            Collections.rotate(nodes, ThreadLocalRandom.current().nextInt(nodes.size()));
+        return nodes;
+    }
+
+    private Record readRecord(Key asKey, String... bins){
+        HedgedReads hedged = this.hedgedReads;
+        if (hedged == null)
+            return this.asClient.get(this.policy, asKey, bins);
+        return hedged(hedged, asKey, () -> this.asClient.get(this.policy, asKey, bins),
+                (client, node, policy) -> client.get(policy, asKey, node, bins));
+    }
+
+    /*
+     * Batch read, hedged by reading each key from its next replica in parallel, see HedgedReads.
+     */
+    private Record[] batchRead(Key[] asKeys, String... bins){
+        HedgedReads hedged = this.hedgedReads;
+        if (hedged == null || asKeys.length > MAX_HEDGED_BATCH)
+            return this.asClient.get(null, asKeys, bins);
+        RoutingAerospikeClient client = (RoutingAerospikeClient) this.asClient;
+        BatchPolicy batchPolicy = client.getBatchPolicyDefault();
+        return hedged.read(batchPolicy.timeout, timeout -> client.get(attempt(new BatchPolicy(batchPolicy), timeout), asKeys, bins), () -> {
+            List<Supplier<Record>> reads = new ArrayList<Supplier<Record>>(asKeys.length);
+            for (Key asKey : asKeys){
+                List<Node> nodes = replicas(client, asKey);
+                reads.add(() -> nodes.isEmpty()
+                        ? client.get(this.policy, asKey, bins)
+                        : client.get(this.policy, asKey, nodes.get(Math.min(1, nodes.size() - 1)), bins));
+            }
+            return hedged.fanOut(reads, batchPolicy.timeout).toArray(new Record[0]);
+        });
+    }
+
+    /*
+     * Reports every command to the given metrics, null (the default) turns instrumentation off.
+     */
+    public void setMetrics(CommandMetrics metrics){
+        this.metrics = metrics;
+    }
+
+    public CommandMetrics getMetrics(){
+        return this.metrics;
+    }
+
+    /*
+     * Runs a command, counts its key when hot keys are tracked and reports it when metrics are enabled. Kept this small so the JIT
+     * inlines it into the command, with both features off the call Supplier then never escapes and is not allocated.
+     */
+    private <T> T metered(String command, Key asKey, Object request, Supplier<T> call){
+        HotKeyTracker hotKeys = this.hotKeys;
+        if (hotKeys != null)
+            tracked(hotKeys, asKey);
+        CommandMetrics metrics = this.metrics;
+        return (metrics == null) ? call.get() : timed(metrics, command, asKey, request, call);
+    }
+
+    /*
+     * asKey is null for multi key commands, those are not counted.
+     */
+    private static void tracked(HotKeyTracker hotKeys, Key asKey){
+        if (asKey != null && asKey.userKey != null)
+            hotKeys.record(asKey.userKey);
+    }
+
+    /*
+     * asKey (null for multi key commands) names the node in the report, request and the result are sized for the payload.
+     */
+    private <T> T timed(CommandMetrics metrics, String command, Key asKey, Object request, Supplier<T> call){
+        long start = System.nanoTime();
+        int resultCode = ResultCode.OK;
+        T result = null;
+        try {
+            result = call.get();
+            return result;
+        } catch (AerospikeException e) {
+            resultCode = e.getResultCode();
+            throw e;
+        } catch (RuntimeException e) {
+            resultCode = CommandMetrics.CLIENT_ERROR;
+            throw e;
+        } finally {
+            metrics.record(command, nodeName(asKey), System.nanoTime() - start, resultCode, payloadBytes(request) + payloadBytes(result));
+        }
     }
 
-    private void checkUdfRegistration(){
-        String modules = info("udf-list");
-        if (modules.contains("redis.lua"))
-            return;
-        this.asClient.register(null, "udf/redis.lua", "redis.lua", Language.LUA);
+    private String nodeName(Key asKey){
+        if (asKey == null || !(this.asClient instanceof RoutingAerospikeClient))
+            return null;
+        Node node = ((RoutingAerospikeClient) this.asClient).getMasterNode(asKey);
+        return (node == null) ? null : node.getName();
+    }
+
+    /*
+     * Approximate, strings count one byte per char and numbers eight bytes.
+     */
+    private static long payloadBytes(Object value){
+        if (value == null)
+            return 0;
+        if (value instanceof String)
+            return ((String) value).length();
+        if (value instanceof byte[])
+            return ((byte[]) value).length;
+        if (value instanceof ByteBuffer)
+            return ((ByteBuffer) value).remaining();
+        if (value instanceof Number || value instanceof Boolean)
+            return 8;
+        if (value instanceof Object[]) {
+            long size = 0;
+            for (Object element : (Object[]) value){
+                size += payloadBytes(element);
+            }
+            return size;
+        }
+        if (value instanceof Collection) {
+            long size = 0;
+            for (Object element : (Collection<?>) value){
+                size += payloadBytes(element);
+            }
+            return size;
+        }
+        if (value instanceof Map) {
+            long size = 0;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()){
+                size += payloadBytes(entry.getKey()) + payloadBytes(entry.getValue());
+            }
+            return size;
+        }
+        return 0;
+    }
+
+    void invalidate(Object key){
+        NearCache cache = this.nearCache;
+        if (cache != null)
+            cache.invalidate(key);
+        SingleFlight flights = this.readFlights;
+        if (flights != null)
+            flights.forget(key);
+    }
+
+    private <T> T coalesced(Object key, String command, Object field, Supplier<T> read){
+        SingleFlight flights = this.readFlights;
+        return (flights == null) ? read.get() : flights.execute(key, command, field, read);
+    }
+
+    static long expireAtMillis(Record record){
+        Object deadline = record.getValue(DEADLINE_BIN);
+        if (deadline != null)
+            return ((Number) deadline).longValue();
+        return (record.expiration == 0) ? 0 : AS_TIME_OFFSET + record.expiration * 1000L;
+    }
+
+    /*
+     * Server TTL of a millisecond expiry, rounded up: 0 would mean the namespace default.
+     */
+    static int seconds(long millis){
+        return (int) Math.max(1, (millis + 999) / 1000);
+    }
+
+    private String[] valueBins(){
+        return this.preciseExpiry ? new String[]{this.redisBin, DEADLINE_BIN} : new String[]{this.redisBin};
+    }
+
+    /*
+     * record, or null when it is past its millisecond deadline. The key is then deleted unless
+     * it was written since it was read.
+     */
+    private Record live(Key asKey, Object key, Record record){
+        if (record == null || !expired(record))
+            return record;
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+        wp.generation = record.generation;
+        try {
+            this.asClient.delete(wp, asKey);
+        } catch (AerospikeException e) {
+            if (e.getResultCode() != ResultCode.GENERATION_ERROR && e.getResultCode() != ResultCode.KEY_NOT_FOUND_ERROR)
+                throw e;
+        }
+        invalidate(key);
+        return null;
+    }
+
+    static boolean expired(Record record){
+        Object deadline = record.getValue(DEADLINE_BIN);
+        return deadline != null && ((Number) deadline).longValue() <= System.currentTimeMillis();
     }
 
-    private String[] infoAll(AerospikeClient client,
-                             String infoString) {
-        String[] messages = new String[client.getNodes().length];
-        int index = 0;
-        for (Node node : client.getNodes()){
-            messages[index] = Info.request(node, infoString);
+    /*
+     * Registers redis.lua unless the cluster already runs this very module: one left by an
+     * older release lacks the functions added since, e.g. the KEYS stream of keys and scan.
+     */
+    void checkUdfRegistration(){
+        String module = udfModule();
+        String registered = info("udf-get:filename=redis.lua");
+        int content = registered.indexOf("content=");
+        if (content >= 0) {
+            int end = registered.indexOf(';', content);
+            String encoded = registered.substring(content + "content=".length(), (end < 0) ? registered.length() : end).trim();
+            try {
+                if (module.equals(new String(Base64.getDecoder().decode(encoded), StandardCharsets.UTF_8)))
+                    return;
+            } catch (IllegalArgumentException e) {
+                // not base64, registered again below
+            }
+        }
+        this.asClient.registerUdfString(null, module, "redis.lua", Language.LUA).waitTillComplete();
+    }
+
+    private static String udfModule(){
+        try (InputStream in = AedisClient.class.getClassLoader().getResourceAsStream("udf/redis.lua")) {
+            if (in == null)
+                throw new IllegalStateException("udf/redis.lua is missing from the class path");
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for (int n; (n = in.read(buffer)) > 0; ){
+                out.write(buffer, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("cannot read udf/redis.lua", e);
         }
-        return messages;
     }
 
     private String info(String infoString) {
@@ -93,77 +837,178 @@ public class AedisClient {
 
     public String set(WritePolicy wp, Object key, Object value){
         Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-        Bin keyBin = new Bin(this.keyBin , key);
-        Bin valueBin = new Bin(this.redisBin, Value.get(value));
-        this.asClient.put((wp == null) ? this.writePolicy : wp, asKey, keyBin, valueBin);
+        return metered("SET", asKey, value, () -> store("SET", wp, asKey, key, value));
+    }
+
+    /*
+     * A plain write clears the millisecond deadline, like SET clears the TTL in redis.
+     */
+    private String store(String command, WritePolicy wp, Key asKey, Object key, Object value){
+        Bin valueBin = new Bin(this.redisBin, Value.get(compressed(command, value)));
+        put(wp, asKey, Value.get(key), valueBin, clearedDeadline());
+        invalidate(key);
         return "OK";
+    }
 
+    /*
+     * The bin removing the deadline of a key a plain write replaces, null when there is none.
+     */
+    Bin clearedDeadline(){
+        return this.preciseExpiry ? Bin.asNull(DEADLINE_BIN) : null;
+    }
+
+    /*
+     * The bins a plain write stores: the key bin unless keys are not written, valueBin, and
+     * deadlineBin unless null.
+     */
+    Bin[] setBins(Object key, Bin valueBin, Bin deadlineBin){
+        List<Bin> bins = new ArrayList<Bin>(3);
+        if (this.writeKeyBin)
+            bins.add(new Bin(this.keyBin, Value.get(key)));
+        bins.add(valueBin);
+        if (deadlineBin != null)
+            bins.add(deadlineBin);
+        return bins.toArray(new Bin[bins.size()]);
+    }
+
+    /*
+     * ops preceded by the write of the key bin, unless keys are not written.
+     */
+    Operation[] keyed(Object key, Operation... ops){
+        if (!this.writeKeyBin)
+            return ops;
+        Operation[] all = new Operation[ops.length + 1];
+        all[0] = Operation.put(new Bin(this.keyBin, Value.get(key)));
+        System.arraycopy(ops, 0, all, 1, ops.length);
+        return all;
+    }
+
+    private void put(WritePolicy wp, Key asKey, Value key, Bin valueBin){
+        put(wp, asKey, key, valueBin, null);
+    }
+
+    private void put(WritePolicy wp, Key asKey, Value key, Bin valueBin, Bin deadlineBin){
+        WritePolicy policy = (wp == null) ? this.writePolicy : wp;
+        if (deadlineBin == null) {
+            if (this.writeKeyBin)
+                this.asClient.put(policy, asKey, new Bin(this.keyBin, key), valueBin);
+            else
+                this.asClient.put(policy, asKey, valueBin);
+        } else {
+            if (this.writeKeyBin)
+                this.asClient.put(policy, asKey, new Bin(this.keyBin, key), valueBin, deadlineBin);
+            else
+                this.asClient.put(policy, asKey, valueBin, deadlineBin);
+        }
+    }
+
+    /*
+     * SETEX and PSETEX in precise expiry mode: value and deadline in one replacing write.
+     */
+    private String storeUntil(String command, Object key, long millis, Object value){
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.expiration = seconds(millis);
+        Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
+        Bin deadlineBin = new Bin(DEADLINE_BIN, System.currentTimeMillis() + millis);
+        return metered(command, asKey, value, () -> {
+            put(wp, asKey, Value.get(key), new Bin(this.redisBin, Value.get(compressed(command, value))), deadlineBin);
+            invalidate(key);
+            return "OK";
+        });
     }
 
     public String mset(final String... keysvalues) {
         if (keysvalues.length % 2 != 0)
             return "Keys and Values mismatch";
-        String key = null;
-        boolean isKey = true;
-        for (String keyvalue : keysvalues){
-            if (isKey) {
-                key = keyvalue;
-                isKey = false;
-            } else {
-                set(null, key, Value.get(keyvalue));
-                isKey = true;
-            }
-        }
+        AerospikeException error = msetWithResults(keysvalues).firstError();
+        if (error != null)
+            throw error;
         return "OK";
     }
 
+    public BatchResult<String> msetWithResults(final String... keysvalues) {
+        return metered("MSET", null, keysvalues, () -> mset(null, keysvalues));
+    }
+
+    private BatchResult<String> mset(WritePolicy wp, final String... keysvalues) {
+        if (keysvalues.length % 2 != 0)
+            throw new AerospikeException(ResultCode.PARAMETER_ERROR, "Keys and Values mismatch");
+        Object[] keys = new Object[keysvalues.length / 2];
+        for (int i = 0; i < keys.length; i++){
+            keys[i] = keysvalues[2 * i];
+        }
+        return executeEach(keys, (i, asKey) -> {
+            Bin valueBin = new Bin(this.redisBin, Value.get(compressed("MSET", keysvalues[2 * i + 1])));
+            put(wp, asKey, Value.get(keys[i]), valueBin, clearedDeadline());
+            invalidate(keys[i]);
+            return "OK";
+        });
+    }
+
+    /*
+     * All or nothing: returns 1 when every key was created, 0 when any key already existed.
+     * Aerospike has no multi record transaction, so keys created before a conflicting key
+     * is detected are deleted again.
+     */
     public long msetnx(final String... keysvalues) {
         if (keysvalues.length % 2 != 0)
             return 0L;
-        long retVal = 0L;
-        String key = null;
-        WritePolicy wp = new WritePolicy();
-        wp.timeout = this.writePolicy.timeout;
+        return metered("MSETNX", null, keysvalues, () -> msetnxAll(keysvalues));
+    }
+
+    private long msetnxAll(final String... keysvalues) {
+        Key[] asKeys = new Key[keysvalues.length / 2];
+        for (int i = 0; i < asKeys.length; i++){
+            asKeys[i] = new Key(this.namespace, this.redisSet, Value.get(keysvalues[2 * i]));
+        }
+        BatchPolicy bp = new BatchPolicy();
+        bp.timeout = this.policy.timeout;
+        for (boolean exists : this.asClient.exists(bp, asKeys)){
+            if (exists) return 0L;
+        }
+        WritePolicy wp = new WritePolicy(this.writePolicy);
         wp.recordExistsAction = RecordExistsAction.CREATE_ONLY;
-        boolean isKey = true;
-        try {
-            for (String keyvalue : keysvalues){
-                if (isKey) {
-                    key = keyvalue;
-                    isKey = false;
-                } else {
-                    set(wp, key, Value.get(keyvalue));
-                    retVal++;
-                    isKey = true;
-                }
-            }
-        } catch (AerospikeException e){
-            if (e.getResultCode() != ResultCode.KEY_EXISTS_ERROR)
-                throw e;
+        BatchResult<String> result = mset(wp, keysvalues);
+        AerospikeException error = result.firstError();
+        if (error == null)
+            return 1L;
+        List<Object> created = new ArrayList<Object>();
+        for (int i = 0; i < result.size(); i++){
+            if (result.isSuccess(i)) created.add(result.getKey(i));
         }
-        return retVal;
+        deleteEach(created.toArray());
+        if (error.getResultCode() != ResultCode.KEY_EXISTS_ERROR)
+            throw error;
+        return 0L;
     }
 
 
 
     public String setex(Object key, int expiration, Object value) {
+        if (this.preciseExpiry)
+            return storeUntil("SETEX", key, expiration * 1000L, value);
         WritePolicy wp = new WritePolicy();
         wp.expiration = expiration;
-        set(wp, key, Value.get(value));
-        return "OK";
+        Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
+        return metered("SETEX", asKey, value, () -> store("SETEX", wp, asKey, key, value));
     }
 
 
 
     public String psetex(Object key, int expiration, Object value) {
-        return setex(key, expiration/1000, value);
+        if (this.preciseExpiry)
+            return storeUntil("PSETEX", key, expiration, value);
+        return setex(key, seconds(expiration), value);
     }
 
     public boolean setnx(Object key, Object value) {
+        if (this.preciseExpiry)
+            return set(key, value, RecordExistsAction.CREATE_ONLY, 0);
         try {
             WritePolicy wp = new WritePolicy();
             wp.recordExistsAction = RecordExistsAction.CREATE_ONLY;
-            set(wp, key, value);
+            Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
+            metered("SETNX", asKey, value, () -> store("SETNX", wp, asKey, key, value));
             return true;
         } catch (AerospikeException e){
             if (e.getResultCode() == ResultCode.KEY_EXISTS_ERROR)
@@ -174,10 +1019,13 @@ public class AedisClient {
     }
 
     public long setxx(Object key, Object value) {
+        if (this.preciseExpiry)
+            return set(key, value, RecordExistsAction.REPLACE_ONLY, 0) ? 1 : 0;
         try {
             WritePolicy wp = new WritePolicy();
             wp.recordExistsAction = RecordExistsAction.REPLACE_ONLY;
-            set(wp, key, value);
+            Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
+            metered("SETXX", asKey, value, () -> store("SETXX", wp, asKey, key, value));
             return 1;
         } catch (AerospikeException e){
             if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR)
@@ -187,96 +1035,500 @@ public class AedisClient {
         }
     }
 
+    /*
+     * SET key value [PX millis] [NX | XX]: action REPLACE for a plain SET, CREATE_ONLY for NX
+     * and REPLACE_ONLY for XX, millis 0 for no expiry. False when NX or XX prevented the write.
+     * In precise expiry mode millis are kept in the deadline bin and a key past its deadline
+     * counts as missing, see storeIf.
+     */
+    public boolean set(Object key, Object value, RecordExistsAction action, long millis) {
+        Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
+        String command = (action == RecordExistsAction.CREATE_ONLY) ? "SETNX" : (action == RecordExistsAction.REPLACE_ONLY) ? "SETXX" : "SET";
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = action;
+        if (millis > 0)
+            wp.expiration = seconds(millis);
+        return metered(command, asKey, value, () -> {
+            Bin deadlineBin = (millis > 0 && this.preciseExpiry) ? new Bin(DEADLINE_BIN, System.currentTimeMillis() + millis) : clearedDeadline();
+            return storeIf(command, wp, asKey, key, value, deadlineBin);
+        });
+    }
+
+    /*
+     * Writes value with the action of wp, false when CREATE_ONLY found the key or REPLACE_ONLY
+     * did not. In precise expiry mode a record past its deadline is missing: CREATE_ONLY
+     * replaces it and REPLACE_ONLY does not write, both with a generation check so a write
+     * racing the deadline check is never overwritten.
+     */
+    private boolean storeIf(String command, WritePolicy wp, Key asKey, Object key, Object value, Bin deadlineBin){
+        Bin valueBin = new Bin(this.redisBin, Value.get(compressed(command, value)));
+        RecordExistsAction action = wp.recordExistsAction;
+        if (!this.preciseExpiry || (action != RecordExistsAction.CREATE_ONLY && action != RecordExistsAction.REPLACE_ONLY)) {
+            try {
+                put(wp, asKey, Value.get(key), valueBin, deadlineBin);
+            } catch (AerospikeException e) {
+                int code = e.getResultCode();
+                if (code == ResultCode.KEY_EXISTS_ERROR || code == ResultCode.KEY_NOT_FOUND_ERROR)
+                    return false;
+                throw e;
+            }
+            invalidate(key);
+            return true;
+        }
+        for (int attempt = 0; ; attempt++){
+            Record record = this.asClient.get(this.policy, asKey, DEADLINE_BIN);
+            boolean expired = record != null && expired(record);
+            boolean exists = record != null && !expired;
+            if (exists == (action == RecordExistsAction.CREATE_ONLY)) {
+                if (expired)
+                    live(asKey, key, record);
+                return false;
+            }
+            WritePolicy policy = new WritePolicy(wp);
+            if (record == null) {
+                policy.recordExistsAction = RecordExistsAction.CREATE_ONLY;
+            } else {
+                policy.recordExistsAction = RecordExistsAction.REPLACE;
+                policy.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+                policy.generation = record.generation;
+            }
+            try {
+                put(policy, asKey, Value.get(key), valueBin, deadlineBin);
+            } catch (AerospikeException e) {
+                int code = e.getResultCode();
+                if ((code != ResultCode.GENERATION_ERROR && code != ResultCode.KEY_EXISTS_ERROR && code != ResultCode.KEY_NOT_FOUND_ERROR)
+                        || attempt >= MAX_GENERATION_RETRIES)
+                    throw e;
+                continue;
+            }
+            invalidate(key);
+            return true;
+        }
+    }
+
     public boolean exists(Object key) {
         Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-        return this.asClient.exists(this.writePolicy, asKey);
+        if (this.preciseExpiry)
+            return metered("EXISTS", asKey, null, () -> live(asKey, key, readRecord(asKey, DEADLINE_BIN)) != null);
+        HedgedReads hedged = this.hedgedReads;
+        if (hedged != null)
+            return metered("EXISTS", asKey, null, () -> hedged(hedged, asKey, () -> this.asClient.exists(this.writePolicy, asKey),
+                    (client, node, policy) -> client.getHeader(policy, asKey, node) != null));
+        return metered("EXISTS", asKey, null, () -> this.asClient.exists(this.writePolicy, asKey));
     }
 
     public long del(Object key) {
         Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-        this.asClient.delete(writePolicy, asKey);
+        metered("DEL", asKey, null, () -> {
+            if (sharded())
+                this.shards.drop(asKey);
+            return this.asClient.delete(writePolicy, asKey);
+        });
+        invalidate(key);
         return 1;
     }
 
 
 
     public long del(Object ...keys) {
+        BatchResult<Boolean> result = delWithResults(keys);
+        AerospikeException error = result.firstError();
+        if (error != null)
+            throw error;
         long count = 0;
-        for (Object key : keys){
-            Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-            this.asClient.delete(writePolicy, asKey);
-            count++;
+        for (int i = 0; i < result.size(); i++){
+            if (result.getValue(i)) count++;
         }
         return count;
     }
 
+    public BatchResult<Boolean> delWithResults(Object ...keys) {
+        return metered("DEL", null, null, () -> deleteEach(keys));
+    }
 
+    private BatchResult<Boolean> deleteEach(Object ...keys) {
+        return executeEach(keys, (i, asKey) -> {
+            if (sharded())
+                this.shards.drop(asKey);
+            boolean existed = this.asClient.delete(this.writePolicy, asKey);
+            invalidate(keys[i]);
+            return existed;
+        });
+    }
 
+    <T> BatchResult<T> executeEach(Object[] keys, BatchWriter.KeyCommand<T> command) {
+        Key[] asKeys = new Key[keys.length];
+        for (int i = 0; i < keys.length; i++){
+            asKeys[i] = new Key(this.namespace, this.redisSet, Value.get(keys[i]));
+        }
+        return this.batchWriter.execute(keys, asKeys, command);
+    }
+
+    public AedisPipeline pipelined() {
+        return new AedisPipeline(this);
+    }
+
+
+
+    /*
+     * Redis glob pattern, collects every matching key. Use scan() for large sets.
+     */
     public Set<String> keys(final String pattern) {
-        final Set<String> result = new HashSet<String>();
-        this.asClient.scanAll(this.scanPolicy, this.namespace, this.redisSet, (key, record) -> {
-            String keyString = (String) record.bins.get(keyBin);
-            if (keyString.matches(pattern)){
-                result.add(keyString);
+        return metered("KEYS", null, null, () -> {
+            final Set<String> result = new HashSet<String>();
+            try (KeyScan scan = scan(pattern)) {
+                while (scan.hasNext()) {
+                    result.add(scan.next());
+                }
             }
-        }, this.keyBin);
-        return result;
+            return result;
+        });
     }
 
 
     public Set<byte[]> keys(byte[] binaryPattern) {
-        final String pattern = binaryPattern.toString();
         final Set<byte[]> result = new HashSet<byte[]>();
-        this.asClient.scanAll(this.scanPolicy, this.namespace, this.redisSet, (key, record) -> {
-            String keyString = (String) record.bins.get(keyBin);
-            if (keyString.matches(pattern)){
-                result.add(keyString.getBytes());
-            }
-        }, this.keyBin);
+        for (String key : keys(new String(binaryPattern, StandardCharsets.UTF_8))){
+            result.add(key.getBytes(StandardCharsets.UTF_8));
+        }
         return result;
     }
 
 
+    public KeyScan scan(String pattern) {
+        return scan(pattern, null);
+    }
+
+    /*
+     * Resumes a scan at the cursor returned by KeyScan.getCursor().
+     */
+    public KeyScan scan(String pattern, String cursor) {
+        return new KeyScan(this.asClient, this.queryPolicy, this.namespace, this.redisSet, this.keyBin, pattern, cursor);
+    }
+
+    /*
+     * Parallel export of every key and value of the set, see BulkScan.
+     */
+    public BulkScan bulkScan() {
+        return new BulkScan(this.asClient, this.scanPolicy, this.namespace, this.redisSet, this.keyBin, this.redisBin, this::scanned);
+    }
+
+
     public String get(Object key) {
         Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-        Record record = this.asClient.get(this.policy, asKey, this.redisBin);
+        return metered("GET", asKey, null, () -> get(asKey, key));
+    }
+
+    private String get(Key asKey, Object key) {
+        NearCache cache = this.nearCache;
+        long stamp = 0;
+        if (cache != null) {
+            String cached = cache.getString(key);
+            if (cached != null) return cached;
+            stamp = cache.stamp(key);
+        }
+        Record record = getRecord(asKey, key);
         if (record == null) return null;
-        String value = (String) record.getValue(this.redisBin);
+        String value = decompressedString("GET", record.getValue(this.redisBin));
+        if (cache != null)
+            cache.putString(key, stamp, value, cache.expireAt(expireAtMillis(record)));
         return value;
     }
 
+    private Record getRecord(Key asKey, Object key) {
+        Record record = coalesced(key, "GET", null, () -> readRecord(asKey, valueBins()));
+        return this.preciseExpiry ? live(asKey, key, record) : record;
+    }
+
+    /*
+     * Typed values of string keys, stored in the native bin type the codec encodes to. Typed
+     * reads bypass the near cache, which holds strings.
+     */
+    public <T> String set(Object key, T value, ValueCodec<T> codec) {
+        return set(key, codec.encode(value));
+    }
+
+    public <T> T get(Object key, ValueCodec<T> codec) {
+        Object value = getObject(key);
+        return (value == null) ? null : codec.decode(value);
+    }
+
+    /*
+     * Counter reads with no boxing or string parsing of integer and double bins, missing is
+     * returned for a missing key.
+     */
+    public long getLong(Object key, long missing) {
+        Object value = getObject(key);
+        return (value == null) ? missing : ValueCodecs.toLong(value);
+    }
+
+    public double getDouble(Object key, double missing) {
+        Object value = getObject(key);
+        return (value == null) ? missing : ValueCodecs.toDouble(value);
+    }
+
+    private Object getObject(Object key) {
+        Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
+        return metered("GET", asKey, null, () -> {
+            Record record = getRecord(asKey, key);
+            return (record == null) ? null : decompressed("GET", record.getValue(this.redisBin));
+        });
+    }
+
+    public <T> List<T> mget(ValueCodec<T> codec, Object ...keys) {
+        return metered("MGET", null, null, () -> {
+            Key[] asKeys = new Key[keys.length];
+            for (int i = 0; i < keys.length; i++){
+                asKeys[i] = new Key(this.namespace, this.redisSet, Value.get(keys[i]));
+            }
+            Record[] records = batchRead(asKeys, valueBins());
+            List<T> result = new ArrayList<T>(keys.length);
+            for (int i = 0; i < records.length; i++){
+                Record record = this.preciseExpiry ? live(asKeys[i], keys[i], records[i]) : records[i];
+                Object value = (record == null) ? null : decompressed("MGET", record.getValue(this.redisBin));
+                result.add((value == null) ? null : codec.decode(value));
+            }
+            return result;
+        });
+    }
+
 
     public List<String> mget(Object ...keys) {
+        return metered("MGET", null, null, () -> mgetAll(keys));
+    }
+
+    private List<String> mgetAll(Object ...keys) {
+        NearCache cache = this.nearCache;
+        if (cache != null)
+            return mgetCached(cache, keys);
         Key[] asKeys = new Key[keys.length];
         for (int i = 0; i < keys.length; i++){
             asKeys[i] = new Key(this.namespace, this.redisSet, Value.get(keys[i]));
         }
-        Record[] records = this.asClient.get(null, asKeys, this.redisBin);
+        Record[] records = batchRead(asKeys, valueBins());
         List<String> result = new ArrayList<String>();
-        for (Record record : records){
-            result.add((record == null) ? null : (String) record.getValue(this.redisBin));
+        for (int i = 0; i < records.length; i++){
+            Record record = this.preciseExpiry ? live(asKeys[i], keys[i], records[i]) : records[i];
+            result.add((record == null) ? null : decompressedString("MGET", record.getValue(this.redisBin)));
         }
         return result;
     }
 
+    private List<String> mgetCached(NearCache cache, Object ...keys) {
+        List<String> result = new ArrayList<String>(keys.length);
+        List<Integer> missing = new ArrayList<Integer>();
+        for (int i = 0; i < keys.length; i++){
+            String cached = cache.getString(keys[i]);
+            result.add(cached);
+            if (cached == null) missing.add(i);
+        }
+        if (missing.isEmpty())
+            return result;
+        Key[] asKeys = new Key[missing.size()];
+        long[] stamps = new long[missing.size()];
+        for (int i = 0; i < asKeys.length; i++){
+            Object key = keys[missing.get(i)];
+            stamps[i] = cache.stamp(key);
+            asKeys[i] = new Key(this.namespace, this.redisSet, Value.get(key));
+        }
+        Record[] records = batchRead(asKeys, valueBins());
+        for (int i = 0; i < records.length; i++){
+            Record record = this.preciseExpiry ? live(asKeys[i], keys[missing.get(i)], records[i]) : records[i];
+            if (record == null) continue;
+            String value = decompressedString("MGET", record.getValue(this.redisBin));
+            result.set(missing.get(i), value);
+            cache.putString(keys[missing.get(i)], stamps[i], value, cache.expireAt(expireAtMillis(record)));
+        }
+        return result;
+    }
+
+
+    /*
+     * Binary commands. Values are stored as blob bins and returned as the arrays parsed by the
+     * client, with no String round trip. A byte[] key is a blob key and does not address the
+     * record of the equal String key. Binary reads bypass the near cache.
+     */
+    public String set(byte[] key, byte[] value) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("SET", asKey, value, () -> {
+            put(null, asKey, Value.get(key), new Bin(this.redisBin, Value.get(compressed("SET", value))), clearedDeadline());
+            return "OK";
+        });
+    }
+
+    /*
+     * Writes the remaining bytes of both buffers, heap buffers are sent without a copy unless
+     * the value is large enough to be compressed.
+     */
+    public String set(ByteBuffer key, ByteBuffer value) {
+        Value keyValue = bytes(key);
+        Key asKey = new Key(this.namespace, this.redisSet, keyValue);
+        return metered("SET", asKey, value, () -> {
+            Compression compression = this.compression;
+            Value stored = (compression == null || value.remaining() < compression.getThreshold())
+                    ? bytes(value) : Value.get(compressed("SET", copy(value)));
+            put(null, asKey, keyValue, new Bin(this.redisBin, stored), clearedDeadline());
+            return "OK";
+        });
+    }
+
+    private static Value bytes(ByteBuffer buffer) {
+        if (buffer.hasArray())
+            return Value.get(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        return Value.get(copy(buffer));
+    }
 
+    private static byte[] copy(ByteBuffer buffer) {
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return copy;
+    }
+
+    /*
+     * Values written as strings or numbers by the text commands are returned UTF-8 encoded.
+     */
+    private static byte[] toBytes(Object value) {
+        if (value == null || value instanceof byte[])
+            return (byte[]) value;
+        return String.valueOf(value).getBytes(StandardCharsets.UTF_8);
+    }
+
+    public byte[] get(byte[] key) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("GET", asKey, null, () -> {
+            Record record = this.asClient.get(this.policy, asKey, this.redisBin);
+            return (record == null) ? null : toBytes(decompressed("GET", record.getValue(this.redisBin)));
+        });
+    }
+
+    public ByteBuffer getBuffer(byte[] key) {
+        byte[] value = get(key);
+        return (value == null) ? null : ByteBuffer.wrap(value);
+    }
+
+    public List<byte[]> mget(byte[] ...keys) {
+        Key[] asKeys = new Key[keys.length];
+        for (int i = 0; i < keys.length; i++){
+            asKeys[i] = new Key(this.namespace, this.redisSet, keys[i]);
+        }
+        return metered("MGET", null, null, () -> {
+            Record[] records = this.asClient.get(null, asKeys, this.redisBin);
+            List<byte[]> result = new ArrayList<byte[]>(records.length);
+            for (Record record : records){
+                result.add((record == null) ? null : toBytes(decompressed("MGET", record.getValue(this.redisBin))));
+            }
+            return result;
+        });
+    }
+
+    /*
+     * Binary fields are blob map keys, the hash is always written with CDT map operations since
+     * the UDF can not look up blob keys.
+     */
+    public long hset(byte[] key, byte[] field, byte[] value) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("HSET", asKey, value, () -> this.nativeHashes.hset(asKey, field, compressed("HSET", value)));
+    }
+
+    public byte[] hget(byte[] key, byte[] field) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("HGET", asKey, null, () -> {
+            Record record = this.nativeHashes.hget(asKey, field);
+            return (record == null) ? null : toBytes(decompressed("HGET", record.getValue(this.redisBin)));
+        });
+    }
+
+
+    /*
+     * Copies every bin of oldKey with its TTL to newKey, then deletes oldKey only if it was not
+     * written since it was read; a write in between makes the copy start over from the new
+     * state. A failure between the two leaves both keys, never neither. Maps are copied key
+     * value ordered, which keeps hash and sorted set lookups O(log n). Sharded collections live
+     * in sub-records named after their key and cannot be renamed. A key past its millisecond
+     * deadline does not exist.
+     */
     public String rename(Object oldKey, Object newKey) {
         Key oldAsKey = new Key(this.namespace, this.redisSet, Value.get(oldKey));
-        Record record = this.asClient.get(policy, oldAsKey);
-        this.set(newKey, (String) record.getValue(this.redisBin));
-        this.asClient.delete(this.writePolicy, oldAsKey);
-        return "OK";
+        Key newAsKey = new Key(this.namespace, this.redisSet, Value.get(newKey));
+        return metered("RENAME", oldAsKey, null, () -> {
+            for (int attempt = 0; ; attempt++){
+                Record record = live(oldAsKey, oldKey, this.asClient.get(this.policy, oldAsKey));
+                if (record == null)
+                    throw new AerospikeException(ResultCode.KEY_NOT_FOUND_ERROR, "no such key");
+                if (Shards.isSharded(record))
+                    throw new AerospikeException(ResultCode.PARAMETER_ERROR, "cannot rename a sharded collection");
+                if (oldAsKey.equals(newAsKey))
+                    return "OK";
+                if (sharded())
+                    this.shards.drop(newAsKey);
+                WritePolicy wp = new WritePolicy(this.writePolicy);
+                wp.recordExistsAction = RecordExistsAction.UPDATE;
+                int ttl = record.getTimeToLive();
+                wp.expiration = (ttl == 0) ? 1 : ttl;
+                this.asClient.operate(wp, newAsKey, copy(record, newKey));
+                WritePolicy dp = new WritePolicy(this.writePolicy);
+                dp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+                dp.generation = record.generation;
+                try {
+                    this.asClient.delete(dp, oldAsKey);
+                } catch (AerospikeException e) {
+                    if (e.getResultCode() != ResultCode.GENERATION_ERROR || attempt >= MAX_GENERATION_RETRIES)
+                        throw e;
+                    continue;
+                }
+                invalidate(oldKey);
+                invalidate(newKey);
+                return "OK";
+            }
+        });
+    }
+
+    /*
+     * Operations writing the bins of record, and clearing any other bin this client uses, on
+     * a record renamed to newKey.
+     */
+    private Operation[] copy(Record record, Object newKey) {
+        List<Operation> ops = new ArrayList<Operation>();
+        Set<String> cleared = new HashSet<String>(Arrays.asList(this.redisBin, this.keyBin, Shards.EPOCH_BIN,
+                Shards.SHARDS_BIN, Shards.HEAD_BIN, Shards.TAIL_BIN, Shards.CHUNK_BIN, DEADLINE_BIN));
+        for (Map.Entry<String, Object> bin : record.bins.entrySet()){
+            cleared.remove(bin.getKey());
+            if (bin.getKey().equals(this.keyBin)) {
+                ops.add(Operation.put(new Bin(this.keyBin, Value.get(newKey))));
+            } else if (bin.getValue() instanceof Map) {
+                Map<Value, Value> items = new HashMap<Value, Value>();
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) bin.getValue()).entrySet()){
+                    items.put(Value.get(entry.getKey()), Value.get(entry.getValue()));
+                }
+                ops.add(Operation.put(Bin.asNull(bin.getKey())));
+                ops.add(MapOperation.putItems(NativeSortedSets.SCORED, bin.getKey(), items));
+            } else {
+                ops.add(Operation.put(new Bin(bin.getKey(), bin.getValue())));
+            }
+        }
+        for (String bin : cleared){
+            ops.add(Operation.put(Bin.asNull(bin)));
+        }
+        return ops.toArray(new Operation[0]);
     }
 
 
     public long expire(Object key, long expiration) {
+        if (this.preciseExpiry)
+            return expireAtMillis("EXPIRE", key, System.currentTimeMillis() + expiration * 1000);
         try {
             Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
             WritePolicy wp = new WritePolicy();
             wp.expiration = (int) expiration;
             wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
             wp.timeout = this.writePolicy.timeout;
-            this.asClient.touch(wp, asKey);
+            metered("EXPIRE", asKey, null, () -> {
+                this.asClient.touch(wp, asKey);
+                if (sharded())
+                    this.shards.touch(asKey, wp);
+                return null;
+            });
+            invalidate(key);
             return 1;
         } catch (AerospikeException e) {
             if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR){
@@ -289,18 +1541,31 @@ public class AedisClient {
 
 
     public long pexpire(Object key, long expiration) {
-        return expire(key, expiration / 1000);
+        if (this.preciseExpiry)
+            return expireAtMillis("PEXPIRE", key, System.currentTimeMillis() + expiration);
+        return expire(key, seconds(expiration));
     }
 
 
+    /*
+     * unixTime in milliseconds.
+     */
     public long expireAt(Object key, long unixTime) {
+        if (this.preciseExpiry)
+            return expireAtMillis("EXPIREAT", key, unixTime);
         try {
             long now = System.currentTimeMillis();
             Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
             WritePolicy wp = new WritePolicy();
             wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
-            wp.expiration = (int) ((unixTime - now) / 1000);
-            this.asClient.touch(wp, asKey);
+            wp.expiration = seconds(unixTime - now);
+            metered("EXPIREAT", asKey, null, () -> {
+                this.asClient.touch(wp, asKey);
+                if (sharded())
+                    this.shards.touch(asKey, wp);
+                return null;
+            });
+            invalidate(key);
             return 1;
         } catch (AerospikeException e){
             if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR){
@@ -309,33 +1574,74 @@ public class AedisClient {
                 throw e;
         }
     }
+    /*
+     * unixTime in milliseconds like expireAt, only precise expiry mode keeps the milliseconds:
+     * Aerospike TTLs are in seconds.
+     */
     public long pexpireAt(Object key, long unixTime) {
-		/*
-		 * Aerospike only supports expiration units in seconds, not milliseconds
-		 */
         return expireAt(key, unixTime);
     }
 
+    /*
+     * Precise expiry: the deadline bin with the server TTL rounded up to the second as the
+     * backstop, sub-records of a sharded collection get the backstop only.
+     */
+    private long expireAtMillis(String command, Object key, long deadline) {
+        Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
+        WritePolicy wp = new WritePolicy();
+        wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
+        wp.expiration = seconds(deadline - System.currentTimeMillis());
+        wp.timeout = this.writePolicy.timeout;
+        try {
+            metered(command, asKey, null, () -> {
+                this.asClient.operate(wp, asKey, Operation.put(new Bin(DEADLINE_BIN, deadline)));
+                if (sharded())
+                    this.shards.touch(asKey, wp);
+                return null;
+            });
+        } catch (AerospikeException e) {
+            if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR)
+                return 0;
+            throw e;
+        }
+        invalidate(key);
+        return 1;
+    }
+
     public long persist(Object key) {
         Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
         WritePolicy wp = new WritePolicy();
         wp.expiration = -1;
-        this.asClient.touch(wp, asKey);
+        metered("PERSIST", asKey, null, () -> {
+            if (this.preciseExpiry)
+                this.asClient.operate(wp, asKey, Operation.put(Bin.asNull(DEADLINE_BIN)));
+            else
+                this.asClient.touch(wp, asKey);
+            if (sharded())
+                this.shards.touch(asKey, wp);
+            return null;
+        });
+        invalidate(key);
         return 1L;
     }
 
+    /*
+     * Records of the set, each counted once, from the cluster statistics cache: the count can
+     * be up to the refresh interval old, see getClusterStats().
+     */
     public long dbSize() {
-        // ns_name=test:set_name=tweets:n_objects=68763:set-stop-write-count=0:set-evict-hwm-count=0:set-enable-xdr=use-default:set-delete=false;
-        Pattern pattern = Pattern.compile("ns_name=" + this.namespace + ":set_name=" + this.redisSet + ":n_objects=(\\d+)");
-        String[] infoStrings = infoAll(this.asClient, "sets");
-        long size = 0;
-        for (String info : infoStrings){
-            Matcher matcher = pattern.matcher(info);
-            while (matcher.find()){
-                size += Long.parseLong(matcher.group(1));
-            }
-        }
-        return size;
+        return metered("DBSIZE", null, null, () -> this.clusterStats.snapshot().objects(this.namespace, this.redisSet));
+    }
+
+    /*
+     * Cluster, namespace and set statistics in redis INFO format.
+     */
+    public String info() {
+        return metered("INFO", null, null, () -> this.clusterStats.snapshot().toInfo());
+    }
+
+    public ClusterStats getClusterStats() {
+        return this.clusterStats;
     }
 
     public String echo(String message) {
@@ -343,26 +1649,36 @@ public class AedisClient {
     }
 
     public Long ttl(Object key) {
-        try {
-            Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-            Record record = this.asClient.getHeader(this.policy, asKey);
-            long now = (System.currentTimeMillis() - AS_TIME_OFFSET) / 1000;
-            long exp = record.expiration;
-            long TTL = (exp - now);
-            return TTL;
-        } catch (AerospikeException e){
-            if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR){
-                return -2L;
-            } else {
-                throw e;
-            }
-        }
+        long millis = remaining("TTL", key);
+        return (millis < 0) ? millis : (millis + 500) / 1000;
     }
 
 
-
     public long pttl(String key) {
-        return ttl(key) * 1000;
+        return remaining("PTTL", key);
+    }
+
+    /*
+     * Milliseconds key has left, -2 when it does not exist and -1 when it does not expire. The
+     * precise expiry deadline when there is one, else the server TTL in whole seconds.
+     */
+    private long remaining(String command, Object key) {
+        Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
+        Record record;
+        try {
+            record = metered(command, asKey, null, () -> this.preciseExpiry
+                    ? live(asKey, key, this.asClient.get(this.policy, asKey, DEADLINE_BIN))
+                    : this.asClient.getHeader(this.policy, asKey));
+        } catch (AerospikeException e){
+            if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR)
+                return -2L;
+            throw e;
+        }
+        if (record == null)
+            return -2L;
+        if (record.getValue(DEADLINE_BIN) == null && record.expiration == 0)
+            return -1L;
+        return Math.max(0, expireAtMillis(record) - System.currentTimeMillis());
     }
 
 
@@ -380,19 +1696,72 @@ public class AedisClient {
 
 
     public long incrBy(Object key, long increment) {
+        CounterBuffer counters = this.counters;
+        if (counters != null)
+            return counters.incrBy(key, null, increment);
+        return incrByNow("INCRBY", key, increment);
+    }
+
+    private long incrByNow(Object key, long increment) {
+        return incrByNow("INCRBY", key, increment);
+    }
+
+    private long incrByNow(String command, Object key, long increment) {
         Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-        Bin keyBin = new Bin(this.keyBin , key);
         Bin addBin = new Bin(this.redisBin, Value.get(increment));
         WritePolicy wp = new WritePolicy();
         wp.recordExistsAction = RecordExistsAction.UPDATE;
-        Record record = this.asClient.operate(wp, asKey, Operation.put(keyBin), Operation.add(addBin), Operation.get(this.redisBin));
-        return record.getInt(this.redisBin);
+        long value = metered(command, asKey, null, () -> {
+            if (this.preciseExpiry)
+                return incrLive(asKey, key, wp, increment);
+            return this.asClient.operate(wp, asKey, keyed(key, Operation.add(addBin), Operation.get(this.redisBin))).getLong(this.redisBin);
+        });
+        invalidate(key);
+        return value;
+    }
+
+    /*
+     * INCRBY in precise expiry mode. The add reads the deadline too: when it landed on a key
+     * past its deadline the key is replaced by a counter of increment with no deadline, unless
+     * it was written since, which makes the increment start over.
+     */
+    private long incrLive(Key asKey, Object key, WritePolicy wp, long increment){
+        for (int attempt = 0; ; attempt++){
+            Record record;
+            try {
+                record = this.asClient.operate(wp, asKey, keyed(key,
+                        Operation.add(new Bin(this.redisBin, Value.get(increment))), Operation.get(this.redisBin), Operation.get(DEADLINE_BIN)));
+            } catch (AerospikeException e) {
+                // a value of another type past its deadline is replaced as well
+                if (e.getResultCode() != ResultCode.BIN_TYPE_ERROR)
+                    throw e;
+                record = this.asClient.get(this.policy, asKey, DEADLINE_BIN);
+                if (record == null)
+                    continue;
+                if (!expired(record))
+                    throw e;
+            }
+            if (!expired(record))
+                return record.getLong(this.redisBin);
+            WritePolicy replace = new WritePolicy(this.writePolicy);
+            replace.recordExistsAction = RecordExistsAction.REPLACE;
+            replace.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+            replace.generation = record.generation;
+            try {
+                put(replace, asKey, Value.get(key), new Bin(this.redisBin, Value.get(increment)));
+                return increment;
+            } catch (AerospikeException e) {
+                if (e.getResultCode() != ResultCode.GENERATION_ERROR || attempt >= MAX_GENERATION_RETRIES)
+                    throw e;
+            }
+        }
     }
 
     public double incrByFloat(Object key, double value) {
         Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-        Object ret = this.asClient.execute(this.writePolicy, asKey, "redis", "INCRBYFLOAT", Value.get(this.redisBin), Value.get(value));
-        return (Double) ret;
+        Object ret = metered("INCRBYFLOAT", asKey, null, () -> this.asClient.execute(this.writePolicy, asKey, "redis", "INCRBYFLOAT", Value.get(this.redisBin), Value.get(value)));
+        invalidate(key);
+        return ValueCodecs.toDouble(ret);
     }
 
 
@@ -402,32 +1771,83 @@ public class AedisClient {
 
 
     public long decrBy(Object key, long i) {
-        Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-        Bin keyBin = new Bin(this.keyBin , key);
-        Bin addBin = new Bin(this.redisBin, -i);
-        WritePolicy wp = new WritePolicy();
-        wp.recordExistsAction = RecordExistsAction.UPDATE;
-        Record record = this.asClient.operate(wp, asKey, Operation.put(keyBin), Operation.add(addBin), Operation.get(this.redisBin));
-        return record.getInt(this.redisBin);
+        CounterBuffer counters = this.counters;
+        if (counters != null)
+            return counters.incrBy(key, null, -i);
+        return incrByNow("DECRBY", key, -i);
     }
 
 
+    /*
+     * One operate: the reads run before the writes, so they return the previous value and, in
+     * precise expiry mode, its deadline, which the write clears.
+     */
     public Object getSet(Object key, Object value) {
         Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-        return this.asClient.execute(this.writePolicy, asKey, "redis", "GETSET", Value.get(this.redisBin), Value.get(value));
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = RecordExistsAction.UPDATE;
+        List<Operation> ops = new ArrayList<Operation>();
+        ops.add(Operation.get(this.redisBin));
+        if (this.preciseExpiry) {
+            ops.add(Operation.get(DEADLINE_BIN));
+            ops.add(Operation.put(Bin.asNull(DEADLINE_BIN)));
+        }
+        if (this.writeKeyBin)
+            ops.add(Operation.put(new Bin(this.keyBin, Value.get(key))));
+        ops.add(Operation.put(new Bin(this.redisBin, Value.get(compressed("GETSET", value)))));
+        Record record = metered("GETSET", asKey, value, () -> this.asClient.operate(wp, asKey, ops.toArray(new Operation[0])));
+        invalidate(key);
+        if (record == null)
+            return null;
+        Object deadline = record.getValue(DEADLINE_BIN);
+        if (deadline instanceof Number && ((Number) deadline).longValue() <= System.currentTimeMillis())
+            return null;
+        return decompressed("GETSET", record.getValue(this.redisBin));
     }
 
 
     public long append(Object key, Object value) {
         Key asKey = new Key(this.namespace, this.redisSet, Value.get(key));
-        Bin keyBin = new Bin(this.keyBin , key);
+        if (this.compression != null)
+            return metered("APPEND", asKey, value, () -> appendCompressed(asKey, key, ValueCodecs.string(value)));
         Bin appendBin = new Bin(this.redisBin, Value.get(value));
         WritePolicy wp = new WritePolicy();
         wp.recordExistsAction = RecordExistsAction.UPDATE;
-        Record record = this.asClient.operate(wp, asKey, Operation.put(keyBin), Operation.append(appendBin), Operation.get(this.redisBin));
+        Record record = metered("APPEND", asKey, value, () -> this.asClient.operate(wp, asKey, keyed(key, Operation.append(appendBin), Operation.get(this.redisBin))));
+        invalidate(key);
         return ((String)record.getValue(this.redisBin)).length();
     }
 
+    /*
+     * A compressed value can not be appended to on the server: it is read, appended to and
+     * written back unless it was written in between, which makes the append start over.
+     */
+    private long appendCompressed(Key asKey, Object key, String value) {
+        for (int attempt = 0; ; attempt++){
+            Record record = this.asClient.get(this.policy, asKey, this.redisBin);
+            String current = (record == null) ? null : decompressedString("APPEND", record.getValue(this.redisBin));
+            String appended = (current == null) ? value : current + value;
+            WritePolicy wp = new WritePolicy();
+            if (record == null) {
+                wp.recordExistsAction = RecordExistsAction.CREATE_ONLY;
+            } else {
+                wp.recordExistsAction = RecordExistsAction.UPDATE;
+                wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+                wp.generation = record.generation;
+            }
+            try {
+                this.asClient.operate(wp, asKey, keyed(key, Operation.put(new Bin(this.redisBin, Value.get(compressed("APPEND", appended))))));
+            } catch (AerospikeException e) {
+                int code = e.getResultCode();
+                if ((code != ResultCode.GENERATION_ERROR && code != ResultCode.KEY_EXISTS_ERROR) || attempt >= MAX_GENERATION_RETRIES)
+                    throw e;
+                continue;
+            }
+            invalidate(key);
+            return appended.length();
+        }
+    }
+
     public String getRange(String key, long startOffset, long endOffset) {
         String result = get(key);
         return result.substring((int) startOffset, (int) endOffset + 1);
@@ -450,195 +1870,522 @@ public class AedisClient {
      */
     public long rpush(String key, String value) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Long result =  (Long) this.asClient.execute(this.writePolicy, asKey, "redis", "RPUSH", Value.get(this.redisBin), Value.get(value));
-        return result.longValue();
+        return metered("RPUSH", asKey, value, () -> {
+            if (nativeLists())
+                return lists().rpush(asKey, compressed("RPUSH", value));
+            Long result =  (Long) this.asClient.execute(this.writePolicy, asKey, "redis", "RPUSH", Value.get(this.redisBin), Value.get(compressed("RPUSH", value)));
+            return result.longValue();
+        });
     }
 
 
     public long lpush(String key, String value) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Long result =  (Long) this.asClient.execute(this.writePolicy, asKey, "redis", "LPUSH", Value.get(this.redisBin), Value.get(value));
-        return result.longValue();
+        return metered("LPUSH", asKey, value, () -> {
+            if (nativeLists())
+                return lists().lpush(asKey, compressed("LPUSH", value));
+            Long result =  (Long) this.asClient.execute(this.writePolicy, asKey, "redis", "LPUSH", Value.get(this.redisBin), Value.get(compressed("LPUSH", value)));
+            return result.longValue();
+        });
     }
 
 
     public Long llen(String key) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Long result =  (Long) this.asClient.execute(this.writePolicy, asKey, "redis", "LLEN", Value.get(this.redisBin));
-        return result.longValue();
+        return metered("LLEN", asKey, null, () -> {
+            if (nativeLists())
+                return lists().llen(asKey);
+            Long result =  (Long) this.asClient.execute(this.writePolicy, asKey, "redis", "LLEN", Value.get(this.redisBin));
+            return result.longValue();
+        });
     }
 
 
     public List<String> lrange(String key, int low, int high) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        return (List<String>) this.asClient.execute(this.writePolicy, asKey, "redis", "LRANGE", Value.get(this.redisBin), Value.get(low), Value.get(high));
+        return metered("LRANGE", asKey, null, () -> {
+            if (nativeLists())
+                return strings("LRANGE", lists().lrange(asKey, low, high));
+            return strings("LRANGE", (List<?>) this.asClient.execute(this.writePolicy, asKey, "redis", "LRANGE", Value.get(this.redisBin), Value.get(low), Value.get(high)));
+        });
     }
 
 
     public String ltrim(String key, int start, int stop) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        return (String) this.asClient.execute(this.writePolicy, asKey, "redis", "LTRIM", Value.get(this.redisBin), Value.get(start), Value.get(stop));
+        return metered("LTRIM", asKey, null, () -> {
+            if (nativeLists())
+                return lists().ltrim(asKey, start, stop);
+            return (String) this.asClient.execute(this.writePolicy, asKey, "redis", "LTRIM", Value.get(this.redisBin), Value.get(start), Value.get(stop));
+        });
     }
 
 
     public String lset(String key, int index, String value) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        return (String) this.asClient.execute(this.writePolicy, asKey, "redis", "LSET", Value.get(this.redisBin), Value.get(index), Value.get(value));
+        return metered("LSET", asKey, value, () -> {
+            if (nativeLists())
+                return lists().lset(asKey, index, compressed("LSET", value));
+            return (String) this.asClient.execute(this.writePolicy, asKey, "redis", "LSET", Value.get(this.redisBin), Value.get(index), Value.get(compressed("LSET", value)));
+        });
     }
 
 
     public Object lindex(String key, int index) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        return this.asClient.execute(this.writePolicy, asKey, "redis", "LINDEX", Value.get(this.redisBin), Value.get(index));
+        return metered("LINDEX", asKey, null, () -> {
+            if (nativeLists())
+                return decompressed("LINDEX", lists().lindex(asKey, index));
+            return decompressed("LINDEX", this.asClient.execute(this.writePolicy, asKey, "redis", "LINDEX", Value.get(this.redisBin), Value.get(index)));
+        });
     }
 
 
     public Long lrem(String key, int index, String value) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Object result =  this.asClient.execute(this.writePolicy, asKey, "redis", "LREM", Value.get(this.redisBin), Value.get(index), Value.get(value));
-        return ((Long)result).longValue();
+        return metered("LREM", asKey, value, () -> {
+            if (this.listMode == CommandMode.SHARDED)
+                return this.shardedLists.lrem(asKey, index, compressed("LREM", value));
+            Object result =  this.asClient.execute(this.writePolicy, asKey, "redis", "LREM", Value.get(this.redisBin), Value.get(index), Value.get(compressed("LREM", value)));
+            return ((Long)result).longValue();
+        });
     }
 
 
     public String lpop(String key) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        List<String> result = (List<String>) this.asClient.execute(this.writePolicy, asKey, "redis", "LPOP", Value.get(this.redisBin), Value.get(1));
-        if (result.size() == 0) return null;
-        return result.get(0);
+        return metered("LPOP", asKey, null, () -> {
+            if (nativeLists())
+                return decompressedString("LPOP", lists().pop(asKey, 0));
+            List<Object> result = (List<Object>) this.asClient.execute(this.writePolicy, asKey, "redis", "LPOP", Value.get(this.redisBin), Value.get(1));
+            if (result == null || result.size() == 0) return null;
+            return decompressedString("LPOP", result.get(0));
+        });
     }
 
 
     public String rpop(String key) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        List<String> result = (List<String>) this.asClient.execute(this.writePolicy, asKey, "redis", "RPOP", Value.get(this.redisBin), Value.get(1));
-        if (result == null || result.size() == 0) return null;
-        return result.get(0);	}
+        return metered("RPOP", asKey, null, () -> {
+            if (nativeLists())
+                return decompressedString("RPOP", lists().pop(asKey, -1));
+            List<Object> result = (List<Object>) this.asClient.execute(this.writePolicy, asKey, "redis", "RPOP", Value.get(this.redisBin), Value.get(1));
+            if (result == null || result.size() == 0) return null;
+            return decompressedString("RPOP", result.get(0));
+        });
+    }
 
 
+    /*
+     * Safe against losing the element, see NativeLists.rpoplpush. UDF mode lists have the same
+     * layout and move the same way.
+     */
     public String rpoplpush(String popKey, String pushKey) {
         Key asPopKey = new Key(this.namespace, this.redisSet, popKey);
         Key asPushKey = new Key(this.namespace, this.redisSet, pushKey);
-        List poppedValue = (List) this.asClient.execute(this.writePolicy, asPopKey, "redis", "RPOP", Value.get(this.redisBin), Value.get(1));
-        this.asClient.execute(this.writePolicy, asPushKey, "redis", "LPUSH", Value.get(this.redisBin), Value.get(poppedValue.get(0)));
-        return poppedValue.get(0).toString();
+        return metered("RPOPLPUSH", asPopKey, null, () -> decompressedString("RPOPLPUSH", (nativeLists() ? lists() : this.nativeLists).rpoplpush(asPopKey, asPushKey)));
     }
 
 
     public long lpushx(String key, String value) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "LPUSHX", Value.get(this.redisBin), Value.get(value));
-        return ((Long)result).longValue();
+        return metered("LPUSHX", asKey, value, () -> {
+            if (nativeLists())
+                return lists().lpushx(asKey, compressed("LPUSHX", value));
+            Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "LPUSHX", Value.get(this.redisBin), Value.get(compressed("LPUSHX", value)));
+            return ((Long)result).longValue();
+        });
     }
 
 
     public long rpushx(String key, String value) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "RPUSHX", Value.get(this.redisBin), Value.get(value));
-        return ((Long)result).longValue();
+        return metered("RPUSHX", asKey, value, () -> {
+            if (nativeLists())
+                return lists().rpushx(asKey, compressed("RPUSHX", value));
+            Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "RPUSHX", Value.get(this.redisBin), Value.get(compressed("RPUSHX", value)));
+            return ((Long)result).longValue();
+        });
     }
 
     public long linsert(String key, LIST_POSITION position, String piviot,
                         String value) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Object result =  this.asClient.execute(this.writePolicy, asKey, "redis", "LINSERT", Value.get(this.redisBin),
-                Value.get(position.toString()), Value.get(piviot), Value.get(value));
-        return ((Long)result).longValue();
+        return metered("LINSERT", asKey, value, () -> {
+            if (this.listMode == CommandMode.SHARDED)
+                return this.shardedLists.linsert(asKey, position == LIST_POSITION.BEFORE, compressed("LINSERT", piviot), compressed("LINSERT", value));
+            Object result =  this.asClient.execute(this.writePolicy, asKey, "redis", "LINSERT", Value.get(this.redisBin),
+                    Value.get(position.toString()), Value.get(compressed("LINSERT", piviot)), Value.get(compressed("LINSERT", value)));
+            return ((Long)result).longValue();
+        });
     }
 
     /*
      * Hash (Map) operations
     */
     public long hset(String key, String field, String value) {
+        return hsetObject(key, field, value);
+    }
+
+    public <T> long hset(String key, String field, T value, ValueCodec<T> codec) {
+        return hsetObject(key, field, codec.encode(value));
+    }
+
+    private long hsetObject(String key, String field, Object value) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("HSET", asKey, value, () -> {
+            Object stored = compressed("HSET", value);
+            if (nativeHashes()) {
+                long created = hashes().hset(asKey, field, stored);
+                invalidate(key);
+                return created;
+            }
+            Object result =  this.asClient.execute(this.writePolicy, asKey, "redis", "HSET", Value.get(this.redisBin),
+                    Value.get(field), Value.get(stored));
+            invalidate(key);
+            return ((Long) result).longValue();
+        });
+    }
+
+
+    /*
+     * Multi field HSET, returns the number of fields created. One round trip in native mode.
+     */
+    public long hset(String key, Map<String, String> hash) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Object result =  this.asClient.execute(this.writePolicy, asKey, "redis", "HSET", Value.get(this.redisBin),
-                Value.get(field), Value.get(value));
-        return ((Long) result).longValue();
+        return metered("HSET", asKey, hash, () -> {
+            long created = 0;
+            Map<String, Object> stored = compressedHash("HSET", hash);
+            if (nativeHashes()) {
+                created = hashes().hset(asKey, stored);
+            } else {
+                for (Map.Entry<String, Object> entry : stored.entrySet()){
+                    Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "HSET", Value.get(this.redisBin),
+                            Value.get(entry.getKey()), Value.get(entry.getValue()));
+                    created += ((Long) result).longValue();
+                }
+            }
+            invalidate(key);
+            return created;
+        });
     }
 
 
     public Object hget(String key, String field) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        return this.asClient.execute(this.writePolicy, asKey, "redis", "HGET", Value.get(this.redisBin),
-                Value.get(field));
+        return metered("HGET", asKey, null, () -> hget(asKey, key, field));
+    }
+
+    public <T> T hget(String key, String field, ValueCodec<T> codec) {
+        Object value = hget(key, field);
+        return (value == null) ? null : codec.decode(value);
+    }
+
+    public long hgetLong(String key, String field, long missing) {
+        Object value = hget(key, field);
+        return (value == null) ? missing : ValueCodecs.toLong(value);
+    }
+
+    private Object hget(Key asKey, String key, String field) {
+        NearCache cache = this.nearCache;
+        long stamp = 0;
+        if (cache != null) {
+            Object cached = cache.getField(key, field);
+            if (cached != null) return cached;
+            stamp = cache.stamp(key);
+        }
+        if (nativeHashes()) {
+            Record record = coalesced(key, "HGET", field, () -> hashRead(asKey, field));
+            Object value = (record == null) ? null : decompressed("HGET", record.getValue(this.redisBin));
+            if (cache != null && value != null)
+                cache.putField(key, stamp, field, value, cache.expireAt(expireAtMillis(record)));
+            return value;
+        }
+        Object value = decompressed("HGET", coalesced(key, "HGET", field, () -> this.asClient.execute(this.writePolicy, asKey, "redis", "HGET", Value.get(this.redisBin),
+                Value.get(field))));
+        if (cache != null && value != null)
+            cache.putField(key, stamp, field, value, cacheExpireAt(cache, asKey));
+        return value;
+    }
+
+    /*
+     * A NATIVE mode hash is one record, its HGET can be hedged like GET.
+     */
+    private Record hashRead(Key asKey, String field) {
+        HedgedReads hedged = this.hedgedReads;
+        if (hedged == null || this.hashMode != CommandMode.NATIVE)
+            return hashes().hget(asKey, field);
+        return hedged(hedged, asKey, () -> hashes().hget(asKey, field), (client, node, policy) -> {
+            try {
+                return client.operate(new WritePolicy(policy), asKey, node, MapOperation.getByKey(this.redisBin, Value.get(field), MapReturnType.VALUE));
+            } catch (AerospikeException e) {
+                if (NativeLists.isMissing(e))
+                    return null;
+                throw e;
+            }
+        });
+    }
+
+    /*
+     * UDF results carry no record metadata, the TTL is read with a header request on a cache miss.
+     */
+    private long cacheExpireAt(NearCache cache, Key asKey) {
+        Record header = this.asClient.getHeader(this.policy, asKey);
+        return cache.expireAt((header == null) ? 0 : expireAtMillis(header));
     }
 
 
     public long hsetnx(String key, String field, String value) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "HSETNX", Value.get(this.redisBin),
-                Value.get(field), Value.get(value));
-        return ((Long)result).longValue();
+        return metered("HSETNX", asKey, value, () -> {
+            Object stored = compressed("HSETNX", value);
+            if (nativeHashes()) {
+                long created = hashes().hsetnx(asKey, field, stored);
+                invalidate(key);
+                return created;
+            }
+            Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "HSETNX", Value.get(this.redisBin),
+                    Value.get(field), Value.get(stored));
+            invalidate(key);
+            return ((Long)result).longValue();
+        });
     }
 
 
     public String hmset(String key, Map<String, String> hash) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        return (String) this.asClient.execute(this.writePolicy, asKey, "redis", "HMSET", Value.get(this.redisBin),
-                Value.get(hash));
+        return metered("HMSET", asKey, hash, () -> {
+            String result;
+            Map<String, Object> stored = compressedHash("HMSET", hash);
+            if (nativeHashes())
+                result = hashes().hmset(asKey, stored);
+            else
+                result = (String) this.asClient.execute(this.writePolicy, asKey, "redis", "HMSET", Value.get(this.redisBin),
+                        Value.get(stored));
+            invalidate(key);
+            return result;
+        });
     }
 
 
-    @SuppressWarnings("unchecked")
     public List<String> hmget(String key, String ...fields) {
+        return hmget(ValueCodecs.STRING, key, fields);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> List<T> hmget(ValueCodec<T> codec, String key, String ...fields) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        List<Object> objects = (List<Object>) this.asClient.execute(this.writePolicy, asKey, "redis", "HMGET", Value.get(this.redisBin),
-                Value.get(new ArrayList<String>(Arrays.asList(fields))));
-        List<String> result = objects.stream().map(String::valueOf).collect(Collectors.toList());
-        return result;
+        return metered("HMGET", asKey, null, () -> {
+            List<Object> objects;
+            if (nativeHashes())
+                objects = hashes().hmget(asKey, fields);
+            else
+                objects = (List<Object>) this.asClient.execute(this.writePolicy, asKey, "redis", "HMGET", Value.get(this.redisBin),
+                        Value.get(new ArrayList<String>(Arrays.asList(fields))));
+            List<T> result = new ArrayList<T>(objects.size());
+            for (Object o : objects){
+                result.add((o == null) ? null : codec.decode(decompressed("HMGET", o)));
+            }
+            return result;
+        });
     }
 
 
     public long hincrBy(String key, String field, long increment) {
+        CounterBuffer counters = this.counters;
+        if (counters != null)
+            return counters.incrBy(key, field, increment);
+        return hincrByNow(key, field, increment);
+    }
+
+    private long hincrByNow(String key, String field, long increment) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "HINCRBY", Value.get(this.redisBin),
-                Value.get(field), Value.get(increment));
-        return ((Long) result).longValue();
+        return metered("HINCRBY", asKey, null, () -> {
+            if (nativeHashes()) {
+                long value = hashes().hincrBy(asKey, field, increment);
+                invalidate(key);
+                return value;
+            }
+            Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "HINCRBY", Value.get(this.redisBin),
+                    Value.get(field), Value.get(increment));
+            invalidate(key);
+            return ((Long) result).longValue();
+        });
     }
 
 
     public boolean hexists(String key, String field) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Integer result = (Integer) this.asClient.execute(this.writePolicy, asKey, "redis", "HEXISTS", Value.get(this.redisBin),
-                Value.get(field));
-        return (result == 1);
+        return metered("HEXISTS", asKey, null, () -> {
+            if (nativeHashes())
+                return hashes().hexists(asKey, field);
+            Integer result = (Integer) this.asClient.execute(this.writePolicy, asKey, "redis", "HEXISTS", Value.get(this.redisBin),
+                    Value.get(field));
+            return (result == 1);
+        });
     }
 
 
     public Long hdel(String key, String field) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "HDEL", Value.get(this.redisBin),
-                Value.get(field));
-        return ((Long)result).longValue();
+        return metered("HDEL", asKey, null, () -> {
+            if (nativeHashes()) {
+                long removed = hashes().hdel(asKey, field);
+                invalidate(key);
+                return removed;
+            }
+            Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "HDEL", Value.get(this.redisBin),
+                    Value.get(field));
+            invalidate(key);
+            return ((Long)result).longValue();
+        });
+    }
+
+
+    /*
+     * Multi field HDEL, returns the number of fields removed. One round trip in native mode.
+     */
+    public Long hdel(String key, String ...fields) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("HDEL", asKey, null, () -> {
+            long removed = 0;
+            if (nativeHashes()) {
+                removed = hashes().hdel(asKey, fields);
+            } else {
+                for (String field : fields){
+                    Object result = this.asClient.execute(this.writePolicy, asKey, "redis", "HDEL", Value.get(this.redisBin),
+                            Value.get(field));
+                    removed += ((Long) result).longValue();
+                }
+            }
+            invalidate(key);
+            return removed;
+        });
     }
 
 
     public Long hlen(String key) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        Object result =  this.asClient.execute(this.writePolicy, asKey, "redis", "HLEN", Value.get(this.redisBin));
-        return ((Long)result).longValue();
+        return metered("HLEN", asKey, null, () -> {
+            if (nativeHashes())
+                return hashes().hlen(asKey);
+            Object result =  this.asClient.execute(this.writePolicy, asKey, "redis", "HLEN", Value.get(this.redisBin));
+            return ((Long)result).longValue();
+        });
     }
 
 
     @SuppressWarnings("unchecked")
     public Set<String> hkeys(String key) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        List<String> result = (List<String>) this.asClient.execute(this.writePolicy, asKey, "redis", "HKEYS", Value.get(this.redisBin));
-        return new HashSet<String>(result);
+        return metered("HKEYS", asKey, null, () -> {
+            if (nativeHashes())
+                return hashes().hkeys(asKey).stream().map(String::valueOf).collect(Collectors.toSet());
+            List<String> result = (List<String>) this.asClient.execute(this.writePolicy, asKey, "redis", "HKEYS", Value.get(this.redisBin));
+            return new HashSet<String>(result);
+        });
     }
 
 
     @SuppressWarnings("unchecked")
     public List<String> hvals(String key) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        List<Object> objects = (List<Object>) this.asClient.execute(this.writePolicy, asKey, "redis", "HVALS", Value.get(this.redisBin));
-        List<String> result = objects.stream().map(String::valueOf).collect(Collectors.toList());
-        return result;
+        return metered("HVALS", asKey, null, () -> {
+            List<Object> objects;
+            if (nativeHashes())
+                objects = hashes().hvals(asKey);
+            else
+                objects = (List<Object>) this.asClient.execute(this.writePolicy, asKey, "redis", "HVALS", Value.get(this.redisBin));
+            List<String> result = objects.stream().map(o -> decompressedString("HVALS", o)).collect(Collectors.toList());
+            return result;
+        });
     }
 
 
     public Map<String, String> hgetAll(String key) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        List<Object> result = (List<Object>) this.asClient.execute(this.writePolicy, asKey, "redis", "HGETALL", Value.get(this.redisBin));
+        return metered("HGETALL", asKey, null, () -> hgetAll(asKey, key));
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> hgetAll(Key asKey, String key) {
+        NearCache cache = this.nearCache;
+        long stamp = 0;
+        if (cache != null) {
+            Map<String, String> cached = cache.getHash(key);
+            if (cached != null) return cached;
+            stamp = cache.stamp(key);
+        }
+        if (nativeHashes()) {
+            Record record = coalesced(key, "HGETALL", null, () -> hashes().hgetAll(asKey));
+            Map<String, String> hash = new HashMap<String, String>();
+            Map<?, ?> map = (record == null) ? null : record.getMap(this.redisBin);
+            if (map != null) {
+                for (Map.Entry<?, ?> entry : map.entrySet()){
+                    hash.put(String.valueOf(entry.getKey()), decompressedString("HGETALL", entry.getValue()));
+                }
+            }
+            if (cache != null && !hash.isEmpty())
+                cache.putHash(key, stamp, hash, cache.expireAt(expireAtMillis(record)));
+            return hash;
+        }
+        List<Object> result = coalesced(key, "HGETALL", null, () -> (List<Object>) this.asClient.execute(this.writePolicy, asKey, "redis", "HGETALL", Value.get(this.redisBin)));
+        Map<String, String> hash = toHash(decompressedFields("HGETALL", result));
+        if (cache != null && !hash.isEmpty())
+            cache.putHash(key, stamp, hash, cacheExpireAt(cache, asKey));
+        return hash;
+    }
+
+
+    /*
+     * The hash with its values as stored (Long for counters, String otherwise), no string
+     * conversion in native mode.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> hgetAllObjects(String key) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("HGETALL", asKey, null, () -> {
+            Map<String, Object> hash = new HashMap<String, Object>();
+            if (nativeHashes()) {
+                Record record = hashes().hgetAll(asKey);
+                Map<?, ?> map = (record == null) ? null : record.getMap(this.redisBin);
+                if (map != null) {
+                    for (Map.Entry<?, ?> entry : map.entrySet()){
+                        hash.put(String.valueOf(entry.getKey()), decompressed("HGETALL", entry.getValue()));
+                    }
+                }
+                return hash;
+            }
+            List<Object> result = (List<Object>) this.asClient.execute(this.writePolicy, asKey, "redis", "HGETALL", Value.get(this.redisBin));
+            for (int i = 0; i + 1 < result.size(); i += 2){
+                hash.put(String.valueOf(result.get(i)), decompressed("HGETALL", result.get(i + 1)));
+            }
+            return hash;
+        });
+    }
+
+    public <T> Map<String, T> hgetAll(String key, ValueCodec<T> codec) {
+        Map<String, T> hash = new HashMap<String, T>();
+        for (Map.Entry<String, Object> entry : hgetAllObjects(key).entrySet()){
+            hash.put(entry.getKey(), codec.decode(entry.getValue()));
+        }
+        return hash;
+    }
+
+    /*
+     * A UDF HGETALL result, field value pairs, with its values decompressed.
+     */
+    List<Object> decompressedFields(String command, List<Object> result){
+        if (this.compression == null)
+            return result;
+        List<Object> fields = new ArrayList<Object>(result);
+        for (int i = 1; i < fields.size(); i += 2){
+            fields.set(i, decompressed(command, fields.get(i)));
+        }
+        return fields;
+    }
+
+    static Map<String, String> toHash(List<Object> result) {
         List<String> kvList = new ArrayList<>();
         for (Object s : result) {
             kvList.add(String.valueOf(s));
@@ -663,8 +2410,211 @@ public class AedisClient {
 
     public Double hincrByFloat(String key, String field, double value) {
         Key asKey = new Key(this.namespace, this.redisSet, key);
-        return (Double) this.asClient.execute(this.writePolicy, asKey, "redis", "HINCRBY", Value.get(this.redisBin),
-                Value.get(field), Value.get(value));
+        return metered("HINCRBYFLOAT", asKey, null, () -> {
+            if (nativeHashes()) {
+                double result = hashes().hincrByFloat(asKey, field, value);
+                invalidate(key);
+                return result;
+            }
+            Double result = (Double) this.asClient.execute(this.writePolicy, asKey, "redis", "HINCRBY", Value.get(this.redisBin),
+                    Value.get(field), Value.get(value));
+            invalidate(key);
+            return result;
+        });
+    }
+
+
+    public Long zadd(String key, double score, String member) {
+        return zadd(key, Collections.singletonMap(member, score));
+    }
+
+
+    /*
+     * Number of members added, members already in the set get their score updated.
+     */
+    public Long zadd(String key, Map<String, Double> scoreMembers) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("ZADD", asKey, scoreMembers, () -> sortedSets().zadd(asKey, scoreMembers));
+    }
+
+
+    public Double zincrby(String key, double increment, String member) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("ZINCRBY", asKey, null, () -> sortedSets().zincrby(asKey, member, increment));
+    }
+
+
+    public Double zscore(String key, String member) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("ZSCORE", asKey, null, () -> sortedSets().zscore(asKey, member));
+    }
+
+
+    public List<String> zrange(String key, long start, long stop) {
+        return new ArrayList<String>(zrangeWithScores(key, start, stop).keySet());
+    }
+
+
+    public List<String> zrevrange(String key, long start, long stop) {
+        return new ArrayList<String>(zrevrangeWithScores(key, start, stop).keySet());
+    }
+
+
+    /*
+     * Members of the ranks [start, stop] mapped to their scores, in rank order.
+     */
+    public Map<String, Double> zrangeWithScores(String key, long start, long stop) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("ZRANGE", asKey, null, () -> sortedSets().zrange(asKey, start, stop, false));
+    }
+
+
+    public Map<String, Double> zrevrangeWithScores(String key, long start, long stop) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("ZREVRANGE", asKey, null, () -> sortedSets().zrange(asKey, start, stop, true));
+    }
+
+
+    public List<String> zrangeByScore(String key, double min, double max) {
+        return zrangeByScore(key, min, max, 0, -1);
+    }
+
+
+    /*
+     * LIMIT offset count of the members scored from min to max, a negative count for all of
+     * them. Exclusive bounds are Math.nextUp(min) and Math.nextDown(max).
+     */
+    public List<String> zrangeByScore(String key, double min, double max, int offset, int count) {
+        return new ArrayList<String>(zrangeByScoreWithScores(key, min, max, offset, count).keySet());
+    }
+
+
+    public Map<String, Double> zrangeByScoreWithScores(String key, double min, double max) {
+        return zrangeByScoreWithScores(key, min, max, 0, -1);
+    }
+
+
+    public Map<String, Double> zrangeByScoreWithScores(String key, double min, double max, int offset, int count) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("ZRANGEBYSCORE", asKey, null, () -> sortedSets().zrangeByScore(asKey, min, max, offset, count));
+    }
+
+
+    public Long zrank(String key, String member) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("ZRANK", asKey, null, () -> sortedSets().zrank(asKey, member, false));
+    }
+
+
+    public Long zrevrank(String key, String member) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("ZREVRANK", asKey, null, () -> sortedSets().zrank(asKey, member, true));
+    }
+
+
+    public Long zrem(String key, String... members) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("ZREM", asKey, null, () -> (members.length == 0) ? 0L : sortedSets().zrem(asKey, members));
+    }
+
+
+    public Long zcard(String key) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("ZCARD", asKey, null, () -> sortedSets().zcard(asKey));
+    }
+
+    /*
+     * HyperLogLog operations, see HyperLogLog: a sketch of at most 12 KB per key, whatever the
+     * cardinality. Client 3.3 has no HLL bin operations, so the sketch is a blob read, updated
+     * and written back with a generation check; a concurrent update makes the command start
+     * over. A PFADD that changes no register does not write.
+     */
+    public long pfadd(String key, String... members) {
+        Key asKey = new Key(this.namespace, this.redisSet, key);
+        return metered("PFADD", asKey, members, () -> updateSketch(asKey, key, sketch -> {
+            boolean changed = false;
+            for (String member : members){
+                changed |= sketch.add(member);
+            }
+            return changed;
+        }));
+    }
+
+    /*
+     * Estimated cardinality of the union of the keys, read with one batch and merged here.
+     */
+    public long pfcount(String... keys) {
+        if (keys.length == 0)
+            throw new AerospikeException(ResultCode.PARAMETER_ERROR, "PFCOUNT needs a key");
+        if (keys.length == 1) {
+            Key asKey = new Key(this.namespace, this.redisSet, keys[0]);
+            return metered("PFCOUNT", asKey, null, () -> {
+                Record record = readRecord(asKey, this.redisBin);
+                return HyperLogLog.parse((record == null) ? null : record.getValue(this.redisBin)).count();
+            });
+        }
+        return metered("PFCOUNT", null, null, () -> union(keys).count());
+    }
+
+    /*
+     * Stores the union of destKey and sourceKeys in destKey.
+     */
+    public String pfmerge(String destKey, String... sourceKeys) {
+        Key asKey = new Key(this.namespace, this.redisSet, destKey);
+        return metered("PFMERGE", asKey, null, () -> {
+            HyperLogLog sources = union(sourceKeys);
+            updateSketch(asKey, destKey, sketch -> {
+                sketch.merge(sources);
+                return true;
+            });
+            return "OK";
+        });
+    }
+
+    private HyperLogLog union(String... keys) {
+        HyperLogLog union = new HyperLogLog();
+        if (keys.length == 0)
+            return union;
+        Key[] asKeys = new Key[keys.length];
+        for (int i = 0; i < keys.length; i++){
+            asKeys[i] = new Key(this.namespace, this.redisSet, keys[i]);
+        }
+        for (Record record : batchRead(asKeys, this.redisBin)){
+            if (record != null)
+                union.merge(HyperLogLog.parse(record.getValue(this.redisBin)));
+        }
+        return union;
+    }
+
+    /*
+     * Applies update to the sketch of key and writes it back unless update changed nothing on
+     * an existing key. Returns 1 when written.
+     */
+    private long updateSketch(Key asKey, Object key, Predicate<HyperLogLog> update) {
+        for (int attempt = 0; ; attempt++){
+            Record record = this.asClient.get(this.policy, asKey, this.redisBin);
+            HyperLogLog sketch = HyperLogLog.parse((record == null) ? null : record.getValue(this.redisBin));
+            if (!update.test(sketch) && record != null)
+                return 0;
+            WritePolicy wp = new WritePolicy(this.writePolicy);
+            if (record == null) {
+                wp.recordExistsAction = RecordExistsAction.CREATE_ONLY;
+            } else {
+                wp.recordExistsAction = RecordExistsAction.UPDATE;
+                wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+                wp.generation = record.generation;
+            }
+            try {
+                put(wp, asKey, Value.get(key), new Bin(this.redisBin, sketch.serialize()));
+            } catch (AerospikeException e) {
+                int code = e.getResultCode();
+                if ((code != ResultCode.GENERATION_ERROR && code != ResultCode.KEY_EXISTS_ERROR) || attempt >= MAX_GENERATION_RETRIES)
+                    throw e;
+                continue;
+            }
+            invalidate(key);
+            return 1;
+        }
     }
 
 
@@ -0,0 +1,324 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.Host;
+import com.aerospike.client.policy.ClientPolicy;
+import com.zy.bigdata.aerospike.util.AerospikeConfigUtils;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Configures an {@link AedisClient} together with the aerospike {@link ClientPolicy} it owns:
+ * connection pool, socket idle time, tend interval, client thread pool and the timeouts and
+ * retries of each command kind.
+ *
+ * build() returns once the cluster is discovered and starts the warm up in the background,
+ * see {@link AedisClient#warmUp(int)}, instead of checking the UDF module synchronously like
+ * the address constructors do.
+ *
+ * Every setting can also be read from properties with the "aedis." prefix, e.g.
+ * aedis.hosts, aedis.maxConnsPerNode or aedis.readTimeout, so a flattened YAML or a system
+ * property file configures it without code.
+ */
+public final class AedisClientBuilder {
+
+    public static final String PREFIX = "aedis.";
+    public static final int DEFAULT_COMPRESSION_THRESHOLD = 4096;
+
+    private String hosts = "127.0.0.1:" + AerospikeConfigUtils.DEFAULT_AEROSPIKE_PORT;
+    private String namespace = "test";
+    private String set = null;
+    private final ClientPolicy clientPolicy = new ClientPolicy();
+    private int threads = 0;
+    private int readTimeout = 0;
+    private int writeTimeout = 0;
+    private int scanTimeout = 0;
+    private int maxRetries = -1;
+    private int sleepBetweenRetries = -1;
+    private int warmUpConnections = 0;
+    private Compressor compressor = null;
+    private int compressionThreshold = DEFAULT_COMPRESSION_THRESHOLD;
+    private boolean preciseExpiry = false;
+    private int databases = AedisClients.DEFAULT_DATABASES;
+
+    public AedisClientBuilder hosts(String hosts) {
+        this.hosts = hosts;
+        return this;
+    }
+
+    public AedisClientBuilder namespace(String namespace) {
+        this.namespace = namespace;
+        return this;
+    }
+
+    public AedisClientBuilder set(String set) {
+        this.set = set;
+        return this;
+    }
+
+    public AedisClientBuilder user(String user, String password) {
+        this.clientPolicy.user = user;
+        this.clientPolicy.password = password;
+        return this;
+    }
+
+    public AedisClientBuilder clusterName(String clusterName) {
+        this.clientPolicy.clusterName = clusterName;
+        return this;
+    }
+
+    /*
+     * Timeout of the initial cluster discovery, info requests and new connections.
+     */
+    public AedisClientBuilder connectTimeout(int millis) {
+        this.clientPolicy.timeout = millis;
+        return this;
+    }
+
+    /*
+     * Connections kept per node, 300 by default. Commands beyond it fail instead of waiting.
+     */
+    public AedisClientBuilder maxConnsPerNode(int connections) {
+        this.clientPolicy.maxConnsPerNode = connections;
+        return this;
+    }
+
+    /*
+     * Seconds a pooled connection may stay unused before it is closed, 55 by default; keep it
+     * below the server proto-fd-idle-ms.
+     */
+    public AedisClientBuilder maxSocketIdle(int seconds) {
+        this.clientPolicy.maxSocketIdle = seconds;
+        return this;
+    }
+
+    public AedisClientBuilder tendInterval(int millis) {
+        this.clientPolicy.tendInterval = millis;
+        return this;
+    }
+
+    public AedisClientBuilder failIfNotConnected(boolean fail) {
+        this.clientPolicy.failIfNotConnected = fail;
+        return this;
+    }
+
+    /*
+     * Tracks the nodes of every replica of each partition, not only the master, so hedged
+     * reads can go to another copy, see AedisClient#enableHedgedReads.
+     */
+    public AedisClientBuilder requestProleReplicas(boolean request) {
+        this.clientPolicy.requestProleReplicas = request;
+        return this;
+    }
+
+    /*
+     * Size of the client thread pool running batch, scan and multi key commands, a cached
+     * pool by default.
+     */
+    public AedisClientBuilder threads(int threads) {
+        this.threads = threads;
+        return this;
+    }
+
+    /*
+     * Sets the read, write and scan timeouts at once, like AedisClient.setTimeout.
+     */
+    public AedisClientBuilder timeout(int millis) {
+        this.readTimeout = millis;
+        this.writeTimeout = millis;
+        this.scanTimeout = millis;
+        return this;
+    }
+
+    public AedisClientBuilder readTimeout(int millis) {
+        this.readTimeout = millis;
+        return this;
+    }
+
+    public AedisClientBuilder writeTimeout(int millis) {
+        this.writeTimeout = millis;
+        return this;
+    }
+
+    public AedisClientBuilder scanTimeout(int millis) {
+        this.scanTimeout = millis;
+        return this;
+    }
+
+    public AedisClientBuilder maxRetries(int retries) {
+        this.maxRetries = retries;
+        return this;
+    }
+
+    public AedisClientBuilder sleepBetweenRetries(int millis) {
+        this.sleepBetweenRetries = millis;
+        return this;
+    }
+
+    /*
+     * Connections opened to every node by the warm up, none by default: the warm up then only
+     * checks the UDF module.
+     */
+    public AedisClientBuilder warmUpConnections(int connections) {
+        this.warmUpConnections = connections;
+        return this;
+    }
+
+    /*
+     * Values of at least thresholdBytes are stored compressed, see AedisClient#enableCompression.
+     * The properties are aedis.compression (deflate or zstd), aedis.compressionLevel and
+     * aedis.compressionThreshold.
+     */
+    public AedisClientBuilder compression(Compressor compressor, int thresholdBytes) {
+        this.compressor = compressor;
+        this.compressionThreshold = thresholdBytes;
+        return this;
+    }
+
+    /*
+     * See AedisClient#setPreciseExpiry.
+     */
+    public AedisClientBuilder preciseExpiry(boolean preciseExpiry) {
+        this.preciseExpiry = preciseExpiry;
+        return this;
+    }
+
+    /*
+     * Number of databases of the registry built by buildShared, 16 by default.
+     */
+    public AedisClientBuilder databases(int databases) {
+        this.databases = databases;
+        return this;
+    }
+
+    private static Compressor compressor(String name, String level) {
+        switch (name.toLowerCase()) {
+            case "deflate":
+                return Compressors.deflate((level == null) ? Compressors.DEFAULT_DEFLATE_LEVEL : Integer.parseInt(level));
+            case "zstd":
+                return Compressors.zstd((level == null) ? Compressors.DEFAULT_ZSTD_LEVEL : Integer.parseInt(level));
+            case "none":
+                return null;
+            default:
+                throw new IllegalArgumentException("unknown compression " + name);
+        }
+    }
+
+    /*
+     * Applies the settings found in properties under the "aedis." prefix, others keep their
+     * current value.
+     */
+    public AedisClientBuilder properties(Properties properties) {
+        String value;
+        if ((value = property(properties, "hosts")) != null) hosts(value);
+        if ((value = property(properties, "namespace")) != null) namespace(value);
+        if ((value = property(properties, "set")) != null) set(value);
+        if ((value = property(properties, "user")) != null) user(value, property(properties, "password"));
+        if ((value = property(properties, "clusterName")) != null) clusterName(value);
+        if ((value = property(properties, "connectTimeout")) != null) connectTimeout(Integer.parseInt(value));
+        if ((value = property(properties, "maxConnsPerNode")) != null) maxConnsPerNode(Integer.parseInt(value));
+        if ((value = property(properties, "maxSocketIdle")) != null) maxSocketIdle(Integer.parseInt(value));
+        if ((value = property(properties, "tendInterval")) != null) tendInterval(Integer.parseInt(value));
+        if ((value = property(properties, "failIfNotConnected")) != null) failIfNotConnected(Boolean.parseBoolean(value));
+        if ((value = property(properties, "requestProleReplicas")) != null) requestProleReplicas(Boolean.parseBoolean(value));
+        if ((value = property(properties, "clientThreads")) != null) threads(Integer.parseInt(value));
+        if ((value = property(properties, "timeout")) != null) timeout(Integer.parseInt(value));
+        if ((value = property(properties, "readTimeout")) != null) readTimeout(Integer.parseInt(value));
+        if ((value = property(properties, "writeTimeout")) != null) writeTimeout(Integer.parseInt(value));
+        if ((value = property(properties, "scanTimeout")) != null) scanTimeout(Integer.parseInt(value));
+        if ((value = property(properties, "maxRetries")) != null) maxRetries(Integer.parseInt(value));
+        if ((value = property(properties, "sleepBetweenRetries")) != null) sleepBetweenRetries(Integer.parseInt(value));
+        if ((value = property(properties, "warmUpConnections")) != null) warmUpConnections(Integer.parseInt(value));
+        if ((value = property(properties, "preciseExpiry")) != null) preciseExpiry(Boolean.parseBoolean(value));
+        if ((value = property(properties, "databases")) != null) databases(Integer.parseInt(value));
+        if ((value = property(properties, "compressionThreshold")) != null) this.compressionThreshold = Integer.parseInt(value);
+        if ((value = property(properties, "compression")) != null) this.compressor = compressor(value, property(properties, "compressionLevel"));
+        return this;
+    }
+
+    private static String property(Properties properties, String name) {
+        String value = properties.getProperty(PREFIX + name);
+        return (value == null || value.trim().isEmpty()) ? null : value.trim();
+    }
+
+    public static AedisClientBuilder fromProperties(Properties properties) {
+        return new AedisClientBuilder().properties(properties);
+    }
+
+    public String getHosts() {
+        return this.hosts;
+    }
+
+    public String getNamespace() {
+        return this.namespace;
+    }
+
+    public String getSet() {
+        return this.set;
+    }
+
+    /*
+     * Connects to the cluster and starts the warm up, AedisClient.warmedUp() tells when it is done.
+     */
+    public AedisClient build() {
+        ClientPolicy policy = clientPolicy();
+        List<Host> hostList = AerospikeConfigUtils.parseHosts(this.hosts);
+        AedisClient client = new AedisClient(new RoutingAerospikeClient(policy, hostList.toArray(new Host[hostList.size()])), this.namespace, this.set);
+        configure(client);
+        client.warmUp(Math.min(this.warmUpConnections, policy.maxConnsPerNode));
+        return client;
+    }
+
+    /*
+     * One client for any number of sets: views of the namespace and set of this builder, or of
+     * any other, share its connections, see AedisClients. Every view gets the timeouts,
+     * retries, compression and expiry mode configured here.
+     */
+    public AedisClients buildShared() {
+        ClientPolicy policy = clientPolicy();
+        List<Host> hostList = AerospikeConfigUtils.parseHosts(this.hosts);
+        AedisClients clients = new AedisClients(new RoutingAerospikeClient(policy, hostList.toArray(new Host[hostList.size()])),
+                this.namespace, this.set, this.databases, this::configure);
+        clients.warmUp(Math.min(this.warmUpConnections, policy.maxConnsPerNode));
+        return clients;
+    }
+
+    private void configure(AedisClient client) {
+        client.setTimeout(this.readTimeout, this.writeTimeout, this.scanTimeout);
+        if (this.maxRetries >= 0 || this.sleepBetweenRetries >= 0)
+            client.setRetries(this.maxRetries, this.sleepBetweenRetries);
+        if (this.compressor != null)
+            client.enableCompression(this.compressor, this.compressionThreshold);
+        client.setPreciseExpiry(this.preciseExpiry);
+    }
+
+    /*
+     * A copy, so one builder can build several clients.
+     */
+    private ClientPolicy clientPolicy() {
+        ClientPolicy policy = new ClientPolicy();
+        policy.user = this.clientPolicy.user;
+        policy.password = this.clientPolicy.password;
+        policy.clusterName = this.clientPolicy.clusterName;
+        policy.timeout = this.clientPolicy.timeout;
+        policy.maxConnsPerNode = this.clientPolicy.maxConnsPerNode;
+        policy.maxSocketIdle = this.clientPolicy.maxSocketIdle;
+        policy.tendInterval = this.clientPolicy.tendInterval;
+        policy.failIfNotConnected = this.clientPolicy.failIfNotConnected;
+        policy.requestProleReplicas = this.clientPolicy.requestProleReplicas;
+        if (this.threads > 0)
+            policy.threadPool = Executors.newFixedThreadPool(this.threads, daemonThreads());
+        return policy;
+    }
+
+    private static ThreadFactory daemonThreads() {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, "aedis-client-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,150 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.IAerospikeClient;
+import java.io.Closeable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * {@link AedisClient}s of any number of namespaces and sets sharing one aerospike client: one
+ * tend thread, one connection pool per node, one UDF check and one cluster statistics cache,
+ * however many sets are used. Each view keeps its own policies, modes and caches, set up by the
+ * setup callback when it is first requested and tunable afterwards.
+ *
+ * Like Redis databases, database n of the default namespace is the set database(n): the
+ * default set for 0, the default set name (or "db" when there is none) followed by n otherwise.
+ * Closing a view only flushes what it buffers, close() of the registry closes the client.
+ */
+public final class AedisClients implements Closeable {
+
+    public static final int DEFAULT_DATABASES = 16;
+
+    private final IAerospikeClient client;
+    private final String namespace;
+    private final String set;
+    private final int databases;
+    private final Consumer<AedisClient> setup;
+    private final ClusterStats clusterStats;
+    private final ConcurrentHashMap<Map.Entry<String, String>, AedisClient> views = new ConcurrentHashMap<Map.Entry<String, String>, AedisClient>();
+    private volatile CompletableFuture<Void> warmUp = CompletableFuture.completedFuture(null);
+
+    /**
+     * @param namespace namespace of the databases
+     * @param set       set of database 0, null for the whole namespace
+     * @param databases number of databases select accepts
+     * @param setup     applied to every view once, before it is handed out; may be null
+     */
+    public AedisClients(IAerospikeClient client, String namespace, String set, int databases, Consumer<AedisClient> setup) {
+        if (databases < 1)
+            throw new IllegalArgumentException("databases must be positive");
+        this.client = client;
+        this.namespace = namespace;
+        this.set = set;
+        this.databases = databases;
+        this.setup = setup;
+        this.clusterStats = new ClusterStats(client);
+    }
+
+    public AedisClients(IAerospikeClient client, String namespace, String set) {
+        this(client, namespace, set, DEFAULT_DATABASES, null);
+    }
+
+    /*
+     * The view of set in namespace, the same instance on every call.
+     */
+    public AedisClient client(String namespace, String set) {
+        Map.Entry<String, String> id = new AbstractMap.SimpleImmutableEntry<String, String>(namespace, set);
+        AedisClient view = this.views.get(id);
+        return (view != null) ? view : this.views.computeIfAbsent(id, k -> create(namespace, set));
+    }
+
+    public AedisClient client(String set) {
+        return client(this.namespace, set);
+    }
+
+    /*
+     * The view of database db, see database(int).
+     */
+    public AedisClient select(int db) {
+        return client(this.namespace, database(db));
+    }
+
+    /*
+     * Set holding database db.
+     */
+    public String database(int db) {
+        if (db < 0 || db >= this.databases)
+            throw new IllegalArgumentException("DB index is out of range");
+        if (db == 0)
+            return this.set;
+        return ((this.set == null) ? "db" : this.set) + db;
+    }
+
+    private AedisClient create(String namespace, String set) {
+        AedisClient view = new AedisClient(this, this.client, namespace, set);
+        if (this.setup != null)
+            this.setup.accept(view);
+        return view;
+    }
+
+    /*
+     * Opens connectionsPerNode connections to every node and checks the UDF module once for
+     * all views, see AedisClient#warmUp.
+     */
+    public CompletableFuture<Void> warmUp(int connectionsPerNode) {
+        this.warmUp = client(this.namespace, this.set).warmUp(connectionsPerNode);
+        return this.warmUp;
+    }
+
+    public CompletableFuture<Void> warmedUp() {
+        return this.warmUp;
+    }
+
+    public Collection<AedisClient> views() {
+        return new ArrayList<AedisClient>(this.views.values());
+    }
+
+    public IAerospikeClient getAerospikeClient() {
+        return this.client;
+    }
+
+    public String getNamespace() {
+        return this.namespace;
+    }
+
+    public int getDatabases() {
+        return this.databases;
+    }
+
+    ClusterStats getClusterStats() {
+        return this.clusterStats;
+    }
+
+    /*
+     * Closes every view, flushing their buffered counters, then the shared client. A view that
+     * fails to close does not keep the others open, the first failure is rethrown at the end.
+     */
+    @Override
+    public void close() {
+        RuntimeException failure = null;
+        try {
+            for (AedisClient view : this.views.values()){
+                try {
+                    view.close();
+                } catch (RuntimeException e) {
+                    if (failure == null)
+                        failure = e;
+                }
+            }
+        } finally {
+            this.client.close();
+        }
+        if (failure != null)
+            throw failure;
+    }
+}
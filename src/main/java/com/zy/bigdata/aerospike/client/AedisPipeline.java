@@ -0,0 +1,246 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.Value;
+import java.util.*;
+import java.util.function.Supplier;
+
+/**
+ * Jedis style pipeline. Commands are only queued until {@link #sync()}, which dispatches them
+ * concurrently (grouped by owning node) and fills the returned {@link Response} handles.
+ *
+ * GETs are coalesced into one batch read. Commands on the same key keep their order: a GET
+ * queued after a write to the same key is read after that write completed.
+ */
+public class AedisPipeline {
+
+    private final AedisClient client;
+    private List<Command<?>> commands = new ArrayList<Command<?>>();
+
+    AedisPipeline(AedisClient client) {
+        this.client = client;
+    }
+
+    private static final class Command<T> {
+        final Object key;
+        final Value keyValue;
+        final Supplier<T> supplier; // null for a coalesced GET
+        final Response<T> response = new Response<T>();
+
+        Command(Object key, Supplier<T> supplier) {
+            this.key = key;
+            this.keyValue = Value.get(key);
+            this.supplier = supplier;
+        }
+
+        void run() {
+            try {
+                this.response.set(this.supplier.get());
+            } catch (RuntimeException e) {
+                this.response.fail(e);
+            }
+        }
+    }
+
+    private <T> Response<T> queue(Object key, Supplier<T> supplier) {
+        Command<T> command = new Command<T>(key, supplier);
+        this.commands.add(command);
+        return command.response;
+    }
+
+    public int size() {
+        return this.commands.size();
+    }
+
+    public void sync() {
+        List<Command<?>> queued = this.commands;
+        this.commands = new ArrayList<Command<?>>();
+        List<Command<?>> stage = new ArrayList<Command<?>>();
+        Set<Value> written = new HashSet<Value>();
+        for (Command<?> command : queued){
+            if (command.supplier == null && written.contains(command.keyValue)) {
+                flush(stage);
+                stage.clear();
+                written.clear();
+            }
+            stage.add(command);
+            if (command.supplier != null) written.add(command.keyValue);
+        }
+        flush(stage);
+    }
+
+    public List<Object> syncAndReturnAll() {
+        List<Command<?>> queued = this.commands;
+        sync();
+        List<Object> result = new ArrayList<Object>(queued.size());
+        for (Command<?> command : queued){
+            try {
+                result.add(command.response.get());
+            } catch (RuntimeException e) {
+                result.add(e);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void flush(List<Command<?>> stage) {
+        List<Command<String>> reads = new ArrayList<Command<String>>();
+        List<Command<?>> others = new ArrayList<Command<?>>();
+        for (Command<?> command : stage){
+            if (command.supplier == null)
+                reads.add((Command<String>) command);
+            else
+                others.add(command);
+        }
+        if (!reads.isEmpty()) {
+            Object[] keys = new Object[reads.size()];
+            for (int i = 0; i < keys.length; i++){
+                keys[i] = reads.get(i).key;
+            }
+            try {
+                List<String> values = this.client.mget(keys);
+                for (int i = 0; i < keys.length; i++){
+                    reads.get(i).response.set(values.get(i));
+                }
+            } catch (RuntimeException e) {
+                for (Command<String> read : reads){
+                    read.response.fail(e);
+                }
+            }
+        }
+        if (!others.isEmpty()) {
+            Object[] keys = new Object[others.size()];
+            for (int i = 0; i < keys.length; i++){
+                keys[i] = others.get(i).key;
+            }
+            this.client.executeEach(keys, (i, asKey) -> {
+                others.get(i).run();
+                return null;
+            });
+        }
+    }
+
+    /*
+     * String and key operations
+     */
+    public Response<String> get(Object key) {
+        return queue(key, null);
+    }
+
+    public Response<String> set(Object key, Object value) {
+        return queue(key, () -> this.client.set(key, value));
+    }
+
+    public Response<String> setex(Object key, int expiration, Object value) {
+        return queue(key, () -> this.client.setex(key, expiration, value));
+    }
+
+    public Response<Boolean> setnx(Object key, Object value) {
+        return queue(key, () -> this.client.setnx(key, value));
+    }
+
+    public Response<Long> append(Object key, Object value) {
+        return queue(key, () -> this.client.append(key, value));
+    }
+
+    public Response<Long> del(Object key) {
+        return queue(key, () -> this.client.del(key));
+    }
+
+    public Response<Boolean> exists(Object key) {
+        return queue(key, () -> this.client.exists(key));
+    }
+
+    public Response<Long> expire(Object key, long expiration) {
+        return queue(key, () -> this.client.expire(key, expiration));
+    }
+
+    public Response<Long> ttl(Object key) {
+        return queue(key, () -> this.client.ttl(key));
+    }
+
+    /*
+     * Counter operations
+     */
+    public Response<Long> incr(Object key) {
+        return queue(key, () -> this.client.incr(key));
+    }
+
+    public Response<Long> incrBy(Object key, long increment) {
+        return queue(key, () -> this.client.incrBy(key, increment));
+    }
+
+    public Response<Long> decr(Object key) {
+        return queue(key, () -> this.client.decr(key));
+    }
+
+    public Response<Long> decrBy(Object key, long decrement) {
+        return queue(key, () -> this.client.decrBy(key, decrement));
+    }
+
+    /*
+     * List operations
+     */
+    public Response<Long> lpush(String key, String value) {
+        return queue(key, () -> this.client.lpush(key, value));
+    }
+
+    public Response<Long> rpush(String key, String value) {
+        return queue(key, () -> this.client.rpush(key, value));
+    }
+
+    public Response<Long> llen(String key) {
+        return queue(key, () -> this.client.llen(key));
+    }
+
+    public Response<List<String>> lrange(String key, int low, int high) {
+        return queue(key, () -> this.client.lrange(key, low, high));
+    }
+
+    public Response<String> ltrim(String key, int start, int stop) {
+        return queue(key, () -> this.client.ltrim(key, start, stop));
+    }
+
+    public Response<String> lpop(String key) {
+        return queue(key, () -> this.client.lpop(key));
+    }
+
+    public Response<String> rpop(String key) {
+        return queue(key, () -> this.client.rpop(key));
+    }
+
+    /*
+     * Hash (Map) operations
+     */
+    public Response<Long> hset(String key, String field, String value) {
+        return queue(key, () -> this.client.hset(key, field, value));
+    }
+
+    public Response<Object> hget(String key, String field) {
+        return queue(key, () -> this.client.hget(key, field));
+    }
+
+    public Response<String> hmset(String key, Map<String, String> hash) {
+        return queue(key, () -> this.client.hmset(key, hash));
+    }
+
+    public Response<List<String>> hmget(String key, String... fields) {
+        return queue(key, () -> this.client.hmget(key, fields));
+    }
+
+    public Response<Long> hincrBy(String key, String field, long increment) {
+        return queue(key, () -> this.client.hincrBy(key, field, increment));
+    }
+
+    public Response<Long> hdel(String key, String field) {
+        return queue(key, () -> this.client.hdel(key, field));
+    }
+
+    public Response<Long> hlen(String key) {
+        return queue(key, () -> this.client.hlen(key));
+    }
+
+    public Response<Map<String, String>> hgetAll(String key) {
+        return queue(key, () -> this.client.hgetAll(key));
+    }
+}
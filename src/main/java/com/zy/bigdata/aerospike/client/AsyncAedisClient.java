@@ -0,0 +1,621 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.*;
+import com.aerospike.client.async.AsyncClient;
+import com.aerospike.client.async.AsyncClientPolicy;
+import com.aerospike.client.async.IAsyncClient;
+import com.aerospike.client.async.MaxCommandAction;
+import com.aerospike.client.listener.*;
+import com.aerospike.client.policy.*;
+import com.zy.bigdata.aerospike.util.AerospikeConfigUtils;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Non-blocking counterpart of {@link AedisClient}. Every command is handed to the
+ * aerospike async client (NIO selector threads) and completes a {@link CompletableFuture},
+ * so a caller can keep thousands of commands in flight without parking a thread per command.
+ *
+ * Continuations attached with thenApply/thenAccept run on the selector threads, they must
+ * not block; use the *Async variants with an executor for heavy work.
+ *
+ * Keys are laid out, compressed and expired the way the AedisClient it is built with stores
+ * them, and writes invalidate that client's near cache and coalesced reads. Commands that take
+ * several dependent round trips there fail fast with UnsupportedOperationException instead:
+ * list and hash commands outside UDF mode, DEL, EXPIRE and PERSIST when collections are
+ * sharded, and in precise expiry mode SETNX, SETXX and the counters; so does APPEND of
+ * compressed values.
+ */
+public class AsyncAedisClient {
+
+    public static final int DEFAULT_MAX_COMMANDS = 4096;
+
+    private IAsyncClient asClient;
+    private AedisClient client;
+    private WritePolicy writePolicy;
+    private Policy policy;
+    private BatchPolicy batchPolicy;
+    private String namespace;
+    private String redisBin = "redis-bin";
+    private String redisSet = null;
+
+    private AsyncAedisClient() {
+        this.writePolicy = new WritePolicy();
+        this.writePolicy.commitLevel = CommitLevel.COMMIT_ALL;
+        this.writePolicy.recordExistsAction = RecordExistsAction.REPLACE;
+        this.policy = new Policy();
+        this.batchPolicy = new BatchPolicy();
+    }
+
+    /**
+     * Wraps an existing async client, e.g. one shared with other components or an
+     * in-process stand-in implementing {@link IAsyncClient}. Keys are stored the way an
+     * AedisClient with default settings stores them. The redis.lua module is not registered,
+     * see AedisClient#warmUp.
+     */
+    public AsyncAedisClient(IAsyncClient asClient, String namespace, String set) {
+        this(asClient, new AedisClient(asClient, namespace, set));
+    }
+
+    /**
+     * Runs the commands of client, on the same cluster, without blocking: its namespace, set,
+     * list and hash modes, compression and expiry mode apply, and writes invalidate its near
+     * cache.
+     */
+    public AsyncAedisClient(IAsyncClient asClient, AedisClient client) {
+        this();
+        this.asClient = asClient;
+        this.client = client;
+        this.namespace = client.getNamespace();
+        this.redisSet = client.getSet();
+    }
+
+    public AsyncAedisClient(String addresses, String namespace, String set) {
+        this(addresses, namespace, set, 0, DEFAULT_MAX_COMMANDS);
+    }
+
+    public AsyncAedisClient(String addresses, String namespace, String set, final int timeout) {
+        this(addresses, namespace, set, timeout, DEFAULT_MAX_COMMANDS);
+    }
+
+    /**
+     * Connects to the cluster and, like AedisClient, registers the redis.lua module when it is
+     * missing or outdated.
+     *
+     * @param maxCommands upper bound of commands in flight, callers block once it is reached
+     */
+    public AsyncAedisClient(String addresses, String namespace, String set, final int timeout, final int maxCommands) {
+        this(new AsyncClient(asyncClientPolicy(maxCommands), toHosts(addresses)), namespace, set);
+        setTimeout(timeout);
+        this.client.checkUdfRegistration();
+    }
+
+    private static AsyncClientPolicy asyncClientPolicy(int maxCommands) {
+        AsyncClientPolicy clientPolicy = new AsyncClientPolicy();
+        clientPolicy.asyncMaxCommands = maxCommands;
+        clientPolicy.asyncMaxCommandAction = MaxCommandAction.BLOCK;
+        return clientPolicy;
+    }
+
+    private static Host[] toHosts(String addresses) {
+        List<Host> hostList = AerospikeConfigUtils.parseHosts(addresses);
+        return hostList.toArray(new Host[hostList.size()]);
+    }
+
+    public void setTimeout(int timeout){
+        this.policy.timeout = timeout;
+        this.writePolicy.timeout = timeout;
+        this.batchPolicy.timeout = timeout;
+    }
+
+    public void close() {
+        this.asClient.close();
+    }
+
+    private Key key(Object key) {
+        return new Key(this.namespace, this.redisSet, Value.get(key));
+    }
+
+    private static <F extends CompletableFuture<?>> F submit(F future, Consumer<F> command) {
+        try {
+            command.accept(future);
+        } catch (AerospikeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /*
+     * Maps the given aerospike result code to a value, any other failure is propagated.
+     */
+    private static <T> CompletableFuture<T> recover(CompletableFuture<T> future, int resultCode, T value) {
+        return future.handle((result, error) -> {
+            if (error == null)
+                return result;
+            Throwable cause = (error instanceof CompletionException && error.getCause() != null) ? error.getCause() : error;
+            if (cause instanceof AerospikeException && ((AerospikeException) cause).getResultCode() == resultCode)
+                return value;
+            throw (cause instanceof RuntimeException) ? (RuntimeException) cause : new CompletionException(cause);
+        });
+    }
+
+    /*
+     * Drops key from the near cache and coalesced reads of the client once the write is done.
+     */
+    private <T> CompletableFuture<T> invalidating(Object key, CompletableFuture<T> write) {
+        return write.whenComplete((result, error) -> this.client.invalidate(key));
+    }
+
+    private static void require(boolean supported, String command, String reason) {
+        if (!supported)
+            throw new UnsupportedOperationException(command + " is not supported asynchronously " + reason + ", use AedisClient");
+    }
+
+    private void requireUdfLists(String command) {
+        require(this.client.getListMode() == CommandMode.UDF, command, "in " + this.client.getListMode() + " list mode");
+    }
+
+    private void requireUdfHashes(String command) {
+        require(this.client.getHashMode() == CommandMode.UDF, command, "in " + this.client.getHashMode() + " hash mode");
+    }
+
+    private void requireUnsharded(String command) {
+        require(!this.client.sharded(), command, "with sharded collections");
+    }
+
+    private void requireSecondExpiry(String command) {
+        require(!this.client.isPreciseExpiry(), command, "in precise expiry mode");
+    }
+
+    private String[] valueBins() {
+        return this.client.isPreciseExpiry() ? new String[]{this.redisBin, AedisClient.DEADLINE_BIN} : new String[]{this.redisBin};
+    }
+
+    /*
+     * The value of a GET or MGET record, null when it is missing or past its millisecond
+     * deadline; such a key is left to the server TTL or the next synchronous read.
+     */
+    private String value(String command, Record record) {
+        if (record == null || AedisClient.expired(record))
+            return null;
+        return this.client.decompressedString(command, record.getValue(this.redisBin));
+    }
+
+    private CompletableFuture<Object> udf(Object key, String function, Value... args) {
+        Key asKey = key(key);
+        return submit(new ExecuteFuture(), l -> this.asClient.execute(this.writePolicy, l, asKey, "redis", function, args));
+    }
+
+    private Value[] udfArgs(Value... args) {
+        Value[] values = new Value[args.length + 1];
+        values[0] = Value.get(this.redisBin);
+        System.arraycopy(args, 0, values, 1, args.length);
+        return values;
+    }
+
+    private static long toLong(Object result) {
+        return (result == null) ? 0L : ((Number) result).longValue();
+    }
+
+    /*
+     * String operations
+     */
+    public CompletableFuture<String> set(Object key, Object value) {
+        return set(null, key, value);
+    }
+
+    /*
+     * A plain write clears the millisecond deadline, like SET clears the TTL in redis.
+     */
+    public CompletableFuture<String> set(WritePolicy wp, Object key, Object value) {
+        return set(wp, key, value, this.client.clearedDeadline());
+    }
+
+    private CompletableFuture<String> set(WritePolicy wp, Object key, Object value, Bin deadlineBin) {
+        Key asKey = key(key);
+        Bin[] bins = this.client.setBins(key, new Bin(this.redisBin, Value.get(this.client.compressed("SET", value))), deadlineBin);
+        WritePolicy policy = (wp == null) ? this.writePolicy : wp;
+        return invalidating(key, submit(new WriteFuture(), l -> this.asClient.put(policy, l, asKey, bins))).thenApply(k -> "OK");
+    }
+
+    public CompletableFuture<String> setex(Object key, int expiration, Object value) {
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.expiration = expiration;
+        if (this.client.isPreciseExpiry())
+            return set(wp, key, value, new Bin(AedisClient.DEADLINE_BIN, System.currentTimeMillis() + expiration * 1000L));
+        return set(wp, key, value);
+    }
+
+    public CompletableFuture<Boolean> setnx(Object key, Object value) {
+        requireSecondExpiry("SETNX");
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = RecordExistsAction.CREATE_ONLY;
+        return recover(set(wp, key, value).thenApply(ok -> true), ResultCode.KEY_EXISTS_ERROR, false);
+    }
+
+    public CompletableFuture<Long> setxx(Object key, Object value) {
+        requireSecondExpiry("SETXX");
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = RecordExistsAction.REPLACE_ONLY;
+        return recover(set(wp, key, value).thenApply(ok -> 1L), ResultCode.KEY_NOT_FOUND_ERROR, 0L);
+    }
+
+    public CompletableFuture<String> get(Object key) {
+        Key asKey = key(key);
+        return submit(new RecordFuture(), l -> this.asClient.get(this.policy, l, asKey, valueBins()))
+                .thenApply(record -> value("GET", record));
+    }
+
+    public CompletableFuture<List<String>> mget(Object... keys) {
+        Key[] asKeys = new Key[keys.length];
+        for (int i = 0; i < keys.length; i++){
+            asKeys[i] = key(keys[i]);
+        }
+        return submit(new RecordArrayFuture(), l -> this.asClient.get(this.batchPolicy, l, asKeys, valueBins()))
+                .thenApply(records -> {
+                    List<String> result = new ArrayList<String>(records.length);
+                    for (Record record : records){
+                        result.add(value("MGET", record));
+                    }
+                    return result;
+                });
+    }
+
+    /*
+     * One operate, see AedisClient#getSet.
+     */
+    public CompletableFuture<Object> getSet(Object key, Object value) {
+        Key asKey = key(key);
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = RecordExistsAction.UPDATE;
+        List<Operation> ops = new ArrayList<Operation>();
+        ops.add(Operation.get(this.redisBin));
+        if (this.client.isPreciseExpiry()) {
+            ops.add(Operation.get(AedisClient.DEADLINE_BIN));
+            ops.add(Operation.put(Bin.asNull(AedisClient.DEADLINE_BIN)));
+        }
+        ops.add(Operation.put(new Bin(this.redisBin, Value.get(this.client.compressed("GETSET", value)))));
+        Operation[] keyed = this.client.keyed(key, ops.toArray(new Operation[0]));
+        return invalidating(key, submit(new RecordFuture(), l -> this.asClient.operate(wp, l, asKey, keyed)))
+                .thenApply(record -> (record == null || AedisClient.expired(record)) ? null
+                        : this.client.decompressed("GETSET", record.getValue(this.redisBin)));
+    }
+
+    public CompletableFuture<Long> append(Object key, Object value) {
+        require(this.client.getCompression() == null, "APPEND", "with compression");
+        Key asKey = key(key);
+        Bin appendBin = new Bin(this.redisBin, Value.get(value));
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = RecordExistsAction.UPDATE;
+        return invalidating(key, submit(new RecordFuture(), l -> this.asClient.operate(wp, l, asKey,
+                this.client.keyed(key, Operation.append(appendBin), Operation.get(this.redisBin)))))
+                .thenApply(record -> (long) ((String) record.getValue(this.redisBin)).length());
+    }
+
+    /*
+     * Key operations
+     */
+    public CompletableFuture<Boolean> exists(Object key) {
+        Key asKey = key(key);
+        if (this.client.isPreciseExpiry())
+            return submit(new RecordFuture(), l -> this.asClient.get(this.policy, l, asKey, AedisClient.DEADLINE_BIN))
+                    .thenApply(record -> record != null && !AedisClient.expired(record));
+        return submit(new ExistsFuture(), l -> this.asClient.exists(this.policy, l, asKey));
+    }
+
+    public CompletableFuture<Long> del(Object key) {
+        requireUnsharded("DEL");
+        Key asKey = key(key);
+        return invalidating(key, submit(new DeleteFuture(), l -> this.asClient.delete(this.writePolicy, l, asKey)))
+                .thenApply(existed -> existed ? 1L : 0L);
+    }
+
+    /*
+     * In precise expiry mode the deadline bin with the server TTL rounded up to the second.
+     */
+    public CompletableFuture<Long> expire(Object key, long expiration) {
+        requireUnsharded("EXPIRE");
+        Key asKey = key(key);
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
+        CompletableFuture<?> write;
+        if (this.client.isPreciseExpiry()) {
+            long deadline = System.currentTimeMillis() + expiration * 1000;
+            wp.expiration = AedisClient.seconds(expiration * 1000);
+            write = submit(new RecordFuture(), l -> this.asClient.operate(wp, l, asKey, Operation.put(new Bin(AedisClient.DEADLINE_BIN, deadline))));
+        } else {
+            wp.expiration = (int) expiration;
+            write = submit(new WriteFuture(), l -> this.asClient.touch(wp, l, asKey));
+        }
+        return recover(invalidating(key, write).thenApply(k -> 1L), ResultCode.KEY_NOT_FOUND_ERROR, 0L);
+    }
+
+    public CompletableFuture<Long> persist(Object key) {
+        requireUnsharded("PERSIST");
+        Key asKey = key(key);
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.expiration = -1;
+        wp.recordExistsAction = RecordExistsAction.UPDATE_ONLY;
+        CompletableFuture<?> write;
+        if (this.client.isPreciseExpiry())
+            write = submit(new RecordFuture(), l -> this.asClient.operate(wp, l, asKey, Operation.put(Bin.asNull(AedisClient.DEADLINE_BIN))));
+        else
+            write = submit(new WriteFuture(), l -> this.asClient.touch(wp, l, asKey));
+        return recover(invalidating(key, write).thenApply(k -> 1L), ResultCode.KEY_NOT_FOUND_ERROR, 0L);
+    }
+
+    /*
+     * Seconds key has left, -2 when it does not exist and -1 when it does not expire, see
+     * AedisClient#ttl.
+     */
+    public CompletableFuture<Long> ttl(Object key) {
+        Key asKey = key(key);
+        boolean precise = this.client.isPreciseExpiry();
+        return submit(new RecordFuture(), l -> {
+            if (precise)
+                this.asClient.get(this.policy, l, asKey, AedisClient.DEADLINE_BIN);
+            else
+                this.asClient.getHeader(this.policy, l, asKey);
+        }).thenApply(record -> {
+            if (record == null || AedisClient.expired(record))
+                return -2L;
+            if (record.getValue(AedisClient.DEADLINE_BIN) == null && record.expiration == 0)
+                return -1L;
+            long millis = Math.max(0, AedisClient.expireAtMillis(record) - System.currentTimeMillis());
+            return (millis + 500) / 1000;
+        });
+    }
+
+    /*
+     * Counter operations
+     */
+    public CompletableFuture<Long> incr(Object key) {
+        return incrBy(key, 1);
+    }
+
+    public CompletableFuture<Long> incrBy(Object key, long increment) {
+        requireSecondExpiry("INCRBY");
+        Key asKey = key(key);
+        Bin addBin = new Bin(this.redisBin, Value.get(increment));
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = RecordExistsAction.UPDATE;
+        return invalidating(key, submit(new RecordFuture(), l -> this.asClient.operate(wp, l, asKey,
+                this.client.keyed(key, Operation.add(addBin), Operation.get(this.redisBin)))))
+                .thenApply(record -> record.getLong(this.redisBin));
+    }
+
+    public CompletableFuture<Long> decr(Object key) {
+        return incrBy(key, -1);
+    }
+
+    public CompletableFuture<Long> decrBy(Object key, long decrement) {
+        return incrBy(key, -decrement);
+    }
+
+    public CompletableFuture<Double> incrByFloat(Object key, double value) {
+        requireSecondExpiry("INCRBYFLOAT");
+        return invalidating(key, udf(key, "INCRBYFLOAT", udfArgs(Value.get(value)))).thenApply(ValueCodecs::toDouble);
+    }
+
+    /*
+     * List operations
+     */
+    public CompletableFuture<Long> rpush(String key, String value) {
+        requireUdfLists("RPUSH");
+        return udf(key, "RPUSH", udfArgs(Value.get(this.client.compressed("RPUSH", value)))).thenApply(AsyncAedisClient::toLong);
+    }
+
+    public CompletableFuture<Long> lpush(String key, String value) {
+        requireUdfLists("LPUSH");
+        return udf(key, "LPUSH", udfArgs(Value.get(this.client.compressed("LPUSH", value)))).thenApply(AsyncAedisClient::toLong);
+    }
+
+    public CompletableFuture<Long> rpushx(String key, String value) {
+        requireUdfLists("RPUSHX");
+        return udf(key, "RPUSHX", udfArgs(Value.get(this.client.compressed("RPUSHX", value)))).thenApply(AsyncAedisClient::toLong);
+    }
+
+    public CompletableFuture<Long> lpushx(String key, String value) {
+        requireUdfLists("LPUSHX");
+        return udf(key, "LPUSHX", udfArgs(Value.get(this.client.compressed("LPUSHX", value)))).thenApply(AsyncAedisClient::toLong);
+    }
+
+    public CompletableFuture<Long> llen(String key) {
+        requireUdfLists("LLEN");
+        return udf(key, "LLEN", udfArgs()).thenApply(AsyncAedisClient::toLong);
+    }
+
+    public CompletableFuture<List<String>> lrange(String key, int low, int high) {
+        requireUdfLists("LRANGE");
+        return udf(key, "LRANGE", udfArgs(Value.get(low), Value.get(high))).thenApply(result -> this.client.strings("LRANGE", (List<?>) result));
+    }
+
+    public CompletableFuture<String> ltrim(String key, int start, int stop) {
+        requireUdfLists("LTRIM");
+        return udf(key, "LTRIM", udfArgs(Value.get(start), Value.get(stop))).thenApply(result -> (String) result);
+    }
+
+    public CompletableFuture<String> lset(String key, int index, String value) {
+        requireUdfLists("LSET");
+        return udf(key, "LSET", udfArgs(Value.get(index), Value.get(this.client.compressed("LSET", value)))).thenApply(result -> (String) result);
+    }
+
+    public CompletableFuture<Object> lindex(String key, int index) {
+        requireUdfLists("LINDEX");
+        return udf(key, "LINDEX", udfArgs(Value.get(index))).thenApply(result -> this.client.decompressed("LINDEX", result));
+    }
+
+    public CompletableFuture<Long> lrem(String key, int count, String value) {
+        requireUdfLists("LREM");
+        return udf(key, "LREM", udfArgs(Value.get(count), Value.get(this.client.compressed("LREM", value)))).thenApply(AsyncAedisClient::toLong);
+    }
+
+    public CompletableFuture<String> lpop(String key) {
+        requireUdfLists("LPOP");
+        return udf(key, "LPOP", udfArgs(Value.get(1))).thenApply(result -> first("LPOP", result));
+    }
+
+    public CompletableFuture<String> rpop(String key) {
+        requireUdfLists("RPOP");
+        return udf(key, "RPOP", udfArgs(Value.get(1))).thenApply(result -> first("RPOP", result));
+    }
+
+    private String first(String command, Object result) {
+        List<?> list = (List<?>) result;
+        if (list == null || list.size() == 0) return null;
+        return this.client.decompressedString(command, list.get(0));
+    }
+
+    /*
+     * Hash (Map) operations
+     */
+    public CompletableFuture<Long> hset(String key, String field, String value) {
+        requireUdfHashes("HSET");
+        return invalidating(key, udf(key, "HSET", udfArgs(Value.get(field), Value.get(this.client.compressed("HSET", value)))))
+                .thenApply(AsyncAedisClient::toLong);
+    }
+
+    public CompletableFuture<Long> hsetnx(String key, String field, String value) {
+        requireUdfHashes("HSETNX");
+        return invalidating(key, udf(key, "HSETNX", udfArgs(Value.get(field), Value.get(this.client.compressed("HSETNX", value)))))
+                .thenApply(AsyncAedisClient::toLong);
+    }
+
+    public CompletableFuture<Object> hget(String key, String field) {
+        requireUdfHashes("HGET");
+        return udf(key, "HGET", udfArgs(Value.get(field))).thenApply(result -> this.client.decompressed("HGET", result));
+    }
+
+    public CompletableFuture<String> hmset(String key, Map<String, String> hash) {
+        requireUdfHashes("HMSET");
+        return invalidating(key, udf(key, "HMSET", udfArgs(Value.get(this.client.compressedHash("HMSET", hash)))))
+                .thenApply(result -> (String) result);
+    }
+
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<String>> hmget(String key, String... fields) {
+        requireUdfHashes("HMGET");
+        return udf(key, "HMGET", udfArgs(Value.get(new ArrayList<String>(Arrays.asList(fields)))))
+                .thenApply(result -> ((List<Object>) result).stream()
+                        .map(o -> (o == null) ? null : this.client.decompressedString("HMGET", o)).collect(Collectors.toList()));
+    }
+
+    public CompletableFuture<Long> hincrBy(String key, String field, long increment) {
+        requireUdfHashes("HINCRBY");
+        return invalidating(key, udf(key, "HINCRBY", udfArgs(Value.get(field), Value.get(increment)))).thenApply(AsyncAedisClient::toLong);
+    }
+
+    public CompletableFuture<Boolean> hexists(String key, String field) {
+        requireUdfHashes("HEXISTS");
+        return udf(key, "HEXISTS", udfArgs(Value.get(field))).thenApply(result -> toLong(result) == 1);
+    }
+
+    public CompletableFuture<Long> hdel(String key, String field) {
+        requireUdfHashes("HDEL");
+        return invalidating(key, udf(key, "HDEL", udfArgs(Value.get(field)))).thenApply(AsyncAedisClient::toLong);
+    }
+
+    public CompletableFuture<Long> hlen(String key) {
+        requireUdfHashes("HLEN");
+        return udf(key, "HLEN", udfArgs()).thenApply(AsyncAedisClient::toLong);
+    }
+
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Set<String>> hkeys(String key) {
+        requireUdfHashes("HKEYS");
+        return udf(key, "HKEYS", udfArgs()).thenApply(result -> new HashSet<String>((List<String>) result));
+    }
+
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<List<String>> hvals(String key) {
+        requireUdfHashes("HVALS");
+        return udf(key, "HVALS", udfArgs())
+                .thenApply(result -> ((List<Object>) result).stream().map(o -> this.client.decompressedString("HVALS", o)).collect(Collectors.toList()));
+    }
+
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Map<String, String>> hgetAll(String key) {
+        requireUdfHashes("HGETALL");
+        return udf(key, "HGETALL", udfArgs())
+                .thenApply(result -> AedisClient.toHash(this.client.decompressedFields("HGETALL", (List<Object>) result)));
+    }
+
+    /*
+     * Listener adapters completing a future from the selector thread
+     */
+    private static final class RecordFuture extends CompletableFuture<Record> implements RecordListener {
+        @Override
+        public void onSuccess(Key key, Record record) {
+            complete(record);
+        }
+
+        @Override
+        public void onFailure(AerospikeException e) {
+            completeExceptionally(e);
+        }
+    }
+
+    private static final class RecordArrayFuture extends CompletableFuture<Record[]> implements RecordArrayListener {
+        @Override
+        public void onSuccess(Key[] keys, Record[] records) {
+            complete(records);
+        }
+
+        @Override
+        public void onFailure(AerospikeException e) {
+            completeExceptionally(e);
+        }
+    }
+
+    private static final class WriteFuture extends CompletableFuture<Key> implements WriteListener {
+        @Override
+        public void onSuccess(Key key) {
+            complete(key);
+        }
+
+        @Override
+        public void onFailure(AerospikeException e) {
+            completeExceptionally(e);
+        }
+    }
+
+    private static final class DeleteFuture extends CompletableFuture<Boolean> implements DeleteListener {
+        @Override
+        public void onSuccess(Key key, boolean existed) {
+            complete(existed);
+        }
+
+        @Override
+        public void onFailure(AerospikeException e) {
+            completeExceptionally(e);
+        }
+    }
+
+    private static final class ExistsFuture extends CompletableFuture<Boolean> implements ExistsListener {
+        @Override
+        public void onSuccess(Key key, boolean exists) {
+            complete(exists);
+        }
+
+        @Override
+        public void onFailure(AerospikeException e) {
+            completeExceptionally(e);
+        }
+    }
+
+    private static final class ExecuteFuture extends CompletableFuture<Object> implements ExecuteListener {
+        @Override
+        public void onSuccess(Key key, Object result) {
+            complete(result);
+        }
+
+        @Override
+        public void onFailure(AerospikeException e) {
+            completeExceptionally(e);
+        }
+    }
+
+}
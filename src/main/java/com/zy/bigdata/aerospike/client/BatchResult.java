@@ -0,0 +1,68 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.AerospikeException;
+
+/**
+ * Per key outcome of a multi key write, values and errors are aligned with the keys
+ * in the order they were passed in.
+ */
+public final class BatchResult<T> {
+
+    private final Object[] keys;
+    private final Object[] values;
+    private final AerospikeException[] errors;
+
+    BatchResult(Object[] keys) {
+        this.keys = keys;
+        this.values = new Object[keys.length];
+        this.errors = new AerospikeException[keys.length];
+    }
+
+    void success(int index, T value) {
+        this.values[index] = value;
+    }
+
+    void failure(int index, AerospikeException error) {
+        this.errors[index] = error;
+    }
+
+    public int size() {
+        return this.keys.length;
+    }
+
+    public Object getKey(int index) {
+        return this.keys[index];
+    }
+
+    @SuppressWarnings("unchecked")
+    public T getValue(int index) {
+        return (T) this.values[index];
+    }
+
+    public AerospikeException getError(int index) {
+        return this.errors[index];
+    }
+
+    public boolean isSuccess(int index) {
+        return this.errors[index] == null;
+    }
+
+    public int successCount() {
+        int count = 0;
+        for (AerospikeException error : this.errors){
+            if (error == null) count++;
+        }
+        return count;
+    }
+
+    public boolean allSucceeded() {
+        return firstError() == null;
+    }
+
+    public AerospikeException firstError() {
+        for (AerospikeException error : this.errors){
+            if (error != null) return error;
+        }
+        return null;
+    }
+}
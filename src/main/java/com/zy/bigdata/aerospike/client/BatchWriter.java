@@ -0,0 +1,97 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Key;
+import com.aerospike.client.cluster.Node;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Runs a single record command for many keys. Keys are grouped by their master node and
+ * every node group is split over a few parallel tasks, so a multi key write costs roughly
+ * (keys / nodes / tasksPerNode) sequential round trips instead of one per key.
+ */
+final class BatchWriter {
+
+    interface KeyCommand<T> {
+        T apply(int index, Key key);
+    }
+
+    public static final int DEFAULT_TASKS_PER_NODE = 8;
+
+    private final IAerospikeClient client;
+    private final ExecutorService executor;
+    private int tasksPerNode = DEFAULT_TASKS_PER_NODE;
+
+    BatchWriter(IAerospikeClient client) {
+        this.client = client;
+        this.executor = (client instanceof RoutingAerospikeClient) ? ((RoutingAerospikeClient) client).getThreadPool() : null;
+    }
+
+    void setTasksPerNode(int tasksPerNode) {
+        this.tasksPerNode = Math.max(1, tasksPerNode);
+    }
+
+    <T> BatchResult<T> execute(Object[] userKeys, Key[] keys, KeyCommand<T> command) {
+        BatchResult<T> result = new BatchResult<T>(userKeys);
+        List<int[]> tasks = split(keys);
+        if (tasks.size() <= 1 || this.executor == null) {
+            for (int[] task : tasks){
+                run(task, keys, command, result);
+            }
+            return result;
+        }
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks.size()];
+        for (int i = 0; i < futures.length; i++){
+            final int[] task = tasks.get(i);
+            futures[i] = CompletableFuture.runAsync(() -> run(task, keys, command, result), this.executor);
+        }
+        try {
+            CompletableFuture.allOf(futures).join();
+        } catch (CompletionException e) {
+            throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+        }
+        return result;
+    }
+
+    private <T> void run(int[] task, Key[] keys, KeyCommand<T> command, BatchResult<T> result) {
+        for (int index : task){
+            try {
+                result.success(index, command.apply(index, keys[index]));
+            } catch (AerospikeException e) {
+                result.failure(index, e);
+            }
+        }
+    }
+
+    /*
+     * Groups key indexes by master node, then spreads every group over at most tasksPerNode
+     * tasks by key digest, so commands on the same key stay in one task in their original order.
+     */
+    private List<int[]> split(Key[] keys) {
+        Map<Node, List<Integer>> byNode = new LinkedHashMap<Node, List<Integer>>();
+        for (int i = 0; i < keys.length; i++){
+            Node node = (this.client instanceof RoutingAerospikeClient) ? ((RoutingAerospikeClient) this.client).getMasterNode(keys[i]) : null;
+            byNode.computeIfAbsent(node, n -> new ArrayList<Integer>()).add(i);
+        }
+        List<int[]> tasks = new ArrayList<int[]>();
+        for (List<Integer> indexes : byNode.values()){
+            int taskCount = Math.min(this.tasksPerNode, indexes.size());
+            List<List<Integer>> groups = new ArrayList<List<Integer>>(taskCount);
+            for (int t = 0; t < taskCount; t++){
+                groups.add(new ArrayList<Integer>());
+            }
+            for (Integer index : indexes){
+                groups.get(Math.floorMod(Arrays.hashCode(keys[index].digest), taskCount)).add(index);
+            }
+            for (List<Integer> group : groups){
+                if (group.isEmpty()) continue;
+                tasks.add(group.stream().mapToInt(Integer::intValue).toArray());
+            }
+        }
+        return tasks;
+    }
+}
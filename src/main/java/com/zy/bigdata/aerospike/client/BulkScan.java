@@ -0,0 +1,274 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.policy.ScanPolicy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.UnaryOperator;
+
+/**
+ * Bulk export of every key and value of the redis set.
+ *
+ * The scan is split into one job per node (client 3.3 can not scan partition ranges), at most
+ * maxConcurrentNodes of them run at a time. Scan threads hand records to a bounded queue that is
+ * drained by a pool of consumer workers; when the workers fall behind the scan threads block,
+ * which stops reading the node sockets and throttles the server. Throughput therefore grows with
+ * the number of nodes instead of being capped by a single scan callback thread.
+ *
+ * The consumer is called concurrently from several workers. An exception from the consumer or
+ * a failed node scan stops the whole job and is rethrown by {@link #run(BiConsumer)}.
+ *
+ * Values are handed out decompressed. Only records carrying the key bin are exported, i.e. the
+ * keys written by SET, GETSET, APPEND and the counters. A record holding the header of a
+ * sharded collection has no value to export: it is counted as skipped and its key passed to
+ * the sharded key listener, which can read the collection with LRANGE, HGETALL or ZRANGE.
+ */
+public class BulkScan {
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+    public static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 10000;
+
+    private static final long POLL_MILLIS = 100;
+    // queued in place of the value of a sharded collection header
+    private static final Object SHARDED = new Object();
+
+    private final IAerospikeClient client;
+    private final ScanPolicy policy;
+    private final String namespace;
+    private final String set;
+    private final String keyBin;
+    private final String valueBin;
+    private final UnaryOperator<Object> decoder;
+
+    private int maxConcurrentNodes = 0;
+    private int workers = Runtime.getRuntime().availableProcessors();
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private Consumer<ScanProgress> progressListener;
+    private Consumer<String> shardedKeyListener;
+    private long progressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MILLIS;
+
+    private final LongAdder scanned = new LongAdder();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final AtomicInteger nodesDone = new AtomicInteger();
+    private final Map<String, LongAdder> scannedByNode = new ConcurrentHashMap<String, LongAdder>();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<RuntimeException>();
+    private volatile boolean stopped = false;
+    private volatile BlockingQueue<Object[]> queue;
+    private int nodesTotal;
+    private long startNanos;
+
+    BulkScan(IAerospikeClient client, ScanPolicy policy, String namespace, String set, String keyBin, String valueBin,
+             UnaryOperator<Object> decoder) {
+        this.client = client;
+        this.policy = policy;
+        this.namespace = namespace;
+        this.set = set;
+        this.keyBin = keyBin;
+        this.valueBin = valueBin;
+        this.decoder = decoder;
+    }
+
+    /*
+     * Nodes scanned at the same time, 0 for all nodes.
+     */
+    public BulkScan setMaxConcurrentNodes(int maxConcurrentNodes) {
+        this.maxConcurrentNodes = Math.max(0, maxConcurrentNodes);
+        return this;
+    }
+
+    public BulkScan setWorkers(int workers) {
+        this.workers = Math.max(1, workers);
+        return this;
+    }
+
+    public BulkScan setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(1, queueCapacity);
+        return this;
+    }
+
+    /*
+     * Called every intervalMillis while the scan runs and once more when it ends.
+     */
+    public BulkScan setProgressListener(Consumer<ScanProgress> listener, long intervalMillis) {
+        this.progressListener = listener;
+        this.progressIntervalMillis = Math.max(1, intervalMillis);
+        return this;
+    }
+
+    /*
+     * Called by the workers with the key of every sharded collection the scan skips.
+     */
+    public BulkScan setShardedKeyListener(Consumer<String> listener) {
+        this.shardedKeyListener = listener;
+        return this;
+    }
+
+    public ScanProgress getProgress() {
+        Map<String, Long> byNode = new TreeMap<String, Long>();
+        for (Map.Entry<String, LongAdder> entry : this.scannedByNode.entrySet()){
+            byNode.put(entry.getKey(), entry.getValue().sum());
+        }
+        BlockingQueue<Object[]> q = this.queue;
+        long elapsed = (this.startNanos == 0) ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - this.startNanos);
+        return new ScanProgress(this.nodesTotal, this.nodesDone.get(), this.scanned.sum(), this.delivered.sum(),
+                this.skipped.sum(), (q == null) ? 0 : q.size(), elapsed, byNode);
+    }
+
+    /*
+     * Stops a running scan, run() returns once the workers have finished their current record.
+     */
+    public void cancel() {
+        this.stopped = true;
+    }
+
+    /*
+     * Scans the set and passes every (key, value) to the consumer, blocks until done.
+     * A BulkScan runs once.
+     */
+    public ScanProgress run(final BiConsumer<String, Object> consumer) {
+        if (this.queue != null)
+            throw new IllegalStateException("bulk scan already started");
+        Node[] nodes = this.client.getNodes();
+        this.nodesTotal = nodes.length;
+        this.queue = new ArrayBlockingQueue<Object[]>(this.queueCapacity);
+        this.startNanos = System.nanoTime();
+        for (Node node : nodes){
+            this.scannedByNode.put(node.getName(), new LongAdder());
+        }
+
+        int scanThreads = (this.maxConcurrentNodes == 0) ? nodes.length : Math.min(this.maxConcurrentNodes, nodes.length);
+        ExecutorService scanners = Executors.newFixedThreadPool(Math.max(1, scanThreads), threads("aedis-scan-"));
+        ExecutorService consumers = Executors.newFixedThreadPool(this.workers, threads("aedis-scan-worker-"));
+        ScheduledExecutorService reporter = null;
+        if (this.progressListener != null) {
+            reporter = Executors.newSingleThreadScheduledExecutor(threads("aedis-scan-progress-"));
+            reporter.scheduleAtFixedRate(() -> this.progressListener.accept(getProgress()),
+                    this.progressIntervalMillis, this.progressIntervalMillis, TimeUnit.MILLISECONDS);
+        }
+
+        final CountDownLatch nodesLatch = new CountDownLatch(nodes.length);
+        try {
+            for (final Node node : nodes){
+                scanners.execute(() -> {
+                    try {
+                        scanNode(node);
+                    } finally {
+                        this.nodesDone.incrementAndGet();
+                        nodesLatch.countDown();
+                    }
+                });
+            }
+            List<Future<?>> futures = new ArrayList<Future<?>>(this.workers);
+            for (int i = 0; i < this.workers; i++){
+                futures.add(consumers.submit(() -> consume(consumer, nodesLatch)));
+            }
+            for (Future<?> future : futures){
+                future.get();
+            }
+            if (this.stopped) {
+                // consumers left early, scan threads may still be parked on the queue
+                nodesLatch.await();
+            }
+        } catch (InterruptedException e) {
+            this.stopped = true;
+            Thread.currentThread().interrupt();
+            fail(new AerospikeException(e));
+        } catch (ExecutionException e) {
+            fail(new AerospikeException(e.getCause()));
+        } finally {
+            this.stopped = true;
+            scanners.shutdownNow();
+            consumers.shutdownNow();
+            if (reporter != null)
+                reporter.shutdownNow();
+        }
+
+        ScanProgress progress = getProgress();
+        if (this.progressListener != null)
+            this.progressListener.accept(progress);
+        RuntimeException error = this.failure.get();
+        if (error != null)
+            throw error;
+        return progress;
+    }
+
+    private void scanNode(Node node) {
+        final LongAdder nodeCount = this.scannedByNode.get(node.getName());
+        try {
+            this.client.scanNode(this.policy, node, this.namespace, this.set, (key, record) -> {
+                if (this.stopped)
+                    throw new AerospikeException.ScanTerminated();
+                Object userKey = record.getValue(this.keyBin);
+                if (userKey == null) return;
+                this.scanned.increment();
+                nodeCount.increment();
+                Object value = (record.getValue(Shards.EPOCH_BIN) != null) ? SHARDED : record.getValue(this.valueBin);
+                offer(new Object[]{KeyScan.keyString(userKey), value});
+            }, this.keyBin, this.valueBin, Shards.EPOCH_BIN);
+        } catch (AerospikeException.ScanTerminated e) {
+            // cancelled or stopped by another failure
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void offer(Object[] entry) {
+        try {
+            while (!this.queue.offer(entry, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (this.stopped)
+                    throw new AerospikeException.ScanTerminated();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AerospikeException.ScanTerminated(e);
+        }
+    }
+
+    private void consume(BiConsumer<String, Object> consumer, CountDownLatch nodesLatch) {
+        try {
+            while (!this.stopped) {
+                Object[] entry = this.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    // every scan thread has counted down after its last offer
+                    if (nodesLatch.getCount() == 0 && this.queue.isEmpty()) return;
+                    continue;
+                }
+                if (entry[1] == SHARDED) {
+                    this.skipped.increment();
+                    Consumer<String> listener = this.shardedKeyListener;
+                    if (listener != null)
+                        listener.accept((String) entry[0]);
+                    continue;
+                }
+                consumer.accept((String) entry[0], this.decoder.apply(entry[1]));
+                this.delivered.increment();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    private void fail(RuntimeException e) {
+        this.failure.compareAndSet(null, e);
+        this.stopped = true;
+    }
+
+    private static ThreadFactory threads(final String prefix) {
+        final AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -0,0 +1,344 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Info;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.policy.InfoPolicy;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Namespace and set statistics of the whole cluster, read with info requests sent to every
+ * node in parallel and cached for a refresh interval, so frequent DBSIZE or INFO polling costs
+ * one fan-out per interval.
+ *
+ * Every node counts the replicas it holds in its set and namespace object counts, the cluster
+ * totals are divided by the effective replication factor of the namespace so that a record is
+ * counted once. Memory figures are summed over all copies.
+ */
+public final class ClusterStats {
+
+    public static final long DEFAULT_REFRESH_MILLIS = 5000;
+
+    /**
+     * Statistics of one namespace, summed over the nodes.
+     */
+    public static final class NamespaceStats {
+        final String namespace;
+        final int replicationFactor;
+        final long objects;
+        final long masterObjects;
+        final long memoryUsedBytes;
+        final long memorySize;
+
+        NamespaceStats(String namespace, int replicationFactor, long objects, long masterObjects, long memoryUsedBytes, long memorySize) {
+            this.namespace = namespace;
+            this.replicationFactor = replicationFactor;
+            this.objects = objects;
+            this.masterObjects = masterObjects;
+            this.memoryUsedBytes = memoryUsedBytes;
+            this.memorySize = memorySize;
+        }
+
+        public String getNamespace() {
+            return this.namespace;
+        }
+
+        public int getReplicationFactor() {
+            return this.replicationFactor;
+        }
+
+        /*
+         * Records of the namespace, each counted once.
+         */
+        public long getObjects() {
+            return (this.masterObjects > 0) ? this.masterObjects : this.objects / this.replicationFactor;
+        }
+
+        public long getMemoryUsedBytes() {
+            return this.memoryUsedBytes;
+        }
+
+        public long getMemorySize() {
+            return this.memorySize;
+        }
+    }
+
+    /**
+     * Statistics of one set, summed over the nodes.
+     */
+    public static final class SetStats {
+        final String namespace;
+        final String set;
+        final long objects;
+        final long memoryBytes;
+        final int replicationFactor;
+
+        SetStats(String namespace, String set, long objects, long memoryBytes, int replicationFactor) {
+            this.namespace = namespace;
+            this.set = set;
+            this.objects = objects;
+            this.memoryBytes = memoryBytes;
+            this.replicationFactor = replicationFactor;
+        }
+
+        public String getNamespace() {
+            return this.namespace;
+        }
+
+        public String getSet() {
+            return this.set;
+        }
+
+        /*
+         * Records of the set, each counted once.
+         */
+        public long getObjects() {
+            return this.objects / this.replicationFactor;
+        }
+
+        public long getMemoryBytes() {
+            return this.memoryBytes;
+        }
+    }
+
+    /**
+     * The statistics read by one fan-out.
+     */
+    public static final class Snapshot {
+        final long takenAt;
+        final int nodes;
+        final Map<String, NamespaceStats> namespaces;
+        final Map<String, SetStats> sets;
+
+        Snapshot(long takenAt, int nodes, Map<String, NamespaceStats> namespaces, Map<String, SetStats> sets) {
+            this.takenAt = takenAt;
+            this.nodes = nodes;
+            this.namespaces = namespaces;
+            this.sets = sets;
+        }
+
+        public long getTakenAt() {
+            return this.takenAt;
+        }
+
+        public int getNodes() {
+            return this.nodes;
+        }
+
+        public Map<String, NamespaceStats> getNamespaces() {
+            return Collections.unmodifiableMap(this.namespaces);
+        }
+
+        /*
+         * Sets by "namespace.set".
+         */
+        public Map<String, SetStats> getSets() {
+            return Collections.unmodifiableMap(this.sets);
+        }
+
+        /*
+         * Records of set, of the whole namespace for a null set.
+         */
+        public long objects(String namespace, String set) {
+            if (set == null) {
+                NamespaceStats stats = this.namespaces.get(namespace);
+                return (stats == null) ? 0 : stats.getObjects();
+            }
+            SetStats stats = this.sets.get(namespace + "." + set);
+            return (stats == null) ? 0 : stats.getObjects();
+        }
+
+        /*
+         * Redis INFO style sections, "field:value" lines.
+         */
+        public String toInfo() {
+            StringBuilder info = new StringBuilder();
+            info.append("# Cluster\r\n");
+            info.append("cluster_nodes:").append(this.nodes).append("\r\n");
+            for (NamespaceStats ns : this.namespaces.values()){
+                info.append("\r\n# Namespace ").append(ns.namespace).append("\r\n");
+                info.append("replication_factor:").append(ns.replicationFactor).append("\r\n");
+                info.append("objects:").append(ns.getObjects()).append("\r\n");
+                info.append("memory_used_bytes:").append(ns.memoryUsedBytes).append("\r\n");
+                info.append("memory_size:").append(ns.memorySize).append("\r\n");
+            }
+            info.append("\r\n# Keyspace\r\n");
+            for (SetStats set : this.sets.values()){
+                info.append(set.namespace).append('.').append(set.set)
+                        .append(":keys=").append(set.getObjects())
+                        .append(",memory_bytes=").append(set.memoryBytes).append("\r\n");
+            }
+            return info.toString();
+        }
+    }
+
+    private final IAerospikeClient client;
+    private final InfoPolicy infoPolicy = new InfoPolicy();
+    private volatile long refreshMillis = DEFAULT_REFRESH_MILLIS;
+    private volatile Snapshot snapshot;
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+
+    public ClusterStats(IAerospikeClient client) {
+        this.client = client;
+    }
+
+    public void setRefreshMillis(long refreshMillis) {
+        this.refreshMillis = refreshMillis;
+    }
+
+    /*
+     * The cached snapshot. Once it is older than the refresh interval the first caller
+     * refreshes it while the others keep getting the previous one; only the very first
+     * snapshot is waited for.
+     */
+    public Snapshot snapshot() {
+        Snapshot current = this.snapshot;
+        if (current != null && System.currentTimeMillis() - current.takenAt < this.refreshMillis)
+            return current;
+        if (current == null) {
+            synchronized (this) {
+                if (this.snapshot == null)
+                    this.snapshot = fetch();
+                return this.snapshot;
+            }
+        }
+        if (!this.refreshing.compareAndSet(false, true))
+            return current;
+        try {
+            this.snapshot = fetch();
+            return this.snapshot;
+        } finally {
+            this.refreshing.set(false);
+        }
+    }
+
+    public void invalidate() {
+        this.snapshot = null;
+    }
+
+    private Snapshot fetch() {
+        Node[] nodes = this.client.getNodes();
+        Executor executor = (this.client instanceof RoutingAerospikeClient)
+                ? ((RoutingAerospikeClient) this.client).getThreadPool() : ForkJoinPool.commonPool();
+        List<CompletableFuture<Map<String, String>>> futures = new ArrayList<CompletableFuture<Map<String, String>>>(nodes.length);
+        for (Node node : nodes){
+            futures.add(CompletableFuture.supplyAsync(() -> request(node), executor));
+        }
+        List<Map<String, String>> answers = new ArrayList<Map<String, String>>(nodes.length);
+        try {
+            for (CompletableFuture<Map<String, String>> future : futures){
+                answers.add(future.join());
+            }
+        } catch (CompletionException e) {
+            throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+        }
+        return aggregate(System.currentTimeMillis(), answers);
+    }
+
+    /*
+     * The namespaces and sets of node, then the statistics of each namespace.
+     */
+    private Map<String, String> request(Node node) {
+        Map<String, String> answers = new HashMap<String, String>(Info.request(this.infoPolicy, node, "namespaces", "sets"));
+        String namespaces = answers.get("namespaces");
+        if (namespaces != null && !namespaces.isEmpty()) {
+            String[] names = namespaces.split(";");
+            for (int i = 0; i < names.length; i++){
+                names[i] = "namespace/" + names[i];
+            }
+            answers.putAll(Info.request(this.infoPolicy, node, names));
+        }
+        return answers;
+    }
+
+    /*
+     * Sums the info answers of every node. Also accepts the statistic names of servers before
+     * 3.9: ns_name, set_name, n_objects, n-bytes-memory, used-bytes-memory.
+     */
+    static Snapshot aggregate(long takenAt, List<Map<String, String>> answers) {
+        int nodes = answers.size();
+        Map<String, long[]> namespaceTotals = new TreeMap<String, long[]>();
+        Map<String, Integer> factors = new HashMap<String, Integer>();
+        for (Map<String, String> answer : answers){
+            for (Map.Entry<String, String> entry : answer.entrySet()){
+                if (!entry.getKey().startsWith("namespace/"))
+                    continue;
+                String namespace = entry.getKey().substring("namespace/".length());
+                Map<String, String> stats = fields(entry.getValue(), ";");
+                long[] totals = namespaceTotals.computeIfAbsent(namespace, n -> new long[4]);
+                totals[0] += number(stats, "objects");
+                totals[1] += number(stats, "master_objects", "master-objects");
+                totals[2] += number(stats, "memory_used_bytes", "used-bytes-memory");
+                totals[3] += number(stats, "memory-size");
+                int factor = (int) number(stats, "effective_replication_factor");
+                if (factor <= 0)
+                    factor = (int) Math.min(number(stats, "replication-factor", "repl-factor"), nodes);
+                factors.merge(namespace, Math.max(1, factor), Math::max);
+            }
+        }
+        Map<String, NamespaceStats> namespaces = new LinkedHashMap<String, NamespaceStats>();
+        for (Map.Entry<String, long[]> entry : namespaceTotals.entrySet()){
+            long[] totals = entry.getValue();
+            namespaces.put(entry.getKey(), new NamespaceStats(entry.getKey(), factors.get(entry.getKey()), totals[0], totals[1], totals[2], totals[3]));
+        }
+        Map<String, long[]> setTotals = new TreeMap<String, long[]>();
+        for (Map<String, String> answer : answers){
+            String sets = answer.get("sets");
+            if (sets == null)
+                continue;
+            for (String set : sets.split(";")){
+                Map<String, String> stats = fields(set, ":");
+                String namespace = first(stats, "ns", "ns_name");
+                String name = first(stats, "set", "set_name");
+                if (namespace == null || name == null)
+                    continue;
+                long[] totals = setTotals.computeIfAbsent(namespace + "." + name, n -> new long[2]);
+                totals[0] += number(stats, "objects", "n_objects");
+                totals[1] += number(stats, "memory_data_bytes", "n-bytes-memory");
+            }
+        }
+        Map<String, SetStats> result = new LinkedHashMap<String, SetStats>();
+        for (Map.Entry<String, long[]> entry : setTotals.entrySet()){
+            int dot = entry.getKey().indexOf('.');
+            String namespace = entry.getKey().substring(0, dot);
+            result.put(entry.getKey(), new SetStats(namespace, entry.getKey().substring(dot + 1),
+                    entry.getValue()[0], entry.getValue()[1], factors.getOrDefault(namespace, 1)));
+        }
+        return new Snapshot(takenAt, nodes, namespaces, result);
+    }
+
+    static Map<String, String> fields(String info, String separator) {
+        Map<String, String> fields = new HashMap<String, String>();
+        for (String field : info.split(separator)){
+            int eq = field.indexOf('=');
+            if (eq > 0)
+                fields.put(field.substring(0, eq).trim(), field.substring(eq + 1).trim());
+        }
+        return fields;
+    }
+
+    private static String first(Map<String, String> stats, String... names) {
+        for (String name : names){
+            String value = stats.get(name);
+            if (value != null)
+                return value;
+        }
+        return null;
+    }
+
+    private static long number(Map<String, String> stats, String... names) {
+        String value = first(stats, names);
+        if (value == null)
+            return 0;
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
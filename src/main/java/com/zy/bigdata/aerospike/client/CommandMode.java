@@ -0,0 +1,10 @@
+package com.zy.bigdata.aerospike.client;
+
+/**
+ * How collection commands are executed on the server: through the redis.lua UDF module, with
+ * native CDT operations via operate(), or natively with large collections split over several
+ * records.
+ */
+public enum CommandMode {
+    UDF, NATIVE, SHARDED;
+}
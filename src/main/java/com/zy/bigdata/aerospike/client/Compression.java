@@ -0,0 +1,226 @@
+package com.zy.bigdata.aerospike.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+/**
+ * Compression of large string and blob values. A value of at least threshold bytes (UTF-8 for
+ * strings) is stored as a blob with a 13 byte header: the magic bytes 0xAE 0xC0, the format
+ * version, the compressor id, a flag telling whether the original was a String or a byte[],
+ * the original length, and the CRC32 of the rest of the header and the compressed bytes.
+ * Values that do not shrink are stored as they are, so compressed and plain values coexist;
+ * reads only decompress values whose header checks out, a plain blob that happens to start
+ * with the magic bytes is returned as it is. Original lengths are capped at MAX_LENGTH.
+ *
+ * Values compressed by a compressor other than the configured one are still read when it is a
+ * built in compressor without dictionary. Compression and decompression run on the calling
+ * thread; the time they take is counted per command, with the bytes before and after.
+ */
+public final class Compression {
+
+    static final int HEADER = 13;
+    static final int MAX_LENGTH = 128 << 20;
+    private static final byte MAGIC_0 = (byte) 0xAE;
+    private static final byte MAGIC_1 = (byte) 0xC0;
+    private static final byte VERSION = 1;
+    private static final int CHECKED = HEADER - 4;
+    private static final byte STRING = 0;
+    private static final byte BYTES = 1;
+
+    /**
+     * Counters of one command.
+     */
+    public static final class Stats {
+        final LongAdder compressed = new LongAdder();
+        final LongAdder originalBytes = new LongAdder();
+        final LongAdder compressedBytes = new LongAdder();
+        final LongAdder compressNanos = new LongAdder();
+        final LongAdder decompressed = new LongAdder();
+        final LongAdder decompressNanos = new LongAdder();
+
+        public long getCompressed() {
+            return this.compressed.sum();
+        }
+
+        public long getOriginalBytes() {
+            return this.originalBytes.sum();
+        }
+
+        public long getCompressedBytes() {
+            return this.compressedBytes.sum();
+        }
+
+        /*
+         * Original size over stored size of the values compressed, 0 before the first one.
+         */
+        public double getRatio() {
+            long stored = getCompressedBytes();
+            return (stored == 0) ? 0 : (double) getOriginalBytes() / stored;
+        }
+
+        public long getCompressNanos() {
+            return this.compressNanos.sum();
+        }
+
+        public long getDecompressed() {
+            return this.decompressed.sum();
+        }
+
+        public long getDecompressNanos() {
+            return this.decompressNanos.sum();
+        }
+
+        @Override
+        public String toString() {
+            return "compressed=" + getCompressed() + " ratio=" + String.format("%.2f", getRatio())
+                    + " compressMicros=" + getCompressNanos() / 1000
+                    + " decompressed=" + getDecompressed() + " decompressMicros=" + getDecompressNanos() / 1000;
+        }
+    }
+
+    private final Compressor compressor;
+    private final int threshold;
+    private final Map<Integer, Compressor> decompressors = new ConcurrentHashMap<Integer, Compressor>();
+    private final ConcurrentHashMap<String, Stats> stats = new ConcurrentHashMap<String, Stats>();
+
+    /**
+     * @param threshold size in bytes from which values are compressed, Integer.MAX_VALUE to
+     *                  only decompress
+     */
+    public Compression(Compressor compressor, int threshold) {
+        if (compressor.id() < 1 || compressor.id() > 255)
+            throw new IllegalArgumentException("compressor id must be between 1 and 255");
+        this.compressor = compressor;
+        this.threshold = threshold;
+        this.decompressors.put(compressor.id(), compressor);
+    }
+
+    public Compressor getCompressor() {
+        return this.compressor;
+    }
+
+    public int getThreshold() {
+        return this.threshold;
+    }
+
+    /*
+     * A copy that decompresses like this one but does not compress new values.
+     */
+    Compression decodeOnly() {
+        return new Compression(this.compressor, Integer.MAX_VALUE);
+    }
+
+    /*
+     * value compressed when it is a large enough String or byte[], otherwise value itself.
+     */
+    Object encode(String command, Object value) {
+        byte[] original;
+        byte type;
+        if (value instanceof String) {
+            String string = (String) value;
+            // a char is at most 3 UTF-8 bytes, skip the encoding of strings surely too short
+            if (string.length() * 3L < this.threshold)
+                return value;
+            original = string.getBytes(StandardCharsets.UTF_8);
+            type = STRING;
+        } else if (value instanceof byte[]) {
+            original = (byte[]) value;
+            type = BYTES;
+        } else {
+            return value;
+        }
+        if (original.length < this.threshold || original.length > MAX_LENGTH)
+            return value;
+        long start = System.nanoTime();
+        byte[] compressed = this.compressor.compress(original);
+        Stats stats = stats(command);
+        stats.compressNanos.add(System.nanoTime() - start);
+        if (compressed.length + HEADER >= original.length)
+            return value;
+        byte[] stored = new byte[compressed.length + HEADER];
+        stored[0] = MAGIC_0;
+        stored[1] = MAGIC_1;
+        stored[2] = VERSION;
+        stored[3] = (byte) this.compressor.id();
+        stored[4] = type;
+        Compressors.putInt(stored, 5, original.length);
+        System.arraycopy(compressed, 0, stored, HEADER, compressed.length);
+        Compressors.putInt(stored, CHECKED, checksum(stored));
+        stats.compressed.increment();
+        stats.originalBytes.add(original.length);
+        stats.compressedBytes.add(stored.length);
+        return stored;
+    }
+
+    /*
+     * The original String or byte[] of a compressed value, anything else as it is.
+     */
+    Object decode(String command, Object stored) {
+        if (!isCompressed(stored))
+            return stored;
+        byte[] bytes = (byte[]) stored;
+        int id = bytes[3] & 0xFF;
+        Compressor decompressor = this.decompressors.get(id);
+        if (decompressor == null) {
+            decompressor = Compressors.forId(id);
+            if (decompressor == null)
+                throw new IllegalStateException("no decompressor for compressor id " + id);
+            this.decompressors.put(id, decompressor);
+        }
+        long start = System.nanoTime();
+        byte[] original = new byte[Compressors.getInt(bytes, 5)];
+        decompressor.decompress(bytes, HEADER, bytes.length - HEADER, original);
+        Object value = (bytes[4] == STRING) ? new String(original, StandardCharsets.UTF_8) : original;
+        Stats stats = stats(command);
+        stats.decompressNanos.add(System.nanoTime() - start);
+        stats.decompressed.increment();
+        return value;
+    }
+
+    static boolean isCompressed(Object stored) {
+        if (!(stored instanceof byte[]))
+            return false;
+        byte[] bytes = (byte[]) stored;
+        if (bytes.length <= HEADER || bytes[0] != MAGIC_0 || bytes[1] != MAGIC_1 || bytes[2] != VERSION
+                || (bytes[4] != STRING && bytes[4] != BYTES))
+            return false;
+        int length = Compressors.getInt(bytes, 5);
+        return length >= 0 && length <= MAX_LENGTH && Compressors.getInt(bytes, CHECKED) == checksum(bytes);
+    }
+
+    /*
+     * CRC32 of a stored value but its checksum field.
+     */
+    private static int checksum(byte[] stored) {
+        CRC32 crc = new CRC32();
+        crc.update(stored, 0, CHECKED);
+        crc.update(stored, HEADER, stored.length - HEADER);
+        return (int) crc.getValue();
+    }
+
+    private Stats stats(String command) {
+        Stats stats = this.stats.get(command);
+        return (stats != null) ? stats : this.stats.computeIfAbsent(command, c -> new Stats());
+    }
+
+    /*
+     * Counters by command name.
+     */
+    public Map<String, Stats> getStats() {
+        return Collections.unmodifiableMap(new TreeMap<String, Stats>(this.stats));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        for (Map.Entry<String, Stats> entry : getStats().entrySet()){
+            text.append(entry.getKey()).append(": ").append(entry.getValue()).append('\n');
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package com.zy.bigdata.aerospike.client;
+
+/**
+ * A compression algorithm for {@link Compression}. Implementations are thread safe.
+ *
+ * id() is stored in the header of every value compressed, it selects the compressor that
+ * decompresses the value and must not change once values were written with it. See
+ * {@link Compressors} for the built in ones, which use ids 1 to 4.
+ */
+public interface Compressor {
+
+    int id();
+
+    byte[] compress(byte[] data);
+
+    /*
+     * Decompresses length bytes of data from offset into target, whose length is the size of
+     * the original value.
+     */
+    void decompress(byte[] data, int offset, int length, byte[] target);
+}
@@ -0,0 +1,164 @@
+package com.zy.bigdata.aerospike.client;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Built in {@link Compressor}s: Deflate from the JDK and Zstandard, which needs zstd-jni on the
+ * class path (an optional dependency of this library).
+ *
+ * Both take an optional dictionary, e.g. one trained with trainZstdDictionary from typical
+ * values, which makes small documents compress far better. Values compressed with a
+ * dictionary carry its checksum and can only be read with the same dictionary.
+ */
+public final class Compressors {
+
+    static final int DEFLATE = 1;
+    static final int DEFLATE_DICTIONARY = 2;
+    static final int ZSTD = 3;
+    static final int ZSTD_DICTIONARY = 4;
+
+    public static final int DEFAULT_DEFLATE_LEVEL = 6;
+    public static final int DEFAULT_ZSTD_LEVEL = 3;
+
+    private Compressors() {
+    }
+
+    public static Compressor deflate(int level) {
+        return new DeflateCompressor(level, null);
+    }
+
+    public static Compressor deflate(int level, byte[] dictionary) {
+        return new DeflateCompressor(level, dictionary);
+    }
+
+    public static Compressor zstd(int level) {
+        return new ZstdCompressor(level, null);
+    }
+
+    public static Compressor zstd(int level, byte[] dictionary) {
+        return new ZstdCompressor(level, dictionary);
+    }
+
+    /*
+     * A dictionary of at most size bytes trained from sample values, 16 to 64 KB is usual.
+     */
+    public static byte[] trainZstdDictionary(List<byte[]> samples, int size) {
+        return ZstdCompressor.train(samples, size);
+    }
+
+    /*
+     * The compressor reading values written with id when it is not the configured one, null
+     * for a dictionary compressor or an unknown id.
+     */
+    static Compressor forId(int id) {
+        switch (id) {
+            case DEFLATE:
+                return deflate(DEFAULT_DEFLATE_LEVEL);
+            case ZSTD:
+                return zstd(DEFAULT_ZSTD_LEVEL);
+            default:
+                return null;
+        }
+    }
+
+    static int dictionaryId(byte[] dictionary) {
+        CRC32 crc = new CRC32();
+        crc.update(dictionary, 0, dictionary.length);
+        return (int) crc.getValue();
+    }
+
+    static void putInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    static int getInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    /*
+     * Dictionary compressed data starts with the dictionary checksum.
+     */
+    static void checkDictionary(byte[] data, int offset, int dictionaryId) {
+        if (getInt(data, offset) != dictionaryId)
+            throw new IllegalStateException("value was compressed with another dictionary");
+    }
+
+    /**
+     * Deflate without the zlib wrapper. Deflater and Inflater hold native buffers and are not
+     * thread safe, each thread reuses its own.
+     */
+    private static final class DeflateCompressor implements Compressor {
+        private final byte[] dictionary;
+        private final int dictionaryId;
+        private final ThreadLocal<Deflater> deflaters;
+        private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+        DeflateCompressor(int level, byte[] dictionary) {
+            this.dictionary = (dictionary == null) ? null : dictionary.clone();
+            this.dictionaryId = (dictionary == null) ? 0 : dictionaryId(dictionary);
+            this.deflaters = ThreadLocal.withInitial(() -> new Deflater(level, true));
+        }
+
+        @Override
+        public int id() {
+            return (this.dictionary == null) ? DEFLATE : DEFLATE_DICTIONARY;
+        }
+
+        @Override
+        public byte[] compress(byte[] data) {
+            Deflater deflater = this.deflaters.get();
+            deflater.reset();
+            if (this.dictionary != null)
+                deflater.setDictionary(this.dictionary);
+            deflater.setInput(data);
+            deflater.finish();
+            int start = (this.dictionary == null) ? 0 : 4;
+            byte[] out = new byte[start + data.length + data.length / 1000 + 64];
+            int length = start;
+            while (!deflater.finished()){
+                if (length == out.length)
+                    out = Arrays.copyOf(out, out.length * 2);
+                length += deflater.deflate(out, length, out.length - length);
+            }
+            if (this.dictionary != null)
+                putInt(out, 0, this.dictionaryId);
+            return Arrays.copyOf(out, length);
+        }
+
+        @Override
+        public void decompress(byte[] data, int offset, int length, byte[] target) {
+            if (this.dictionary != null) {
+                checkDictionary(data, offset, this.dictionaryId);
+                offset += 4;
+                length -= 4;
+            }
+            Inflater inflater = this.inflaters.get();
+            inflater.reset();
+            if (this.dictionary != null)
+                inflater.setDictionary(this.dictionary);
+            inflater.setInput(data, offset, length);
+            try {
+                int filled = 0;
+                while (filled < target.length){
+                    int n = inflater.inflate(target, filled, target.length - filled);
+                    if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    filled += n;
+                }
+                if (filled != target.length)
+                    throw new IllegalStateException("truncated compressed value");
+            } catch (DataFormatException e) {
+                throw new IllegalStateException("corrupt compressed value", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package com.zy.bigdata.aerospike.client;
+
+import java.util.AbstractMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Write-behind INCRBY and HINCRBY: deltas are added to in memory counters, one per key or
+ * key and field, and written with one increment per counter by a flush every flushMillis, or
+ * as soon as maxPending increments are buffered.
+ *
+ * A counter is a few striped cells drained with getAndSet, so concurrent increments of a hot
+ * key neither contend on one cache line nor get lost by a flush. Counters idle for a whole
+ * flush are dropped; a writer that raced the drop moves its delta to a fresh counter.
+ *
+ * A counter starts from the value stored when it is created, read once, so increments return
+ * the stored value plus every delta of this buffer; increments by other clients show once
+ * the counter is flushed. Deltas being written by a flush are counted in flight until the
+ * write returns, so a flush never makes the returned value dip.
+ *
+ * A flush that fails puts its deltas back, they are retried by the next flush. Deltas not yet
+ * flushed are lost when the process dies: at most flushMillis or maxPending increments.
+ * Increments reaching a closed buffer are written through.
+ */
+final class CounterBuffer {
+
+    interface Sink {
+        /*
+         * Writes delta, field is null for a string counter. Returns the new value.
+         */
+        long incrBy(Object key, String field, long delta);
+
+        /*
+         * The stored value, 0 when missing.
+         */
+        long get(Object key, String field);
+    }
+
+    private static final int STRIPES = Math.min(16, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1));
+    // one cell per 64 byte cache line
+    private static final int PAD = 8;
+
+    private static final class Counter {
+        final Object key;
+        final String field;
+        final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+        // the stored value after the last flush, set once by seed() unless a flush came first
+        volatile long base;
+        // drained deltas whose flush has not returned yet
+        long inFlight;
+        // guards moving deltas between the cells, inFlight and base, value() reads optimistically
+        final StampedLock lock = new StampedLock();
+        volatile boolean seeded;
+        int flushes;
+        volatile boolean idle;
+        volatile boolean retired;
+
+        Counter(Object key, String field) {
+            this.key = key;
+            this.field = field;
+        }
+
+        void add(long delta) {
+            this.cells.addAndGet(((int) Thread.currentThread().getId() & (STRIPES - 1)) * PAD, delta);
+        }
+
+        long pending() {
+            long sum = 0;
+            for (int i = 0; i < STRIPES; i++){
+                sum += this.cells.get(i * PAD);
+            }
+            return sum;
+        }
+
+        /*
+         * Empties the cells, their sum counts as in flight until flushed() or putBack().
+         */
+        long drain() {
+            long stamp = this.lock.writeLock();
+            try {
+                long sum = 0;
+                for (int i = 0; i < STRIPES; i++){
+                    sum += this.cells.getAndSet(i * PAD, 0);
+                }
+                this.inFlight += sum;
+                return sum;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        void putBack(long delta) {
+            long stamp = this.lock.writeLock();
+            try {
+                this.inFlight -= delta;
+                add(delta);
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+        }
+
+        /*
+         * The stored value plus the deltas in flight and buffered. Increments do not take the
+         * lock, only a read overlapping a drain or a flush retries under it.
+         */
+        long value() {
+            long stamp = this.lock.tryOptimisticRead();
+            long value = this.base + this.inFlight + pending();
+            if (this.lock.validate(stamp))
+                return value;
+            stamp = this.lock.readLock();
+            try {
+                return this.base + this.inFlight + pending();
+            } finally {
+                this.lock.unlockRead(stamp);
+            }
+        }
+
+        /*
+         * Reads the stored value the first time the counter is used. A flush completing during
+         * the read already set a newer base, which is kept.
+         */
+        void seed(Sink sink) {
+            int flushes;
+            synchronized (this) {
+                if (this.seeded)
+                    return;
+                flushes = this.flushes;
+            }
+            long stored = sink.get(this.key, this.field);
+            synchronized (this) {
+                if (!this.seeded && this.flushes == flushes)
+                    this.base = stored;
+                this.seeded = true;
+            }
+        }
+
+        synchronized void flushed(long value, long delta) {
+            long stamp = this.lock.writeLock();
+            try {
+                this.base = value;
+                this.inFlight -= delta;
+            } finally {
+                this.lock.unlockWrite(stamp);
+            }
+            this.flushes++;
+            this.seeded = true;
+        }
+    }
+
+    private final Sink sink;
+    private final int maxPending;
+    private final ConcurrentHashMap<Map.Entry<Object, String>, Counter> counters = new ConcurrentHashMap<Map.Entry<Object, String>, Counter>();
+    private final AtomicLong buffered = new AtomicLong();
+    private final AtomicBoolean flushQueued = new AtomicBoolean();
+    private final ScheduledExecutorService flusher;
+    private volatile boolean closed;
+
+    CounterBuffer(Sink sink, int maxPending, long flushMillis) {
+        if (maxPending <= 0 || flushMillis <= 0)
+            throw new IllegalArgumentException("maxPending and flushMillis must be positive");
+        this.sink = sink;
+        this.maxPending = maxPending;
+        this.flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "aedis-counter-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.flusher.scheduleWithFixedDelay(this::flushQuietly, flushMillis, flushMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /*
+     * Buffers delta. Returns the stored value the counter started from, or the value its last
+     * flush wrote, plus the deltas in flight and buffered since.
+     */
+    long incrBy(Object key, String field, long delta) {
+        if (this.closed)
+            return this.sink.incrBy(key, field, delta);
+        Map.Entry<Object, String> id = new AbstractMap.SimpleImmutableEntry<Object, String>(key, field);
+        Counter counter = this.counters.computeIfAbsent(id, k -> new Counter(key, field));
+        if (!counter.seeded)
+            counter.seed(this.sink);
+        counter.add(delta);
+        if (this.closed) {
+            // the final flush may have drained before this add, write what is left through
+            long late = counter.drain();
+            if (late == 0)
+                return counter.value();
+            long value = this.sink.incrBy(key, field, late);
+            counter.flushed(value, late);
+            return value;
+        }
+        if (counter.retired) {
+            // dropped by a flush that may have drained before this add, move what is left
+            long late = counter.drain();
+            if (late != 0)
+                return incrBy(key, field, late);
+        }
+        if (this.buffered.incrementAndGet() >= this.maxPending && this.flushQueued.compareAndSet(false, true)) {
+            try {
+                this.flusher.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                // closing, its final flush writes the delta
+            }
+        }
+        return counter.value();
+    }
+
+    /*
+     * Writes every buffered delta, rethrows the first failure once every counter was tried.
+     */
+    synchronized void flush() {
+        this.flushQueued.set(false);
+        this.buffered.set(0);
+        RuntimeException failure = null;
+        for (Map.Entry<Map.Entry<Object, String>, Counter> entry : this.counters.entrySet()){
+            Counter counter = entry.getValue();
+            long delta = counter.drain();
+            if (delta == 0) {
+                if (counter.idle && this.counters.remove(entry.getKey(), counter)) {
+                    counter.retired = true;
+                    long late = counter.drain();
+                    if (late != 0)
+                        incrBy(counter.key, counter.field, late);
+                }
+                counter.idle = true;
+                continue;
+            }
+            counter.idle = false;
+            try {
+                counter.flushed(this.sink.incrBy(counter.key, counter.field, delta), delta);
+            } catch (RuntimeException e) {
+                counter.putBack(delta);
+                if (failure == null)
+                    failure = e;
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            // deltas were put back, the next flush retries them
+        }
+    }
+
+    /*
+     * Stops the background flushes, then flushes what is left. Later increments are written
+     * through.
+     */
+    void close() {
+        this.closed = true;
+        this.flusher.shutdown();
+        try {
+            this.flusher.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+}
@@ -0,0 +1,167 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.ResultCode;
+import com.zy.bigdata.aerospike.metrics.Histogram;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * Backup reads on another replica. A read runs on the calling thread with its timeout cut to
+ * the hedge delay; one that has not completed by then is abandoned and sent to the next
+ * replica with the full timeout. The synchronous client can not wait on two reads from one
+ * thread, so reads are never handed to another thread: a fast read costs nothing extra, a
+ * slow one its delay plus the second read.
+ *
+ * Every hedge also costs a pooled connection: the client closes the connection of a read
+ * that times out, so the next read on that node opens a new one. A low percentile hedges
+ * often and churns connections, which can make the latency it hedges against worse.
+ *
+ * Since the abandoned read is not raced against the backup, there is no winner to count:
+ * getHedged() counts the backup reads, whatever their outcome.
+ *
+ * The delay is the given percentile of the latencies, end to end, of the previous window of
+ * WINDOW reads, never below minDelayMicros, so about (100 - percentile)% of the reads are
+ * hedged. The client counts timeouts in milliseconds, delays are rounded up to them. Nothing
+ * is hedged until the first window is complete.
+ *
+ * Hedged batch reads fan out one read per key on a pool of their own, never on the client
+ * pool that batch reads themselves wait on; a read finding every pool thread busy runs on the
+ * calling thread.
+ */
+public final class HedgedReads {
+
+    static final int WINDOW = 1024;
+    static final int FAN_OUT_THREADS = 64;
+
+    private final double percentile;
+    private final long minDelayMicros;
+    private final ThreadPoolExecutor fanOut;
+    private final Histogram latencies = new Histogram();
+    private final AtomicLong windowReads = new AtomicLong();
+    private volatile long delayMicros = Long.MAX_VALUE;
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+
+    /**
+     * @param percentile     latency percentile (0 to 100) of the first requests after which a read is hedged
+     * @param minDelayMicros lower bound of the hedge delay
+     */
+    HedgedReads(double percentile, long minDelayMicros) {
+        if (percentile <= 0 || percentile >= 100)
+            throw new IllegalArgumentException("percentile must be between 0 and 100");
+        this.percentile = percentile;
+        this.minDelayMicros = minDelayMicros;
+        AtomicInteger count = new AtomicInteger();
+        this.fanOut = new ThreadPoolExecutor(0, FAN_OUT_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(), runnable -> {
+            Thread thread = new Thread(runnable, "aedis-hedge-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /*
+     * The result of primary, given the timeout in milliseconds it may take, or of hedge when
+     * primary timed out at the hedge delay. timeout is the one of the read, 0 for none.
+     */
+    <T> T read(int timeout, IntFunction<T> primary, Supplier<T> hedge) {
+        this.reads.increment();
+        long start = System.nanoTime();
+        try {
+            long delay = this.delayMicros;
+            int cut = (delay == Long.MAX_VALUE) ? Integer.MAX_VALUE : (int) Math.min(Integer.MAX_VALUE, (delay + 999) / 1000);
+            if (timeout > 0 && timeout <= cut)
+                return primary.apply(timeout);
+            try {
+                return primary.apply(cut);
+            } catch (AerospikeException e) {
+                if (e.getResultCode() != ResultCode.TIMEOUT || cut == Integer.MAX_VALUE)
+                    throw e;
+            }
+            this.hedged.increment();
+            return hedge.get();
+        } finally {
+            record((System.nanoTime() - start) / 1000);
+        }
+    }
+
+    /*
+     * Runs reads in parallel on the fan out pool, each given at most timeout milliseconds
+     * (0 for no limit), and returns their results in order.
+     */
+    <T> List<T> fanOut(List<Supplier<T>> reads, int timeout) {
+        List<CompletableFuture<T>> futures = new ArrayList<CompletableFuture<T>>(reads.size());
+        for (Supplier<T> read : reads){
+            futures.add(CompletableFuture.supplyAsync(read, this.fanOut));
+        }
+        List<T> results = new ArrayList<T>(reads.size());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        for (CompletableFuture<T> future : futures){
+            try {
+                results.add((timeout > 0) ? future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS) : future.get());
+            } catch (TimeoutException e) {
+                throw new AerospikeException.Timeout(null, timeout, 0, 0, 0);
+            } catch (ExecutionException e) {
+                throw unwrap(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CompletionException(e);
+            }
+        }
+        return results;
+    }
+
+    private void record(long micros) {
+        this.latencies.record(micros);
+        if (this.windowReads.incrementAndGet() % WINDOW == 0) {
+            this.delayMicros = Math.max(this.minDelayMicros, this.latencies.getPercentile(this.percentile));
+            this.latencies.reset();
+        }
+    }
+
+    private static RuntimeException unwrap(Throwable cause) {
+        return (cause instanceof RuntimeException) ? (RuntimeException) cause : new CompletionException(cause);
+    }
+
+    /*
+     * Stops the idle fan out threads, reads still running complete.
+     */
+    void close() {
+        this.fanOut.shutdown();
+    }
+
+    /*
+     * Current hedge delay, Long.MAX_VALUE until the first window is complete.
+     */
+    public long getDelayMicros() {
+        return this.delayMicros;
+    }
+
+    public long getReads() {
+        return this.reads.sum();
+    }
+
+    /*
+     * Reads sent to a second replica after the first timed out at the hedge delay.
+     */
+    public long getHedged() {
+        return this.hedged.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "reads=" + getReads() + " hedged=" + getHedged() + " delayMicros=" + this.delayMicros;
+    }
+}
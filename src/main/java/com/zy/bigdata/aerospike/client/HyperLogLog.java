@@ -0,0 +1,228 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.ResultCode;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * HyperLogLog sketch of PFADD, PFCOUNT and PFMERGE, with the parameters of Redis: 2^14
+ * registers of 6 bits and a 64 bit MurmurHash64A, about 0.81% standard error. Cardinalities
+ * are estimated with the improved estimator of Ertl, which Redis uses too.
+ *
+ * Stored as a blob starting with "HYLL" and an encoding byte. Sketches with few set registers
+ * are sparse, 3 bytes (index, value) per set register in index order; they become dense, the
+ * registers packed 6 bits each in 12 KB, once the sparse form would exceed SPARSE_MAX_BYTES.
+ */
+final class HyperLogLog {
+
+    static final int P = 14;
+    static final int REGISTERS = 1 << P;
+    // bits of the hash left for the run of zeros, a register holds 0 to Q + 1
+    static final int Q = 64 - P;
+    static final int DENSE_BYTES = REGISTERS * 6 / 8;
+    static final int SPARSE_MAX_BYTES = 3000;
+
+    private static final byte[] MAGIC = {'H', 'Y', 'L', 'L'};
+    private static final int HEADER = MAGIC.length + 1;
+    private static final byte DENSE = 0;
+    private static final byte SPARSE = 1;
+    private static final long SEED = 0xadc83b19L;
+
+    private final byte[] registers = new byte[REGISTERS];
+
+    /*
+     * The sketch stored in a bin, an empty one for a missing value.
+     */
+    static HyperLogLog parse(Object stored) {
+        HyperLogLog hll = new HyperLogLog();
+        if (stored == null)
+            return hll;
+        if (!isSketch(stored))
+            throw new AerospikeException(ResultCode.BIN_TYPE_ERROR, "WRONGTYPE Key is not a valid HyperLogLog string value.");
+        byte[] bytes = (byte[]) stored;
+        if (bytes[MAGIC.length] == DENSE) {
+            if (bytes.length != HEADER + DENSE_BYTES)
+                throw new AerospikeException(ResultCode.BIN_TYPE_ERROR, "INVALIDOBJ Corrupted HLL object detected");
+            for (int i = 0; i < REGISTERS; i++){
+                hll.registers[i] = register(dense(bytes, i));
+            }
+        } else {
+            if ((bytes.length - HEADER) % 3 != 0)
+                throw new AerospikeException(ResultCode.BIN_TYPE_ERROR, "INVALIDOBJ Corrupted HLL object detected");
+            for (int offset = HEADER; offset < bytes.length; offset += 3){
+                int index = ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+                hll.registers[index & (REGISTERS - 1)] = register(bytes[offset + 2]);
+            }
+        }
+        return hll;
+    }
+
+    /*
+     * A stored register, which holds 0 to Q + 1; anything else is a corrupt sketch.
+     */
+    private static byte register(int value) {
+        if (value < 0 || value > Q + 1)
+            throw new AerospikeException(ResultCode.BIN_TYPE_ERROR, "INVALIDOBJ Corrupted HLL object detected");
+        return (byte) value;
+    }
+
+    static boolean isSketch(Object stored) {
+        if (!(stored instanceof byte[]))
+            return false;
+        byte[] bytes = (byte[]) stored;
+        return bytes.length >= HEADER && bytes[0] == MAGIC[0] && bytes[1] == MAGIC[1] && bytes[2] == MAGIC[2]
+                && bytes[3] == MAGIC[3] && (bytes[MAGIC.length] == DENSE || bytes[MAGIC.length] == SPARSE);
+    }
+
+    /*
+     * True when a register changed, i.e. the estimate may have.
+     */
+    boolean add(String member) {
+        byte[] bytes = member.getBytes(StandardCharsets.UTF_8);
+        long hash = murmurHash64A(bytes, SEED);
+        int index = (int) (hash & (REGISTERS - 1));
+        hash >>>= P;
+        hash |= 1L << Q;
+        int count = Long.numberOfTrailingZeros(hash) + 1;
+        if (count <= this.registers[index])
+            return false;
+        this.registers[index] = (byte) count;
+        return true;
+    }
+
+    /*
+     * Keeps the larger register of both, the sketch of the union.
+     */
+    void merge(HyperLogLog other) {
+        for (int i = 0; i < REGISTERS; i++){
+            if (other.registers[i] > this.registers[i])
+                this.registers[i] = other.registers[i];
+        }
+    }
+
+    long count() {
+        int[] histogram = new int[Q + 2];
+        for (byte register : this.registers){
+            histogram[register]++;
+        }
+        double m = REGISTERS;
+        double z = m * tau((m - histogram[Q + 1]) / m);
+        for (int k = Q; k >= 1; k--){
+            z += histogram[k];
+            z *= 0.5;
+        }
+        z += m * sigma(histogram[0] / m);
+        return Math.round(0.5 / Math.log(2) * m * m / z);
+    }
+
+    byte[] serialize() {
+        int set = 0;
+        for (byte register : this.registers){
+            if (register != 0) set++;
+        }
+        if (set * 3 <= SPARSE_MAX_BYTES) {
+            byte[] bytes = header(HEADER + set * 3, SPARSE);
+            int offset = HEADER;
+            for (int i = 0; i < REGISTERS; i++){
+                if (this.registers[i] == 0)
+                    continue;
+                bytes[offset] = (byte) (i >>> 8);
+                bytes[offset + 1] = (byte) i;
+                bytes[offset + 2] = this.registers[i];
+                offset += 3;
+            }
+            return bytes;
+        }
+        byte[] bytes = header(HEADER + DENSE_BYTES, DENSE);
+        for (int i = 0; i < REGISTERS; i++){
+            int bit = i * 6;
+            int value = this.registers[i] << (bit & 7);
+            int offset = HEADER + (bit >>> 3);
+            bytes[offset] |= (byte) value;
+            if ((bit & 7) > 2)
+                bytes[offset + 1] |= (byte) (value >>> 8);
+        }
+        return bytes;
+    }
+
+    private static byte[] header(int length, byte encoding) {
+        byte[] bytes = Arrays.copyOf(MAGIC, length);
+        bytes[MAGIC.length] = encoding;
+        return bytes;
+    }
+
+    private static int dense(byte[] bytes, int index) {
+        int bit = index * 6;
+        int offset = HEADER + (bit >>> 3);
+        int value = (bytes[offset] & 0xFF) >>> (bit & 7);
+        if ((bit & 7) > 2)
+            value |= (bytes[offset + 1] & 0xFF) << (8 - (bit & 7));
+        return value & 0x3F;
+    }
+
+    private static double sigma(double x) {
+        if (x == 1)
+            return Double.POSITIVE_INFINITY;
+        double y = 1;
+        double z = x;
+        double previous;
+        do {
+            x *= x;
+            previous = z;
+            z += x * y;
+            y += y;
+        } while (previous != z);
+        return z;
+    }
+
+    private static double tau(double x) {
+        if (x == 0 || x == 1)
+            return 0;
+        double y = 1;
+        double z = 1 - x;
+        double previous;
+        do {
+            x = Math.sqrt(x);
+            previous = z;
+            y *= 0.5;
+            z -= Math.pow(1 - x, 2) * y;
+        } while (previous != z);
+        return z / 3;
+    }
+
+    @SuppressWarnings("fallthrough")
+    static long murmurHash64A(byte[] data, long seed) {
+        final long m = 0xc6a4a7935bd1e995L;
+        final int r = 47;
+        int length = data.length;
+        long h = seed ^ (length * m);
+        int blocks = length >>> 3;
+        for (int i = 0; i < blocks; i++){
+            int offset = i << 3;
+            long k = (data[offset] & 0xFFL) | (data[offset + 1] & 0xFFL) << 8 | (data[offset + 2] & 0xFFL) << 16
+                    | (data[offset + 3] & 0xFFL) << 24 | (data[offset + 4] & 0xFFL) << 32 | (data[offset + 5] & 0xFFL) << 40
+                    | (data[offset + 6] & 0xFFL) << 48 | (data[offset + 7] & 0xFFL) << 56;
+            k *= m;
+            k ^= k >>> r;
+            k *= m;
+            h ^= k;
+            h *= m;
+        }
+        int tail = blocks << 3;
+        switch (length & 7) {
+            case 7: h ^= (data[tail + 6] & 0xFFL) << 48;
+            case 6: h ^= (data[tail + 5] & 0xFFL) << 40;
+            case 5: h ^= (data[tail + 4] & 0xFFL) << 32;
+            case 4: h ^= (data[tail + 3] & 0xFFL) << 24;
+            case 3: h ^= (data[tail + 2] & 0xFFL) << 16;
+            case 2: h ^= (data[tail + 1] & 0xFFL) << 8;
+            case 1: h ^= (data[tail] & 0xFFL);
+                h *= m;
+        }
+        h ^= h >>> r;
+        h *= m;
+        h ^= h >>> r;
+        return h;
+    }
+}
@@ -0,0 +1,159 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.IAerospikeClient;
+import com.aerospike.client.Value;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.policy.QueryPolicy;
+import com.aerospike.client.query.RecordSet;
+import com.aerospike.client.query.ResultSet;
+import com.aerospike.client.query.Statement;
+import com.zy.bigdata.aerospike.util.GlobPatterns;
+import java.io.Closeable;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming replacement for KEYS. Nodes are scanned one after the other, the glob is evaluated
+ * on the server by the redis.KEYS stream UDF so only matching keys cross the network, and
+ * keys are pulled through the bounded record queue of the query policy, a slow consumer
+ * pauses the scan instead of buffering the whole set.
+ *
+ * Client 3.3 can not scan partition ranges, the resume point is a node: {@link #getCursor()}
+ * names the node the scan continues with, "0" once every node is done. Like Redis SCAN, keys
+ * of a node that was interrupted are returned again when resuming.
+ */
+public class KeyScan implements Iterator<String>, Closeable {
+
+    public static final String CURSOR_DONE = "0";
+
+    private final IAerospikeClient client;
+    private final QueryPolicy policy;
+    private final String namespace;
+    private final String set;
+    private final String keyBin;
+    private final String luaPattern;
+    private final Node[] nodes;
+    private int nodeIndex;
+
+    private ResultSet results;
+    private RecordSet records;
+    private String next;
+    private boolean closed = false;
+
+    KeyScan(IAerospikeClient client, QueryPolicy policy, String namespace, String set, String keyBin,
+            String pattern, String cursor) {
+        this.client = client;
+        this.policy = policy;
+        this.namespace = namespace;
+        this.set = set;
+        this.keyBin = keyBin;
+        this.luaPattern = GlobPatterns.matchesAll(pattern) ? null : GlobPatterns.toLuaPattern(pattern);
+        this.nodes = client.getNodes().clone();
+        Arrays.sort(this.nodes, Comparator.comparing(Node::getName));
+        this.nodeIndex = 0;
+        if (cursor != null && !CURSOR_DONE.equals(cursor)) {
+            while (this.nodeIndex < this.nodes.length && this.nodes[this.nodeIndex].getName().compareTo(cursor) < 0) {
+                this.nodeIndex++;
+            }
+        } else if (CURSOR_DONE.equals(cursor)) {
+            this.nodeIndex = this.nodes.length;
+        }
+    }
+
+    public String getCursor() {
+        return (this.nodeIndex >= this.nodes.length) ? CURSOR_DONE : this.nodes[this.nodeIndex].getName();
+    }
+
+    private void open(Node node) {
+        Statement statement = new Statement();
+        statement.setNamespace(this.namespace);
+        statement.setSetName(this.set);
+        statement.setBinNames(this.keyBin);
+        if (this.luaPattern == null) {
+            this.records = this.client.queryNode(this.policy, statement, node);
+        } else {
+            statement.setAggregateFunction(KeyScan.class.getClassLoader(), "udf/redis.lua", "redis", "KEYS",
+                    Value.get(this.keyBin), Value.get(this.luaPattern));
+            this.results = this.client.queryAggregateNode(this.policy, statement, node);
+        }
+    }
+
+    private String pull() {
+        if (this.results != null) {
+            while (this.results.next()) {
+                Object key = this.results.getObject();
+                if (key != null) return keyString(key);
+            }
+        } else {
+            while (this.records.next()) {
+                Object key = this.records.getRecord().getValue(this.keyBin);
+                if (key != null) return keyString(key);
+            }
+        }
+        return null;
+    }
+
+    /*
+     * Key bin value as text, keys written by the binary commands are blobs.
+     */
+    static String keyString(Object key) {
+        return (key instanceof byte[]) ? new String((byte[]) key, StandardCharsets.UTF_8) : String.valueOf(key);
+    }
+
+    private void closeCurrent() {
+        if (this.results != null) this.results.close();
+        if (this.records != null) this.records.close();
+        this.results = null;
+        this.records = null;
+    }
+
+    @Override
+    public boolean hasNext() {
+        while (this.next == null && !this.closed) {
+            if (this.results == null && this.records == null) {
+                if (this.nodeIndex >= this.nodes.length) return false;
+                open(this.nodes[this.nodeIndex]);
+            }
+            this.next = pull();
+            if (this.next == null) {
+                closeCurrent();
+                this.nodeIndex++;
+            }
+        }
+        return this.next != null;
+    }
+
+    @Override
+    public String next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        String key = this.next;
+        this.next = null;
+        return key;
+    }
+
+    /*
+     * Up to count keys, fewer only when the scan is complete.
+     */
+    public List<String> next(int count) {
+        List<String> keys = new ArrayList<String>(Math.min(count, 1024));
+        while (keys.size() < count && hasNext()) {
+            keys.add(next());
+        }
+        return keys;
+    }
+
+    public Stream<String> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+        this.closed = true;
+        this.next = null;
+        closeCurrent();
+    }
+}
@@ -0,0 +1,188 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.*;
+import com.aerospike.client.cdt.*;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.WritePolicy;
+import java.util.*;
+
+/**
+ * Redis hash commands implemented with server side CDT map operations through operate().
+ * New hashes are created key ordered so field lookups are O(log n) on the server; hashes
+ * written by the redis.lua UDF stay unordered maps and remain readable.
+ */
+class NativeHashes {
+
+    static final MapPolicy ORDERED = new MapPolicy(MapOrder.KEY_ORDERED, MapWriteMode.UPDATE);
+    static final MapPolicy ORDERED_CREATE_ONLY = new MapPolicy(MapOrder.KEY_ORDERED, MapWriteMode.CREATE_ONLY);
+
+    final IAerospikeClient client;
+    final WritePolicy writePolicy;
+    final String bin;
+
+    NativeHashes(IAerospikeClient client, WritePolicy writePolicy, String bin) {
+        this.client = client;
+        this.writePolicy = writePolicy;
+        this.bin = bin;
+    }
+
+    private WritePolicy policy(RecordExistsAction action) {
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = action;
+        return wp;
+    }
+
+    /*
+     * Results of several operations on the same bin are returned as one list, in operation order.
+     */
+    static List<?> results(Record record, String bin) {
+        return (record == null) ? null : (List<?>) record.getValue(bin);
+    }
+
+    static long toLong(Object value) {
+        return (value == null) ? 0L : ((Number) value).longValue();
+    }
+
+    private Record read(Key key, Operation... ops) {
+        try {
+            return this.client.operate(this.writePolicy, key, ops);
+        } catch (AerospikeException e) {
+            if (NativeLists.isMissing(e))
+                return null;
+            throw e;
+        }
+    }
+
+    private static List<Value> values(Collection<String> fields) {
+        List<Value> values = new ArrayList<Value>(fields.size());
+        for (String field : fields){
+            values.add(Value.get(field));
+        }
+        return values;
+    }
+
+    /*
+     * Number of fields created, the map size is read before and after the put in the same operate.
+     */
+    long hset(Key key, Object field, Object value) {
+        Record record = this.client.operate(policy(RecordExistsAction.UPDATE), key,
+                MapOperation.size(this.bin), MapOperation.put(ORDERED, this.bin, Value.get(field), Value.get(value)));
+        List<?> results = results(record, this.bin);
+        return toLong(results.get(1)) - toLong(results.get(0));
+    }
+
+    long hset(Key key, Map<String, ?> hash) {
+        Record record = this.client.operate(policy(RecordExistsAction.UPDATE), key,
+                MapOperation.size(this.bin), MapOperation.putItems(ORDERED, this.bin, toValues(hash)));
+        List<?> results = results(record, this.bin);
+        return toLong(results.get(1)) - toLong(results.get(0));
+    }
+
+    static Map<Value, Value> toValues(Map<String, ?> hash) {
+        Map<Value, Value> items = new HashMap<Value, Value>(hash.size() * 2);
+        for (Map.Entry<String, ?> entry : hash.entrySet()){
+            items.put(Value.get(entry.getKey()), Value.get(entry.getValue()));
+        }
+        return items;
+    }
+
+    long hsetnx(Key key, String field, Object value) {
+        try {
+            this.client.operate(policy(RecordExistsAction.UPDATE), key,
+                    MapOperation.put(ORDERED_CREATE_ONLY, this.bin, Value.get(field), Value.get(value)));
+            return 1;
+        } catch (AerospikeException e) {
+            if (e.getResultCode() == ResultCode.ELEMENT_EXISTS)
+                return 0;
+            throw e;
+        }
+    }
+
+    String hmset(Key key, Map<String, ?> hash) {
+        this.client.operate(policy(RecordExistsAction.UPDATE), key, MapOperation.putItems(ORDERED, this.bin, toValues(hash)));
+        return "OK";
+    }
+
+    Record hget(Key key, Object field) {
+        return read(key, MapOperation.getByKey(this.bin, Value.get(field), MapReturnType.VALUE));
+    }
+
+    /*
+     * One getByKey per field in a single operate, client 3.3 has no get by key list.
+     */
+    List<Object> hmget(Key key, String... fields) {
+        List<Object> result = new ArrayList<Object>(fields.length);
+        if (fields.length == 0)
+            return result;
+        Operation[] ops = new Operation[fields.length];
+        for (int i = 0; i < fields.length; i++){
+            ops[i] = MapOperation.getByKey(this.bin, Value.get(fields[i]), MapReturnType.VALUE);
+        }
+        Record record = read(key, ops);
+        if (record == null || !record.bins.containsKey(this.bin)) {
+            for (int i = 0; i < fields.length; i++){
+                result.add(null);
+            }
+        } else if (fields.length == 1) {
+            result.add(record.getValue(this.bin));
+        } else {
+            result.addAll(results(record, this.bin));
+        }
+        return result;
+    }
+
+    long hincrBy(Key key, String field, long increment) {
+        Record record = this.client.operate(policy(RecordExistsAction.UPDATE), key,
+                MapOperation.increment(ORDERED, this.bin, Value.get(field), Value.get(increment)));
+        return record.getLong(this.bin);
+    }
+
+    double hincrByFloat(Key key, String field, double increment) {
+        Record record = this.client.operate(policy(RecordExistsAction.UPDATE), key,
+                MapOperation.increment(ORDERED, this.bin, Value.get(field), Value.get(increment)));
+        return record.getDouble(this.bin);
+    }
+
+    boolean hexists(Key key, String field) {
+        Record record = read(key, MapOperation.getByKey(this.bin, Value.get(field), MapReturnType.COUNT));
+        return record != null && toLong(record.getValue(this.bin)) > 0;
+    }
+
+    long hdel(Key key, String... fields) {
+        try {
+            Operation op = (fields.length == 1)
+                    ? MapOperation.removeByKey(this.bin, Value.get(fields[0]), MapReturnType.COUNT)
+                    : MapOperation.removeByKeyList(this.bin, values(Arrays.asList(fields)), MapReturnType.COUNT);
+            Record record = this.client.operate(policy(RecordExistsAction.UPDATE_ONLY), key, op);
+            return (record == null) ? 0 : toLong(record.getValue(this.bin));
+        } catch (AerospikeException e) {
+            if (NativeLists.isMissing(e))
+                return 0;
+            throw e;
+        }
+    }
+
+    long hlen(Key key) {
+        Record record = read(key, MapOperation.size(this.bin));
+        return (record == null) ? 0 : toLong(record.getValue(this.bin));
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Object> hkeys(Key key) {
+        Record record = read(key, MapOperation.getByIndexRange(this.bin, 0, MapReturnType.KEY));
+        return (record == null || record.getValue(this.bin) == null) ? new ArrayList<Object>() : (List<Object>) record.getList(this.bin);
+    }
+
+    @SuppressWarnings("unchecked")
+    List<Object> hvals(Key key) {
+        Record record = read(key, MapOperation.getByIndexRange(this.bin, 0, MapReturnType.VALUE));
+        return (record == null || record.getValue(this.bin) == null) ? new ArrayList<Object>() : (List<Object>) record.getList(this.bin);
+    }
+
+    /*
+     * The whole map bin as read, with the record so callers get the TTL along with it.
+     */
+    Record hgetAll(Key key) {
+        return this.client.get(this.writePolicy, key, this.bin);
+    }
+}
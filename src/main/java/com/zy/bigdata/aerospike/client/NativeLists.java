@@ -0,0 +1,336 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.*;
+import com.aerospike.client.cdt.ListOperation;
+import com.aerospike.client.policy.GenerationPolicy;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.WritePolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Redis list commands implemented with server side CDT list operations through operate().
+ * The list bin has the same layout the redis.lua UDF writes, so both modes work on the same data.
+ */
+class NativeLists {
+
+    // out of range index on a CDT operation, not defined as a constant by client 3.3
+    static final int OP_NOT_APPLICABLE = 26;
+    private static final int MAX_GENERATION_RETRIES = 5;
+
+    final IAerospikeClient client;
+    final WritePolicy writePolicy;
+    final String bin;
+
+    NativeLists(IAerospikeClient client, WritePolicy writePolicy, String bin) {
+        this.client = client;
+        this.writePolicy = writePolicy;
+        this.bin = bin;
+    }
+
+    private WritePolicy policy(RecordExistsAction action) {
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = action;
+        return wp;
+    }
+
+    private WritePolicy generation(int generation) {
+        WritePolicy wp = policy(RecordExistsAction.UPDATE_ONLY);
+        wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+        wp.generation = generation;
+        return wp;
+    }
+
+    /*
+     * Result codes of a command addressing a missing record, bin or index.
+     */
+    static boolean isMissing(AerospikeException e) {
+        int code = e.getResultCode();
+        return code == ResultCode.KEY_NOT_FOUND_ERROR || code == ResultCode.BIN_NOT_FOUND
+                || code == ResultCode.PARAMETER_ERROR || code == OP_NOT_APPLICABLE;
+    }
+
+    long rpush(Key key, Object value) {
+        Record record = this.client.operate(policy(RecordExistsAction.UPDATE), key, ListOperation.append(this.bin, Value.get(value)));
+        return record.getLong(this.bin);
+    }
+
+    long lpush(Key key, Object value) {
+        Record record = this.client.operate(policy(RecordExistsAction.UPDATE), key, ListOperation.insert(this.bin, 0, Value.get(value)));
+        return record.getLong(this.bin);
+    }
+
+    long rpushx(Key key, Object value) {
+        try {
+            Record record = this.client.operate(policy(RecordExistsAction.UPDATE_ONLY), key, ListOperation.append(this.bin, Value.get(value)));
+            return record.getLong(this.bin);
+        } catch (AerospikeException e) {
+            if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR)
+                return 0;
+            throw e;
+        }
+    }
+
+    long lpushx(Key key, Object value) {
+        try {
+            Record record = this.client.operate(policy(RecordExistsAction.UPDATE_ONLY), key, ListOperation.insert(this.bin, 0, Value.get(value)));
+            return record.getLong(this.bin);
+        } catch (AerospikeException e) {
+            if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR)
+                return 0;
+            throw e;
+        }
+    }
+
+    long llen(Key key) {
+        try {
+            Record record = this.client.operate(this.writePolicy, key, ListOperation.size(this.bin));
+            return (record == null) ? 0 : record.getLong(this.bin);
+        } catch (AerospikeException e) {
+            if (isMissing(e))
+                return 0;
+            throw e;
+        }
+    }
+
+    /*
+     * Non negative bounds and the common "start .. -1" form are served by a single range read,
+     * any other negative bound reads the list once and slices it here.
+     */
+    @SuppressWarnings("unchecked")
+    List<String> lrange(Key key, int low, int high) {
+        Operation op;
+        boolean slice = false;
+        if (low >= 0 && high >= 0) {
+            if (high < low) return new ArrayList<String>();
+            op = ListOperation.getRange(this.bin, low, high - low + 1);
+        } else if (low >= 0 && high == -1) {
+            op = ListOperation.getRange(this.bin, low);
+        } else {
+            op = ListOperation.getRange(this.bin, 0);
+            slice = true;
+        }
+        List<String> list;
+        try {
+            Record record = this.client.operate(this.writePolicy, key, op);
+            list = (record == null || record.getValue(this.bin) == null) ? null : (List<String>) record.getList(this.bin);
+        } catch (AerospikeException e) {
+            if (isMissing(e))
+                return new ArrayList<String>();
+            throw e;
+        }
+        if (list == null)
+            return new ArrayList<String>();
+        return slice ? slice(list, low, high) : list;
+    }
+
+    static <T> List<T> slice(List<T> list, int low, int high) {
+        int size = list.size();
+        int start = (low < 0) ? Math.max(0, size + low) : low;
+        int stop = (high < 0) ? size + high : Math.min(high, size - 1);
+        if (start > stop || start >= size)
+            return new ArrayList<T>();
+        return new ArrayList<T>(list.subList(start, stop + 1));
+    }
+
+    String ltrim(Key key, int start, int stop) {
+        if (start >= 0 && stop >= 0) {
+            Operation op = (stop < start) ? ListOperation.clear(this.bin) : ListOperation.trim(this.bin, start, stop - start + 1);
+            try {
+                this.client.operate(policy(RecordExistsAction.UPDATE_ONLY), key, op);
+            } catch (AerospikeException e) {
+                if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR)
+                    return "OK";
+                if (!isMissing(e))
+                    throw e;
+                // start beyond the end of the list, redis leaves an empty list
+                this.client.operate(policy(RecordExistsAction.UPDATE_ONLY), key, ListOperation.clear(this.bin));
+            }
+            return "OK";
+        }
+        // negative bounds need the size, trim is then guarded by the generation read with it
+        for (int attempt = 0; ; attempt++){
+            Record record;
+            try {
+                record = this.client.operate(this.writePolicy, key, ListOperation.size(this.bin));
+            } catch (AerospikeException e) {
+                if (isMissing(e))
+                    return "OK";
+                throw e;
+            }
+            if (record == null)
+                return "OK";
+            int size = (int) record.getLong(this.bin);
+            int from = (start < 0) ? Math.max(0, size + start) : start;
+            int to = (stop < 0) ? size + stop : Math.min(stop, size - 1);
+            WritePolicy wp = policy(RecordExistsAction.UPDATE_ONLY);
+            wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+            wp.generation = record.generation;
+            try {
+                if (from > to || from >= size)
+                    this.client.operate(wp, key, ListOperation.clear(this.bin));
+                else
+                    this.client.operate(wp, key, ListOperation.trim(this.bin, from, to - from + 1));
+                return "OK";
+            } catch (AerospikeException e) {
+                if (e.getResultCode() != ResultCode.GENERATION_ERROR || attempt >= MAX_GENERATION_RETRIES)
+                    throw e;
+            }
+        }
+    }
+
+    String lset(Key key, int index, Object value) {
+        this.client.operate(policy(RecordExistsAction.UPDATE_ONLY), key, ListOperation.set(this.bin, index, Value.get(value)));
+        return "OK";
+    }
+
+    Object lindex(Key key, int index) {
+        try {
+            Record record = this.client.operate(this.writePolicy, key, ListOperation.get(this.bin, index));
+            return (record == null) ? null : record.getValue(this.bin);
+        } catch (AerospikeException e) {
+            if (isMissing(e))
+                return null;
+            throw e;
+        }
+    }
+
+    Object pop(Key key, int index) {
+        try {
+            Record record = this.client.operate(policy(RecordExistsAction.UPDATE_ONLY), key, ListOperation.pop(this.bin, index));
+            return (record == null) ? null : record.getValue(this.bin);
+        } catch (AerospikeException e) {
+            if (isMissing(e))
+                return null;
+            throw e;
+        }
+    }
+
+    String lpop(Key key) {
+        return (String) pop(key, 0);
+    }
+
+    String rpop(Key key) {
+        return (String) pop(key, -1);
+    }
+
+    /*
+     * RPOPLPUSH without losing the element: the tail of source is read with the generation of
+     * its record, pushed onto destination, then popped from source only if the tail is still
+     * that element. A write leaving the tail in place, e.g. an LPUSH, only makes the pop retry
+     * at the new generation; a tail popped or replaced in between undoes the push and starts
+     * over after a backoff. A failure between push and pop leaves the element on both lists,
+     * never on neither; so does a consumer of destination taking the element before the pop,
+     * the move is at least once. A rotation of one list is a single generation checked operate.
+     */
+    Object rpoplpush(Key source, Key destination) {
+        for (int attempt = 0; ; attempt++){
+            Record record = tail(source);
+            if (record == null)
+                return null;
+            Object value = record.getValue(this.bin);
+            try {
+                if (source.equals(destination)) {
+                    this.client.operate(generation(record.generation), source,
+                            ListOperation.pop(this.bin, -1), ListOperation.insert(this.bin, 0, Value.get(value)));
+                } else {
+                    lpush(destination, value);
+                    popTail(source, destination, value, record.generation);
+                }
+                return value;
+            } catch (AerospikeException e) {
+                int code = e.getResultCode();
+                if ((code != ResultCode.GENERATION_ERROR && code != ResultCode.KEY_NOT_FOUND_ERROR) || attempt >= MAX_GENERATION_RETRIES)
+                    throw e;
+                backoff(attempt);
+            }
+        }
+    }
+
+    /*
+     * The last element of the list with the generation of its record, null when it is empty.
+     */
+    private Record tail(Key key) {
+        try {
+            Record record = this.client.operate(this.writePolicy, key, ListOperation.get(this.bin, -1));
+            return (record == null || record.getValue(this.bin) == null) ? null : record;
+        } catch (AerospikeException e) {
+            if (isMissing(e))
+                return null;
+            throw e;
+        }
+    }
+
+    /*
+     * Pops the tail of source, read as value at generation, undoing the push onto destination
+     * and rethrowing when the tail changed.
+     */
+    private void popTail(Key source, Key destination, Object value, int generation) {
+        for (int attempt = 0; ; attempt++){
+            try {
+                this.client.operate(generation(generation), source, ListOperation.pop(this.bin, -1));
+                return;
+            } catch (AerospikeException e) {
+                Record record = (e.getResultCode() == ResultCode.GENERATION_ERROR && attempt < MAX_GENERATION_RETRIES) ? tail(source) : null;
+                if (record == null || !Objects.deepEquals(value, record.getValue(this.bin))) {
+                    unpush(destination, value);
+                    throw e;
+                }
+                generation = record.generation;
+            }
+        }
+    }
+
+    /*
+     * Index of the first element equal to value, blobs compared by content.
+     */
+    static int indexOf(List<?> list, Object value) {
+        for (int i = 0; i < list.size(); i++){
+            if (Objects.deepEquals(list.get(i), value))
+                return i;
+        }
+        return -1;
+    }
+
+    /*
+     * Randomized exponential pause before a write that lost a generation race starts over, so
+     * writers that keep colliding spread out.
+     */
+    static void backoff(int attempt) {
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextInt(2 << Math.min(attempt, 5)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Removes the first occurrence of value, the element this client pushed at the head of the
+     * list; elements pushed after it are skipped, a racing writer makes the removal start over.
+     */
+    void unpush(Key key, Object value) {
+        for (int attempt = 0; attempt <= MAX_GENERATION_RETRIES; attempt++){
+            Record record;
+            try {
+                record = this.client.operate(this.writePolicy, key, ListOperation.getRange(this.bin, 0));
+            } catch (AerospikeException e) {
+                if (isMissing(e))
+                    return;
+                throw e;
+            }
+            List<?> list = (record == null) ? null : record.getList(this.bin);
+            int index = (list == null) ? -1 : indexOf(list, value);
+            if (index < 0)
+                return;
+            try {
+                this.client.operate(generation(record.generation), key, ListOperation.remove(this.bin, index));
+                return;
+            } catch (AerospikeException e) {
+                if (e.getResultCode() != ResultCode.GENERATION_ERROR)
+                    throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.*;
+import com.aerospike.client.cdt.*;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.WritePolicy;
+import java.util.*;
+
+/**
+ * Redis sorted set commands on a key value ordered CDT map of member to score. The server
+ * indexes such a map by member and by score, so ZSCORE, ZRANK and the rank and score range
+ * reads are O(log n) plus the members returned.
+ *
+ * Scores are always stored as doubles, the server orders integers before doubles and mixing
+ * them would break the score order. Ranges are read as member/score maps and put in Redis
+ * order, by score then member, on the client.
+ */
+class NativeSortedSets {
+
+    static final MapPolicy SCORED = new MapPolicy(MapOrder.KEY_VALUE_ORDERED, MapWriteMode.UPDATE);
+
+    final IAerospikeClient client;
+    final WritePolicy writePolicy;
+    final String bin;
+
+    NativeSortedSets(IAerospikeClient client, WritePolicy writePolicy, String bin) {
+        this.client = client;
+        this.writePolicy = writePolicy;
+        this.bin = bin;
+    }
+
+    private WritePolicy policy(RecordExistsAction action) {
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = action;
+        return wp;
+    }
+
+    private Record read(Key key, Operation... ops) {
+        try {
+            return this.client.operate(this.writePolicy, key, ops);
+        } catch (AerospikeException e) {
+            if (NativeLists.isMissing(e))
+                return null;
+            throw e;
+        }
+    }
+
+    static Map<Value, Value> toValues(Map<String, Double> scores) {
+        Map<Value, Value> items = new HashMap<Value, Value>(scores.size() * 2);
+        for (Map.Entry<String, Double> entry : scores.entrySet()){
+            items.put(Value.get(entry.getKey()), Value.get(entry.getValue().doubleValue()));
+        }
+        return items;
+    }
+
+    static List<Value> values(Collection<String> members) {
+        List<Value> values = new ArrayList<Value>(members.size());
+        for (String member : members){
+            values.add(Value.get(member));
+        }
+        return values;
+    }
+
+    static Double toScore(Object value) {
+        return (value instanceof Number) ? ((Number) value).doubleValue() : null;
+    }
+
+    static int compare(Map.Entry<?, ?> a, Map.Entry<?, ?> b) {
+        int c = Double.compare(((Number) a.getValue()).doubleValue(), ((Number) b.getValue()).doubleValue());
+        return (c != 0) ? c : String.valueOf(a.getKey()).compareTo(String.valueOf(b.getKey()));
+    }
+
+    /*
+     * Adds the members of the member/score map read into record to entries.
+     */
+    static void collect(List<Map.Entry<?, ?>> entries, Record record, String bin) {
+        Map<?, ?> map = (record == null) ? null : record.getMap(bin);
+        if (map != null)
+            entries.addAll(map.entrySet());
+    }
+
+    /*
+     * The window [offset, offset + count) of entries in score order, the highest score first
+     * when reverse. A negative count takes every entry from offset.
+     */
+    static Map<String, Double> ordered(List<Map.Entry<?, ?>> entries, boolean reverse, long offset, long count) {
+        entries.sort(reverse ? (a, b) -> compare(b, a) : NativeSortedSets::compare);
+        Map<String, Double> members = new LinkedHashMap<String, Double>();
+        long end = (count < 0) ? entries.size() : Math.min(entries.size(), offset + count);
+        for (long i = Math.max(0, offset); i < end; i++){
+            Map.Entry<?, ?> entry = entries.get((int) i);
+            members.put(String.valueOf(entry.getKey()), toScore(entry.getValue()));
+        }
+        return members;
+    }
+
+    /*
+     * Members of the ranks [start, stop] with their scores, the rank counted from the highest
+     * score when reverse. Ranks past either end are clamped by the server.
+     */
+    Operation rankRange(long start, long stop, boolean reverse) {
+        int count = (int) (stop - start + 1);
+        int rank = reverse ? (int) -(stop + 1) : (int) start;
+        return MapOperation.getByRankRange(this.bin, rank, count, MapReturnType.KEY_VALUE);
+    }
+
+    /*
+     * Members scored from min to max, both inclusive. Value ranges end exclusive, the end is
+     * the next double above max.
+     */
+    Operation scoreRange(double min, double max) {
+        Value begin = (min == Double.NEGATIVE_INFINITY) ? null : Value.get(min);
+        Value end = (max == Double.POSITIVE_INFINITY) ? null : Value.get(Math.nextUp(max));
+        return MapOperation.getByValueRange(this.bin, begin, end, MapReturnType.KEY_VALUE);
+    }
+
+    /*
+     * Number of members scored below min, which is the rank of the first member scored min or
+     * more.
+     */
+    Operation countBelow(double min) {
+        return MapOperation.getByValueRange(this.bin, null, Value.get(min), MapReturnType.COUNT);
+    }
+
+    /*
+     * Members of the count ranks from rank on with their scores.
+     */
+    Operation rankWindow(long rank, long count) {
+        return MapOperation.getByRankRange(this.bin, (int) Math.min(rank, Integer.MAX_VALUE), (int) Math.min(count, Integer.MAX_VALUE),
+                MapReturnType.KEY_VALUE);
+    }
+
+    /*
+     * Adds the members of the member/score map read into record that are scored max or less
+     * to entries.
+     */
+    static void collectUpTo(List<Map.Entry<?, ?>> entries, Record record, String bin, double max) {
+        Map<?, ?> map = (record == null) ? null : record.getMap(bin);
+        if (map == null)
+            return;
+        for (Map.Entry<?, ?> entry : map.entrySet()){
+            if (((Number) entry.getValue()).doubleValue() <= max)
+                entries.add(entry);
+        }
+    }
+
+    /*
+     * Number of members added, the map size is read before and after the put in the same operate.
+     */
+    long zadd(Key key, Map<String, Double> scores) {
+        if (scores.isEmpty())
+            return 0;
+        Record record = this.client.operate(policy(RecordExistsAction.UPDATE), key,
+                MapOperation.size(this.bin), MapOperation.putItems(SCORED, this.bin, toValues(scores)));
+        List<?> results = NativeHashes.results(record, this.bin);
+        return NativeHashes.toLong(results.get(1)) - NativeHashes.toLong(results.get(0));
+    }
+
+    double zincrby(Key key, String member, double increment) {
+        Record record = this.client.operate(policy(RecordExistsAction.UPDATE), key,
+                MapOperation.increment(SCORED, this.bin, Value.get(member), Value.get(increment)));
+        return toScore(record.getValue(this.bin));
+    }
+
+    Double zscore(Key key, String member) {
+        Record record = read(key, MapOperation.getByKey(this.bin, Value.get(member), MapReturnType.VALUE));
+        return (record == null) ? null : toScore(record.getValue(this.bin));
+    }
+
+    /*
+     * Rank of member, counted from the highest score when reverse, null when it is not a member.
+     */
+    Long zrank(Key key, String member, boolean reverse) {
+        Record record = read(key, MapOperation.getByKey(this.bin, Value.get(member), reverse ? MapReturnType.REVERSE_RANK : MapReturnType.RANK));
+        Object rank = (record == null) ? null : record.getValue(this.bin);
+        return (rank instanceof Number) ? ((Number) rank).longValue() : null;
+    }
+
+    /*
+     * Members of the ranks [start, stop] with their scores, in rank order. Negative indexes
+     * count from the end as in Redis and cost a ZCARD round trip.
+     */
+    Map<String, Double> zrange(Key key, long start, long stop, boolean reverse) {
+        if (start < 0 || stop < 0) {
+            long size = zcard(key);
+            start = (start < 0) ? Math.max(0, size + start) : start;
+            stop = (stop < 0) ? size + stop : stop;
+        }
+        stop = Math.min(stop, Integer.MAX_VALUE - 1);
+        if (start > stop)
+            return new LinkedHashMap<String, Double>();
+        List<Map.Entry<?, ?>> entries = new ArrayList<Map.Entry<?, ?>>();
+        collect(entries, read(key, rankRange(start, stop, reverse)), this.bin);
+        return ordered(entries, reverse, 0, -1);
+    }
+
+    /*
+     * Members scored from min to max with their scores, lowest first, the window [offset,
+     * offset + count) of them for a non negative count. A LIMIT is resolved on the server: the
+     * rank of min is read, then count members from offset ranks past it, and those scored
+     * above max dropped; a write between the two reads can shift the window.
+     */
+    Map<String, Double> zrangeByScore(Key key, double min, double max, long offset, long count) {
+        if (min > max || count == 0)
+            return new LinkedHashMap<String, Double>();
+        List<Map.Entry<?, ?>> entries = new ArrayList<Map.Entry<?, ?>>();
+        if (count < 0) {
+            collect(entries, read(key, scoreRange(min, max)), this.bin);
+            return ordered(entries, false, offset, count);
+        }
+        long rank = 0;
+        if (min != Double.NEGATIVE_INFINITY) {
+            Record record = read(key, countBelow(min));
+            rank = (record == null) ? 0 : NativeHashes.toLong(record.getValue(this.bin));
+        }
+        collectUpTo(entries, read(key, rankWindow(rank + Math.max(0, offset), count)), this.bin, max);
+        return ordered(entries, false, 0, -1);
+    }
+
+    long zrem(Key key, String... members) {
+        try {
+            Operation op = (members.length == 1)
+                    ? MapOperation.removeByKey(this.bin, Value.get(members[0]), MapReturnType.COUNT)
+                    : MapOperation.removeByKeyList(this.bin, values(Arrays.asList(members)), MapReturnType.COUNT);
+            Record record = this.client.operate(policy(RecordExistsAction.UPDATE_ONLY), key, op);
+            return (record == null) ? 0 : NativeHashes.toLong(record.getValue(this.bin));
+        } catch (AerospikeException e) {
+            if (NativeLists.isMissing(e))
+                return 0;
+            throw e;
+        }
+    }
+
+    long zcard(Key key) {
+        Record record = read(key, MapOperation.size(this.bin));
+        return (record == null) ? 0 : NativeHashes.toLong(record.getValue(this.bin));
+    }
+}
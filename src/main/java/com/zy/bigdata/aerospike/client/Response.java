@@ -0,0 +1,42 @@
+package com.zy.bigdata.aerospike.client;
+
+/**
+ * Handle to the result of a command queued on an {@link AedisPipeline}, available once the
+ * pipeline has been synced.
+ */
+public final class Response<T> {
+
+    private T value;
+    private RuntimeException error;
+    private boolean done = false;
+
+    Response() {
+    }
+
+    void set(T value) {
+        this.value = value;
+        this.done = true;
+    }
+
+    void fail(RuntimeException error) {
+        this.error = error;
+        this.done = true;
+    }
+
+    public boolean isDone() {
+        return this.done;
+    }
+
+    public T get() {
+        if (!this.done)
+            throw new IllegalStateException("Please sync the pipeline before calling Response.get()");
+        if (this.error != null)
+            throw this.error;
+        return this.value;
+    }
+
+    @Override
+    public String toString() {
+        return "Response " + (this.done ? String.valueOf(this.error != null ? this.error : this.value) : "<pending>");
+    }
+}
@@ -0,0 +1,118 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.AerospikeClient;
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Host;
+import com.aerospike.client.Key;
+import com.aerospike.client.Operation;
+import com.aerospike.client.Record;
+import com.aerospike.client.cluster.Cluster;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.cluster.Partition;
+import com.aerospike.client.command.ReadCommand;
+import com.aerospike.client.command.ReadHeaderCommand;
+import com.aerospike.client.policy.ClientPolicy;
+import com.aerospike.client.policy.Policy;
+import com.aerospike.client.policy.WritePolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * AerospikeClient exposing the partition map and the client thread pool, so multi key
+ * commands can be grouped by owning node and fanned out without an extra pool, and reads can
+ * be sent to a chosen replica.
+ */
+public class RoutingAerospikeClient extends AerospikeClient {
+
+    public RoutingAerospikeClient(ClientPolicy policy, Host... hosts) throws AerospikeException {
+        super(policy, hosts);
+    }
+
+    public Node getMasterNode(Key key) {
+        try {
+            return this.cluster.getMasterNode(new Partition(key));
+        } catch (AerospikeException.InvalidNode e) {
+            return null;
+        }
+    }
+
+    public ExecutorService getThreadPool() {
+        return this.cluster.getThreadPool();
+    }
+
+    /*
+     * Active nodes holding a copy of key, the master first. Replicas other than the master are
+     * known only when the client policy requests prole replicas.
+     */
+    public List<Node> getReplicaNodes(Key key) {
+        List<Node> nodes = new ArrayList<Node>();
+        Partition partition = new Partition(key);
+        AtomicReferenceArray<Node>[] replicas = this.cluster.partitionMap.get(partition.namespace);
+        if (replicas == null)
+            return nodes;
+        for (AtomicReferenceArray<Node> replica : replicas){
+            Node node = replica.get(partition.partitionId);
+            if (node != null && node.isActive() && !nodes.contains(node))
+                nodes.add(node);
+        }
+        return nodes;
+    }
+
+    /*
+     * Reads of one record from node, which may hold a replica: the record as last replicated
+     * there. A missing record is null like in get().
+     */
+    public Record get(Policy policy, Key key, Node node, String... binNames) {
+        NodeReadCommand command = new NodeReadCommand(this.cluster, policy, key, binNames, node, null);
+        command.execute();
+        return command.getRecord();
+    }
+
+    public Record getHeader(Policy policy, Key key, Node node) {
+        ReadHeaderCommand command = new ReadHeaderCommand(this.cluster, policy, key) {
+            @Override
+            protected Node getNode() {
+                return node;
+            }
+        };
+        command.execute();
+        return command.getRecord();
+    }
+
+    /*
+     * operate() with read operations only.
+     */
+    public Record operate(WritePolicy policy, Key key, Node node, Operation... operations) {
+        NodeReadCommand command = new NodeReadCommand(this.cluster, policy, key, null, node, operations);
+        command.execute();
+        return command.getRecord();
+    }
+
+    private static final class NodeReadCommand extends ReadCommand {
+        private final WritePolicy writePolicy;
+        private final Node node;
+        private final Operation[] operations;
+
+        NodeReadCommand(Cluster cluster, Policy policy, Key key, String[] binNames, Node node, Operation[] operations) {
+            super(cluster, policy, key, binNames);
+            this.writePolicy = (policy instanceof WritePolicy) ? (WritePolicy) policy : new WritePolicy(policy);
+            this.node = node;
+            this.operations = operations;
+        }
+
+        @Override
+        protected void writeBuffer() {
+            if (this.operations == null)
+                super.writeBuffer();
+            else
+                setOperate(this.writePolicy, this.key, this.operations);
+        }
+
+        @Override
+        protected Node getNode() {
+            return this.node;
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.zy.bigdata.aerospike.client;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Point in time view of a running {@link BulkScan}.
+ */
+public final class ScanProgress {
+
+    private final int nodesTotal;
+    private final int nodesDone;
+    private final long scanned;
+    private final long delivered;
+    private final long skipped;
+    private final int queued;
+    private final long elapsedMillis;
+    private final Map<String, Long> scannedByNode;
+
+    ScanProgress(int nodesTotal, int nodesDone, long scanned, long delivered, long skipped, int queued, long elapsedMillis,
+                 Map<String, Long> scannedByNode) {
+        this.nodesTotal = nodesTotal;
+        this.nodesDone = nodesDone;
+        this.scanned = scanned;
+        this.delivered = delivered;
+        this.skipped = skipped;
+        this.queued = queued;
+        this.elapsedMillis = elapsedMillis;
+        this.scannedByNode = Collections.unmodifiableMap(scannedByNode);
+    }
+
+    public int getNodesTotal() {
+        return this.nodesTotal;
+    }
+
+    public int getNodesDone() {
+        return this.nodesDone;
+    }
+
+    /*
+     * Records received from the cluster.
+     */
+    public long getScanned() {
+        return this.scanned;
+    }
+
+    /*
+     * Records handed to the consumer.
+     */
+    public long getDelivered() {
+        return this.delivered;
+    }
+
+    /*
+     * Sharded collections left out, see BulkScan.
+     */
+    public long getSkipped() {
+        return this.skipped;
+    }
+
+    public int getQueued() {
+        return this.queued;
+    }
+
+    public long getElapsedMillis() {
+        return this.elapsedMillis;
+    }
+
+    public Map<String, Long> getScannedByNode() {
+        return this.scannedByNode;
+    }
+
+    public double getRecordsPerSecond() {
+        return (this.elapsedMillis == 0) ? 0.0 : this.delivered * 1000.0 / this.elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanProgress{nodes=" + this.nodesDone + "/" + this.nodesTotal + ", scanned=" + this.scanned
+                + ", delivered=" + this.delivered + ", skipped=" + this.skipped + ", queued=" + this.queued
+                + ", elapsedMillis=" + this.elapsedMillis
+                + ", recordsPerSecond=" + String.format("%.1f", getRecordsPerSecond()) + "}";
+    }
+}
@@ -0,0 +1,344 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.*;
+import com.aerospike.client.cdt.MapOperation;
+import com.aerospike.client.cdt.MapReturnType;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.RecordExistsAction;
+import java.util.*;
+
+/**
+ * Redis hash commands on hashes that are split by field hash once they grow beyond the shard
+ * threshold, see {@link Shards}. Small hashes are served like NATIVE mode with the header bin
+ * read in the same operate, field commands on a sharded hash touch the header and the shards
+ * of their fields only, whole hash reads fetch every shard with one batch read.
+ */
+final class ShardedHashes extends NativeHashes {
+
+    private final Shards shards;
+
+    ShardedHashes(Shards shards) {
+        super(shards.client, shards.writePolicy, shards.bin);
+        this.shards = shards;
+    }
+
+    /*
+     * Header of a hash found sharded, null when it is no longer sharded, i.e. was deleted since.
+     */
+    private Shards.Header header(Key key) {
+        Shards.Header header = this.shards.header(key);
+        if (header != null && header.shards == 0)
+            throw new AerospikeException(ResultCode.BIN_TYPE_ERROR, "key holds a sharded list");
+        return header;
+    }
+
+    private Key shardKey(Key key, Shards.Header header, Object field) {
+        return this.shards.shardKey(key, header.epoch, Shards.shardOf(field, header.shards));
+    }
+
+    private void convertIfLarge(Key key, long size) {
+        if (size > this.shards.getThreshold())
+            this.shards.convertMap(key, NativeHashes.ORDERED);
+    }
+
+    @Override
+    long hset(Key key, Object field, Object value) {
+        return put(key, Collections.singletonMap(field, value));
+    }
+
+    @Override
+    long hset(Key key, Map<String, ?> hash) {
+        return put(key, hash);
+    }
+
+    @Override
+    String hmset(Key key, Map<String, ?> hash) {
+        put(key, hash);
+        return "OK";
+    }
+
+    /*
+     * Number of fields created, from the map sizes before and after the put.
+     */
+    private long put(Key key, Map<?, ?> hash) {
+        if (hash.isEmpty())
+            return 0;
+        Map<Value, Value> items = new HashMap<Value, Value>(hash.size() * 2);
+        for (Map.Entry<?, ?> entry : hash.entrySet()){
+            items.put(Value.get(entry.getKey()), Value.get(entry.getValue()));
+        }
+        while (true){
+            Record record = this.shards.inline(RecordExistsAction.UPDATE, key, MapOperation.size(this.bin), MapOperation.putItems(NativeHashes.ORDERED, this.bin, items));
+            if (record != Shards.SHARDED) {
+                List<?> results = results(record, this.bin);
+                convertIfLarge(key, toLong(results.get(1)));
+                return toLong(results.get(1)) - toLong(results.get(0));
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            long created = 0;
+            for (Map.Entry<Integer, Map<Value, Value>> part : Shards.split(hash, header.shards).entrySet()){
+                Record shard = this.client.operate(this.shards.shardPolicy(RecordExistsAction.UPDATE, header.expiration),
+                        this.shards.shardKey(key, header.epoch, part.getKey()),
+                        MapOperation.size(this.bin), MapOperation.putItems(NativeHashes.ORDERED, this.bin, part.getValue()));
+                List<?> results = results(shard, this.bin);
+                created += toLong(results.get(1)) - toLong(results.get(0));
+            }
+            return created;
+        }
+    }
+
+    @Override
+    long hsetnx(Key key, String field, Object value) {
+        Operation op = MapOperation.put(NativeHashes.ORDERED_CREATE_ONLY, this.bin, Value.get(field), Value.get(value));
+        try {
+            while (true){
+                Record record = this.shards.inline(RecordExistsAction.UPDATE, key, MapOperation.size(this.bin), op);
+                if (record != Shards.SHARDED) {
+                    convertIfLarge(key, toLong(results(record, this.bin).get(1)));
+                    return 1;
+                }
+                Shards.Header header = header(key);
+                if (header == null)
+                    continue;
+                this.client.operate(this.shards.shardPolicy(RecordExistsAction.UPDATE, header.expiration), shardKey(key, header, field), op);
+                return 1;
+            }
+        } catch (AerospikeException e) {
+            if (e.getResultCode() == ResultCode.ELEMENT_EXISTS)
+                return 0;
+            throw e;
+        }
+    }
+
+    /*
+     * The increment result comes first, then the map size.
+     */
+    private Object increment(Key key, String field, Value increment) {
+        Operation op = MapOperation.increment(NativeHashes.ORDERED, this.bin, Value.get(field), increment);
+        while (true){
+            Record record = this.shards.inline(RecordExistsAction.UPDATE, key, op, MapOperation.size(this.bin));
+            if (record != Shards.SHARDED) {
+                List<?> results = results(record, this.bin);
+                convertIfLarge(key, toLong(results.get(1)));
+                return results.get(0);
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            Record shard = this.client.operate(this.shards.shardPolicy(RecordExistsAction.UPDATE, header.expiration), shardKey(key, header, field), op);
+            return shard.getValue(this.bin);
+        }
+    }
+
+    @Override
+    long hincrBy(Key key, String field, long increment) {
+        return toLong(increment(key, field, Value.get(increment)));
+    }
+
+    @Override
+    double hincrByFloat(Key key, String field, double increment) {
+        return ((Number) increment(key, field, Value.get(increment))).doubleValue();
+    }
+
+    @Override
+    long hdel(Key key, String... fields) {
+        List<Value> values = new ArrayList<Value>(fields.length);
+        for (String field : fields){
+            values.add(Value.get(field));
+        }
+        while (true){
+            Record record = this.shards.inline(RecordExistsAction.UPDATE_ONLY, key, MapOperation.removeByKeyList(this.bin, values, MapReturnType.COUNT));
+            if (record != Shards.SHARDED)
+                return (record == null) ? 0 : toLong(record.getValue(this.bin));
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            long removed = 0;
+            for (Map.Entry<Integer, List<Value>> part : Shards.split(Arrays.asList(fields), header.shards).entrySet()){
+                try {
+                    Record shard = this.client.operate(this.shards.shardPolicy(RecordExistsAction.UPDATE_ONLY, header.expiration),
+                            this.shards.shardKey(key, header.epoch, part.getKey()),
+                            MapOperation.removeByKeyList(this.bin, part.getValue(), MapReturnType.COUNT));
+                    removed += toLong(shard.getValue(this.bin));
+                } catch (AerospikeException e) {
+                    if (!NativeLists.isMissing(e))
+                        throw e;
+                }
+            }
+            return removed;
+        }
+    }
+
+    /*
+     * Reads the shard of field, null when the shard does not exist yet.
+     */
+    private Record readShard(Key key, Shards.Header header, Object field, Operation... ops) {
+        try {
+            return this.client.operate(this.shards.writePolicy, shardKey(key, header, field), ops);
+        } catch (AerospikeException e) {
+            if (NativeLists.isMissing(e))
+                return null;
+            throw e;
+        }
+    }
+
+    @Override
+    Record hget(Key key, Object field) {
+        Operation op = MapOperation.getByKey(this.bin, Value.get(field), MapReturnType.VALUE);
+        while (true){
+            Record record = this.shards.inline(null, key, op);
+            if (record != Shards.SHARDED)
+                return record;
+            Shards.Header header = header(key);
+            if (header != null)
+                return readShard(key, header, field, op);
+        }
+    }
+
+    @Override
+    boolean hexists(Key key, String field) {
+        Operation op = MapOperation.getByKey(this.bin, Value.get(field), MapReturnType.COUNT);
+        while (true){
+            Record record = this.shards.inline(null, key, op);
+            if (record == Shards.SHARDED) {
+                Shards.Header header = header(key);
+                if (header == null)
+                    continue;
+                record = readShard(key, header, field, op);
+            }
+            return record != null && toLong(record.getValue(this.bin)) > 0;
+        }
+    }
+
+    /*
+     * Fields of the same shard are read with one operate, one getByKey per field.
+     */
+    @Override
+    List<Object> hmget(Key key, String... fields) {
+        while (true){
+            if (!this.shards.isKnown(key)) {
+                List<Object> inline = inlineFields(key, fields);
+                if (inline != null)
+                    return inline;
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            Map<Object, Object> values = new HashMap<Object, Object>();
+            for (List<Value> shardFields : Shards.split(new LinkedHashSet<String>(Arrays.asList(fields)), header.shards).values()){
+                Operation[] ops = new Operation[shardFields.size()];
+                for (int i = 0; i < ops.length; i++){
+                    ops[i] = MapOperation.getByKey(this.bin, shardFields.get(i), MapReturnType.VALUE);
+                }
+                Record shard = readShard(key, header, shardFields.get(0).getObject(), ops);
+                if (shard == null || !shard.bins.containsKey(this.bin))
+                    continue;
+                if (ops.length == 1) {
+                    values.put(shardFields.get(0).getObject(), shard.getValue(this.bin));
+                } else {
+                    List<?> results = results(shard, this.bin);
+                    for (int i = 0; i < ops.length; i++){
+                        values.put(shardFields.get(i).getObject(), results.get(i));
+                    }
+                }
+            }
+            List<Object> result = new ArrayList<Object>(fields.length);
+            for (String field : fields){
+                result.add(values.get(field));
+            }
+            return result;
+        }
+    }
+
+    /*
+     * HMGET of a hash in its main record, null when it is sharded.
+     */
+    private List<Object> inlineFields(Key key, String... fields) {
+        List<Object> result = new ArrayList<Object>(fields.length);
+        if (fields.length == 0)
+            return result;
+        Operation[] ops = new Operation[fields.length];
+        for (int i = 0; i < fields.length; i++){
+            ops[i] = MapOperation.getByKey(this.bin, Value.get(fields[i]), MapReturnType.VALUE);
+        }
+        Record record = this.shards.inline(null, key, ops);
+        if (record == Shards.SHARDED)
+            return null;
+        if (record == null || !record.bins.containsKey(this.bin)) {
+            for (int i = 0; i < fields.length; i++){
+                result.add(null);
+            }
+        } else if (fields.length == 1) {
+            result.add(record.getValue(this.bin));
+        } else {
+            result.addAll(results(record, this.bin));
+        }
+        return result;
+    }
+
+    @Override
+    long hlen(Key key) {
+        while (true){
+            Record record = this.shards.inline(null, key, MapOperation.size(this.bin));
+            if (record != Shards.SHARDED)
+                return (record == null) ? 0 : toLong(record.getValue(this.bin));
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            long size = 0;
+            for (int i = 0; i < header.shards; i++){
+                try {
+                    Record shard = this.client.operate(this.shards.writePolicy, this.shards.shardKey(key, header.epoch, i), MapOperation.size(this.bin));
+                    size += (shard == null) ? 0 : toLong(shard.getValue(this.bin));
+                } catch (AerospikeException e) {
+                    if (!NativeLists.isMissing(e))
+                        throw e;
+                }
+            }
+            return size;
+        }
+    }
+
+    /*
+     * The whole hash with the record it was read from, for its TTL. A sharded hash is merged
+     * from one batch read of all its shards and returned with the header record.
+     */
+    @Override
+    Record hgetAll(Key key) {
+        while (true){
+            Record record = this.client.get(this.shards.writePolicy, key, this.bin, Shards.EPOCH_BIN);
+            if (!Shards.isSharded(record))
+                return record;
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            Key[] keys = this.shards.shardKeys(key, header).toArray(new Key[0]);
+            Record[] parts = this.client.get(new BatchPolicy(this.shards.writePolicy), keys, this.bin);
+            Map<Object, Object> hash = new HashMap<Object, Object>();
+            for (Record part : parts){
+                Map<?, ?> map = (part == null) ? null : part.getMap(this.bin);
+                if (map != null)
+                    hash.putAll(map);
+            }
+            Map<String, Object> bins = new HashMap<String, Object>();
+            bins.put(this.bin, hash);
+            return new Record(bins, record.generation, record.expiration);
+        }
+    }
+
+    @Override
+    List<Object> hkeys(Key key) {
+        Record record = hgetAll(key);
+        Map<?, ?> map = (record == null) ? null : record.getMap(this.bin);
+        return (map == null) ? new ArrayList<Object>() : new ArrayList<Object>(map.keySet());
+    }
+
+    @Override
+    List<Object> hvals(Key key) {
+        Record record = hgetAll(key);
+        Map<?, ?> map = (record == null) ? null : record.getMap(this.bin);
+        return (map == null) ? new ArrayList<Object>() : new ArrayList<Object>(map.values());
+    }
+}
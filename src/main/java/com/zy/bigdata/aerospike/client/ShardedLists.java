@@ -0,0 +1,748 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.*;
+import com.aerospike.client.cdt.ListOperation;
+import com.aerospike.client.cdt.MapOperation;
+import com.aerospike.client.cdt.MapReturnType;
+import com.aerospike.client.policy.BatchPolicy;
+import com.aerospike.client.policy.GenerationPolicy;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.WritePolicy;
+import java.util.*;
+import java.util.function.UnaryOperator;
+
+/**
+ * Redis list commands on lists that are split by index range once they grow beyond the shard
+ * threshold, see {@link Shards}.
+ *
+ * Elements of a sharded list live at absolute positions head .. tail - 1 of the header, chunk
+ * sub-record n holds positions n * chunk .. (n + 1) * chunk - 1 in a key ordered map from
+ * position to element. A push moves head or tail with one atomic add and then writes its own
+ * slot, so pushes never rewrite other elements; pops and trims move head or tail with a
+ * generation check. Index reads touch the header and the chunks of the range only. LREM and
+ * LINSERT shift elements and rewrite the whole list under a new epoch.
+ *
+ * A push's slot is written right after its position is taken: a read in between sees the slot
+ * empty, pops wait a moment for it. A push failing in between leaves a hole that reads skip.
+ */
+final class ShardedLists extends NativeLists {
+
+    private static final Object NOT_SHARDED = new Object();
+    private static final int SLOT_RETRIES = 5;
+
+    private final Shards shards;
+
+    ShardedLists(Shards shards) {
+        super(shards.client, shards.writePolicy, shards.bin);
+        this.shards = shards;
+    }
+
+    /*
+     * Header of a list found sharded, null when it is no longer sharded, i.e. was deleted since.
+     */
+    private Shards.Header header(Key key) {
+        Shards.Header header = this.shards.header(key);
+        if (header != null && header.chunk == 0)
+            throw new AerospikeException(ResultCode.BIN_TYPE_ERROR, "key holds a sharded hash");
+        return header;
+    }
+
+    private Key chunkKey(Key key, Shards.Header header, long position) {
+        return this.shards.shardKey(key, header.epoch, header.chunkOf(position));
+    }
+
+    private static void pause() {
+        try {
+            Thread.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /*
+     * Writes values at positions 0 .. size - 1 under epoch, with the TTL of a main record of
+     * void time expiration. Returns the chunk keys written.
+     */
+    private List<Key> writeChunks(Key key, long epoch, int chunk, List<?> values, int expiration) {
+        List<Key> written = new ArrayList<Key>();
+        int i = 0;
+        while (i < values.size()){
+            long index = i / chunk;
+            Map<Value, Value> items = new HashMap<Value, Value>();
+            for (; i < values.size() && i / chunk == index; i++){
+                items.put(Value.get((long) i), Value.get(values.get(i)));
+            }
+            Key shard = this.shards.shardKey(key, epoch, index);
+            written.add(shard);
+            this.client.operate(this.shards.shardPolicy(RecordExistsAction.UPDATE, expiration), shard,
+                    MapOperation.putItems(NativeHashes.ORDERED, this.bin, items));
+        }
+        return written;
+    }
+
+    /*
+     * Switches the header to values written under a new epoch at positions 0 .. size - 1.
+     * Returns false, with the new chunks deleted again, when the header changed since generation.
+     */
+    private boolean replace(Key key, int generation, int expiration, int chunk, List<?> values) {
+        long epoch = Shards.newEpoch();
+        List<Key> written = writeChunks(key, epoch, chunk, values, expiration);
+        try {
+            this.client.operate(this.shards.generation(generation), key,
+                    Operation.put(new Bin(Shards.EPOCH_BIN, epoch)), Operation.put(new Bin(Shards.HEAD_BIN, 0L)),
+                    Operation.put(new Bin(Shards.TAIL_BIN, (long) values.size())), Operation.put(new Bin(Shards.CHUNK_BIN, chunk)),
+                    Operation.put(Bin.asNull(this.bin)));
+            this.shards.remember(key);
+            return true;
+        } catch (AerospikeException e) {
+            this.shards.deleteAll(written);
+            int code = e.getResultCode();
+            if (code != ResultCode.GENERATION_ERROR && code != ResultCode.KEY_NOT_FOUND_ERROR)
+                throw e;
+            return false;
+        }
+    }
+
+    /*
+     * Moves a list grown beyond the threshold to its chunks, guarded by the generation the list
+     * was read with.
+     */
+    void convert(Key key) {
+        for (int attempt = 0; attempt < Shards.MAX_GENERATION_RETRIES; attempt++){
+            Record record = this.client.get(this.shards.writePolicy, key, this.bin, Shards.EPOCH_BIN);
+            if (record == null || Shards.isSharded(record))
+                return;
+            List<?> list = record.getList(this.bin);
+            if (list == null || list.size() <= this.shards.getThreshold())
+                return;
+            if (replace(key, record.generation, record.expiration, this.shards.getListChunkSize(), list))
+                return;
+        }
+    }
+
+    private long pushed(Key key, Record record) {
+        long size = record.getLong(this.bin);
+        if (size > this.shards.getThreshold())
+            convert(key);
+        return size;
+    }
+
+    /*
+     * Takes the next position at the head or tail of a sharded list, null when the record is
+     * gone or no longer sharded. A stray head or tail bin left on an unsharded record is
+     * ignored and overwritten by its next conversion.
+     */
+    private Shards.Header reserve(Key key, boolean right) {
+        Record record;
+        try {
+            record = this.client.operate(this.shards.policy(RecordExistsAction.UPDATE_ONLY), key,
+                    Operation.add(new Bin(right ? Shards.TAIL_BIN : Shards.HEAD_BIN, right ? 1L : -1L)),
+                    Operation.get(Shards.EPOCH_BIN), Operation.get(Shards.HEAD_BIN), Operation.get(Shards.TAIL_BIN), Operation.get(Shards.CHUNK_BIN));
+        } catch (AerospikeException e) {
+            if (e.getResultCode() != ResultCode.KEY_NOT_FOUND_ERROR)
+                throw e;
+            this.shards.forget(key);
+            return null;
+        }
+        if (!Shards.isSharded(record) || record.getInt(Shards.CHUNK_BIN) == 0) {
+            this.shards.forget(key);
+            return null;
+        }
+        return new Shards.Header(record);
+    }
+
+    /*
+     * existing is the RPUSHX/LPUSHX form, 0 when the list does not exist.
+     */
+    private long push(Key key, Object value, boolean right, boolean existing) {
+        Operation op = right ? ListOperation.append(this.bin, Value.get(value)) : ListOperation.insert(this.bin, 0, Value.get(value));
+        while (true){
+            Record record = this.shards.inline(existing ? RecordExistsAction.UPDATE_ONLY : RecordExistsAction.UPDATE, key, op);
+            if (record == null)
+                return 0;
+            if (record != Shards.SHARDED)
+                return pushed(key, record);
+            Shards.Header header = reserve(key, right);
+            if (header == null)
+                continue;
+            long position = right ? header.tail - 1 : header.head;
+            this.client.operate(this.shards.shardPolicy(RecordExistsAction.UPDATE, header.expiration), chunkKey(key, header, position),
+                    MapOperation.put(NativeHashes.ORDERED, this.bin, Value.get(position), Value.get(value)));
+            return header.size();
+        }
+    }
+
+    @Override
+    long rpush(Key key, Object value) {
+        return push(key, value, true, false);
+    }
+
+    @Override
+    long lpush(Key key, Object value) {
+        return push(key, value, false, false);
+    }
+
+    @Override
+    long rpushx(Key key, Object value) {
+        return push(key, value, true, true);
+    }
+
+    @Override
+    long lpushx(Key key, Object value) {
+        return push(key, value, false, true);
+    }
+
+    @Override
+    long llen(Key key) {
+        while (true){
+            Record record = this.shards.inline(null, key, ListOperation.size(this.bin));
+            if (record != Shards.SHARDED)
+                return (record == null) ? 0 : record.getLong(this.bin);
+            Shards.Header header = header(key);
+            if (header != null)
+                return header.size();
+        }
+    }
+
+    /*
+     * Elements at positions from .. to, holes skipped. One operate per chunk touched.
+     */
+    private List<Object> read(Key key, Shards.Header header, long from, long to) {
+        List<Object> values = new ArrayList<Object>();
+        for (long c = header.chunkOf(from); c <= header.chunkOf(to); c++){
+            long low = Math.max(from, c * header.chunk);
+            long high = Math.min(to, (c + 1) * header.chunk - 1);
+            try {
+                Record record = this.client.operate(this.shards.writePolicy, this.shards.shardKey(key, header.epoch, c),
+                        MapOperation.getByKeyRange(this.bin, Value.get(low), Value.get(high + 1), MapReturnType.VALUE));
+                List<?> chunk = (record == null) ? null : record.getList(this.bin);
+                if (chunk != null)
+                    values.addAll(chunk);
+            } catch (AerospikeException e) {
+                if (!NativeLists.isMissing(e))
+                    throw e;
+            }
+        }
+        return values;
+    }
+
+    /*
+     * The whole list, waiting briefly for slots taken by pushes still in flight.
+     */
+    private List<Object> readAll(Key key, Shards.Header header) {
+        List<Object> values = new ArrayList<Object>();
+        for (int attempt = 0; header.size() > 0 && attempt < SLOT_RETRIES; attempt++){
+            values = read(key, header, header.head, header.tail - 1);
+            if (values.size() >= header.size())
+                break;
+            pause();
+        }
+        return values;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    List<String> lrange(Key key, int low, int high) {
+        while (true){
+            if (!this.shards.isKnown(key)) {
+                List<String> list = inlineRange(key, low, high);
+                if (list != null)
+                    return list;
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            long size = header.size();
+            long start = (low < 0) ? Math.max(0, size + low) : low;
+            long stop = (high < 0) ? size + high : Math.min(high, size - 1);
+            if (start > stop || start >= size)
+                return new ArrayList<String>();
+            return (List<String>) (List<?>) read(key, header, header.head + start, header.head + stop);
+        }
+    }
+
+    /*
+     * LRANGE of a list in its main record, null when it is sharded.
+     */
+    @SuppressWarnings("unchecked")
+    private List<String> inlineRange(Key key, int low, int high) {
+        Operation op;
+        boolean slice = false;
+        if (low >= 0 && high >= 0) {
+            if (high < low) return new ArrayList<String>();
+            op = ListOperation.getRange(this.bin, low, high - low + 1);
+        } else if (low >= 0 && high == -1) {
+            op = ListOperation.getRange(this.bin, low);
+        } else {
+            op = ListOperation.getRange(this.bin, 0);
+            slice = true;
+        }
+        Record record = this.shards.inline(null, key, op);
+        if (record == Shards.SHARDED)
+            return null;
+        List<String> list = (record == null || record.getValue(this.bin) == null) ? null : (List<String>) record.getList(this.bin);
+        if (list == null)
+            return new ArrayList<String>();
+        return slice ? NativeLists.slice(list, low, high) : list;
+    }
+
+    private static long position(Shards.Header header, long index) {
+        return header.head + ((index < 0) ? header.size() + index : index);
+    }
+
+    private static boolean inRange(Shards.Header header, long position) {
+        return position >= header.head && position < header.tail;
+    }
+
+    @Override
+    Object lindex(Key key, int index) {
+        while (true){
+            Record record = this.shards.inline(null, key, ListOperation.get(this.bin, index));
+            if (record != Shards.SHARDED)
+                return (record == null) ? null : record.getValue(this.bin);
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            long position = position(header, index);
+            if (!inRange(header, position))
+                return null;
+            Record slot = slot(chunkKey(key, header, position), position, 1);
+            return (slot == null) ? null : slot.getValue(this.bin);
+        }
+    }
+
+    @Override
+    String lset(Key key, int index, Object value) {
+        while (true){
+            if (!this.shards.isKnown(key)) {
+                try {
+                    Record record = this.client.operate(this.shards.policy(RecordExistsAction.UPDATE_ONLY), key,
+                            Shards.withHeader(ListOperation.set(this.bin, index, Value.get(value))));
+                    if (!Shards.isSharded(record))
+                        return "OK";
+                    this.shards.dropStray(key);
+                } catch (AerospikeException e) {
+                    // out of range, unless the list bin is missing because the list is sharded
+                    if (!NativeLists.isMissing(e) || e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR || header(key) == null)
+                        throw e;
+                }
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            long position = position(header, index);
+            if (!inRange(header, position))
+                throw new AerospikeException(NativeLists.OP_NOT_APPLICABLE, "index out of range");
+            this.client.operate(this.shards.shardPolicy(RecordExistsAction.UPDATE, header.expiration), chunkKey(key, header, position),
+                    MapOperation.put(NativeHashes.ORDERED, this.bin, Value.get(position), Value.get(value)));
+            return "OK";
+        }
+    }
+
+    /*
+     * The element at position with the chunk generation, retried while the slot is empty.
+     */
+    private Record slot(Key chunk, long position, int attempts) {
+        Record record = null;
+        for (int attempt = 0; attempt < attempts; attempt++){
+            if (attempt > 0)
+                pause();
+            try {
+                record = this.client.operate(this.shards.writePolicy, chunk, MapOperation.getByKey(this.bin, Value.get(position), MapReturnType.VALUE));
+            } catch (AerospikeException e) {
+                if (!NativeLists.isMissing(e))
+                    throw e;
+                record = null;
+            }
+            if (record != null && record.getValue(this.bin) != null)
+                break;
+        }
+        return record;
+    }
+
+    /*
+     * Removes a popped slot unless its chunk changed since it was read, a chunk left empty is
+     * deleted the same way. A slot left behind lies outside head .. tail, where reads never
+     * look, until a later push takes its position again and overwrites it.
+     */
+    private void clear(Key chunk, long position, int generation) {
+        try {
+            Record record = this.client.operate(this.shards.generation(generation), chunk,
+                    MapOperation.removeByKey(this.bin, Value.get(position), MapReturnType.COUNT), MapOperation.size(this.bin));
+            List<?> results = (record == null) ? null : record.getList(this.bin);
+            if (results != null && ((Number) results.get(1)).longValue() == 0) {
+                WritePolicy wp = new WritePolicy(this.shards.writePolicy);
+                wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+                wp.generation = record.generation;
+                this.client.delete(wp, chunk);
+            }
+        } catch (AerospikeException e) {
+            int code = e.getResultCode();
+            if (code != ResultCode.GENERATION_ERROR && !NativeLists.isMissing(e))
+                throw e;
+        }
+    }
+
+    /*
+     * Pops a sharded list: the element is read, head or tail moved past it with a generation
+     * check, then its slot cleared. NOT_SHARDED when the list is no longer sharded.
+     */
+    private Object popSharded(Key key, boolean right) {
+        for (int attempt = 0; ; ){
+            Shards.Header header = header(key);
+            if (header == null)
+                return NOT_SHARDED;
+            if (header.size() <= 0)
+                return null;
+            long position = right ? header.tail - 1 : header.head;
+            Key chunk = chunkKey(key, header, position);
+            Record slot = slot(chunk, position, SLOT_RETRIES);
+            try {
+                this.client.operate(this.shards.generation(header.generation), key,
+                        Operation.put(new Bin(right ? Shards.TAIL_BIN : Shards.HEAD_BIN, right ? position : position + 1)));
+            } catch (AerospikeException e) {
+                if (e.getResultCode() != ResultCode.GENERATION_ERROR && e.getResultCode() != ResultCode.KEY_NOT_FOUND_ERROR)
+                    throw e;
+                if (++attempt > Shards.MAX_GENERATION_RETRIES)
+                    throw e;
+                continue;
+            }
+            if (slot == null)
+                continue;
+            clear(chunk, position, slot.generation);
+            Object value = slot.getValue(this.bin);
+            // a hole left by a failed push is dropped, the next element is popped instead
+            if (value != null)
+                return value;
+        }
+    }
+
+    /*
+     * A source list in its main record moves as in NATIVE mode, pushing onto destination
+     * whether it is sharded or not.
+     */
+    @Override
+    Object rpoplpush(Key source, Key destination) {
+        while (true){
+            if (header(source) == null)
+                return super.rpoplpush(source, destination);
+            Object value = moveSharded(source, destination);
+            if (value != NOT_SHARDED)
+                return value;
+        }
+    }
+
+    /*
+     * RPOPLPUSH from a sharded list, as in NATIVE mode: the tail slot is read and its element
+     * pushed onto destination, then the tail is moved past it with a generation check on the
+     * header and the slot cleared with one on its chunk. A header write leaving the tail in
+     * place, e.g. an LPUSH, only makes the move retry at the new generation; a tail popped in
+     * between undoes the push and starts over. NOT_SHARDED when source is no longer sharded.
+     */
+    private Object moveSharded(Key source, Key destination) {
+        for (int attempt = 0; ; attempt++){
+            Shards.Header header = header(source);
+            if (header == null)
+                return NOT_SHARDED;
+            if (header.size() <= 0)
+                return null;
+            long position = header.tail - 1;
+            Key chunk = chunkKey(source, header, position);
+            Record slot = slot(chunk, position, SLOT_RETRIES);
+            Object value = (slot == null) ? null : slot.getValue(this.bin);
+            if (value == null) {
+                // a hole left by a failed push is dropped, the next element is moved instead
+                try {
+                    this.client.operate(this.shards.generation(header.generation), source, Operation.put(new Bin(Shards.TAIL_BIN, position)));
+                } catch (AerospikeException e) {
+                    if (e.getResultCode() != ResultCode.GENERATION_ERROR && e.getResultCode() != ResultCode.KEY_NOT_FOUND_ERROR)
+                        throw e;
+                }
+                continue;
+            }
+            lpush(destination, value);
+            if (claimTail(source, destination, header, position, value)) {
+                clear(chunk, position, slot.generation);
+                return value;
+            }
+            if (attempt >= Shards.MAX_GENERATION_RETRIES)
+                throw new AerospikeException(ResultCode.GENERATION_ERROR);
+            backoff(attempt);
+        }
+    }
+
+    /*
+     * Moves the tail of source from position + 1 to position, which held value when header was
+     * read. Returns false, with the push onto destination undone, when the tail changed.
+     */
+    private boolean claimTail(Key source, Key destination, Shards.Header header, long position, Object value) {
+        int generation = header.generation;
+        for (int attempt = 0; ; attempt++){
+            try {
+                this.client.operate(this.shards.generation(generation), source, Operation.put(new Bin(Shards.TAIL_BIN, position)));
+                return true;
+            } catch (AerospikeException e) {
+                int code = e.getResultCode();
+                if (code != ResultCode.GENERATION_ERROR && code != ResultCode.KEY_NOT_FOUND_ERROR)
+                    throw e;
+            }
+            Shards.Header current = (attempt < Shards.MAX_GENERATION_RETRIES) ? header(source) : null;
+            if (current == null || current.epoch != header.epoch || current.tail != position + 1 || !tailHolds(source, current, position, value)) {
+                unpush(destination, value);
+                return false;
+            }
+            generation = current.generation;
+        }
+    }
+
+    /*
+     * Whether position still holds value, which a pop and a push in between could have replaced.
+     */
+    private boolean tailHolds(Key source, Shards.Header header, long position, Object value) {
+        Record slot = slot(chunkKey(source, header, position), position, 1);
+        return slot != null && Objects.deepEquals(value, slot.getValue(this.bin));
+    }
+
+    /*
+     * On a sharded destination the element is popped from the head while it is still there,
+     * else removed with LREM, which rewrites the list.
+     */
+    @Override
+    void unpush(Key key, Object value) {
+        for (int attempt = 0; attempt <= Shards.MAX_GENERATION_RETRIES; attempt++){
+            Shards.Header header = header(key);
+            if (header == null) {
+                super.unpush(key, value);
+                return;
+            }
+            if (header.size() <= 0)
+                return;
+            Key chunk = chunkKey(key, header, header.head);
+            Record slot = slot(chunk, header.head, SLOT_RETRIES);
+            if (slot == null || !Objects.deepEquals(value, slot.getValue(this.bin)))
+                break;
+            try {
+                this.client.operate(this.shards.generation(header.generation), key, Operation.put(new Bin(Shards.HEAD_BIN, header.head + 1)));
+            } catch (AerospikeException e) {
+                if (e.getResultCode() != ResultCode.GENERATION_ERROR && e.getResultCode() != ResultCode.KEY_NOT_FOUND_ERROR)
+                    throw e;
+                continue;
+            }
+            clear(chunk, header.head, slot.generation);
+            return;
+        }
+        lrem(key, 1, value);
+    }
+
+    /*
+     * Index 0 pops the head, -1 the tail, the only indexes LPOP and RPOP use.
+     */
+    @Override
+    Object pop(Key key, int index) {
+        boolean right = index < 0;
+        while (true){
+            Record record = this.shards.inline(RecordExistsAction.UPDATE_ONLY, key, ListOperation.pop(this.bin, right ? -1 : 0));
+            if (record != Shards.SHARDED)
+                return (record == null) ? null : record.getValue(this.bin);
+            Object value = popSharded(key, right);
+            if (value != NOT_SHARDED)
+                return value;
+        }
+    }
+
+    /*
+     * Moves head and tail to the kept range, then clears the chunks outside it. Chunk
+     * generations are read before the switch so a push reusing a cleared position after it
+     * is never removed.
+     */
+    @Override
+    String ltrim(Key key, int start, int stop) {
+        for (int attempt = 0; ; ){
+            if (!this.shards.isKnown(key)) {
+                String result = inlineTrim(key, start, stop);
+                if (result != null)
+                    return result;
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            long size = header.size();
+            long from = (start < 0) ? Math.max(0, size + start) : start;
+            long to = (stop < 0) ? size + stop : Math.min(stop, size - 1);
+            long head = header.tail;
+            long tail = header.tail;
+            if (from <= to && from < size) {
+                head = header.head + from;
+                tail = header.head + to + 1;
+            }
+            if (head == header.head && tail == header.tail)
+                return "OK";
+            List<long[]> ranges = new ArrayList<long[]>();
+            List<Key> chunks = new ArrayList<Key>();
+            if (size > 0) {
+                for (long c = header.chunkOf(header.head); c <= header.chunkOf(header.tail - 1); c++){
+                    long low = Math.max(header.head, c * header.chunk);
+                    long high = Math.min(header.tail, (c + 1) * header.chunk);
+                    long keepLow = Math.max(low, head);
+                    long keepHigh = Math.min(high, tail);
+                    if (keepLow <= low && keepHigh >= high)
+                        continue;
+                    ranges.add(new long[] {low, high, keepLow, keepHigh});
+                    chunks.add(this.shards.shardKey(key, header.epoch, c));
+                }
+            }
+            Record[] before = chunks.isEmpty() ? new Record[0]
+                    : this.client.getHeader(new BatchPolicy(this.shards.writePolicy), chunks.toArray(new Key[0]));
+            try {
+                this.client.operate(this.shards.generation(header.generation), key,
+                        Operation.put(new Bin(Shards.HEAD_BIN, head)), Operation.put(new Bin(Shards.TAIL_BIN, tail)));
+            } catch (AerospikeException e) {
+                if (e.getResultCode() != ResultCode.GENERATION_ERROR || ++attempt > Shards.MAX_GENERATION_RETRIES)
+                    throw e;
+                continue;
+            }
+            for (int i = 0; i < chunks.size(); i++){
+                if (before[i] != null)
+                    trimChunk(chunks.get(i), ranges.get(i), before[i].generation);
+            }
+            return "OK";
+        }
+    }
+
+    /*
+     * range is {low, high, keepLow, keepHigh}: the chunk held low .. high - 1 and keeps
+     * keepLow .. keepHigh - 1, empty when keepLow >= keepHigh.
+     */
+    private void trimChunk(Key chunk, long[] range, int generation) {
+        WritePolicy wp = new WritePolicy(this.shards.writePolicy);
+        wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+        wp.generation = generation;
+        try {
+            if (range[2] >= range[3]) {
+                this.client.delete(wp, chunk);
+                return;
+            }
+            List<Operation> ops = new ArrayList<Operation>();
+            if (range[2] > range[0])
+                ops.add(MapOperation.removeByKeyRange(this.bin, Value.get(range[0]), Value.get(range[2]), MapReturnType.NONE));
+            if (range[3] < range[1])
+                ops.add(MapOperation.removeByKeyRange(this.bin, Value.get(range[3]), Value.get(range[1]), MapReturnType.NONE));
+            this.client.operate(this.shards.generation(generation), chunk, ops.toArray(new Operation[0]));
+        } catch (AerospikeException e) {
+            if (e.getResultCode() != ResultCode.GENERATION_ERROR && !NativeLists.isMissing(e))
+                throw e;
+        }
+    }
+
+    /*
+     * LTRIM of a list in its main record, null when it is sharded.
+     */
+    private String inlineTrim(Key key, int start, int stop) {
+        for (int attempt = 0; ; attempt++){
+            Record record = this.shards.inline(null, key, ListOperation.size(this.bin));
+            if (record == Shards.SHARDED)
+                return null;
+            if (record == null)
+                return "OK";
+            int size = (int) record.getLong(this.bin);
+            int from = (start < 0) ? Math.max(0, size + start) : start;
+            int to = (stop < 0) ? size + stop : Math.min(stop, size - 1);
+            WritePolicy wp = this.shards.policy(RecordExistsAction.UPDATE_ONLY);
+            wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+            wp.generation = record.generation;
+            try {
+                if (from > to || from >= size)
+                    this.client.operate(wp, key, ListOperation.clear(this.bin));
+                else
+                    this.client.operate(wp, key, ListOperation.trim(this.bin, from, to - from + 1));
+                return "OK";
+            } catch (AerospikeException e) {
+                if (e.getResultCode() != ResultCode.GENERATION_ERROR || attempt >= Shards.MAX_GENERATION_RETRIES)
+                    throw e;
+            }
+        }
+    }
+
+    /*
+     * Rewrites a sharded list under a new epoch. transform returns its argument when there is
+     * nothing to change. Returns null when the list is not sharded.
+     */
+    private List<Object> rewrite(Key key, UnaryOperator<List<Object>> transform) {
+        for (int attempt = 0; attempt <= Shards.MAX_GENERATION_RETRIES; attempt++){
+            Shards.Header header = header(key);
+            if (header == null)
+                return null;
+            List<Object> values = readAll(key, header);
+            List<Object> updated = transform.apply(values);
+            if (updated == values)
+                return values;
+            if (replace(key, header.generation, header.expiration, header.chunk, updated)) {
+                this.shards.deleteAll(this.shards.shardKeys(key, header));
+                return updated;
+            }
+        }
+        throw new AerospikeException(ResultCode.GENERATION_ERROR);
+    }
+
+    /*
+     * Runs a shifting command with the UDF while the list is not sharded. The UDF answers 0 for
+     * a missing list bin, which is when the header is checked.
+     */
+    private long udf(Key key, String function, Value... args) {
+        Value[] all = new Value[args.length + 1];
+        all[0] = Value.get(this.bin);
+        System.arraycopy(args, 0, all, 1, args.length);
+        return (Long) this.client.execute(this.shards.writePolicy, key, "redis", function, all);
+    }
+
+    /*
+     * Redis semantics: count > 0 removes from the head, count < 0 from the tail, 0 removes all.
+     */
+    long lrem(Key key, int count, Object value) {
+        if (!this.shards.isKnown(key)) {
+            long removed = udf(key, "LREM", Value.get(count), Value.get(value));
+            if (removed != 0 || header(key) == null)
+                return removed;
+        }
+        long[] removed = new long[1];
+        List<Object> result = rewrite(key, values -> {
+            removed[0] = 0;
+            List<Object> kept = new ArrayList<Object>(values);
+            int limit = (count == 0) ? Integer.MAX_VALUE : Math.abs(count);
+            ListIterator<Object> it = (count < 0) ? kept.listIterator(kept.size()) : kept.listIterator();
+            while (removed[0] < limit && ((count < 0) ? it.hasPrevious() : it.hasNext())){
+                Object element = (count < 0) ? it.previous() : it.next();
+                if (Objects.deepEquals(value, element)) {
+                    it.remove();
+                    removed[0]++;
+                }
+            }
+            return (removed[0] == 0) ? values : kept;
+        });
+        return (result == null) ? lrem(key, count, value) : removed[0];
+    }
+
+    /*
+     * The list size after the insert, -1 when pivot is not found, 0 when the list is missing.
+     */
+    long linsert(Key key, boolean before, Object pivot, Object value) {
+        if (!this.shards.isKnown(key)) {
+            long size = udf(key, "LINSERT", Value.get(before ? "BEFORE" : "AFTER"), Value.get(pivot), Value.get(value));
+            if (size != 0 || header(key) == null)
+                return size;
+        }
+        boolean[] found = new boolean[1];
+        List<Object> result = rewrite(key, values -> {
+            int index = NativeLists.indexOf(values, pivot);
+            found[0] = index >= 0;
+            if (index < 0)
+                return values;
+            List<Object> updated = new ArrayList<Object>(values);
+            updated.add(before ? index : index + 1, value);
+            return updated;
+        });
+        if (result == null)
+            return linsert(key, before, pivot, value);
+        return found[0] ? result.size() : -1;
+    }
+}
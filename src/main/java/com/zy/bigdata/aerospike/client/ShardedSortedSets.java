@@ -0,0 +1,293 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.*;
+import com.aerospike.client.cdt.MapOperation;
+import com.aerospike.client.cdt.MapReturnType;
+import com.aerospike.client.policy.RecordExistsAction;
+import java.util.*;
+
+/**
+ * Redis sorted set commands on sorted sets that are split by member hash once they grow beyond
+ * the shard threshold, like hashes, see {@link Shards}. Every shard is a key value ordered map.
+ *
+ * Member commands touch the header and the shard of their member. A rank is the sum of the
+ * members ranked before it in every shard, each counted with a score range read. A rank range
+ * [start, stop] reads the first stop + 1 members of every shard and merges them, so deep ranges
+ * cost shards * (stop + 1) members read; score ranges read the range of every shard, with a
+ * LIMIT only the offset + count members from the rank of min in every shard.
+ */
+final class ShardedSortedSets extends NativeSortedSets {
+
+    private final Shards shards;
+
+    ShardedSortedSets(Shards shards) {
+        super(shards.client, shards.writePolicy, shards.bin);
+        this.shards = shards;
+    }
+
+    /*
+     * Header of a sorted set found sharded, null when it is no longer sharded, i.e. was deleted since.
+     */
+    private Shards.Header header(Key key) {
+        Shards.Header header = this.shards.header(key);
+        if (header != null && header.shards == 0)
+            throw new AerospikeException(ResultCode.BIN_TYPE_ERROR, "key holds a sharded list");
+        return header;
+    }
+
+    private Key shardKey(Key key, Shards.Header header, String member) {
+        return this.shards.shardKey(key, header.epoch, Shards.shardOf(member, header.shards));
+    }
+
+    private void convertIfLarge(Key key, long size) {
+        if (size > this.shards.getThreshold())
+            this.shards.convertMap(key, SCORED);
+    }
+
+    private Record readShard(Key shard, Operation... ops) {
+        try {
+            return this.client.operate(this.shards.writePolicy, shard, ops);
+        } catch (AerospikeException e) {
+            if (NativeLists.isMissing(e))
+                return null;
+            throw e;
+        }
+    }
+
+    /*
+     * ops run on every shard, shards that do not exist yet are left out.
+     */
+    private List<Record> readShards(Key key, Shards.Header header, Operation... ops) {
+        List<Record> records = new ArrayList<Record>(header.shards);
+        for (Key shard : this.shards.shardKeys(key, header)){
+            Record record = readShard(shard, ops);
+            if (record != null)
+                records.add(record);
+        }
+        return records;
+    }
+
+    @Override
+    long zadd(Key key, Map<String, Double> scores) {
+        if (scores.isEmpty())
+            return 0;
+        Map<Value, Value> items = toValues(scores);
+        while (true){
+            Record record = this.shards.inline(RecordExistsAction.UPDATE, key, MapOperation.size(this.bin), MapOperation.putItems(SCORED, this.bin, items));
+            if (record != Shards.SHARDED) {
+                List<?> results = NativeHashes.results(record, this.bin);
+                convertIfLarge(key, NativeHashes.toLong(results.get(1)));
+                return NativeHashes.toLong(results.get(1)) - NativeHashes.toLong(results.get(0));
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            long added = 0;
+            for (Map.Entry<Integer, Map<Value, Value>> part : Shards.split(scores, header.shards).entrySet()){
+                Record shard = this.client.operate(this.shards.shardPolicy(RecordExistsAction.UPDATE, header.expiration),
+                        this.shards.shardKey(key, header.epoch, part.getKey()),
+                        MapOperation.size(this.bin), MapOperation.putItems(SCORED, this.bin, part.getValue()));
+                List<?> results = NativeHashes.results(shard, this.bin);
+                added += NativeHashes.toLong(results.get(1)) - NativeHashes.toLong(results.get(0));
+            }
+            return added;
+        }
+    }
+
+    /*
+     * The increment result comes first, then the map size.
+     */
+    @Override
+    double zincrby(Key key, String member, double increment) {
+        Operation op = MapOperation.increment(SCORED, this.bin, Value.get(member), Value.get(increment));
+        while (true){
+            Record record = this.shards.inline(RecordExistsAction.UPDATE, key, op, MapOperation.size(this.bin));
+            if (record != Shards.SHARDED) {
+                List<?> results = NativeHashes.results(record, this.bin);
+                convertIfLarge(key, NativeHashes.toLong(results.get(1)));
+                return toScore(results.get(0));
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            Record shard = this.client.operate(this.shards.shardPolicy(RecordExistsAction.UPDATE, header.expiration), shardKey(key, header, member), op);
+            return toScore(shard.getValue(this.bin));
+        }
+    }
+
+    @Override
+    Double zscore(Key key, String member) {
+        Operation op = MapOperation.getByKey(this.bin, Value.get(member), MapReturnType.VALUE);
+        while (true){
+            Record record = this.shards.inline(null, key, op);
+            if (record == Shards.SHARDED) {
+                Shards.Header header = header(key);
+                if (header == null)
+                    continue;
+                record = readShard(shardKey(key, header, member), op);
+            }
+            return (record == null) ? null : toScore(record.getValue(this.bin));
+        }
+    }
+
+    /*
+     * Members scored below the member's score in every shard, plus the members tied with it
+     * that sort before it; the other way round when reverse.
+     */
+    @Override
+    Long zrank(Key key, String member, boolean reverse) {
+        while (true){
+            Record record = this.shards.inline(null, key, MapOperation.getByKey(this.bin, Value.get(member), reverse ? MapReturnType.REVERSE_RANK : MapReturnType.RANK));
+            if (record != Shards.SHARDED) {
+                Object rank = (record == null) ? null : record.getValue(this.bin);
+                return (rank instanceof Number) ? ((Number) rank).longValue() : null;
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            Record own = readShard(shardKey(key, header, member), MapOperation.getByKey(this.bin, Value.get(member), MapReturnType.VALUE));
+            Double score = (own == null) ? null : toScore(own.getValue(this.bin));
+            if (score == null)
+                return null;
+            Value at = Value.get(score.doubleValue());
+            Value above = Value.get(Math.nextUp(score.doubleValue()));
+            Operation before = reverse
+                    ? MapOperation.getByValueRange(this.bin, above, null, MapReturnType.COUNT)
+                    : MapOperation.getByValueRange(this.bin, null, at, MapReturnType.COUNT);
+            Operation tied = MapOperation.getByValueRange(this.bin, at, above, MapReturnType.KEY);
+            long rank = 0;
+            for (Record shard : readShards(key, header, before, tied)){
+                List<?> results = NativeHashes.results(shard, this.bin);
+                rank += NativeHashes.toLong(results.get(0));
+                for (Object other : (List<?>) results.get(1)){
+                    int c = String.valueOf(other).compareTo(member);
+                    if (reverse ? c > 0 : c < 0)
+                        rank++;
+                }
+            }
+            return rank;
+        }
+    }
+
+    @Override
+    Map<String, Double> zrange(Key key, long start, long stop, boolean reverse) {
+        if (start < 0 || stop < 0) {
+            long size = zcard(key);
+            start = (start < 0) ? Math.max(0, size + start) : start;
+            stop = (stop < 0) ? size + stop : stop;
+        }
+        stop = Math.min(stop, Integer.MAX_VALUE - 1);
+        if (start > stop)
+            return new LinkedHashMap<String, Double>();
+        while (true){
+            Record record = this.shards.inline(null, key, rankRange(start, stop, reverse));
+            List<Map.Entry<?, ?>> entries = new ArrayList<Map.Entry<?, ?>>();
+            if (record != Shards.SHARDED) {
+                collect(entries, record, this.bin);
+                return ordered(entries, reverse, 0, -1);
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            for (Record shard : readShards(key, header, rankRange(0, stop, reverse))){
+                collect(entries, shard, this.bin);
+            }
+            return ordered(entries, reverse, start, stop - start + 1);
+        }
+    }
+
+    @Override
+    Map<String, Double> zrangeByScore(Key key, double min, double max, long offset, long count) {
+        if (min > max || count == 0)
+            return new LinkedHashMap<String, Double>();
+        if (count > 0)
+            return zrangeByScoreLimit(key, min, max, Math.max(0, offset), count);
+        Operation op = scoreRange(min, max);
+        while (true){
+            Record record = this.shards.inline(null, key, op);
+            List<Map.Entry<?, ?>> entries = new ArrayList<Map.Entry<?, ?>>();
+            if (record != Shards.SHARDED) {
+                collect(entries, record, this.bin);
+                return ordered(entries, false, offset, count);
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            for (Record shard : readShards(key, header, op)){
+                collect(entries, shard, this.bin);
+            }
+            return ordered(entries, false, offset, count);
+        }
+    }
+
+    /*
+     * The window of a LIMIT: every shard's members from the rank of min on that can fall in
+     * it, at most offset + count of them, merged.
+     */
+    private Map<String, Double> zrangeByScoreLimit(Key key, double min, double max, long offset, long count) {
+        while (true){
+            Record record = this.shards.inline(null, key, countBelow(min));
+            List<Map.Entry<?, ?>> entries = new ArrayList<Map.Entry<?, ?>>();
+            if (record != Shards.SHARDED) {
+                long rank = (record == null) ? 0 : NativeHashes.toLong(record.getValue(this.bin));
+                Record window = this.shards.inline(null, key, rankWindow(rank + offset, count));
+                if (window == Shards.SHARDED)
+                    continue;
+                collectUpTo(entries, window, this.bin, max);
+                return ordered(entries, false, 0, -1);
+            }
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            for (Key shard : this.shards.shardKeys(key, header)){
+                Record below = readShard(shard, countBelow(min));
+                if (below == null)
+                    continue;
+                collectUpTo(entries, readShard(shard, rankWindow(NativeHashes.toLong(below.getValue(this.bin)), offset + count)), this.bin, max);
+            }
+            return ordered(entries, false, offset, count);
+        }
+    }
+
+    @Override
+    long zrem(Key key, String... members) {
+        while (true){
+            Record record = this.shards.inline(RecordExistsAction.UPDATE_ONLY, key, MapOperation.removeByKeyList(this.bin, values(Arrays.asList(members)), MapReturnType.COUNT));
+            if (record != Shards.SHARDED)
+                return (record == null) ? 0 : NativeHashes.toLong(record.getValue(this.bin));
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            long removed = 0;
+            for (Map.Entry<Integer, List<Value>> part : Shards.split(Arrays.asList(members), header.shards).entrySet()){
+                try {
+                    Record shard = this.client.operate(this.shards.shardPolicy(RecordExistsAction.UPDATE_ONLY, header.expiration),
+                            this.shards.shardKey(key, header.epoch, part.getKey()),
+                            MapOperation.removeByKeyList(this.bin, part.getValue(), MapReturnType.COUNT));
+                    removed += NativeHashes.toLong(shard.getValue(this.bin));
+                } catch (AerospikeException e) {
+                    if (!NativeLists.isMissing(e))
+                        throw e;
+                }
+            }
+            return removed;
+        }
+    }
+
+    @Override
+    long zcard(Key key) {
+        while (true){
+            Record record = this.shards.inline(null, key, MapOperation.size(this.bin));
+            if (record != Shards.SHARDED)
+                return (record == null) ? 0 : NativeHashes.toLong(record.getValue(this.bin));
+            Shards.Header header = header(key);
+            if (header == null)
+                continue;
+            long size = 0;
+            for (Record shard : readShards(key, header, MapOperation.size(this.bin))){
+                size += NativeHashes.toLong(shard.getValue(this.bin));
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.*;
+import com.aerospike.client.cdt.MapOperation;
+import com.aerospike.client.cdt.MapPolicy;
+import com.aerospike.client.policy.GenerationPolicy;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.WritePolicy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Record layout of collections split over several records.
+ *
+ * A list, hash or sorted set starts in the redis bin of its own record, like in NATIVE mode. Once it grows
+ * beyond the threshold its elements move to sub-records in the "-shards" companion set and the
+ * main record keeps a small header: the shard epoch, and the shard count of a hash or sorted
+ * set or the head, tail and chunk size of a list. Hashes and sorted sets are split by field
+ * hash, lists in chunks of consecutive positions. Sub-record keys carry the epoch, every conversion or rewrite
+ * writes a fresh epoch and switches the header to it with a generation check, so a losing
+ * writer never overwrites live sub-records.
+ *
+ * A sharded collection has the TTL of its main record. Writes to the main record keep its TTL,
+ * as collection commands do in Redis (expiration -2, server 3.10.1 or later), sub-records are
+ * written with the TTL the header was read with, rounded up so they never expire before it.
+ * DEL removes the sub-records with the header, EXPIRE and PERSIST apply the new TTL to both.
+ */
+final class Shards {
+
+    static final String EPOCH_BIN = "redis-epoch";
+    static final String SHARDS_BIN = "redis-shards";
+    static final String HEAD_BIN = "redis-lhead";
+    static final String TAIL_BIN = "redis-ltail";
+    static final String CHUNK_BIN = "redis-lchunk";
+
+    static final int MAX_GENERATION_RETRIES = 16;
+
+    // expiration of a write that leaves the TTL of an existing record as it is
+    static final int KEEP_TTL = -2;
+    private static final long AS_TIME_OFFSET = 1262304000000L;// in milliseconds
+
+    // returned by inline() for a collection that lives in its shards
+    static final Record SHARDED = new Record(Collections.<String, Object>emptyMap(), 0, 0);
+
+    // bounded, only saves the first round trip on collections known to be sharded
+    private static final int MAX_KNOWN = 64 * 1024;
+
+    /**
+     * Header of a sharded collection, as read with its generation.
+     */
+    static final class Header {
+        final long epoch;
+        final int shards;
+        final long head;
+        final long tail;
+        final int chunk;
+        final int generation;
+        final int expiration;
+
+        Header(Record record) {
+            this.epoch = record.getLong(EPOCH_BIN);
+            this.shards = record.getInt(SHARDS_BIN);
+            this.head = record.getLong(HEAD_BIN);
+            this.tail = record.getLong(TAIL_BIN);
+            this.chunk = record.getInt(CHUNK_BIN);
+            this.generation = record.generation;
+            this.expiration = record.expiration;
+        }
+
+        long size() {
+            return this.tail - this.head;
+        }
+
+        /*
+         * Chunk of an absolute list position.
+         */
+        long chunkOf(long position) {
+            return Math.floorDiv(position, (long) this.chunk);
+        }
+    }
+
+    final IAerospikeClient client;
+    final WritePolicy writePolicy;
+    final String bin;
+
+    private volatile int threshold = 1000;
+    private volatile int listChunkSize = 256;
+    private volatile int hashShards = 16;
+    private final Set<Key> known = ConcurrentHashMap.newKeySet();
+
+    Shards(IAerospikeClient client, WritePolicy writePolicy, String bin) {
+        this.client = client;
+        this.writePolicy = writePolicy;
+        this.bin = bin;
+    }
+
+    int getThreshold() {
+        return this.threshold;
+    }
+
+    void setThreshold(int threshold) {
+        this.threshold = threshold;
+    }
+
+    int getListChunkSize() {
+        return this.listChunkSize;
+    }
+
+    void setListChunkSize(int listChunkSize) {
+        this.listChunkSize = listChunkSize;
+    }
+
+    int getHashShards() {
+        return this.hashShards;
+    }
+
+    void setHashShards(int hashShards) {
+        this.hashShards = hashShards;
+    }
+
+    /*
+     * Writes to the main record of a collection, which keep its TTL.
+     */
+    WritePolicy policy(RecordExistsAction action) {
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = action;
+        wp.expiration = KEEP_TTL;
+        return wp;
+    }
+
+    /*
+     * Writes to a sub-record of a collection whose main record has the void time expiration,
+     * see the class comment.
+     */
+    WritePolicy shardPolicy(RecordExistsAction action, int expiration) {
+        WritePolicy wp = new WritePolicy(this.writePolicy);
+        wp.recordExistsAction = action;
+        wp.expiration = ttl(expiration);
+        return wp;
+    }
+
+    /*
+     * The TTL left to a record with the void time expiration, in whole seconds rounded up, -1
+     * when it never expires.
+     */
+    static int ttl(int expiration) {
+        if (expiration == 0)
+            return -1;
+        long left = AS_TIME_OFFSET + expiration * 1000L - System.currentTimeMillis();
+        return (int) Math.max(1, (left + 999) / 1000);
+    }
+
+    WritePolicy generation(int generation) {
+        WritePolicy wp = policy(RecordExistsAction.UPDATE_ONLY);
+        wp.generationPolicy = GenerationPolicy.EXPECT_GEN_EQUAL;
+        wp.generation = generation;
+        return wp;
+    }
+
+    static long newEpoch() {
+        return ThreadLocalRandom.current().nextLong(1, Long.MAX_VALUE);
+    }
+
+    static String shardSet(String set) {
+        return (set == null) ? "redis-shards" : set + "-shards";
+    }
+
+    Key shardKey(Key key, long epoch, long index) {
+        return new Key(key.namespace, shardSet(key.setName), key.userKey + ":" + epoch + ":" + index);
+    }
+
+    boolean isKnown(Key key) {
+        return this.known.contains(key);
+    }
+
+    void remember(Key key) {
+        if (this.known.size() >= MAX_KNOWN)
+            this.known.clear();
+        this.known.add(key);
+    }
+
+    void forget(Key key) {
+        this.known.remove(key);
+    }
+
+    /*
+     * The header of a sharded collection, null when the record does not exist or is not sharded.
+     */
+    Header header(Key key) {
+        Record record = this.client.get(this.writePolicy, key, EPOCH_BIN, SHARDS_BIN, HEAD_BIN, TAIL_BIN, CHUNK_BIN);
+        if (record == null || record.getValue(EPOCH_BIN) == null) {
+            forget(key);
+            return null;
+        }
+        remember(key);
+        return new Header(record);
+    }
+
+    static boolean isSharded(Record record) {
+        return record != null && record.getValue(EPOCH_BIN) != null;
+    }
+
+    static Operation[] withHeader(Operation... ops) {
+        Operation[] all = new Operation[ops.length + 1];
+        all[0] = Operation.get(EPOCH_BIN);
+        System.arraycopy(ops, 0, all, 1, ops.length);
+        return all;
+    }
+
+    /*
+     * Runs ops on the main record of a collection that is not sharded, a null action for reads.
+     * Returns SHARDED when the collection is (known to be) sharded, null when the record or bin
+     * is missing or the index is out of range.
+     */
+    Record inline(RecordExistsAction action, Key key, Operation... ops) {
+        if (isKnown(key))
+            return SHARDED;
+        Record record;
+        try {
+            WritePolicy wp = (action == null) ? this.writePolicy : policy(action);
+            record = this.client.operate(wp, key, withHeader(ops));
+        } catch (AerospikeException e) {
+            if (e.getResultCode() == ResultCode.KEY_NOT_FOUND_ERROR)
+                return null;
+            if (!NativeLists.isMissing(e))
+                throw e;
+            // a CDT operation on the missing bin of a sharded collection fails as well
+            return (header(key) == null) ? null : SHARDED;
+        }
+        if (!isSharded(record))
+            return record;
+        if (action != null)
+            dropStray(key);
+        remember(key);
+        return SHARDED;
+    }
+
+    static int shardOf(Object field, int shards) {
+        return (field.hashCode() & Integer.MAX_VALUE) % shards;
+    }
+
+    static Map<Integer, Map<Value, Value>> split(Map<?, ?> map, int count) {
+        Map<Integer, Map<Value, Value>> parts = new HashMap<Integer, Map<Value, Value>>();
+        for (Map.Entry<?, ?> entry : map.entrySet()){
+            Map<Value, Value> part = parts.computeIfAbsent(shardOf(entry.getKey(), count), i -> new HashMap<Value, Value>());
+            part.put(Value.get(entry.getKey()), Value.get(entry.getValue()));
+        }
+        return parts;
+    }
+
+    static Map<Integer, List<Value>> split(Collection<?> fields, int count) {
+        Map<Integer, List<Value>> parts = new HashMap<Integer, List<Value>>();
+        for (Object field : fields){
+            parts.computeIfAbsent(shardOf(field, count), i -> new ArrayList<Value>()).add(Value.get(field));
+        }
+        return parts;
+    }
+
+    /*
+     * Moves a map grown beyond the threshold to its shards, created with the order of policy.
+     * The header switch is guarded by the generation the map was read with, a writer racing it
+     * makes this attempt start over.
+     */
+    void convertMap(Key key, MapPolicy policy) {
+        for (int attempt = 0; attempt < MAX_GENERATION_RETRIES; attempt++){
+            Record record = this.client.get(this.writePolicy, key, this.bin, EPOCH_BIN);
+            if (record == null || isSharded(record))
+                return;
+            Map<?, ?> map = record.getMap(this.bin);
+            if (map == null || map.size() <= getThreshold())
+                return;
+            int count = getHashShards();
+            long epoch = newEpoch();
+            List<Key> written = new ArrayList<Key>();
+            for (Map.Entry<Integer, Map<Value, Value>> part : split(map, count).entrySet()){
+                Key shard = shardKey(key, epoch, part.getKey());
+                written.add(shard);
+                this.client.operate(shardPolicy(RecordExistsAction.UPDATE, record.expiration), shard,
+                        MapOperation.putItems(policy, this.bin, part.getValue()));
+            }
+            try {
+                this.client.operate(generation(record.generation), key,
+                        Operation.put(new Bin(EPOCH_BIN, epoch)), Operation.put(new Bin(SHARDS_BIN, count)),
+                        Operation.put(Bin.asNull(this.bin)));
+                remember(key);
+                return;
+            } catch (AerospikeException e) {
+                deleteAll(written);
+                int code = e.getResultCode();
+                if (code == ResultCode.KEY_NOT_FOUND_ERROR)
+                    return;
+                if (code != ResultCode.GENERATION_ERROR)
+                    throw e;
+            }
+        }
+    }
+
+    /*
+     * Writes that reached the main record after it was sharded left a stray redis bin behind,
+     * the writers redo them on the shards. Readers never look at the bin of a sharded record.
+     */
+    void dropStray(Key key) {
+        remember(key);
+        try {
+            this.client.operate(policy(RecordExistsAction.UPDATE_ONLY), key, Operation.put(Bin.asNull(this.bin)));
+        } catch (AerospikeException e) {
+            if (e.getResultCode() != ResultCode.KEY_NOT_FOUND_ERROR)
+                throw e;
+        }
+    }
+
+    /*
+     * Every sub-record the header points to.
+     */
+    List<Key> shardKeys(Key key, Header header) {
+        List<Key> keys = new ArrayList<Key>();
+        if (header.shards > 0) {
+            for (int i = 0; i < header.shards; i++){
+                keys.add(shardKey(key, header.epoch, i));
+            }
+        } else if (header.tail > header.head) {
+            for (long c = header.chunkOf(header.head); c <= header.chunkOf(header.tail - 1); c++){
+                keys.add(shardKey(key, header.epoch, c));
+            }
+        }
+        return keys;
+    }
+
+    void deleteAll(List<Key> keys) {
+        for (Key shard : keys){
+            this.client.delete(this.writePolicy, shard);
+        }
+    }
+
+    /*
+     * Removes the sub-records of a sharded collection, before its header is deleted.
+     */
+    void drop(Key key) {
+        Header header = header(key);
+        if (header != null)
+            deleteAll(shardKeys(key, header));
+        forget(key);
+    }
+
+    /*
+     * Applies the expiration of wp to the sub-records of a sharded collection.
+     */
+    void touch(Key key, WritePolicy wp) {
+        Header header = header(key);
+        if (header == null)
+            return;
+        for (Key shard : shardKeys(key, header)){
+            try {
+                this.client.touch(wp, shard);
+            } catch (AerospikeException e) {
+                if (e.getResultCode() != ResultCode.KEY_NOT_FOUND_ERROR)
+                    throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.zy.bigdata.aerospike.client;
+
+/**
+ * Converts between a caller type and what the redis bin stores, so typed values are kept as
+ * native aerospike integers, doubles or blobs instead of strings.
+ *
+ * encode returns a value aerospike stores natively: String, Long, Double, byte[], List or Map.
+ * decode receives what the client read back, one of those types, and is not called for
+ * missing values. See {@link ValueCodecs} for the built in codecs.
+ */
+public interface ValueCodec<T> {
+
+    Object encode(T value);
+
+    T decode(Object stored);
+}
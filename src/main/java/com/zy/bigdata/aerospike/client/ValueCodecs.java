@@ -0,0 +1,105 @@
+package com.zy.bigdata.aerospike.client;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Built in {@link ValueCodec}s. The numeric codecs store integer and double bins, which INCRBY,
+ * HINCRBY and the string commands read as well; they also decode numbers written as strings.
+ */
+public final class ValueCodecs {
+
+    /*
+     * Strings as stored, numbers in decimal and blobs as UTF-8, the way the String API returns them.
+     */
+    public static final ValueCodec<String> STRING = new ValueCodec<String>() {
+        @Override
+        public Object encode(String value) {
+            return value;
+        }
+
+        @Override
+        public String decode(Object stored) {
+            return string(stored);
+        }
+    };
+
+    public static final ValueCodec<Long> LONG = new ValueCodec<Long>() {
+        @Override
+        public Object encode(Long value) {
+            return value;
+        }
+
+        @Override
+        public Long decode(Object stored) {
+            return toLong(stored);
+        }
+    };
+
+    public static final ValueCodec<Double> DOUBLE = new ValueCodec<Double>() {
+        @Override
+        public Object encode(Double value) {
+            return value;
+        }
+
+        @Override
+        public Double decode(Object stored) {
+            return toDouble(stored);
+        }
+    };
+
+    public static final ValueCodec<byte[]> BYTES = new ValueCodec<byte[]>() {
+        @Override
+        public Object encode(byte[] value) {
+            return value;
+        }
+
+        @Override
+        public byte[] decode(Object stored) {
+            return (stored instanceof byte[]) ? (byte[]) stored : string(stored).getBytes(StandardCharsets.UTF_8);
+        }
+    };
+
+    private ValueCodecs() {
+    }
+
+    /*
+     * Objects stored as blobs, e.g. with a Kryo or protobuf serializer.
+     */
+    public static <T> ValueCodec<T> serialized(Function<T, byte[]> serializer, Function<byte[], T> deserializer) {
+        return new ValueCodec<T>() {
+            @Override
+            public Object encode(T value) {
+                return serializer.apply(value);
+            }
+
+            @Override
+            public T decode(Object stored) {
+                return deserializer.apply(BYTES.decode(stored));
+            }
+        };
+    }
+
+    static String string(Object stored) {
+        if (stored == null || stored instanceof String)
+            return (String) stored;
+        if (stored instanceof byte[])
+            return new String((byte[]) stored, StandardCharsets.UTF_8);
+        return String.valueOf(stored);
+    }
+
+    /*
+     * Primitive decoding for the counter fast paths, no boxing beyond what the client read.
+     */
+    static long toLong(Object stored) {
+        if (stored instanceof Number)
+            return ((Number) stored).longValue();
+        return Long.parseLong(string(stored));
+    }
+
+    static double toDouble(Object stored) {
+        if (stored instanceof Number)
+            return ((Number) stored).doubleValue();
+        return Double.parseDouble(string(stored));
+    }
+}
@@ -0,0 +1,69 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdDictTrainer;
+import java.util.List;
+
+/**
+ * Zstandard through zstd-jni, kept apart from Compressors so that zstd-jni is only loaded when
+ * a Zstandard compressor is used.
+ */
+final class ZstdCompressor implements Compressor {
+
+    private final int level;
+    private final ZstdDictCompress compressDictionary;
+    private final ZstdDictDecompress decompressDictionary;
+    private final int dictionaryId;
+
+    ZstdCompressor(int level, byte[] dictionary) {
+        this.level = level;
+        this.compressDictionary = (dictionary == null) ? null : new ZstdDictCompress(dictionary, level);
+        this.decompressDictionary = (dictionary == null) ? null : new ZstdDictDecompress(dictionary);
+        this.dictionaryId = (dictionary == null) ? 0 : Compressors.dictionaryId(dictionary);
+    }
+
+    @Override
+    public int id() {
+        return (this.compressDictionary == null) ? Compressors.ZSTD : Compressors.ZSTD_DICTIONARY;
+    }
+
+    @Override
+    public byte[] compress(byte[] data) {
+        if (this.compressDictionary == null)
+            return Zstd.compress(data, this.level);
+        byte[] compressed = Zstd.compress(data, this.compressDictionary);
+        byte[] out = new byte[compressed.length + 4];
+        Compressors.putInt(out, 0, this.dictionaryId);
+        System.arraycopy(compressed, 0, out, 4, compressed.length);
+        return out;
+    }
+
+    @Override
+    public void decompress(byte[] data, int offset, int length, byte[] target) {
+        long size;
+        if (this.decompressDictionary == null) {
+            size = Zstd.decompressByteArray(target, 0, target.length, data, offset, length);
+        } else {
+            Compressors.checkDictionary(data, offset, this.dictionaryId);
+            size = Zstd.decompressFastDict(target, 0, data, offset + 4, length - 4, this.decompressDictionary);
+        }
+        if (Zstd.isError(size))
+            throw new IllegalStateException("corrupt compressed value: " + Zstd.getErrorName(size));
+        if (size != target.length)
+            throw new IllegalStateException("truncated compressed value");
+    }
+
+    static byte[] train(List<byte[]> samples, int size) {
+        long total = 0;
+        for (byte[] sample : samples){
+            total += sample.length;
+        }
+        ZstdDictTrainer trainer = new ZstdDictTrainer((int) Math.min(Integer.MAX_VALUE, total), size);
+        for (byte[] sample : samples){
+            trainer.addSample(sample);
+        }
+        return trainer.trainSamples();
+    }
+}
@@ -0,0 +1,27 @@
+package com.zy.bigdata.aerospike.metrics;
+
+/**
+ * Receives one call per executed command from an instrumented client. Implementations are
+ * called on the command thread after the command completed and must be cheap and thread safe.
+ *
+ * {@link InMemoryMetrics} is the built in implementation, exporters to other systems can
+ * implement this interface directly.
+ */
+public interface CommandMetrics {
+
+    /**
+     * Result code recorded for failures that are not AerospikeExceptions.
+     */
+    int CLIENT_ERROR = Integer.MIN_VALUE;
+
+    /**
+     * @param command      redis command name, e.g. GET, HSET, LRANGE
+     * @param node         name of the master node of the key, null for multi key commands,
+     *                     scans, or when the partition map is not known
+     * @param latencyNanos time spent in the client call
+     * @param resultCode   ResultCode.OK, the code of the AerospikeException the command failed
+     *                     with, or {@link #CLIENT_ERROR}
+     * @param payloadBytes approximate size of the values sent and returned
+     */
+    void record(String command, String node, long latencyNanos, int resultCode, long payloadBytes);
+}
@@ -0,0 +1,103 @@
+package com.zy.bigdata.aerospike.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free log linear histogram of non negative longs, in the spirit of HdrHistogram.
+ *
+ * Values below 32 get a bucket each, above that every power of two is split into 16 buckets,
+ * so a reported percentile is at most ~6% above the recorded value. Values are capped at 2^40
+ * (about 18 minutes in nanoseconds). Recording is two atomic increments and never allocates.
+ */
+public final class Histogram {
+
+    private static final int SUB_BITS = 5;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder total = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private volatile long max = 0;
+
+    static int index(long value) {
+        if (value < SUB_COUNT)
+            return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        return shift * HALF_COUNT + (int) (value >>> shift);
+    }
+
+    /*
+     * Largest value that falls in the bucket.
+     */
+    static long highestEquivalent(int index) {
+        if (index < SUB_COUNT)
+            return index;
+        int shift = index / HALF_COUNT - 1;
+        long sub = index - shift * HALF_COUNT;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    public void record(long value) {
+        long v = Math.min(Math.max(value, 0), MAX_VALUE);
+        this.counts.incrementAndGet(index(v));
+        this.total.increment();
+        this.sum.add(v);
+        while (v > this.max){
+            synchronized (this) {
+                if (v > this.max) this.max = v;
+            }
+        }
+    }
+
+    public long getCount() {
+        return this.total.sum();
+    }
+
+    public long getSum() {
+        return this.sum.sum();
+    }
+
+    public long getMax() {
+        return this.max;
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return (count == 0) ? 0 : (double) getSum() / count;
+    }
+
+    /*
+     * Upper bound of the bucket holding the given percentile (0 to 100), 0 when empty.
+     */
+    public long getPercentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++){
+            snapshot[i] = this.counts.get(i);
+            count += snapshot[i];
+        }
+        if (count == 0)
+            return 0;
+        long rank = Math.max(1, (long) Math.ceil(Math.min(100, Math.max(0, percentile)) / 100 * count));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++){
+            seen += snapshot[i];
+            if (seen >= rank)
+                return Math.min(highestEquivalent(i), this.max);
+        }
+        return this.max;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++){
+            this.counts.set(i, 0);
+        }
+        this.total.reset();
+        this.sum.reset();
+        this.max = 0;
+    }
+}
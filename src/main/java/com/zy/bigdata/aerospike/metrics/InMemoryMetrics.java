@@ -0,0 +1,217 @@
+package com.zy.bigdata.aerospike.metrics;
+
+import com.aerospike.client.ResultCode;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps per command latency and payload histograms, result code counts and per node latency
+ * histograms in memory, and dumps them as text or JSON. Counters only grow until
+ * {@link #reset()}, so periodic reporters take a dump and reset.
+ */
+public class InMemoryMetrics implements CommandMetrics {
+
+    private static final Map<Integer, String> RESULT_NAMES = new HashMap<Integer, String>();
+
+    static {
+        RESULT_NAMES.put(ResultCode.OK, "OK");
+        RESULT_NAMES.put(ResultCode.KEY_NOT_FOUND_ERROR, "KEY_NOT_FOUND_ERROR");
+        RESULT_NAMES.put(ResultCode.GENERATION_ERROR, "GENERATION_ERROR");
+        RESULT_NAMES.put(ResultCode.PARAMETER_ERROR, "PARAMETER_ERROR");
+        RESULT_NAMES.put(ResultCode.KEY_EXISTS_ERROR, "KEY_EXISTS_ERROR");
+        RESULT_NAMES.put(ResultCode.TIMEOUT, "TIMEOUT");
+        RESULT_NAMES.put(ResultCode.KEY_BUSY, "KEY_BUSY");
+        RESULT_NAMES.put(ResultCode.UDF_BAD_RESPONSE, "UDF_BAD_RESPONSE");
+        RESULT_NAMES.put(CLIENT_ERROR, "CLIENT_ERROR");
+    }
+
+    public static final class CommandStats {
+        private final Histogram latency = new Histogram();
+        private final Histogram payload = new Histogram();
+        private final ConcurrentHashMap<Integer, LongAdder> results = new ConcurrentHashMap<Integer, LongAdder>();
+        private final ConcurrentHashMap<String, Histogram> nodes = new ConcurrentHashMap<String, Histogram>();
+
+        void record(String node, long latencyNanos, int resultCode, long payloadBytes) {
+            this.latency.record(latencyNanos);
+            this.payload.record(payloadBytes);
+            this.results.computeIfAbsent(resultCode, c -> new LongAdder()).increment();
+            if (node != null)
+                this.nodes.computeIfAbsent(node, n -> new Histogram()).record(latencyNanos);
+        }
+
+        /*
+         * Latency in nanoseconds.
+         */
+        public Histogram getLatency() {
+            return this.latency;
+        }
+
+        /*
+         * Payload size in bytes.
+         */
+        public Histogram getPayload() {
+            return this.payload;
+        }
+
+        public Map<Integer, Long> getResultCodes() {
+            Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+            for (Map.Entry<Integer, LongAdder> entry : this.results.entrySet()){
+                counts.put(entry.getKey(), entry.getValue().sum());
+            }
+            return counts;
+        }
+
+        public long getResultCount(int resultCode) {
+            LongAdder count = this.results.get(resultCode);
+            return (count == null) ? 0 : count.sum();
+        }
+
+        /*
+         * Latency in nanoseconds by node name.
+         */
+        public Map<String, Histogram> getNodes() {
+            return new TreeMap<String, Histogram>(this.nodes);
+        }
+    }
+
+    private final ConcurrentHashMap<String, CommandStats> commands = new ConcurrentHashMap<String, CommandStats>();
+
+    @Override
+    public void record(String command, String node, long latencyNanos, int resultCode, long payloadBytes) {
+        CommandStats stats = this.commands.get(command);
+        if (stats == null)
+            stats = this.commands.computeIfAbsent(command, c -> new CommandStats());
+        stats.record(node, latencyNanos, resultCode, payloadBytes);
+    }
+
+    public CommandStats getStats(String command) {
+        return this.commands.get(command);
+    }
+
+    public SortedSet<String> getCommands() {
+        return new TreeSet<String>(this.commands.keySet());
+    }
+
+    public void reset() {
+        this.commands.clear();
+    }
+
+    public static String resultName(int resultCode) {
+        String name = RESULT_NAMES.get(resultCode);
+        return (name == null) ? String.valueOf(resultCode) : name;
+    }
+
+    private static String micros(long nanos) {
+        return String.format(Locale.ROOT, "%.1f", nanos / (double) TimeUnit.MICROSECONDS.toNanos(1));
+    }
+
+    /*
+     * One block per command, latencies in microseconds:
+     *
+     * GET count=1200 p50=310.0 p99=1210.0 p999=2401.0 max=5012.0 mean=342.5 bytes=120000 maxBytes=100
+     *   results OK=1190 KEY_NOT_FOUND_ERROR=10
+     *   node BB9020011AC4202 count=600 p50=305.0 p99=1190.0
+     */
+    public String toText() {
+        StringBuilder sb = new StringBuilder();
+        for (String command : getCommands()){
+            CommandStats stats = this.commands.get(command);
+            if (stats == null) continue;
+            Histogram latency = stats.latency;
+            sb.append(command)
+                    .append(" count=").append(latency.getCount())
+                    .append(" p50=").append(micros(latency.getPercentile(50)))
+                    .append(" p99=").append(micros(latency.getPercentile(99)))
+                    .append(" p999=").append(micros(latency.getPercentile(99.9)))
+                    .append(" max=").append(micros(latency.getMax()))
+                    .append(" mean=").append(micros((long) latency.getMean()))
+                    .append(" bytes=").append(stats.payload.getSum())
+                    .append(" maxBytes=").append(stats.payload.getMax())
+                    .append('\n');
+            sb.append("  results");
+            for (Map.Entry<Integer, Long> entry : stats.getResultCodes().entrySet()){
+                sb.append(' ').append(resultName(entry.getKey())).append('=').append(entry.getValue());
+            }
+            sb.append('\n');
+            for (Map.Entry<String, Histogram> entry : stats.getNodes().entrySet()){
+                Histogram node = entry.getValue();
+                sb.append("  node ").append(entry.getKey())
+                        .append(" count=").append(node.getCount())
+                        .append(" p50=").append(micros(node.getPercentile(50)))
+                        .append(" p99=").append(micros(node.getPercentile(99)))
+                        .append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /*
+     * {"GET":{"count":1200,"latencyMicros":{"p50":310.0,...},"bytes":{...},"results":{...},"nodes":{...}},...}
+     */
+    public String toJson() {
+        StringBuilder sb = new StringBuilder("{");
+        boolean first = true;
+        for (String command : getCommands()){
+            CommandStats stats = this.commands.get(command);
+            if (stats == null) continue;
+            if (!first) sb.append(',');
+            first = false;
+            quote(sb, command).append(":{\"count\":").append(stats.latency.getCount());
+            sb.append(",\"latencyMicros\":");
+            latencyJson(sb, stats.latency);
+            sb.append(",\"bytes\":{\"sum\":").append(stats.payload.getSum())
+                    .append(",\"p50\":").append(stats.payload.getPercentile(50))
+                    .append(",\"p99\":").append(stats.payload.getPercentile(99))
+                    .append(",\"max\":").append(stats.payload.getMax()).append('}');
+            sb.append(",\"results\":{");
+            boolean firstResult = true;
+            for (Map.Entry<Integer, Long> entry : stats.getResultCodes().entrySet()){
+                if (!firstResult) sb.append(',');
+                firstResult = false;
+                quote(sb, resultName(entry.getKey())).append(':').append(entry.getValue());
+            }
+            sb.append("},\"nodes\":{");
+            boolean firstNode = true;
+            for (Map.Entry<String, Histogram> entry : stats.getNodes().entrySet()){
+                if (!firstNode) sb.append(',');
+                firstNode = false;
+                quote(sb, entry.getKey()).append(":{\"count\":").append(entry.getValue().getCount())
+                        .append(",\"latencyMicros\":");
+                latencyJson(sb, entry.getValue());
+                sb.append('}');
+            }
+            sb.append("}}");
+        }
+        return sb.append('}').toString();
+    }
+
+    private static void latencyJson(StringBuilder sb, Histogram latency) {
+        sb.append("{\"p50\":").append(micros(latency.getPercentile(50)))
+                .append(",\"p99\":").append(micros(latency.getPercentile(99)))
+                .append(",\"p999\":").append(micros(latency.getPercentile(99.9)))
+                .append(",\"max\":").append(micros(latency.getMax()))
+                .append(",\"mean\":").append(micros((long) latency.getMean()))
+                .append('}');
+    }
+
+    private static StringBuilder quote(StringBuilder sb, String value) {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                sb.append('\\').append(c);
+            else if (c < 0x20)
+                sb.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            else
+                sb.append(c);
+        }
+        return sb.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+}
@@ -0,0 +1,66 @@
+package com.zy.bigdata.aerospike.util;
+
+/**
+ * Translation of Redis KEYS/SCAN glob patterns: '*', '?', '[abc]', '[^a]', '[a-z]' and '\' escapes.
+ */
+final public class GlobPatterns {
+
+    private static final String LUA_MAGIC = "^$()%.[]*+-?";
+
+    private GlobPatterns() {
+    }
+
+    public static boolean matchesAll(String glob) {
+        if (glob == null || glob.isEmpty())
+            return true;
+        for (int i = 0; i < glob.length(); i++){
+            if (glob.charAt(i) != '*') return false;
+        }
+        return true;
+    }
+
+    /*
+     * Anchored Lua pattern for string.match, used by the server side key filter of redis.lua.
+     */
+    public static String toLuaPattern(String glob) {
+        StringBuilder lua = new StringBuilder("^");
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            if (c == '*') {
+                lua.append(".-");
+            } else if (c == '?') {
+                lua.append('.');
+            } else if (c == '\\' && i + 1 < glob.length()) {
+                appendLuaLiteral(lua, glob.charAt(++i));
+            } else if (c == '[' && glob.indexOf(']', i + 1) > i + 1) {
+                int end = glob.indexOf(']', i + 1);
+                lua.append('[');
+                int j = i + 1;
+                if (glob.charAt(j) == '^') {
+                    lua.append('^');
+                    j++;
+                }
+                for (; j < end; j++){
+                    char s = glob.charAt(j);
+                    if (s == '-' && j > i + 1 && j + 1 < end)
+                        lua.append('-');
+                    else
+                        appendLuaLiteral(lua, s);
+                }
+                lua.append(']');
+                i = end;
+            } else {
+                appendLuaLiteral(lua, c);
+            }
+            i++;
+        }
+        return lua.append('$').toString();
+    }
+
+    private static void appendLuaLiteral(StringBuilder lua, char c) {
+        if (LUA_MAGIC.indexOf(c) >= 0)
+            lua.append('%');
+        lua.append(c);
+    }
+}
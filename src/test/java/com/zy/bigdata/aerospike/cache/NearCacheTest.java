@@ -0,0 +1,113 @@
+package com.zy.bigdata.aerospike.cache;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class NearCacheTest {
+
+    private static final long FOREVER = Long.MAX_VALUE;
+
+    @Test
+    public void putWithCurrentStampIsCached() {
+        NearCache cache = new NearCache(100, 60000);
+        cache.putString("k", cache.stamp("k"), "v", FOREVER);
+        cache.putField("h", cache.stamp("h"), "f", 1L, FOREVER);
+        cache.putHash("m", cache.stamp("m"), Collections.singletonMap("f", "v"), FOREVER);
+        assertEquals("v", cache.getString("k"));
+        assertEquals(1L, cache.getField("h", "f"));
+        assertEquals(Collections.singletonMap("f", "v"), cache.getHash("m"));
+        assertEquals(3, cache.getHitCount());
+    }
+
+    @Test
+    public void putAfterInvalidateIsDropped() {
+        NearCache cache = new NearCache(100, 60000);
+        long stamp = cache.stamp("k");
+        cache.invalidate("k");
+        cache.putString("k", stamp, "stale", FOREVER);
+        cache.putField("k", stamp, "f", "stale", FOREVER);
+        assertNull(cache.getString("k"));
+        assertNull(cache.getField("k", "f"));
+        assertEquals(0, cache.size());
+
+        stamp = cache.stamp("k");
+        cache.invalidateAll();
+        cache.putString("k", stamp, "stale", FOREVER);
+        assertNull(cache.getString("k"));
+    }
+
+    @Test
+    public void invalidateRemovesEntry() {
+        NearCache cache = new NearCache(100, 60000);
+        cache.putString("k", cache.stamp("k"), "v", FOREVER);
+        cache.invalidate("k");
+        assertNull(cache.getString("k"));
+        assertEquals(1, cache.getInvalidationCount());
+    }
+
+    @Test
+    public void entriesExpire() throws InterruptedException {
+        NearCache cache = new NearCache(100, 60000);
+        cache.putString("k", cache.stamp("k"), "v", System.currentTimeMillis() + 20);
+        assertEquals("v", cache.getString("k"));
+        Thread.sleep(40);
+        assertNull(cache.getString("k"));
+        assertEquals(1, cache.getExpirationCount());
+        assertTrue(cache.expireAt(0) <= System.currentTimeMillis() + 60000);
+        assertEquals(1000, cache.expireAt(1000));
+    }
+
+    /*
+     * Readers stamp, read the source and put, while a writer updates the source then
+     * invalidates; once the writer is done the cache may only hold the last value.
+     */
+    @Test
+    public void slowReadsNeverResurrectOverwrittenValues() throws InterruptedException {
+        NearCache cache = new NearCache(1000, 60000);
+        AtomicReference<String> source = new AtomicReference<String>("0");
+        AtomicBoolean writing = new AtomicBoolean(true);
+        AtomicInteger puts = new AtomicInteger();
+        int readers = 4;
+        CountDownLatch done = new CountDownLatch(readers);
+        for (int r = 0; r < readers; r++){
+            new Thread(() -> {
+                while (writing.get()) {
+                    long stamp = cache.stamp("k");
+                    String value = source.get();
+                    Thread.yield();
+                    cache.putString("k", stamp, value, FOREVER);
+                    puts.incrementAndGet();
+                }
+                done.countDown();
+            }).start();
+        }
+        for (int i = 1; i <= 20000; i++){
+            source.set(Integer.toString(i));
+            cache.invalidate("k");
+            String cached = cache.getString("k");
+            assertTrue(cached, cached == null || Integer.parseInt(cached) == i);
+        }
+        writing.set(false);
+        done.await();
+        assertTrue(puts.get() > 0);
+        String cached = cache.getString("k");
+        assertTrue(cached, cached == null || cached.equals("20000"));
+    }
+
+    @Test
+    public void evictsBeyondCapacity() {
+        NearCache cache = new NearCache(16, 60000);
+        for (int i = 0; i < 1000; i++){
+            cache.putString("k" + i, cache.stamp("k" + i), "v", FOREVER);
+        }
+        assertTrue(cache.size() <= 16);
+        assertTrue(cache.getEvictionCount() >= 1000 - 16);
+    }
+}
@@ -0,0 +1,216 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.Key;
+import com.aerospike.client.ResultCode;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class AsyncAedisClientTest {
+
+    private FakeCluster cluster;
+    private AedisClient client;
+    private AsyncAedisClient async;
+
+    @Before
+    public void setUp() {
+        this.cluster = new FakeCluster();
+        this.client = new AedisClient(this.cluster.asyncClient(), "test", "redis");
+        this.async = new AsyncAedisClient(this.cluster.asyncClient(), this.client);
+    }
+
+    @After
+    public void tearDown() throws InterruptedException {
+        this.cluster.shutdown();
+    }
+
+    private FakeCluster.Stored record(String key) {
+        return this.cluster.record(new Key("test", "redis", key));
+    }
+
+    private static int failure(CompletableFuture<?> future) throws InterruptedException {
+        try {
+            future.get();
+            fail("completed with " + future.join());
+            return 0;
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), e.getCause() instanceof AerospikeException);
+            return ((AerospikeException) e.getCause()).getResultCode();
+        }
+    }
+
+    @Test
+    public void readsAndWritesStrings() throws Exception {
+        assertEquals("OK", this.async.set("k", "v1").get());
+        assertEquals("v1", this.async.get("k").get());
+        assertEquals("v1", this.client.get("k"));
+        assertEquals("k", record("k").bins.get("redis-key-bin"));
+        assertNull(this.async.get("none").get());
+        assertEquals(Arrays.asList("v1", null), this.async.mget("k", "none").get());
+        assertEquals("v1", this.async.getSet("k", "v2").get());
+        assertEquals(4, this.async.append("k", "v3").get().longValue());
+        assertEquals("v2v3", this.async.get("k").get());
+        assertFalse(this.async.setnx("k", "x").get());
+        assertTrue(this.async.setnx("n", "x").get());
+        assertEquals(0, this.async.setxx("missing", "x").get().longValue());
+        assertEquals(1, this.async.setxx("n", "y").get().longValue());
+        assertTrue(this.async.exists("n").get());
+        assertEquals(1, this.async.del("n").get().longValue());
+        assertEquals(0, this.async.del("n").get().longValue());
+        assertFalse(this.async.exists("n").get());
+    }
+
+    @Test
+    public void expiresKeys() throws Exception {
+        this.async.set("k", "v").get();
+        assertEquals(-1, this.async.ttl("k").get().longValue());
+        assertEquals(-2, this.async.ttl("none").get().longValue());
+        assertEquals(1, this.async.expire("k", 100).get().longValue());
+        assertTrue(this.async.ttl("k").get() >= 99);
+        assertEquals(0, this.async.expire("none", 100).get().longValue());
+        assertEquals(1, this.async.persist("k").get().longValue());
+        assertEquals(-1, this.async.ttl("k").get().longValue());
+        this.async.setex("e", 50, "v").get();
+        assertTrue(record("e").expiration > 0);
+    }
+
+    @Test
+    public void writesCompressedValuesTheClientReads() throws Exception {
+        this.client.enableCompression(Compressors.deflate(6), 16);
+        String big = String.join("", Collections.nCopies(100, "abc"));
+        this.async.set("big", big).get();
+        assertTrue(record("big").bins.get("redis-bin") instanceof byte[]);
+        assertEquals(big, this.client.get("big"));
+        assertEquals(big, this.async.get("big").get());
+        assertEquals(big, this.async.getSet("big", "small").get());
+        try {
+            this.async.append("big", "x");
+            fail("appended to a compressed value");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void invalidatesTheNearCache() throws Exception {
+        this.client.enableNearCache(100, 60000);
+        this.client.set("k", "v1");
+        assertEquals("v1", this.client.get("k"));
+        this.async.set("k", "v2").get();
+        assertEquals("v2", this.client.get("k"));
+        this.async.del("k").get();
+        assertNull(this.client.get("k"));
+    }
+
+    @Test
+    public void leavesTheKeyBinOut() throws Exception {
+        this.client.setWriteKeyBin(false);
+        this.async.set("s", "v").get();
+        this.async.getSet("g", "v").get();
+        this.async.append("a", "v").get();
+        this.async.incr("i").get();
+        for (String key : new String[]{"s", "g", "a", "i"}){
+            assertNotNull(key, record(key));
+            assertFalse(key, record(key).bins.containsKey("redis-key-bin"));
+        }
+    }
+
+    @Test
+    public void countsAndFailsOnOtherTypes() throws Exception {
+        assertEquals(1, this.async.incr("n").get().longValue());
+        assertEquals(11, this.async.incrBy("n", 10).get().longValue());
+        assertEquals(10, this.async.decr("n").get().longValue());
+        assertEquals(5, this.async.decrBy("n", 5).get().longValue());
+        assertEquals("5", this.client.get("n"));
+        assertEquals(6.5, this.async.incrByFloat("f", 6.5).get(), 0);
+        this.async.set("s", "text").get();
+        assertEquals(ResultCode.BIN_TYPE_ERROR, failure(this.async.incr("s")));
+    }
+
+    @Test
+    public void runsListCommands() throws Exception {
+        assertEquals(1, this.async.rpush("l", "b").get().longValue());
+        assertEquals(2, this.async.lpush("l", "a").get().longValue());
+        assertEquals(3, this.async.rpushx("l", "c").get().longValue());
+        assertEquals(0, this.async.lpushx("none", "c").get().longValue());
+        assertEquals(3, this.async.llen("l").get().longValue());
+        assertEquals(Arrays.asList("a", "b", "c"), this.async.lrange("l", 0, -1).get());
+        assertEquals("b", this.async.lindex("l", 1).get());
+        assertEquals(1, this.async.lrem("l", 0, "b").get().longValue());
+        assertEquals("a", this.async.lpop("l").get());
+        assertEquals("c", this.async.rpop("l").get());
+        assertNull(this.async.rpop("l").get());
+        assertEquals(0, this.client.llen("l").longValue());
+    }
+
+    @Test
+    public void runsHashCommands() throws Exception {
+        assertEquals(1, this.async.hset("h", "a", "1").get().longValue());
+        assertEquals(0, this.async.hsetnx("h", "a", "2").get().longValue());
+        Map<String, String> hash = new HashMap<String, String>();
+        hash.put("b", "2");
+        hash.put("c", "3");
+        this.async.hmset("h", hash).get();
+        assertEquals("1", this.async.hget("h", "a").get());
+        assertEquals(Arrays.asList("2", null), this.async.hmget("h", "b", "none").get());
+        assertEquals(10, this.async.hincrBy("h", "n", 10).get().longValue());
+        assertEquals(13, this.async.hincrBy("h", "n", 3).get().longValue());
+        assertTrue(this.async.hexists("h", "b").get());
+        assertEquals(1, this.async.hdel("h", "b").get().longValue());
+        assertEquals(3, this.async.hlen("h").get().longValue());
+        this.async.hdel("h", "n").get();
+        assertEquals(new HashSet<String>(Arrays.asList("a", "c")), this.async.hkeys("h").get());
+        assertEquals(new HashSet<String>(Arrays.asList("1", "3")), new HashSet<String>(this.async.hvals("h").get()));
+        Map<String, String> all = this.async.hgetAll("h").get();
+        assertEquals(2, all.size());
+        assertEquals("3", all.get("c"));
+        assertEquals(this.client.hgetAll("h"), all);
+    }
+
+    @Test
+    public void completesExceptionallyOnClusterErrors() throws Exception {
+        this.async.set("k", "v").get();
+        this.cluster.failNext("put", ResultCode.TIMEOUT);
+        assertEquals(ResultCode.TIMEOUT, failure(this.async.set("k", "w")));
+        assertEquals("v", this.async.get("k").get());
+        this.cluster.failNext("get", ResultCode.SERVER_NOT_AVAILABLE);
+        assertEquals(ResultCode.SERVER_NOT_AVAILABLE, failure(this.async.get("k")));
+        this.cluster.failNext("get", ResultCode.TIMEOUT);
+        assertEquals(ResultCode.TIMEOUT, failure(this.async.mget("k", "j")));
+        this.cluster.failNext("delete", ResultCode.TIMEOUT);
+        assertEquals(ResultCode.TIMEOUT, failure(this.async.del("k")));
+        this.cluster.failNext("touch", ResultCode.TIMEOUT);
+        assertEquals(ResultCode.TIMEOUT, failure(this.async.expire("k", 10)));
+        this.cluster.failNext("exists", ResultCode.TIMEOUT);
+        assertEquals(ResultCode.TIMEOUT, failure(this.async.exists("k")));
+        this.cluster.failNext("operate", ResultCode.TIMEOUT);
+        assertEquals(ResultCode.TIMEOUT, failure(this.async.incr("n")));
+        this.cluster.failNext("execute", ResultCode.UDF_BAD_RESPONSE);
+        assertEquals(ResultCode.UDF_BAD_RESPONSE, failure(this.async.rpush("l", "v")));
+        this.cluster.failNext("execute", ResultCode.TIMEOUT);
+        assertEquals(ResultCode.TIMEOUT, failure(this.async.hget("h", "f")));
+        assertEquals(1, this.async.del("k").get().longValue());
+    }
+
+    @Test
+    public void failsFastOutsideUdfMode() {
+        this.client.setHashMode(CommandMode.NATIVE);
+        this.client.setListMode(CommandMode.SHARDED);
+        for (Runnable command : Arrays.<Runnable>asList(() -> this.async.hget("h", "f"), () -> this.async.rpush("l", "v"),
+                () -> this.async.del("k"), () -> this.async.expire("k", 1), () -> this.async.persist("k"))){
+            try {
+                command.run();
+                fail("ran outside UDF mode");
+            } catch (UnsupportedOperationException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.zy.bigdata.aerospike.client;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class ClusterStatsTest {
+
+    private static Map<String, String> node(String namespace, String stats, String sets) {
+        Map<String, String> answer = new HashMap<String, String>();
+        answer.put("namespaces", namespace);
+        answer.put("namespace/" + namespace, stats);
+        answer.put("sets", sets);
+        return answer;
+    }
+
+    @Test
+    public void countsEveryRecordOnce() {
+        ClusterStats.Snapshot snapshot = ClusterStats.aggregate(1000, Arrays.asList(
+                node("test", "objects=200;master_objects=100;memory_used_bytes=2048;memory-size=4096;effective_replication_factor=2",
+                        "ns=test:set=users:objects=120:memory_data_bytes=600;ns=test:set=orders:objects=80:memory_data_bytes=400;"),
+                node("test", "objects=200;master_objects=100;memory_used_bytes=1024;memory-size=4096;effective_replication_factor=2",
+                        "ns=test:set=users:objects=80:memory_data_bytes=400;ns=test:set=orders:objects=120:memory_data_bytes=600;")));
+        assertEquals(1000, snapshot.getTakenAt());
+        assertEquals(2, snapshot.getNodes());
+        ClusterStats.NamespaceStats test = snapshot.getNamespaces().get("test");
+        assertEquals(2, test.getReplicationFactor());
+        assertEquals(200, test.getObjects());
+        assertEquals(3072, test.getMemoryUsedBytes());
+        assertEquals(8192, test.getMemorySize());
+        assertEquals(100, snapshot.objects("test", "users"));
+        assertEquals(100, snapshot.objects("test", "orders"));
+        assertEquals(200, snapshot.objects("test", null));
+        assertEquals(1000, snapshot.getSets().get("test.users").getMemoryBytes());
+        assertEquals(0, snapshot.objects("test", "missing"));
+        assertEquals(0, snapshot.objects("missing", null));
+    }
+
+    @Test
+    public void acceptsStatisticsOfOldServers() {
+        ClusterStats.Snapshot snapshot = ClusterStats.aggregate(0, Arrays.asList(
+                node("bar", "objects=30;used-bytes-memory=10;repl-factor=3",
+                        "ns_name=bar:set_name=s:n_objects=30:n-bytes-memory=5"),
+                node("bar", "objects=30;used-bytes-memory=10;repl-factor=3",
+                        "ns_name=bar:set_name=s:n_objects=30:n-bytes-memory=5")));
+        ClusterStats.NamespaceStats bar = snapshot.getNamespaces().get("bar");
+        // the replication factor can not exceed the node count
+        assertEquals(2, bar.getReplicationFactor());
+        assertEquals(30, bar.getObjects());
+        assertEquals(20, bar.getMemoryUsedBytes());
+        assertEquals(30, snapshot.objects("bar", "s"));
+        assertEquals(10, snapshot.getSets().get("bar.s").getMemoryBytes());
+    }
+
+    @Test
+    public void ignoresMissingAndMalformedFields() {
+        ClusterStats.Snapshot snapshot = ClusterStats.aggregate(0, Collections.singletonList(
+                node("test", "objects=abc;garbage", "ns=test:objects=5;set=orphan:objects=5;")));
+        ClusterStats.NamespaceStats test = snapshot.getNamespaces().get("test");
+        assertEquals(1, test.getReplicationFactor());
+        assertEquals(0, test.getObjects());
+        assertTrue(snapshot.getSets().isEmpty());
+        assertTrue(snapshot.toInfo().contains("cluster_nodes:1\r\n"));
+        assertTrue(ClusterStats.aggregate(0, Collections.<Map<String, String>>emptyList()).getNamespaces().isEmpty());
+    }
+}
@@ -0,0 +1,137 @@
+package com.zy.bigdata.aerospike.client;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class CompressionTest {
+
+    private static String text(int length) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; text.length() < length; i++){
+            text.append("field").append(i % 50).append("=value ").append("中文 ");
+        }
+        return text.substring(0, length);
+    }
+
+    @Test
+    public void roundTripsStringsAndBytes() {
+        for (Compressor compressor : new Compressor[]{Compressors.deflate(6), Compressors.zstd(3)}){
+            Compression compression = new Compression(compressor, 256);
+            String string = text(10000);
+            Object stored = compression.encode("SET", string);
+            assertTrue(stored instanceof byte[]);
+            assertTrue(((byte[]) stored).length < string.length());
+            assertTrue(Compression.isCompressed(stored));
+            assertEquals(string, compression.decode("GET", stored));
+
+            byte[] bytes = text(5000).getBytes(StandardCharsets.UTF_8);
+            stored = compression.encode("SET", bytes);
+            assertTrue(Compression.isCompressed(stored));
+            assertArrayEquals(bytes, (byte[]) compression.decode("GET", stored));
+
+            assertEquals(2, compression.getStats().get("GET").getDecompressed());
+            assertEquals(2, compression.getStats().get("SET").getCompressed());
+        }
+    }
+
+    @Test
+    public void keepsSmallAndIncompressibleValues() {
+        Compression compression = new Compression(Compressors.deflate(6), 256);
+        String small = text(100);
+        assertSame(small, compression.encode("SET", small));
+        byte[] random = new byte[4096];
+        new Random(1).nextBytes(random);
+        assertSame(random, compression.encode("SET", random));
+        Long number = 42L;
+        assertSame(number, compression.encode("SET", number));
+        assertSame(random, compression.decode("GET", random));
+        assertEquals("plain", compression.decode("GET", "plain"));
+    }
+
+    @Test
+    public void decodeOnlyDoesNotCompress() {
+        Compression compression = new Compression(Compressors.deflate(6), 256);
+        Compression decodeOnly = compression.decodeOnly();
+        String string = text(10000);
+        assertSame(string, decodeOnly.encode("SET", string));
+        assertEquals(string, decodeOnly.decode("GET", compression.encode("SET", string)));
+    }
+
+    @Test
+    public void readsValuesOfOtherBuiltInCompressors() {
+        Object stored = new Compression(Compressors.zstd(3), 256).encode("SET", text(10000));
+        assertEquals(text(10000), new Compression(Compressors.deflate(6), 256).decode("GET", stored));
+    }
+
+    @Test
+    public void plainBlobWithMagicBytesIsReturnedAsIs() {
+        Compression compression = new Compression(Compressors.deflate(6), 256);
+        byte[] plain = new byte[64];
+        plain[0] = (byte) 0xAE;
+        plain[1] = (byte) 0xC0;
+        plain[2] = 1;
+        plain[3] = (byte) Compressors.deflate(6).id();
+        plain[4] = 0;
+        plain[8] = 10;
+        assertFalse(Compression.isCompressed(plain));
+        assertSame(plain, compression.decode("GET", plain));
+        assertFalse(Compression.isCompressed(Arrays.copyOf(plain, Compression.HEADER)));
+    }
+
+    @Test
+    public void corruptValuesAreNotDecompressed() {
+        Compression compression = new Compression(Compressors.deflate(6), 256);
+        byte[] stored = (byte[]) compression.encode("SET", text(10000));
+        for (int offset : new int[]{2, 4, 6, Compression.HEADER - 1, Compression.HEADER + 3, stored.length - 1}){
+            byte[] corrupt = stored.clone();
+            corrupt[offset] ^= 0x10;
+            assertFalse("offset " + offset, Compression.isCompressed(corrupt));
+            assertSame(corrupt, compression.decode("GET", corrupt));
+        }
+    }
+
+    @Test
+    public void bulkScanValuesAreDecompressed() {
+        AedisClient client = new AedisClient(new FakeCluster().client(), "test", "redis");
+        Object plain = text(10000);
+        assertSame(plain, client.scanned(plain));
+        client.enableCompression(Compressors.deflate(6), 256);
+        Object stored = client.compressed("SET", text(10000));
+        assertTrue(stored instanceof byte[]);
+        assertEquals(text(10000), client.scanned(stored));
+        assertEquals(Arrays.asList(text(10000), "small"), client.scanned(Arrays.asList(stored, "small")));
+        Map<String, Object> hash = new HashMap<String, Object>();
+        hash.put("f", stored);
+        hash.put("n", 5L);
+        Map<?, ?> scanned = (Map<?, ?>) client.scanned(hash);
+        assertEquals(text(10000), scanned.get("f"));
+        assertEquals(5L, scanned.get("n"));
+        assertNull(client.scanned(null));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsInvalidCompressorId() {
+        new Compression(new Compressor() {
+            @Override
+            public int id() {
+                return 0;
+            }
+
+            @Override
+            public byte[] compress(byte[] data) {
+                return data;
+            }
+
+            @Override
+            public void decompress(byte[] data, int offset, int length, byte[] target) {
+            }
+        }, 256);
+    }
+}
@@ -0,0 +1,107 @@
+package com.zy.bigdata.aerospike.client;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class CounterBufferTest {
+
+    /*
+     * Stored counters, every write takes a while so increments overlap the flushes.
+     */
+    private static final class SlowSink implements CounterBuffer.Sink {
+        final Map<String, Long> stored = new ConcurrentHashMap<String, Long>();
+        final AtomicBoolean failNext = new AtomicBoolean();
+
+        @Override
+        public long incrBy(Object key, String field, long delta) {
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (this.failNext.compareAndSet(true, false))
+                throw new IllegalStateException("write failed");
+            return this.stored.merge(key + "/" + field, delta, Long::sum);
+        }
+
+        @Override
+        public long get(Object key, String field) {
+            Long value = this.stored.get(key + "/" + field);
+            return (value == null) ? 0 : value;
+        }
+    }
+
+    @Test
+    public void returnsEveryIncrementWhileFlushing() {
+        SlowSink sink = new SlowSink();
+        sink.stored.put("k/null", 100L);
+        CounterBuffer buffer = new CounterBuffer(sink, Integer.MAX_VALUE, 1);
+        try {
+            for (int i = 1; i <= 200000; i++){
+                assertEquals(100 + i, buffer.incrBy("k", null, 1));
+            }
+        } finally {
+            buffer.close();
+        }
+        assertEquals(200100, sink.get("k", null));
+    }
+
+    @Test
+    public void neverDipsUnderConcurrentIncrements() throws Exception {
+        SlowSink sink = new SlowSink();
+        CounterBuffer buffer = new CounterBuffer(sink, 500, 1);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 4; t++){
+                futures.add(pool.submit(() -> {
+                    long last = 0;
+                    for (int i = 0; i < 20000; i++){
+                        long value = buffer.incrBy("k", "f", 1);
+                        assertTrue(value + " after " + last, value > last);
+                        last = value;
+                    }
+                }));
+            }
+            for (Future<?> future : futures){
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+            buffer.close();
+        }
+        assertEquals(80000, sink.get("k", "f"));
+    }
+
+    @Test
+    public void keepsDeltasOfFailedFlushes() {
+        SlowSink sink = new SlowSink();
+        CounterBuffer buffer = new CounterBuffer(sink, Integer.MAX_VALUE, 60000);
+        assertEquals(5, buffer.incrBy("k", null, 5));
+        sink.failNext.set(true);
+        try {
+            buffer.flush();
+            fail("flushed");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        assertEquals(0, sink.get("k", null));
+        assertEquals(7, buffer.incrBy("k", null, 2));
+        buffer.flush();
+        assertEquals(7, sink.get("k", null));
+        assertEquals(8, buffer.incrBy("k", null, 1));
+        buffer.close();
+        assertEquals(8, sink.get("k", null));
+        assertEquals(9, buffer.incrBy("k", null, 1));
+    }
+}
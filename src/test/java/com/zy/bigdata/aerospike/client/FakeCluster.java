@@ -0,0 +1,868 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.*;
+import com.aerospike.client.async.IAsyncClient;
+import com.aerospike.client.cluster.Node;
+import com.aerospike.client.listener.*;
+import com.aerospike.client.policy.GenerationPolicy;
+import com.aerospike.client.policy.RecordExistsAction;
+import com.aerospike.client.policy.WritePolicy;
+import com.aerospike.client.util.Unpacker;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process stand-in for a cluster in the tests, handed out as an {@link IAerospikeClient}
+ * or an {@link IAsyncClient}. Records live in one map under one lock, so every call is atomic
+ * like a single record transaction on a server.
+ *
+ * Emulated: get, getHeader, exists, put, delete, touch and batch reads; operate with plain bin
+ * operations and the CDT list and map operations the engines send, with generation checks and
+ * record exists actions; TTLs (an expired record reads as missing); and the redis.lua functions
+ * in Java. Async calls run the same code on a callback thread and complete their listener
+ * there. Anything else throws UnsupportedOperationException.
+ *
+ * failNext makes the next call of a method fail with a result code, for the error paths. Public
+ * for the server tests, which get it from the test jar.
+ */
+public final class FakeCluster implements InvocationHandler {
+
+    // the aerospike epoch, 2010-01-01, of record void times
+    private static final long CITRUS_EPOCH_MILLIS = 1262304000000L;
+    private static final Object NO_RESULT = new Object();
+
+    static final class Stored {
+        final Map<String, Object> bins = new HashMap<String, Object>();
+        int generation;
+        int expiration;
+    }
+
+    private final Map<Key, Stored> records = new HashMap<Key, Stored>();
+    private final Map<String, Integer> failures = new HashMap<String, Integer>();
+    private final ExecutorService callbacks = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "fake-cluster-callback");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private long calls;
+
+    public IAerospikeClient client() {
+        return (IAerospikeClient) Proxy.newProxyInstance(FakeCluster.class.getClassLoader(), new Class<?>[]{IAerospikeClient.class}, this);
+    }
+
+    IAsyncClient asyncClient() {
+        return (IAsyncClient) Proxy.newProxyInstance(FakeCluster.class.getClassLoader(), new Class<?>[]{IAsyncClient.class}, this);
+    }
+
+    public synchronized void failNext(String method, int resultCode) {
+        this.failures.put(method, resultCode);
+    }
+
+    synchronized Stored record(Key key) {
+        return live(key);
+    }
+
+    synchronized int count(String set) {
+        int count = 0;
+        for (Key key : this.records.keySet()){
+            if (Objects.equals(key.setName, set) && live(key) != null) count++;
+        }
+        return count;
+    }
+
+    synchronized Set<Integer> expirations(String set) {
+        Set<Integer> expirations = new TreeSet<Integer>();
+        for (Map.Entry<Key, Stored> entry : this.records.entrySet()){
+            if (Objects.equals(entry.getKey().setName, set)) expirations.add(entry.getValue().expiration);
+        }
+        return expirations;
+    }
+
+    synchronized long getCalls() {
+        return this.calls;
+    }
+
+    /*
+     * Stops the callback thread once the pending callbacks ran.
+     */
+    public void shutdown() throws InterruptedException {
+        this.callbacks.shutdown();
+        this.callbacks.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        Class<?>[] types = method.getParameterTypes();
+        if (types.length > 1 && isListener(types[1]))
+            return async(method, args);
+        return call(method.getName(), types, args);
+    }
+
+    private static boolean isListener(Class<?> type) {
+        return type.getPackage() != null && type.getPackage().getName().equals("com.aerospike.client.listener");
+    }
+
+    /*
+     * Runs the synchronous counterpart of an async call on the callback thread.
+     */
+    private Object async(Method method, Object[] args) {
+        Object listener = args[1];
+        Object[] syncArgs = new Object[args.length - 1];
+        Class<?>[] types = method.getParameterTypes();
+        Class<?>[] syncTypes = new Class<?>[types.length - 1];
+        syncArgs[0] = args[0];
+        syncTypes[0] = types[0];
+        System.arraycopy(args, 2, syncArgs, 1, args.length - 2);
+        System.arraycopy(types, 2, syncTypes, 1, types.length - 2);
+        this.callbacks.execute(() -> {
+            Object result;
+            try {
+                result = call(method.getName(), syncTypes, syncArgs);
+            } catch (AerospikeException e) {
+                fail(listener, e);
+                return;
+            } catch (RuntimeException e) {
+                fail(listener, new AerospikeException(e));
+                return;
+            }
+            succeed(listener, syncArgs[1], result);
+        });
+        return null;
+    }
+
+    private static void succeed(Object listener, Object key, Object result) {
+        if (listener instanceof RecordListener)
+            ((RecordListener) listener).onSuccess((Key) key, (Record) result);
+        else if (listener instanceof RecordArrayListener)
+            ((RecordArrayListener) listener).onSuccess((Key[]) key, (Record[]) result);
+        else if (listener instanceof WriteListener)
+            ((WriteListener) listener).onSuccess((Key) key);
+        else if (listener instanceof DeleteListener)
+            ((DeleteListener) listener).onSuccess((Key) key, (Boolean) result);
+        else if (listener instanceof ExistsListener)
+            ((ExistsListener) listener).onSuccess((Key) key, (Boolean) result);
+        else if (listener instanceof ExecuteListener)
+            ((ExecuteListener) listener).onSuccess((Key) key, result);
+        else
+            throw new UnsupportedOperationException(listener.getClass().getName());
+    }
+
+    private static void fail(Object listener, AerospikeException e) {
+        if (listener instanceof RecordListener)
+            ((RecordListener) listener).onFailure(e);
+        else if (listener instanceof RecordArrayListener)
+            ((RecordArrayListener) listener).onFailure(e);
+        else if (listener instanceof WriteListener)
+            ((WriteListener) listener).onFailure(e);
+        else if (listener instanceof DeleteListener)
+            ((DeleteListener) listener).onFailure(e);
+        else if (listener instanceof ExistsListener)
+            ((ExistsListener) listener).onFailure(e);
+        else if (listener instanceof ExecuteListener)
+            ((ExecuteListener) listener).onFailure(e);
+        else
+            throw new UnsupportedOperationException(listener.getClass().getName());
+    }
+
+    private synchronized Object call(String name, Class<?>[] types, Object[] args) {
+        this.calls++;
+        Integer failure = this.failures.remove(name);
+        if (failure != null)
+            throw new AerospikeException(failure);
+        switch (name) {
+            case "close":
+                return null;
+            case "isConnected":
+                return true;
+            case "getNodes":
+                return new Node[0];
+            case "exists":
+                return live((Key) args[1]) != null;
+            case "get":
+                if (types[1] == Key[].class) {
+                    Key[] keys = (Key[]) args[1];
+                    Record[] records = new Record[keys.length];
+                    for (int i = 0; i < keys.length; i++){
+                        Stored stored = live(keys[i]);
+                        if (stored != null) records[i] = record(stored, binNames(args));
+                    }
+                    return records;
+                } else {
+                    Stored stored = live((Key) args[1]);
+                    return (stored == null) ? null : record(stored, binNames(args));
+                }
+            case "getHeader":
+                if (types[1] == Key[].class) {
+                    Key[] keys = (Key[]) args[1];
+                    Record[] records = new Record[keys.length];
+                    for (int i = 0; i < keys.length; i++){
+                        Stored stored = live(keys[i]);
+                        if (stored != null) records[i] = new Record(null, stored.generation, stored.expiration);
+                    }
+                    return records;
+                } else {
+                    Stored stored = live((Key) args[1]);
+                    return (stored == null) ? null : new Record(null, stored.generation, stored.expiration);
+                }
+            case "put":
+                put(policy(args[0]), (Key) args[1], (Bin[]) args[2]);
+                return null;
+            case "delete":
+                return delete(policy(args[0]), (Key) args[1]);
+            case "touch":
+                touch(policy(args[0]), (Key) args[1]);
+                return null;
+            case "operate":
+                return operate(policy(args[0]), (Key) args[1], (Operation[]) args[2]);
+            case "execute":
+                return execute(policy(args[0]), (Key) args[1], (String) args[3], (Value[]) args[4]);
+            default:
+                throw new UnsupportedOperationException(name + " is not emulated by the fake cluster");
+        }
+    }
+
+    private static WritePolicy policy(Object policy) {
+        return (policy instanceof WritePolicy) ? (WritePolicy) policy : new WritePolicy();
+    }
+
+    private static String[] binNames(Object[] args) {
+        return (args.length > 2) ? (String[]) args[2] : null;
+    }
+
+    private Stored live(Key key) {
+        Stored stored = this.records.get(key);
+        if (stored != null && stored.expiration > 0 && stored.expiration <= now()) {
+            this.records.remove(key);
+            return null;
+        }
+        return stored;
+    }
+
+    private static int now() {
+        return (int) ((System.currentTimeMillis() - CITRUS_EPOCH_MILLIS) / 1000);
+    }
+
+    /*
+     * 0 and -2 keep the current void time (the namespace default is never), -1 never expires.
+     */
+    private static int voidTime(int expiration, int current) {
+        if (expiration == 0 || expiration == -2)
+            return current;
+        if (expiration == -1)
+            return 0;
+        return now() + expiration;
+    }
+
+    private static Object copy(Object value) {
+        if (value instanceof List)
+            return new ArrayList<Object>((List<?>) value);
+        if (value instanceof Map)
+            return new LinkedHashMap<Object, Object>((Map<?, ?>) value);
+        return value;
+    }
+
+    private static Record record(Stored stored, String[] binNames) {
+        Map<String, Object> bins = new HashMap<String, Object>();
+        if (binNames == null || binNames.length == 0) {
+            for (Map.Entry<String, Object> entry : stored.bins.entrySet()){
+                bins.put(entry.getKey(), copy(entry.getValue()));
+            }
+        } else {
+            for (String name : binNames){
+                if (stored.bins.containsKey(name)) bins.put(name, copy(stored.bins.get(name)));
+            }
+        }
+        return new Record(bins, stored.generation, stored.expiration);
+    }
+
+    private static void checkGeneration(WritePolicy policy, Stored stored) {
+        if (stored != null && policy.generationPolicy == GenerationPolicy.EXPECT_GEN_EQUAL && policy.generation != stored.generation)
+            throw new AerospikeException(ResultCode.GENERATION_ERROR);
+    }
+
+    private void put(WritePolicy policy, Key key, Bin[] bins) {
+        Stored stored = live(key);
+        RecordExistsAction action = policy.recordExistsAction;
+        if (stored == null && (action == RecordExistsAction.UPDATE_ONLY || action == RecordExistsAction.REPLACE_ONLY))
+            throw new AerospikeException(ResultCode.KEY_NOT_FOUND_ERROR);
+        if (stored != null && action == RecordExistsAction.CREATE_ONLY)
+            throw new AerospikeException(ResultCode.KEY_EXISTS_ERROR);
+        Operation[] ops = new Operation[bins.length];
+        for (int i = 0; i < bins.length; i++){
+            ops[i] = Operation.put(bins[i]);
+        }
+        checkGeneration(policy, stored);
+        if (stored != null && (action == RecordExistsAction.REPLACE || action == RecordExistsAction.REPLACE_ONLY))
+            stored.bins.clear();
+        operate(policy, key, ops);
+    }
+
+    private boolean delete(WritePolicy policy, Key key) {
+        Stored stored = live(key);
+        if (stored == null)
+            return false;
+        checkGeneration(policy, stored);
+        this.records.remove(key);
+        return true;
+    }
+
+    private void touch(WritePolicy policy, Key key) {
+        Stored stored = live(key);
+        if (stored == null)
+            throw new AerospikeException(ResultCode.KEY_NOT_FOUND_ERROR);
+        checkGeneration(policy, stored);
+        stored.generation++;
+        stored.expiration = voidTime(policy.expiration, stored.expiration);
+    }
+
+    private static boolean writes(Operation op) {
+        switch (op.type) {
+            case READ:
+            case READ_HEADER:
+            case CDT_READ:
+            case MAP_READ:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /*
+     * Runs the operations on a copy of the record, so that a failing one leaves it untouched.
+     */
+    private Record operate(WritePolicy policy, Key key, Operation[] ops) {
+        boolean writes = false;
+        for (Operation op : ops){
+            writes |= writes(op);
+        }
+        Stored stored = live(key);
+        if (stored == null) {
+            if (!writes)
+                throw new AerospikeException(ResultCode.KEY_NOT_FOUND_ERROR);
+            if (policy.recordExistsAction == RecordExistsAction.UPDATE_ONLY || policy.recordExistsAction == RecordExistsAction.REPLACE_ONLY)
+                throw new AerospikeException(ResultCode.KEY_NOT_FOUND_ERROR);
+        } else if (writes) {
+            checkGeneration(policy, stored);
+            if (policy.recordExistsAction == RecordExistsAction.CREATE_ONLY)
+                throw new AerospikeException(ResultCode.KEY_EXISTS_ERROR);
+        }
+        Stored working = new Stored();
+        if (stored != null) {
+            for (Map.Entry<String, Object> entry : stored.bins.entrySet()){
+                working.bins.put(entry.getKey(), copy(entry.getValue()));
+            }
+            working.generation = stored.generation;
+            working.expiration = stored.expiration;
+        }
+        Map<String, List<Object>> results = new LinkedHashMap<String, List<Object>>();
+        for (Operation op : ops){
+            switch (op.type) {
+                case READ:
+                    if (op.binName != null) result(results, op.binName, copy(working.bins.get(op.binName)));
+                    break;
+                case READ_HEADER:
+                    break;
+                case WRITE: {
+                    Object value = op.value.getObject();
+                    if (value instanceof Integer) value = ((Integer) value).longValue();
+                    if (value == null)
+                        working.bins.remove(op.binName);
+                    else
+                        working.bins.put(op.binName, value);
+                    break;
+                }
+                case ADD: {
+                    Object current = working.bins.get(op.binName);
+                    if (current != null && !(current instanceof Number))
+                        throw new AerospikeException(ResultCode.BIN_TYPE_ERROR);
+                    working.bins.put(op.binName, ((current == null) ? 0L : ((Number) current).longValue()) + op.value.toLong());
+                    break;
+                }
+                case APPEND: {
+                    Object current = working.bins.get(op.binName);
+                    if (current != null && !(current instanceof String))
+                        throw new AerospikeException(ResultCode.BIN_TYPE_ERROR);
+                    working.bins.put(op.binName, ((current == null) ? "" : (String) current) + op.value.toString());
+                    break;
+                }
+                case CDT_READ:
+                case CDT_MODIFY:
+                    result(results, op.binName, list(working, op));
+                    break;
+                case MAP_READ:
+                case MAP_MODIFY: {
+                    Object result = map(working, op);
+                    if (result != NO_RESULT) result(results, op.binName, result);
+                    break;
+                }
+                default:
+                    throw new UnsupportedOperationException(op.type + " is not emulated by the fake cluster");
+            }
+        }
+        Map<String, Object> bins = new HashMap<String, Object>();
+        for (Map.Entry<String, List<Object>> entry : results.entrySet()){
+            bins.put(entry.getKey(), (entry.getValue().size() == 1) ? entry.getValue().get(0) : entry.getValue());
+        }
+        if (writes) {
+            working.generation = ((stored == null) ? 0 : stored.generation) + 1;
+            working.expiration = voidTime(policy.expiration, (stored == null) ? 0 : stored.expiration);
+            if (working.bins.isEmpty())
+                this.records.remove(key);
+            else
+                this.records.put(key, working);
+        }
+        return new Record(bins, working.generation, working.expiration);
+    }
+
+    private static void result(Map<String, List<Object>> results, String bin, Object value) {
+        results.computeIfAbsent(bin, b -> new ArrayList<Object>()).add(value);
+    }
+
+    /*
+     * A CDT operation value is its 2 byte op code followed by the msgpack packed arguments.
+     */
+    private static int code(Operation op) {
+        byte[] bytes = (byte[]) op.value.getObject();
+        return ((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Object> arguments(Operation op) {
+        byte[] bytes = (byte[]) op.value.getObject();
+        return (bytes.length > 2) ? (List<Object>) Unpacker.unpackObjectList(bytes, 2, bytes.length - 2) : Collections.emptyList();
+    }
+
+    private static long number(Object value) {
+        return ((Number) value).longValue();
+    }
+
+    private static int index(long index, int size, boolean insert) {
+        long at = (index < 0) ? size + index : index;
+        if (at < 0 || at > size || (!insert && at == size))
+            throw new AerospikeException(NativeLists.OP_NOT_APPLICABLE);
+        return (int) at;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object list(Stored working, Operation op) {
+        int code = code(op);
+        List<Object> args = arguments(op);
+        List<Object> list = (List<Object>) working.bins.get(op.binName);
+        if (list == null) {
+            if (code != 1 && code != 3)
+                throw new AerospikeException(ResultCode.BIN_NOT_FOUND);
+            list = new ArrayList<Object>();
+            working.bins.put(op.binName, list);
+        }
+        switch (code) {
+            case 1: // append
+                list.add(args.get(0));
+                return (long) list.size();
+            case 3: // insert
+                list.add(index(number(args.get(0)), list.size(), true), args.get(1));
+                return (long) list.size();
+            case 5: // pop
+                return list.remove(index(number(args.get(0)), list.size(), false));
+            case 7: // remove
+                list.remove(index(number(args.get(0)), list.size(), false));
+                return 1L;
+            case 9: // set
+                list.set(index(number(args.get(0)), list.size(), false), args.get(1));
+                return null;
+            case 10: { // trim
+                int from = (int) number(args.get(0));
+                if (from >= list.size())
+                    throw new AerospikeException(NativeLists.OP_NOT_APPLICABLE);
+                int to = (int) Math.min(list.size(), from + number(args.get(1)));
+                List<Object> kept = new ArrayList<Object>(list.subList(from, to));
+                int removed = list.size() - kept.size();
+                list.clear();
+                list.addAll(kept);
+                return (long) removed;
+            }
+            case 11: // clear
+                list.clear();
+                return null;
+            case 16: // size
+                return (long) list.size();
+            case 17: // get
+                return list.get(index(number(args.get(0)), list.size(), false));
+            case 18: { // get range
+                int from = (int) Math.min(number(args.get(0)), list.size());
+                int to = (args.size() > 1) ? (int) Math.min(from + number(args.get(1)), list.size()) : list.size();
+                return new ArrayList<Object>(list.subList(from, to));
+            }
+            default:
+                throw new UnsupportedOperationException("list op " + code + " is not emulated by the fake cluster");
+        }
+    }
+
+    /*
+     * Keys are ordered like a key ordered map: integers, then doubles, then by type name.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static final Comparator<Object> ORDER = (a, b) -> {
+        if (a instanceof Double && b instanceof Double)
+            return Double.compare((Double) a, (Double) b);
+        if (a instanceof Number && b instanceof Number && (a instanceof Double) != (b instanceof Double))
+            return (a instanceof Double) ? 1 : -1;
+        if (a instanceof Number && b instanceof Number)
+            return Long.compare(((Number) a).longValue(), ((Number) b).longValue());
+        if (a.getClass() != b.getClass())
+            return a.getClass().getName().compareTo(b.getClass().getName());
+        return ((Comparable) a).compareTo(b);
+    };
+
+    private static List<Map.Entry<Object, Object>> byValue(TreeMap<Object, Object> map) {
+        List<Map.Entry<Object, Object>> entries = new ArrayList<Map.Entry<Object, Object>>();
+        for (Map.Entry<Object, Object> entry : map.entrySet()){
+            entries.add(new AbstractMap.SimpleEntry<Object, Object>(entry));
+        }
+        entries.sort((x, y) -> {
+            int compared = ORDER.compare(x.getValue(), y.getValue());
+            return (compared != 0) ? compared : ORDER.compare(x.getKey(), y.getKey());
+        });
+        return entries;
+    }
+
+    private static Object returned(int type, List<Map.Entry<Object, Object>> entries) {
+        switch (type) {
+            case 0: // none
+                return NO_RESULT;
+            case 5: // count
+                return (long) entries.size();
+            case 6: { // key
+                List<Object> keys = new ArrayList<Object>();
+                for (Map.Entry<Object, Object> entry : entries){
+                    keys.add(entry.getKey());
+                }
+                return keys;
+            }
+            case 7: { // value
+                List<Object> values = new ArrayList<Object>();
+                for (Map.Entry<Object, Object> entry : entries){
+                    values.add(entry.getValue());
+                }
+                return values;
+            }
+            case 8: { // key value
+                Map<Object, Object> map = new LinkedHashMap<Object, Object>();
+                for (Map.Entry<Object, Object> entry : entries){
+                    map.put(entry.getKey(), entry.getValue());
+                }
+                return map;
+            }
+            default:
+                throw new UnsupportedOperationException("map return type " + type + " is not emulated by the fake cluster");
+        }
+    }
+
+    private static Object map(Stored working, Operation op) {
+        int code = code(op);
+        List<Object> args = arguments(op);
+        boolean modify = op.type == Operation.Type.MAP_MODIFY;
+        TreeMap<Object, Object> map = new TreeMap<Object, Object>(ORDER);
+        Object current = working.bins.get(op.binName);
+        if (current != null) {
+            map.putAll((Map<?, ?>) current);
+        } else if (code != 65 && code != 67 && code != 68 && code != 73) {
+            if (!modify)
+                return null;
+            throw new AerospikeException(ResultCode.BIN_NOT_FOUND);
+        }
+        Object result;
+        switch (code) {
+            case 65: // add
+                if (map.containsKey(args.get(0)))
+                    throw new AerospikeException(ResultCode.ELEMENT_EXISTS);
+                map.put(args.get(0), args.get(1));
+                result = (long) map.size();
+                break;
+            case 67: // put
+                map.put(args.get(0), args.get(1));
+                result = (long) map.size();
+                break;
+            case 68: // put items
+                map.putAll((Map<?, ?>) args.get(0));
+                result = (long) map.size();
+                break;
+            case 73: { // increment
+                Object value = map.get(args.get(0));
+                Number increment = (Number) args.get(1);
+                Object updated = (increment instanceof Double)
+                        ? (Object) (((value == null) ? 0.0 : ((Number) value).doubleValue()) + increment.doubleValue())
+                        : (Object) (((value == null) ? 0L : ((Number) value).longValue()) + increment.longValue());
+                map.put(args.get(0), updated);
+                result = updated;
+                break;
+            }
+            case 76: { // remove by key
+                int type = (int) number(args.get(0));
+                List<Map.Entry<Object, Object>> removed = new ArrayList<Map.Entry<Object, Object>>();
+                if (map.containsKey(args.get(1)))
+                    removed.add(new AbstractMap.SimpleEntry<Object, Object>(args.get(1), map.remove(args.get(1))));
+                result = returned(type, removed);
+                break;
+            }
+            case 81: { // remove by key list
+                int type = (int) number(args.get(0));
+                List<Map.Entry<Object, Object>> removed = new ArrayList<Map.Entry<Object, Object>>();
+                for (Object k : (List<?>) args.get(1)){
+                    if (map.containsKey(k)) removed.add(new AbstractMap.SimpleEntry<Object, Object>(k, map.remove(k)));
+                }
+                result = returned(type, removed);
+                break;
+            }
+            case 84: // remove by key interval
+            case 103: { // get by key interval
+                int type = (int) number(args.get(0));
+                SortedMap<Object, Object> interval = map.subMap(args.get(1), args.get(2));
+                List<Map.Entry<Object, Object>> entries = new ArrayList<Map.Entry<Object, Object>>();
+                for (Map.Entry<Object, Object> entry : interval.entrySet()){
+                    entries.add(new AbstractMap.SimpleEntry<Object, Object>(entry));
+                }
+                if (code == 84) interval.clear();
+                result = returned(type, entries);
+                break;
+            }
+            case 96: // size
+                result = (long) map.size();
+                break;
+            case 97: { // get by key
+                int type = (int) number(args.get(0));
+                Object k = args.get(1);
+                if (type == 3 || type == 4) {
+                    List<Map.Entry<Object, Object>> ranked = byValue(map);
+                    result = null;
+                    for (int i = 0; i < ranked.size(); i++){
+                        if (ORDER.compare(ranked.get(i).getKey(), k) == 0) result = (long) ((type == 3) ? i : ranked.size() - 1 - i);
+                    }
+                } else if (type == 5) {
+                    result = map.containsKey(k) ? 1L : 0L;
+                } else if (type == 7) {
+                    result = map.get(k);
+                } else {
+                    throw new UnsupportedOperationException("map return type " + type + " is not emulated by the fake cluster");
+                }
+                break;
+            }
+            case 104: { // get by index range
+                int type = (int) number(args.get(0));
+                int from = (int) number(args.get(1));
+                List<Map.Entry<Object, Object>> entries = new ArrayList<Map.Entry<Object, Object>>(map.entrySet());
+                result = returned(type, entries.subList(Math.min(from, entries.size()), entries.size()));
+                break;
+            }
+            case 105: { // get by value interval
+                int type = (int) number(args.get(0));
+                Object begin = args.get(1);
+                boolean bounded = args.size() > 2;
+                List<Map.Entry<Object, Object>> entries = new ArrayList<Map.Entry<Object, Object>>();
+                for (Map.Entry<Object, Object> entry : byValue(map)){
+                    if ((begin == null || ORDER.compare(entry.getValue(), begin) >= 0) && (!bounded || ORDER.compare(entry.getValue(), args.get(2)) < 0))
+                        entries.add(entry);
+                }
+                result = returned(type, entries);
+                break;
+            }
+            case 106: { // get by rank range
+                int type = (int) number(args.get(0));
+                long rank = number(args.get(1));
+                List<Map.Entry<Object, Object>> ranked = byValue(map);
+                int size = ranked.size();
+                // like the server, a negative rank before the first member shortens the count
+                long from = (rank < 0) ? size + rank : rank;
+                long to = Math.min(size, (args.size() > 2) ? from + number(args.get(2)) : size);
+                from = Math.max(0, from);
+                result = returned(type, (from >= to) ? new ArrayList<Map.Entry<Object, Object>>() : ranked.subList((int) from, (int) to));
+                break;
+            }
+            default:
+                throw new UnsupportedOperationException("map op " + code + " is not emulated by the fake cluster");
+        }
+        if (modify)
+            working.bins.put(op.binName, new LinkedHashMap<Object, Object>(map));
+        return result;
+    }
+
+    /*
+     * The redis.lua functions, written like the module: a missing bin is an empty list or
+     * hash, every write bumps the generation and keeps the TTL.
+     */
+    @SuppressWarnings("unchecked")
+    private Object execute(WritePolicy policy, Key key, String function, Value[] values) {
+        Stored stored = live(key);
+        String bin = values[0].toString();
+        Object[] args = new Object[values.length - 1];
+        for (int i = 1; i < values.length; i++){
+            args[i - 1] = values[i].getObject();
+        }
+        Object current = (stored == null) ? null : stored.bins.get(bin);
+        List<Object> list = (current instanceof List) ? new ArrayList<Object>((List<Object>) current) : null;
+        Map<Object, Object> hash = (current instanceof Map) ? new LinkedHashMap<Object, Object>((Map<Object, Object>) current) : null;
+        switch (function) {
+            case "RPUSH":
+            case "LPUSH":
+            case "RPUSHX":
+            case "LPUSHX": {
+                if (list == null && function.endsWith("X"))
+                    return 0L;
+                if (list == null) list = new ArrayList<Object>();
+                if (function.startsWith("R"))
+                    list.add(args[0]);
+                else
+                    list.add(0, args[0]);
+                store(policy, key, bin, list);
+                return (long) list.size();
+            }
+            case "LLEN":
+                return (list == null) ? 0L : (long) list.size();
+            case "LRANGE": {
+                if (list == null)
+                    return new ArrayList<Object>();
+                long start = number(args[0]);
+                long stop = number(args[1]);
+                if (start < 0) start = list.size() + start + 1;
+                if (stop < 0) stop = list.size() + stop + 1;
+                if (start >= stop)
+                    return new ArrayList<Object>();
+                return new ArrayList<Object>(list.subList((int) Math.max(0, start), (int) Math.min(stop, list.size())));
+            }
+            case "LINDEX": {
+                if (list == null)
+                    return null;
+                long index = number(args[0]);
+                long at = (index >= 0) ? index : list.size() + index;
+                return (at >= 0 && at < list.size()) ? list.get((int) at) : null;
+            }
+            case "LPOP":
+            case "RPOP": {
+                if (list == null)
+                    return null;
+                int count = (int) Math.min(number(args[0]), list.size());
+                List<Object> popped;
+                if (function.equals("LPOP")) {
+                    popped = new ArrayList<Object>(list.subList(0, count));
+                    list = new ArrayList<Object>(list.subList(count, list.size()));
+                } else {
+                    popped = new ArrayList<Object>(list.subList(list.size() - count, list.size()));
+                    list = new ArrayList<Object>(list.subList(0, list.size() - count));
+                }
+                store(policy, key, bin, list.isEmpty() ? null : list);
+                return popped;
+            }
+            case "LREM": {
+                if (list == null)
+                    return 0L;
+                long count = number(args[0]);
+                long removed = 0;
+                List<Object> kept = new ArrayList<Object>();
+                for (Object element : list){
+                    if (Objects.deepEquals(element, args[1]) && (count == 0 || removed < Math.abs(count)))
+                        removed++;
+                    else
+                        kept.add(element);
+                }
+                store(policy, key, bin, kept);
+                return removed;
+            }
+            case "LINSERT": {
+                if (list == null)
+                    return 0L;
+                for (int i = 0; i < list.size(); i++){
+                    if (Objects.deepEquals(list.get(i), args[1])) {
+                        list.add(args[0].equals("BEFORE") ? i : i + 1, args[2]);
+                        store(policy, key, bin, list);
+                        return (long) list.size();
+                    }
+                }
+                return -1L;
+            }
+            case "HSET":
+            case "HSETNX": {
+                boolean created = hash == null || !hash.containsKey(args[0]);
+                if (!created && function.equals("HSETNX"))
+                    return 0L;
+                if (hash == null) hash = new LinkedHashMap<Object, Object>();
+                hash.put(args[0], args[1]);
+                store(policy, key, bin, hash);
+                return created ? 1L : 0L;
+            }
+            case "HMSET":
+                if (hash == null) hash = new LinkedHashMap<Object, Object>();
+                hash.putAll((Map<?, ?>) args[0]);
+                store(policy, key, bin, hash);
+                return "OK";
+            case "HGET":
+                return (hash == null) ? null : hash.get(args[0]);
+            case "HMGET": {
+                List<Object> found = new ArrayList<Object>();
+                for (Object field : (List<?>) args[0]){
+                    found.add((hash == null) ? null : hash.get(field));
+                }
+                return found;
+            }
+            case "HGETALL": {
+                List<Object> flat = new ArrayList<Object>();
+                if (hash != null) {
+                    for (Map.Entry<Object, Object> entry : hash.entrySet()){
+                        flat.add(entry.getKey());
+                        flat.add(entry.getValue());
+                    }
+                }
+                return flat;
+            }
+            case "HKEYS":
+                return (hash == null) ? new ArrayList<Object>() : new ArrayList<Object>(hash.keySet());
+            case "HVALS":
+                return (hash == null) ? new ArrayList<Object>() : new ArrayList<Object>(hash.values());
+            case "HLEN":
+                return (hash == null) ? 0L : (long) hash.size();
+            case "HEXISTS":
+                return (hash != null && hash.containsKey(args[0])) ? 1L : 0L;
+            case "HDEL": {
+                if (hash == null || !hash.containsKey(args[0]))
+                    return 0L;
+                hash.remove(args[0]);
+                store(policy, key, bin, hash);
+                return 1L;
+            }
+            case "HINCRBY": {
+                if (hash == null) hash = new LinkedHashMap<Object, Object>();
+                Object value = hash.get(args[0]);
+                long updated = ((value instanceof Number) ? ((Number) value).longValue() : 0L) + number(args[1]);
+                hash.put(args[0], updated);
+                store(policy, key, bin, hash);
+                return updated;
+            }
+            case "INCRBYFLOAT": {
+                double updated = ((current instanceof Number) ? ((Number) current).doubleValue() : 0.0) + ((Number) args[0]).doubleValue();
+                store(policy, key, bin, updated);
+                return updated;
+            }
+            default:
+                throw new UnsupportedOperationException(function + " is not emulated by the fake cluster");
+        }
+    }
+
+    private void store(WritePolicy policy, Key key, String bin, Object value) {
+        Stored stored = live(key);
+        if (stored == null) {
+            stored = new Stored();
+            this.records.put(key, stored);
+        }
+        if (value == null)
+            stored.bins.remove(bin);
+        else
+            stored.bins.put(bin, value);
+        stored.generation++;
+        stored.expiration = voidTime(policy.expiration, stored.expiration);
+        if (stored.bins.isEmpty())
+            this.records.remove(key);
+    }
+}
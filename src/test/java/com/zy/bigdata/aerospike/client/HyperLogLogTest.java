@@ -0,0 +1,108 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.AerospikeException;
+import com.aerospike.client.ResultCode;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+/**
+ * Expected registers and counts are the ones of Redis 6.2 for the same members.
+ */
+public class HyperLogLogTest {
+
+    @Test
+    public void addSetsTheRegisterOfRedis() {
+        assertRegister("hello", 9216, 1);
+        assertRegister("foo", 7348, 5);
+        assertRegister("aaaaaaaaaaaaa", 4042, 2);
+    }
+
+    private static void assertRegister(String member, int index, int value) {
+        HyperLogLog hll = new HyperLogLog();
+        assertTrue(hll.add(member));
+        assertFalse(hll.add(member));
+        byte[] sparse = hll.serialize();
+        assertEquals(8, sparse.length);
+        assertEquals(index, ((sparse[5] & 0xFF) << 8) | (sparse[6] & 0xFF));
+        assertEquals(value, sparse[7]);
+    }
+
+    @Test
+    public void countMatchesRedis() {
+        long[][] expected = {{1, 1}, {10, 10}, {100, 100}, {1000, 1002}, {10000, 9995}, {100000, 100445}};
+        for (long[] pair : expected){
+            HyperLogLog hll = new HyperLogLog();
+            for (int i = 0; i < pair[0]; i++){
+                hll.add("member:" + i);
+            }
+            assertEquals(pair[1], hll.count());
+            assertEquals(pair[1], HyperLogLog.parse(hll.serialize()).count());
+        }
+    }
+
+    @Test
+    public void mergeCountsTheUnion() {
+        HyperLogLog a = new HyperLogLog();
+        HyperLogLog b = new HyperLogLog();
+        for (int i = 0; i < 3000; i++){
+            a.add("x" + i);
+        }
+        for (int i = 2000; i < 5000; i++){
+            b.add("x" + i);
+        }
+        a.merge(b);
+        assertEquals(4970, a.count());
+    }
+
+    @Test
+    public void serializesSparseThenDense() {
+        HyperLogLog hll = new HyperLogLog();
+        assertEquals(0, hll.count());
+        for (int i = 0; i < 100; i++){
+            hll.add("member:" + i);
+        }
+        byte[] sparse = hll.serialize();
+        assertEquals(1, sparse[4]);
+        assertTrue(sparse.length <= 5 + 3 * 100);
+        assertArrayEquals(sparse, HyperLogLog.parse(sparse).serialize());
+        for (int i = 100; i < 100000; i++){
+            hll.add("member:" + i);
+        }
+        byte[] dense = hll.serialize();
+        assertEquals(0, dense[4]);
+        assertEquals(5 + HyperLogLog.DENSE_BYTES, dense.length);
+        assertArrayEquals(dense, HyperLogLog.parse(dense).serialize());
+        assertEquals(0, HyperLogLog.parse(null).count());
+    }
+
+    @Test
+    public void rejectsOtherValues() {
+        assertFalse(HyperLogLog.isSketch("HYLL"));
+        assertFalse(HyperLogLog.isSketch(new byte[]{'H', 'Y', 'L', 'L', 2}));
+        assertInvalid(new byte[]{'H', 'Y', 'L'}, "WRONGTYPE");
+    }
+
+    @Test
+    public void rejectsCorruptSketches() {
+        assertInvalid(new byte[]{'H', 'Y', 'L', 'L', 1, 0, 1}, "INVALIDOBJ");
+        assertInvalid(new byte[]{'H', 'Y', 'L', 'L', 1, 0, 1, (byte) (HyperLogLog.Q + 2)}, "INVALIDOBJ");
+        assertInvalid(new byte[]{'H', 'Y', 'L', 'L', 1, 0, 1, (byte) -1}, "INVALIDOBJ");
+        assertInvalid(new byte[]{'H', 'Y', 'L', 'L', 0, 0}, "INVALIDOBJ");
+        byte[] dense = Arrays.copyOf(new byte[]{'H', 'Y', 'L', 'L', 0}, 5 + HyperLogLog.DENSE_BYTES);
+        dense[5] = 0x3F;
+        assertInvalid(dense, "INVALIDOBJ");
+    }
+
+    private static void assertInvalid(byte[] stored, String error) {
+        try {
+            HyperLogLog.parse(stored);
+            fail("parsed " + Arrays.toString(stored));
+        } catch (AerospikeException e) {
+            assertEquals(ResultCode.BIN_TYPE_ERROR, e.getResultCode());
+            assertTrue(e.getMessage(), e.getMessage().contains(error));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.Key;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sharded hashes: a hash of more than 10 fields is spread over 4 records of the shard set.
+ */
+public class ShardedHashesTest {
+
+    private static final String SHARDS = "redis-shards";
+
+    private FakeCluster cluster;
+    private AedisClient client;
+
+    @Before
+    public void setUp() {
+        this.cluster = new FakeCluster();
+        this.client = new AedisClient(this.cluster.client(), "test", "redis");
+        this.client.setHashMode(CommandMode.SHARDED);
+        this.client.setShardThreshold(10);
+        this.client.setHashShards(4);
+    }
+
+    private FakeCluster.Stored header(String key) {
+        return this.cluster.record(new Key("test", "redis", key));
+    }
+
+    @Test
+    public void convertsPastTheThreshold() {
+        for (int i = 0; i < 10; i++){
+            assertEquals(1, this.client.hset("h", "f" + i, "v" + i));
+        }
+        assertNull(header("h").bins.get(Shards.EPOCH_BIN));
+        assertEquals(0, this.cluster.count(SHARDS));
+        assertEquals(1, this.client.hset("h", "f10", "v10"));
+        assertNotNull(header("h").bins.get(Shards.EPOCH_BIN));
+        assertNull(header("h").bins.get("redis-bin"));
+        assertEquals(4, this.cluster.count(SHARDS));
+        assertEquals(11, this.client.hlen("h").longValue());
+        assertEquals("v3", this.client.hget("h", "f3"));
+    }
+
+    @Test
+    public void matchesTheModel() {
+        Map<String, String> model = new HashMap<String, String>();
+        for (int i = 0; i < 50; i++){
+            assertEquals(1, this.client.hset("h", "f" + i, "v" + i));
+            model.put("f" + i, "v" + i);
+        }
+        assertEquals(0, this.client.hset("h", "f3", "x"));
+        model.put("f3", "x");
+        assertEquals(50, this.client.hlen("h").longValue());
+        for (Map.Entry<String, String> entry : model.entrySet()){
+            assertEquals(entry.getValue(), this.client.hget("h", entry.getKey()));
+        }
+        assertEquals(model, this.client.hgetAll("h"));
+        assertEquals(Arrays.asList("v1", null, "x", "v1"), this.client.hmget("h", "f1", "nope", "f3", "f1"));
+        assertEquals(2, this.client.hdel("h", "f1", "f2", "nope").longValue());
+        model.remove("f1");
+        model.remove("f2");
+        assertEquals(5, this.client.hincrBy("h", "n", 5));
+        assertEquals(7, this.client.hincrBy("h", "n", 2));
+        model.put("n", "7");
+        assertEquals(0, this.client.hsetnx("h", "n", "z"));
+        assertEquals(1, this.client.hsetnx("h", "new", "z"));
+        model.put("new", "z");
+        assertTrue(this.client.hexists("h", "new"));
+        assertFalse(this.client.hexists("h", "f1"));
+        assertEquals(model.keySet(), this.client.hkeys("h"));
+        assertEquals(new HashSet<String>(model.values()), new HashSet<String>(this.client.hvals("h")));
+        assertEquals(model, this.client.hgetAll("h"));
+    }
+
+    @Test
+    public void deleteRemovesEveryShard() {
+        for (int i = 0; i < 30; i++){
+            this.client.hset("h", "f" + i, "v");
+        }
+        assertEquals(4, this.cluster.count(SHARDS));
+        this.client.del("h");
+        assertEquals(0, this.cluster.count(SHARDS));
+        assertFalse(this.client.exists("h"));
+        assertNull(this.client.hget("h", "f5"));
+        assertEquals(0, this.client.hlen("h").longValue());
+        this.client.hset("h", "a", "1");
+        assertEquals("1", this.client.hget("h", "a"));
+        assertNull(header("h").bins.get(Shards.EPOCH_BIN));
+    }
+
+    @Test
+    public void expireReachesEveryShard() {
+        for (int i = 0; i < 30; i++){
+            this.client.hset("h", "f" + i, "v");
+        }
+        this.client.expire("h", 50);
+        int expiration = header("h").expiration;
+        assertTrue(expiration > 0);
+        for (int i = 0; i < 60; i++){
+            this.client.hset("h", "g" + i, "v");
+        }
+        this.client.hincrBy("h", "n", 1);
+        this.client.hdel("h", "f1");
+        assertEquals(expiration, header("h").expiration);
+        for (int shard : this.cluster.expirations(SHARDS)){
+            assertTrue(shard + " vs " + expiration, shard >= expiration && shard <= expiration + 1);
+        }
+        this.client.persist("h");
+        this.client.hset("h", "p", "v");
+        assertEquals(0, header("h").expiration);
+        assertEquals(Collections.singleton(0), this.cluster.expirations(SHARDS));
+    }
+
+    @Test
+    public void concurrentWritesLoseNothing() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 8; t++){
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 100; i++){
+                        this.client.hset("h", thread + ":" + i, "x");
+                        this.client.hincrBy("h", "count", 1);
+                    }
+                }));
+            }
+            for (Future<?> future : futures){
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(801, this.client.hlen("h").longValue());
+        assertEquals("800", String.valueOf(this.client.hget("h", "count")));
+    }
+}
@@ -0,0 +1,361 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.Key;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+/**
+ * Sharded lists against a LinkedList model: a list of more than 10 elements is split into
+ * chunks of 4 in the shard set.
+ */
+public class ShardedListsTest {
+
+    private static final String SHARDS = "redis-shards";
+
+    private FakeCluster cluster;
+    private AedisClient client;
+
+    @Before
+    public void setUp() {
+        this.cluster = new FakeCluster();
+        this.client = new AedisClient(this.cluster.client(), "test", "redis");
+        this.client.setListMode(CommandMode.SHARDED);
+        this.client.setShardThreshold(10);
+        this.client.setListChunkSize(4);
+    }
+
+    private Key key(String key) {
+        return new Key("test", "redis", key);
+    }
+
+    private boolean sharded(String key) {
+        FakeCluster.Stored stored = this.cluster.record(key(key));
+        return stored != null && stored.bins.get(Shards.EPOCH_BIN) != null;
+    }
+
+    private static List<String> range(List<String> model, long start, long stop) {
+        int size = model.size();
+        long from = (start < 0) ? Math.max(0, size + start) : start;
+        long to = (stop < 0) ? size + stop : Math.min(stop, size - 1);
+        return (from > to || from >= size) ? new ArrayList<String>() : new ArrayList<String>(model.subList((int) from, (int) to + 1));
+    }
+
+    @Test
+    public void convertsPastTheThreshold() {
+        for (int i = 0; i < 10; i++){
+            this.client.rpush("l", "v" + i);
+        }
+        assertFalse(sharded("l"));
+        assertEquals(0, this.cluster.count(SHARDS));
+        this.client.rpush("l", "v10");
+        assertTrue(sharded("l"));
+        assertNull(this.cluster.record(key("l")).bins.get("redis-bin"));
+        assertTrue(this.cluster.count(SHARDS) >= 3);
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i <= 10; i++){
+            expected.add("v" + i);
+        }
+        assertEquals(expected, this.client.lrange("l", 0, -1));
+        assertEquals(11, this.client.llen("l").longValue());
+    }
+
+    @Test
+    public void readsAcrossChunks() {
+        List<String> model = new ArrayList<String>();
+        for (int i = 0; i < 30; i++){
+            this.client.rpush("l", "r" + i);
+            model.add("r" + i);
+            this.client.lpush("l", "l" + i);
+            model.add(0, "l" + i);
+        }
+        assertTrue(sharded("l"));
+        for (int i = -70; i < 70; i++){
+            int at = (i < 0) ? model.size() + i : i;
+            String expected = (at >= 0 && at < model.size()) ? model.get(at) : null;
+            assertEquals("lindex " + i, expected, this.client.lindex("l", i));
+        }
+        for (int start = -65; start < 65; start += 7){
+            for (int stop = -65; stop < 65; stop += 5){
+                assertEquals("lrange " + start + " " + stop, range(model, start, stop), this.client.lrange("l", start, stop));
+            }
+        }
+    }
+
+    @Test
+    public void popsFromBothEnds() {
+        for (int i = 0; i < 25; i++){
+            this.client.rpush("l", "v" + i);
+        }
+        for (int i = 0; i < 12; i++){
+            assertEquals("v" + i, this.client.lpop("l"));
+            assertEquals("v" + (24 - i), this.client.rpop("l"));
+        }
+        assertEquals(Collections.singletonList("v12"), this.client.lrange("l", 0, -1));
+        assertEquals("v12", this.client.lpop("l"));
+        assertNull(this.client.lpop("l"));
+        assertNull(this.client.rpop("l"));
+        assertEquals(0, this.client.llen("l").longValue());
+    }
+
+    @Test
+    public void trimsAndClearsChunks() {
+        List<String> model = new ArrayList<String>();
+        for (int i = 0; i < 40; i++){
+            this.client.rpush("l", "v" + i);
+            model.add("v" + i);
+        }
+        int chunks = this.cluster.count(SHARDS);
+        this.client.ltrim("l", 10, 19);
+        model = range(model, 10, 19);
+        assertEquals(model, this.client.lrange("l", 0, -1));
+        assertTrue(this.cluster.count(SHARDS) < chunks);
+        this.client.ltrim("l", -3, -1);
+        model = range(model, -3, -1);
+        assertEquals(model, this.client.lrange("l", 0, -1));
+        this.client.ltrim("l", 5, 1);
+        assertEquals(0, this.client.llen("l").longValue());
+    }
+
+    @Test
+    public void rewritesOnLremAndLinsert() {
+        LinkedList<String> model = new LinkedList<String>();
+        for (int i = 0; i < 30; i++){
+            this.client.rpush("l", "v" + (i % 3));
+            model.add("v" + (i % 3));
+        }
+        assertEquals(2, this.client.lrem("l", 2, "v0").longValue());
+        model.removeFirstOccurrence("v0");
+        model.removeFirstOccurrence("v0");
+        assertEquals(3, this.client.lrem("l", -3, "v1").longValue());
+        for (int i = 0; i < 3; i++){
+            model.removeLastOccurrence("v1");
+        }
+        assertEquals(model, this.client.lrange("l", 0, -1));
+        assertEquals(0, this.client.lrem("l", 0, "missing").longValue());
+        assertEquals(10, this.client.lrem("l", 0, "v2").longValue());
+        model.removeIf("v2"::equals);
+        assertEquals(model, this.client.lrange("l", 0, -1));
+
+        assertEquals(model.size() + 1, this.client.linsert("l", AedisClient.LIST_POSITION.BEFORE, "v1", "b"));
+        model.add(model.indexOf("v1"), "b");
+        assertEquals(model.size() + 1, this.client.linsert("l", AedisClient.LIST_POSITION.AFTER, "v0", "a"));
+        model.add(model.indexOf("v0") + 1, "a");
+        assertEquals(-1, this.client.linsert("l", AedisClient.LIST_POSITION.AFTER, "missing", "x"));
+        assertEquals(model, this.client.lrange("l", 0, -1));
+        assertEquals(0, this.client.linsert("none", AedisClient.LIST_POSITION.AFTER, "v0", "x"));
+    }
+
+    @Test
+    public void comparesCompressedValuesByContent() {
+        this.client.enableCompression(Compressors.deflate(6), 16);
+        List<String> model = new ArrayList<String>();
+        for (int i = 0; i < 20; i++){
+            model.add(element(i % 4));
+            this.client.rpush("l", element(i % 4));
+        }
+        assertTrue(sharded("l"));
+        assertTrue(this.client.getCompression().getStats().get("RPUSH").getCompressed() > 0);
+        assertEquals(21, this.client.linsert("l", AedisClient.LIST_POSITION.AFTER, element(2), "after the first pivot"));
+        model.add(model.indexOf(element(2)) + 1, "after the first pivot");
+        assertEquals(5, this.client.lrem("l", 0, element(1)).longValue());
+        model.removeIf(element(1)::equals);
+        assertEquals(model, this.client.lrange("l", 0, -1));
+    }
+
+    private static String element(int i) {
+        StringBuilder element = new StringBuilder();
+        while (element.length() < 200){
+            element.append("compressed element ").append(i).append(' ');
+        }
+        return element.toString();
+    }
+
+    @Test
+    public void setsByIndex() {
+        for (int i = 0; i < 20; i++){
+            this.client.rpush("l", "v" + i);
+        }
+        this.client.lset("l", 13, "x");
+        this.client.lset("l", -1, "y");
+        assertEquals("x", this.client.lindex("l", 13));
+        assertEquals("y", this.client.lindex("l", 19));
+    }
+
+    @Test
+    public void deleteRemovesEveryChunk() {
+        for (int i = 0; i < 40; i++){
+            this.client.rpush("l", "v" + i);
+        }
+        assertTrue(this.cluster.count(SHARDS) > 0);
+        assertEquals(1, this.client.del("l"));
+        assertEquals(0, this.cluster.count(SHARDS));
+        assertFalse(this.client.exists("l"));
+        assertEquals(0, this.client.llen("l").longValue());
+        assertEquals(1, this.client.rpush("l", "again"));
+        assertFalse(sharded("l"));
+    }
+
+    @Test
+    public void expireReachesEveryChunk() {
+        for (int i = 0; i < 30; i++){
+            this.client.rpush("l", "v" + i);
+        }
+        assertEquals(Collections.singleton(0), this.cluster.expirations(SHARDS));
+        this.client.expire("l", 100);
+        int header = this.cluster.record(key("l")).expiration;
+        assertTrue(header > 0);
+        for (int i = 0; i < 30; i++){
+            this.client.rpush("l", "w" + i);
+            this.client.lpush("l", "x" + i);
+        }
+        this.client.lpop("l");
+        this.client.ltrim("l", 1, -2);
+        this.client.lset("l", 3, "y");
+        this.client.lrem("l", 1, "w3").longValue();
+        assertEquals(header, this.cluster.record(key("l")).expiration);
+        for (int expiration : this.cluster.expirations(SHARDS)){
+            assertTrue(expiration + " vs " + header, expiration >= header && expiration <= header + 1);
+        }
+        this.client.persist("l");
+        this.client.rpush("l", "z");
+        assertEquals(0, this.cluster.record(key("l")).expiration);
+        assertEquals(Collections.singleton(0), this.cluster.expirations(SHARDS));
+    }
+
+    @Test
+    public void matchesTheModelUnderRandomCommands() {
+        Random random = new Random(7);
+        LinkedList<String> model = new LinkedList<String>();
+        for (int step = 0; step < 5000; step++){
+            int op = random.nextInt(100);
+            String value = "v" + (step % 13);
+            if (op < 25) {
+                model.addLast(value);
+                assertEquals(model.size(), this.client.rpush("l", value));
+            } else if (op < 45) {
+                model.addFirst(value);
+                assertEquals(model.size(), this.client.lpush("l", value));
+            } else if (op < 55) {
+                assertEquals(model.pollFirst(), this.client.lpop("l"));
+            } else if (op < 65) {
+                assertEquals(model.pollLast(), this.client.rpop("l"));
+            } else if (op < 75) {
+                int start = random.nextInt(30) - 15;
+                int stop = random.nextInt(30) - 15;
+                assertEquals(range(model, start, stop), this.client.lrange("l", start, stop));
+            } else if (op < 78) {
+                int start = random.nextInt(10) - 3;
+                int stop = (random.nextInt(5) == 0) ? -1 - random.nextInt(3) : start + random.nextInt(40);
+                this.client.ltrim("l", start, stop);
+                List<String> kept = range(model, start, stop);
+                model.clear();
+                model.addAll(kept);
+            } else if (op < 82 && !model.isEmpty()) {
+                int count = random.nextInt(3);
+                long removed = 0;
+                for (Iterator<String> it = model.iterator(); it.hasNext() && (count == 0 || removed < count); ){
+                    if (it.next().equals(value)) {
+                        it.remove();
+                        removed++;
+                    }
+                }
+                assertEquals(removed, this.client.lrem("l", count, value).longValue());
+            } else if (op < 85 && !model.isEmpty()) {
+                String pivot = "v" + random.nextInt(13);
+                int at = model.indexOf(pivot);
+                long size = this.client.linsert("l", AedisClient.LIST_POSITION.BEFORE, pivot, "i" + step);
+                if (at < 0) {
+                    assertEquals(-1, size);
+                } else {
+                    model.add(at, "i" + step);
+                    assertEquals(model.size(), size);
+                }
+            } else {
+                assertEquals(model.size(), this.client.llen("l").longValue());
+            }
+            if (step % 97 == 0)
+                assertEquals("at step " + step, model, this.client.lrange("l", 0, -1));
+        }
+        assertEquals(model, this.client.lrange("l", 0, -1));
+    }
+
+    @Test
+    public void concurrentPushesAndPopsLoseNothing() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<Future<?>>();
+            for (int t = 0; t < 8; t++){
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 250; i++){
+                        if (i % 2 == 0)
+                            this.client.rpush("q", thread + ":" + i);
+                        else
+                            this.client.lpush("q", thread + ":" + i);
+                    }
+                }));
+            }
+            for (Future<?> future : futures){
+                future.get();
+            }
+            List<String> all = this.client.lrange("q", 0, -1);
+            assertEquals(2000, all.size());
+            assertEquals(2000, new HashSet<String>(all).size());
+            assertEquals(2000, this.client.llen("q").longValue());
+
+            Set<String> popped = ConcurrentHashMap.newKeySet();
+            AtomicInteger duplicates = new AtomicInteger();
+            futures.clear();
+            for (int t = 0; t < 8; t++){
+                boolean left = t % 2 == 0;
+                futures.add(pool.submit(() -> {
+                    String value;
+                    while ((value = left ? this.client.lpop("q") : this.client.rpop("q")) != null){
+                        if (!popped.add(value)) duplicates.incrementAndGet();
+                    }
+                }));
+            }
+            for (Future<?> future : futures){
+                future.get();
+            }
+            assertEquals(2000, popped.size());
+            assertEquals(0, duplicates.get());
+
+            AtomicLong pushed = new AtomicLong();
+            Set<String> taken = ConcurrentHashMap.newKeySet();
+            futures.clear();
+            for (int t = 0; t < 8; t++){
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    Random random = new Random(thread);
+                    for (int i = 0; i < 500; i++){
+                        if (random.nextBoolean()) {
+                            this.client.rpush("m", thread + "-" + i);
+                            pushed.incrementAndGet();
+                        } else {
+                            String value = this.client.lpop("m");
+                            if (value != null && !taken.add(value)) duplicates.incrementAndGet();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures){
+                future.get();
+            }
+            assertEquals(pushed.get(), taken.size() + this.client.lrange("m", 0, -1).size());
+            assertEquals(0, duplicates.get());
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
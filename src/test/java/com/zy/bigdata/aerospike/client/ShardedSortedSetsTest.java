@@ -0,0 +1,171 @@
+package com.zy.bigdata.aerospike.client;
+
+import com.aerospike.client.Key;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * Native and sharded sorted sets against a HashMap model ordered by score, then member.
+ */
+public class ShardedSortedSetsTest {
+
+    private static final String SHARDS = "redis-shards";
+
+    private static List<Map.Entry<String, Double>> order(Map<String, Double> model, boolean reverse) {
+        List<Map.Entry<String, Double>> entries = new ArrayList<Map.Entry<String, Double>>(model.entrySet());
+        entries.sort((a, b) -> {
+            int compared = Double.compare(a.getValue(), b.getValue());
+            if (compared == 0) compared = a.getKey().compareTo(b.getKey());
+            return reverse ? -compared : compared;
+        });
+        return entries;
+    }
+
+    private static Map<String, Double> window(List<Map.Entry<String, Double>> entries, long from, long to) {
+        Map<String, Double> result = new LinkedHashMap<String, Double>();
+        for (long i = Math.max(0, from); i <= to && i < entries.size(); i++){
+            result.put(entries.get((int) i).getKey(), entries.get((int) i).getValue());
+        }
+        return result;
+    }
+
+    private static Map<String, Double> range(Map<String, Double> model, long start, long stop, boolean reverse) {
+        int size = model.size();
+        if (start < 0) start = Math.max(0, size + start);
+        if (stop < 0) stop = size + stop;
+        return window(order(model, reverse), start, stop);
+    }
+
+    private static Long rank(Map<String, Double> model, String member) {
+        List<Map.Entry<String, Double>> entries = order(model, false);
+        for (int i = 0; i < entries.size(); i++){
+            if (entries.get(i).getKey().equals(member)) return (long) i;
+        }
+        return null;
+    }
+
+    private static void run(CommandMode mode) {
+        FakeCluster cluster = new FakeCluster();
+        AedisClient client = new AedisClient(cluster.client(), "test", "redis");
+        client.setSortedSetMode(mode);
+        client.setShardThreshold(30);
+        client.setHashShards(4);
+        Random random = new Random(mode.ordinal());
+        Map<String, Double> model = new HashMap<String, Double>();
+        for (int step = 0; step < 5000; step++){
+            String member = "m" + random.nextInt(120);
+            double score = random.nextInt(40) / 2.0;
+            String at = mode + " step " + step;
+            switch (random.nextInt(11)) {
+                case 0:
+                    assertEquals(at, model.containsKey(member) ? 0 : 1, client.zadd("z", score, member).longValue());
+                    model.put(member, score);
+                    break;
+                case 1: {
+                    Map<String, Double> batch = new HashMap<String, Double>();
+                    long added = 0;
+                    for (int i = 0; i < 3; i++){
+                        String next = "m" + random.nextInt(120);
+                        if (!model.containsKey(next) && !batch.containsKey(next)) added++;
+                        batch.put(next, (double) random.nextInt(20));
+                    }
+                    assertEquals(at, added, client.zadd("z", batch).longValue());
+                    model.putAll(batch);
+                    break;
+                }
+                case 2:
+                    model.merge(member, 1.5, Double::sum);
+                    assertEquals(at, model.get(member), client.zincrby("z", 1.5, member));
+                    break;
+                case 3:
+                    assertEquals(at, model.get(member), client.zscore("z", member));
+                    break;
+                case 4: {
+                    long start = random.nextInt(20) - 8;
+                    long stop = random.nextInt(40) - 8;
+                    assertEquals(at, range(model, start, stop, false).toString(), client.zrangeWithScores("z", start, stop).toString());
+                    break;
+                }
+                case 5: {
+                    long start = random.nextInt(20) - 8;
+                    long stop = random.nextInt(40) - 8;
+                    assertEquals(at, range(model, start, stop, true).toString(), client.zrevrangeWithScores("z", start, stop).toString());
+                    break;
+                }
+                case 6: {
+                    double min = random.nextInt(30) / 2.0;
+                    double max = min + random.nextInt(10);
+                    int offset = random.nextInt(3);
+                    int count = random.nextInt(8) - 1;
+                    List<Map.Entry<String, Double>> scored = new ArrayList<Map.Entry<String, Double>>();
+                    for (Map.Entry<String, Double> entry : order(model, false)){
+                        if (entry.getValue() >= min && entry.getValue() <= max) scored.add(entry);
+                    }
+                    Map<String, Double> expected = window(scored, offset, (count < 0) ? Long.MAX_VALUE - 1 : offset + count - 1);
+                    assertEquals(at, expected.toString(), client.zrangeByScoreWithScores("z", min, max, offset, count).toString());
+                    break;
+                }
+                case 7: {
+                    Long expected = rank(model, member);
+                    assertEquals(at, expected, client.zrank("z", member));
+                    assertEquals(at, (expected == null) ? null : model.size() - 1 - expected, client.zrevrank("z", member));
+                    break;
+                }
+                case 8: {
+                    String other = "m" + random.nextInt(120);
+                    long removed = (model.remove(member) != null) ? 1 : 0;
+                    if (!other.equals(member)) removed += (model.remove(other) != null) ? 1 : 0;
+                    assertEquals(at, removed, client.zrem("z", member, other).longValue());
+                    break;
+                }
+                case 9:
+                    assertEquals(at, model.size(), client.zcard("z").longValue());
+                    break;
+                default:
+                    assertEquals(at, new ArrayList<String>(range(model, 0, -1, false).keySet()), client.zrange("z", 0, -1));
+                    assertEquals(at, model.size(), client.zrangeByScore("z", Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY).size());
+                    break;
+            }
+        }
+        assertEquals((mode == CommandMode.SHARDED) ? 4 : 0, cluster.count(SHARDS));
+        client.del("z");
+        assertEquals(0, cluster.count(SHARDS));
+        assertEquals(0, client.zcard("z").longValue());
+    }
+
+    @Test
+    public void nativeMatchesTheModel() {
+        run(CommandMode.NATIVE);
+    }
+
+    @Test
+    public void shardedMatchesTheModel() {
+        run(CommandMode.SHARDED);
+    }
+
+    @Test
+    public void expireReachesEveryShard() {
+        FakeCluster cluster = new FakeCluster();
+        AedisClient client = new AedisClient(cluster.client(), "test", "redis");
+        client.setSortedSetMode(CommandMode.SHARDED);
+        client.setShardThreshold(10);
+        client.setHashShards(4);
+        for (int i = 0; i < 30; i++){
+            client.zadd("z", i, "m" + i);
+        }
+        client.expire("z", 70);
+        int expiration = cluster.record(new Key("test", "redis", "z")).expiration;
+        assertTrue(expiration > 0);
+        for (int i = 0; i < 30; i++){
+            client.zadd("z", i, "n" + i);
+            client.zincrby("z", 1, "m" + i);
+        }
+        assertEquals(expiration, cluster.record(new Key("test", "redis", "z")).expiration);
+        for (int shard : cluster.expirations(SHARDS)){
+            assertTrue(shard + " vs " + expiration, shard >= expiration && shard <= expiration + 1);
+        }
+    }
+}
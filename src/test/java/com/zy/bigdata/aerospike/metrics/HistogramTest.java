@@ -0,0 +1,68 @@
+package com.zy.bigdata.aerospike.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+
+    @Test
+    public void emptyHistogram() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals(0, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 20; i++){
+            histogram.record(i);
+        }
+        assertEquals(10, histogram.getPercentile(50));
+        assertEquals(19, histogram.getPercentile(95));
+        assertEquals(20, histogram.getPercentile(100));
+        assertEquals(1, histogram.getPercentile(0));
+        assertEquals(10.5, histogram.getMean(), 1e-9);
+    }
+
+    @Test
+    public void percentilesWithinBucketError() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 100000; i++){
+            histogram.record(i);
+        }
+        assertEquals(100000, histogram.getCount());
+        assertEquals(100000, histogram.getMax());
+        for (double percentile : new double[]{50, 90, 99, 99.9}){
+            long expected = (long) (percentile * 1000);
+            long actual = histogram.getPercentile(percentile);
+            assertTrue(percentile + ": " + actual, actual >= expected && actual <= expected * 1.07);
+        }
+        assertEquals(100000, histogram.getPercentile(100));
+    }
+
+    @Test
+    public void bucketsCoverTheirValues() {
+        for (long value = 0; value < 1L << 20; value += 1 + value / 7){
+            int index = Histogram.index(value);
+            assertTrue(value <= Histogram.highestEquivalent(index));
+            assertTrue(index == 0 || value > Histogram.highestEquivalent(index - 1));
+        }
+    }
+
+    @Test
+    public void clampsAndResets() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals((1L << 40) - 1, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(50));
+        assertEquals((1L << 40) - 1, histogram.getPercentile(100));
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getPercentile(100));
+    }
+}
@@ -0,0 +1,44 @@
+package com.zy.bigdata.aerospike.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GlobPatternsTest {
+
+    @Test
+    public void translatesWildcards() {
+        assertEquals("^user:.-$", GlobPatterns.toLuaPattern("user:*"));
+        assertEquals("^h.llo$", GlobPatterns.toLuaPattern("h?llo"));
+        assertEquals("^.-$", GlobPatterns.toLuaPattern("*"));
+        assertEquals("^$", GlobPatterns.toLuaPattern(""));
+    }
+
+    @Test
+    public void translatesClasses() {
+        assertEquals("^h[ae]llo$", GlobPatterns.toLuaPattern("h[ae]llo"));
+        assertEquals("^h[^e]llo$", GlobPatterns.toLuaPattern("h[^e]llo"));
+        assertEquals("^[a-z]$", GlobPatterns.toLuaPattern("[a-z]"));
+        assertEquals("^[%-a]$", GlobPatterns.toLuaPattern("[-a]"));
+        assertEquals("^[a%-]$", GlobPatterns.toLuaPattern("[a-]"));
+        assertEquals("^[%.%%]$", GlobPatterns.toLuaPattern("[.%]"));
+    }
+
+    @Test
+    public void escapesLuaMagicCharacters() {
+        assertEquals("^a%.b%-c%+d%%e%(f%)$", GlobPatterns.toLuaPattern("a.b-c+d%e(f)"));
+        assertEquals("^%^x%$$", GlobPatterns.toLuaPattern("^x$"));
+        assertEquals("^%*%?%[$", GlobPatterns.toLuaPattern("\\*\\?\\["));
+        assertEquals("^a%[b$", GlobPatterns.toLuaPattern("a[b"));
+        assertEquals("^a%[%]$", GlobPatterns.toLuaPattern("a[]"));
+        assertEquals("^a\\$", GlobPatterns.toLuaPattern("a\\"));
+    }
+
+    @Test
+    public void matchesAll() {
+        assertTrue(GlobPatterns.matchesAll(null));
+        assertTrue(GlobPatterns.matchesAll(""));
+        assertTrue(GlobPatterns.matchesAll("**"));
+        assertFalse(GlobPatterns.matchesAll("*a"));
+    }
+}
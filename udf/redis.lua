@@ -18,8 +18,9 @@
 -- 
 -- TODO
 -- =========
--- Transform from normal data type to large data type beyond certain threshold
 -- Few command may not support all options
+-- Lists and hashes beyond a threshold are split over several records by the
+-- client in SHARDED mode (see Shards.java), these functions only see small ones
 --
 --
 -- ###########################################
@@ -545,6 +546,31 @@ function HSCAN(rec, bin, offset, count)
 	end
 end
 
+-- ###########################################
+-- KEYS : See http://redis.io/commands#scan for detail of API
+--
+-- Stream UDF for the key scan, keeps the records whose key bin matches an anchored
+-- Lua pattern (translated from the Redis glob on the client) and returns the keys only
+-- ############################################
+
+function KEYS(stream, bin, pattern)
+	local function text(k)
+		if type(k) == "userdata" then
+			-- blob key written by the binary commands
+			return bytes.get_string(k, 1, bytes.size(k))
+		end
+		return tostring(k)
+	end
+	local function matches(rec)
+		local k = rec[bin]
+		return k ~= nil and string.match(text(k), pattern) ~= nil
+	end
+	local function key(rec)
+		return rec[bin]
+	end
+	return stream : filter(matches) : map(key)
+end
+
 -- ###########################################
 -- HASH : See http://redis.io/commands#GET or SET for detail of API
 -- ############################################